@@ -0,0 +1,405 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.classifier;
+
+import gov.va.isaac.classifier.model.ConceptTable;
+import gov.va.isaac.classifier.model.RelationshipTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.ihtsdo.otf.tcc.datastore.BdbTerminologyStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The on-disk snapshot of the classifier working set, so incremental
+ * classification survives a restart. It holds the concepts, the stated
+ * relationships, the role ids and the previously inferred relationships as of
+ * the last classification, stamped with the time of the commit that wrote
+ * those results back.
+ *
+ * The snapshot lives next to the BDB folder. Concepts committed after it was
+ * taken are appended to a "touched" journal by
+ * {@link gov.va.isaac.classifier.utils.ClassifierCommitListener}, and are
+ * re-read on the next incremental classification. A commit that retires
+ * components invalidates the whole snapshot, as it does the in-memory state.
+ * The journal misses commits made while the commit listener is disabled, so
+ * the classifier also looks up the concepts committed after
+ * {@link #getLastCommitTime()} when it restores a snapshot.
+ *
+ * The Snorocket taxonomy itself is not serializable, so it is rebuilt from the
+ * persisted stated relationships, which needs no walk of the hierarchy.
+ */
+public class ClassifierStateSnapshot {
+
+  /** The log. */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(ClassifierStateSnapshot.class);
+
+  /** The magic number, "ISCS". */
+  private static final int MAGIC = 0x49534353;
+
+  /** The file format version. Bump when the layout changes. */
+  public static final int VERSION = 1;
+
+  /** The snapshot file name. */
+  private static final String FILE_NAME = "classifier-state.bin";
+
+  /** The touched concepts journal file name. */
+  private static final String JOURNAL_NAME = "classifier-state.touched";
+
+  /** The default instance. */
+  private static ClassifierStateSnapshot defaultSnapshot;
+
+  /** The snapshot file. */
+  private final File file;
+
+  /** The touched concepts journal. */
+  private final File journal;
+
+  /** The loaded flag. */
+  private boolean loaded = false;
+
+  /** The last commit time. */
+  private long lastCommitTime;
+
+  /** The root nid. */
+  private int rootNid;
+
+  /** The role ids. */
+  private int[] roles;
+
+  /** The concepts. */
+  private ConceptTable concepts;
+
+  /** The stated relationships. */
+  private RelationshipTable statedRels;
+
+  /** The previously inferred relationships. */
+  private RelationshipTable previousInferredRels;
+
+  /**
+   * Instantiates a {@link ClassifierStateSnapshot} in the specified folder.
+   *
+   * @param folder the folder
+   */
+  public ClassifierStateSnapshot(File folder) {
+    file = new File(folder, FILE_NAME);
+    journal = new File(folder, JOURNAL_NAME);
+  }
+
+  /**
+   * Returns the snapshot kept next to the configured BDB folder.
+   *
+   * @return the default snapshot
+   */
+  public static synchronized ClassifierStateSnapshot getDefault() {
+    if (defaultSnapshot == null) {
+      File bdbFolder =
+          new File(System.getProperty(BdbTerminologyStore.BDB_LOCATION_PROPERTY,
+              BdbTerminologyStore.DEFAULT_BDB_LOCATION)).getAbsoluteFile();
+      defaultSnapshot = new ClassifierStateSnapshot(bdbFolder.getParentFile());
+    }
+    return defaultSnapshot;
+  }
+
+  /**
+   * Indicates whether or not a snapshot is available.
+   *
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  public synchronized boolean exists() {
+    return loaded || file.exists();
+  }
+
+  /**
+   * Writes the snapshot and clears the touched journal. The tables must be
+   * sorted. The file is written aside and moved into place, so a failure
+   * leaves no partial snapshot behind.
+   *
+   * @param lastCommitTime the time of the commit the state reflects
+   * @param rootNid the root nid
+   * @param roles the role ids
+   * @param concepts the concepts
+   * @param statedRels the stated relationships
+   * @param previousInferredRels the previously inferred relationships
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void save(long lastCommitTime, int rootNid, int[] roles,
+    ConceptTable concepts, RelationshipTable statedRels,
+    RelationshipTable previousInferredRels) throws IOException {
+    long startTime = System.currentTimeMillis();
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp),
+            1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(lastCommitTime);
+      out.writeInt(rootNid);
+      out.writeInt(roles.length);
+      for (int role : roles) {
+        out.writeInt(role);
+      }
+      out.writeInt(concepts.size());
+      for (int i = 0; i < concepts.size(); i++) {
+        out.writeInt(concepts.getNid(i));
+        out.writeBoolean(concepts.isDefined(i));
+      }
+      writeRelationships(out, statedRels);
+      writeRelationships(out, previousInferredRels);
+    }
+    Files.move(tmp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.deleteIfExists(journal.toPath());
+
+    this.lastCommitTime = lastCommitTime;
+    this.rootNid = rootNid;
+    this.roles = roles;
+    this.concepts = concepts;
+    this.statedRels = statedRels;
+    this.previousInferredRels = previousInferredRels;
+    loaded = true;
+    LOG.info("  saved classifier state, " + file.length() + " bytes in "
+        + (System.currentTimeMillis() - startTime) + " ms");
+  }
+
+  /**
+   * Loads the snapshot, unless already loaded. A snapshot of another version
+   * is discarded.
+   *
+   * @return <code>true</code> if a snapshot is available, <code>false</code>
+   *         otherwise
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized boolean load() throws IOException {
+    if (loaded) {
+      return true;
+    }
+    if (!file.exists()) {
+      return false;
+    }
+    long startTime = System.currentTimeMillis();
+    // Read through a stream rather than a mapping, which would keep the file
+    // locked on Windows - and so fail invalidate() and the move in save()
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+            1 << 16))) {
+      if (file.length() < 8 || in.readInt() != MAGIC
+          || in.readInt() != VERSION) {
+        LOG.warn("Discarding classifier state of an unknown version: " + file);
+        in.close();
+        invalidate();
+        return false;
+      }
+      lastCommitTime = in.readLong();
+      rootNid = in.readInt();
+      roles = new int[in.readInt()];
+      for (int i = 0; i < roles.length; i++) {
+        roles[i] = in.readInt();
+      }
+
+      int conceptCt = in.readInt();
+      concepts = new ConceptTable(conceptCt);
+      for (int i = 0; i < conceptCt; i++) {
+        concepts.add(in.readInt(), in.readBoolean());
+      }
+      concepts.sort();
+      statedRels = readRelationships(in);
+      previousInferredRels = readRelationships(in);
+    }
+    loaded = true;
+    LOG.info("  loaded classifier state as of " + lastCommitTime + ", "
+        + concepts.size() + " concepts, in "
+        + (System.currentTimeMillis() - startTime) + " ms");
+    return true;
+  }
+
+  /**
+   * Appends concepts committed since the snapshot was taken to the touched
+   * journal. Does nothing if there is no snapshot.
+   *
+   * @param nids the concept nids
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void appendTouched(int[] nids) throws IOException {
+    if (!exists()) {
+      return;
+    }
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            journal, true)))) {
+      for (int nid : nids) {
+        out.writeInt(nid);
+      }
+    }
+  }
+
+  /**
+   * Returns the concepts journaled as committed since the snapshot was taken.
+   *
+   * @return the touched concept nids, sorted and unique
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized int[] getTouched() throws IOException {
+    if (!journal.exists()) {
+      return new int[0];
+    }
+    byte[] bytes = Files.readAllBytes(journal.toPath());
+    int[] nids = new int[bytes.length / 4];
+    ByteBuffer.wrap(bytes).asIntBuffer().get(nids);
+    Arrays.sort(nids);
+    int ct = 0;
+    for (int i = 0; i < nids.length; i++) {
+      if (ct == 0 || nids[i] != nids[ct - 1]) {
+        nids[ct++] = nids[i];
+      }
+    }
+    return Arrays.copyOf(nids, ct);
+  }
+
+  /**
+   * Deletes the snapshot and the touched journal.
+   */
+  public synchronized void invalidate() {
+    loaded = false;
+    roles = null;
+    concepts = null;
+    statedRels = null;
+    previousInferredRels = null;
+    try {
+      Files.deleteIfExists(file.toPath());
+      Files.deleteIfExists(journal.toPath());
+    } catch (IOException e) {
+      LOG.warn("Unable to delete classifier state " + file, e);
+    }
+  }
+
+  /**
+   * Returns the last commit time.
+   *
+   * @return the last commit time
+   */
+  public synchronized long getLastCommitTime() {
+    return lastCommitTime;
+  }
+
+  /**
+   * Returns the root nid.
+   *
+   * @return the root nid
+   */
+  public synchronized int getRootNid() {
+    return rootNid;
+  }
+
+  /**
+   * Returns the role ids.
+   *
+   * @return the roles
+   */
+  public synchronized int[] getRoles() {
+    return roles;
+  }
+
+  /**
+   * Returns the concepts.
+   *
+   * @return the concepts
+   */
+  public synchronized ConceptTable getConcepts() {
+    return concepts;
+  }
+
+  /**
+   * Returns the stated relationships.
+   *
+   * @return the stated rels
+   */
+  public synchronized RelationshipTable getStatedRels() {
+    return statedRels;
+  }
+
+  /**
+   * Returns the previously inferred relationships.
+   *
+   * @return the previous inferred rels
+   */
+  public synchronized RelationshipTable getPreviousInferredRels() {
+    return previousInferredRels;
+  }
+
+  /**
+   * Writes a relationship table, one row of five ints per relationship.
+   *
+   * @param out the out
+   * @param rels the rels
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeRelationships(DataOutputStream out,
+    RelationshipTable rels) throws IOException {
+    int ct = 0;
+    for (int row = 0; row < rels.size(); row++) {
+      if (!rels.isRemoved(row)) {
+        ct++;
+      }
+    }
+    out.writeInt(ct);
+    for (int row = 0; row < rels.size(); row++) {
+      if (!rels.isRemoved(row)) {
+        out.writeInt(rels.getSourceId(row));
+        out.writeInt(rels.getDestinationId(row));
+        out.writeInt(rels.getTypeId(row));
+        out.writeInt(rels.getGroup(row));
+        out.writeInt(rels.getRelNid(row));
+      }
+    }
+  }
+
+  /**
+   * Reads a relationship table written by
+   * {@link #writeRelationships(DataOutputStream, RelationshipTable)}.
+   *
+   * @param in the in
+   * @return the relationship table, sorted
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static RelationshipTable readRelationships(DataInputStream in)
+    throws IOException {
+    int ct = in.readInt();
+    RelationshipTable rels = new RelationshipTable(ct);
+    for (int row = 0; row < ct; row++) {
+      rels.add(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+          in.readInt());
+    }
+    rels.sort();
+    return rels;
+  }
+}
@@ -16,12 +16,15 @@
  */
 package gov.va.isaac.classifier;
 
+import gov.va.isaac.classifier.model.ConceptTable;
+import gov.va.isaac.classifier.model.RelationshipTable;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -40,15 +43,18 @@ public class CycleCheck {
   /** The Constant LOG. */
   private static final Logger LOG = LoggerFactory.getLogger(CycleCheck.class);
 
-  /** The concepts. Map of id->seen */
-  private Map<Integer, Boolean> concepts;
+  /** The concepts. */
+  private ConceptTable concepts;
 
-  /** The isa relationships map. Map of sourceId->destinationIds */
-  private Map<Integer, List<Integer>> isarelationships;
+  /** The isa relationships, indexed by source. */
+  private RelationshipTable isarelationships;
 
   /** The concept in loop. */
   private Set<Integer> conceptInLoop;
 
+  /** The cycles, each one the nids of a strongly connected component. */
+  private List<int[]> cycles;
+
   /** The output file. */
   private String outputFile;
 
@@ -64,7 +70,14 @@ public class CycleCheck {
 
   /**
    * Cycle detected. Must set concepts and isa relationships data structures
-   * before running.
+   * (both sorted) before running.
+   * 
+   * <pre>
+   * Runs an iterative Tarjan strongly connected components search over the
+   * isa graph, so it is linear in the number of concepts and isa
+   * relationships and does not recurse. Every component with more than one
+   * member, or with a concept that is its own parent, is a cycle.
+   * </pre>
    *
    * @return true, if successful
    * @throws FileNotFoundException the file not found exception
@@ -74,17 +87,88 @@ public class CycleCheck {
   public boolean cycleDetected() throws FileNotFoundException, IOException,
     ClassificationException {
     conceptInLoop = new HashSet<>();
-    for (Integer con : concepts.keySet()) {
-      if (!concepts.get(con)) {
-        List<Integer> desc = new ArrayList<>();
-        findCycle(con, desc);
-        desc.remove(con);
+    cycles = new ArrayList<>();
+    reviewed = 0;
+
+    final int n = concepts.size();
+    final int[] adjOffsets = new int[n + 1];
+    final int[] adj = buildAdjacency(adjOffsets);
+
+    // Tarjan state, all indexed by concept position
+    final int[] index = new int[n];
+    final int[] low = new int[n];
+    final boolean[] onStack = new boolean[n];
+    final boolean[] selfLoop = new boolean[n];
+    Arrays.fill(index, -1);
+    final int[] stack = new int[n];
+    int sp = 0;
+    // explicit call stack: vertex and next edge to explore
+    final int[] callVertex = new int[n];
+    final int[] callEdge = new int[n];
+    int csp = 0;
+    int counter = 0;
+
+    for (int root = 0; root < n; root++) {
+      if (index[root] != -1) {
+        continue;
+      }
+      index[root] = low[root] = counter++;
+      stack[sp++] = root;
+      onStack[root] = true;
+      callVertex[csp] = root;
+      callEdge[csp++] = adjOffsets[root];
+
+      while (csp > 0) {
+        final int v = callVertex[csp - 1];
+        final int e = callEdge[csp - 1];
+        if (e < adjOffsets[v + 1]) {
+          callEdge[csp - 1]++;
+          final int w = adj[e];
+          if (w == v) {
+            selfLoop[v] = true;
+          } else if (index[w] == -1) {
+            index[w] = low[w] = counter++;
+            stack[sp++] = w;
+            onStack[w] = true;
+            callVertex[csp] = w;
+            callEdge[csp++] = adjOffsets[w];
+          } else if (onStack[w]) {
+            low[v] = Math.min(low[v], index[w]);
+          }
+          continue;
+        }
+
+        // v is finished
+        csp--;
         reviewed++;
-        concepts.put(con, true);
+        if (csp > 0) {
+          final int u = callVertex[csp - 1];
+          low[u] = Math.min(low[u], low[v]);
+        }
+        if (low[v] == index[v]) {
+          // v is the root of a strongly connected component
+          int start = sp;
+          do {
+            onStack[stack[--start]] = false;
+          } while (stack[start] != v);
+          final int size = sp - start;
+          if (size > 1 || selfLoop[v]) {
+            int[] cycle = new int[size];
+            for (int i = 0; i < size; i++) {
+              cycle[i] = concepts.getNid(stack[start + i]);
+              conceptInLoop.add(cycle[i]);
+            }
+            Arrays.sort(cycle);
+            cycles.add(cycle);
+          }
+          sp = start;
+        }
       }
     }
-    if (conceptInLoop.size() > 0) {
-      LOG.info("CYCLE DETECTED - Concepts reviewed: " + reviewed);
+
+    if (cycles.size() > 0) {
+      LOG.info("CYCLE DETECTED - Concepts reviewed: " + reviewed + ", cycles: "
+          + cycles.size() + ", concepts in cycles: " + conceptInLoop.size());
       LOG.info("Please get conceptId for detected cycles in file:" + outputFile);
       return true;
     }
@@ -93,64 +177,70 @@ public class CycleCheck {
   }
 
   /**
-   * Find cycle.
+   * Builds the isa adjacency (child position -> parent positions) in CSR form.
+   * An isa relationship to a parent that is not in the concepts can't be part
+   * of a cycle - it is logged and skipped, as the classifier skips it.
    *
-   * @param con the con
-   * @param desc the desc
-   * @throws ClassificationException the classification exception
+   * @param adjOffsets the offsets to fill, one per concept plus one
+   * @return the parent positions
    */
-  private void findCycle(Integer con, List<Integer> desc)
-    throws ClassificationException {
-    List<Integer> parents = isarelationships.get(con);
-    if (parents != null) {
-      desc.add(con);
-      for (Integer parent : parents) {
-        if (desc.contains(parent)) {
-          conceptInLoop.add(parent);
-        } else {
-          Boolean aBoolean = concepts.get(parent);
-          if (aBoolean != null) {
-            if (!aBoolean) {
-              findCycle(parent, desc);
-              desc.remove(parent);
-              reviewed++;
-              concepts.put(parent, true);
-            }
-          } else {
-            throw new ClassificationException("SCTID " + parent
-                + " is declared as a parent of " + con
-                + " but is missing or inactive in the concept file.");
+  private int[] buildAdjacency(int[] adjOffsets) {
+    final int n = concepts.size();
+    final int[] adj = new int[isarelationships.size()];
+    int e = 0;
+    // concepts and isa sources are both ascending, so walk them together
+    int s = 0;
+    for (int v = 0; v < n; v++) {
+      adjOffsets[v] = e;
+      final int nid = concepts.getNid(v);
+      while (s < isarelationships.getSourceCount()
+          && isarelationships.getSourceNid(s) < nid) {
+        s++;
+      }
+      if (s < isarelationships.getSourceCount()
+          && isarelationships.getSourceNid(s) == nid) {
+        for (int row = isarelationships.getStart(s); row < isarelationships
+            .getEnd(s); row++) {
+          final int parent = isarelationships.getDestinationId(row);
+          final int w = concepts.indexOf(parent);
+          if (w < 0) {
+            LOG.warn("  skipping isa " + nid + " -> " + parent
+                + ", the parent is missing or inactive in the concepts");
+            continue;
           }
+          adj[e++] = w;
         }
       }
     }
+    adjOffsets[n] = e;
+    return adj;
   }
 
   /**
    * @return the concepts
    */
-  public Map<Integer, Boolean> getConcepts() {
+  public ConceptTable getConcepts() {
     return concepts;
   }
 
   /**
    * @param concepts the concepts to set
    */
-  public void setConcepts(Map<Integer, Boolean> concepts) {
+  public void setConcepts(ConceptTable concepts) {
     this.concepts = concepts;
   }
 
   /**
    * @return the isarelationships
    */
-  public Map<Integer, List<Integer>> getIsarelationships() {
+  public RelationshipTable getIsarelationships() {
     return isarelationships;
   }
 
   /**
    * @param isarelationships the isarelationships to set
    */
-  public void setIsarelationships(Map<Integer, List<Integer>> isarelationships) {
+  public void setIsarelationships(RelationshipTable isarelationships) {
     this.isarelationships = isarelationships;
   }
 
@@ -167,4 +257,21 @@ public class CycleCheck {
   public void setConceptInLoop(HashSet<Integer> conceptInLoop) {
     this.conceptInLoop = conceptInLoop;
   }
+
+  /**
+   * Returns the cycles found by {@link #cycleDetected()}. Each cycle is the
+   * sorted nids of all members of one strongly connected component.
+   *
+   * @return the cycles
+   */
+  public List<int[]> getCycles() {
+    return cycles;
+  }
+
+  /**
+   * @param outputFile the output file to set
+   */
+  public void setOutputFile(String outputFile) {
+    this.outputFile = outputFile;
+  }
 }
@@ -0,0 +1,521 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.classifier;
+
+import gov.va.isaac.classifier.model.RelationshipTable;
+
+import java.util.Arrays;
+
+/**
+ * The Class RelationshipDiff. A streaming sort-merge diff of previously
+ * inferred relationships (A) against the classifier output (B), over
+ * (sourceNid, group, typeNid, destNid) tuples.
+ *
+ * <pre>
+ * Both tables must be sorted. Sources are visited once in ascending nid
+ * order and, for each source:
+ * - group 0 relationships are merged tuple by tuple
+ *   (A only = RETIRE, B only = ADD)
+ * - role groups are compared by their (type, destination) content,
+ *   independent of group number. Groups only in A are RETIREd; groups only
+ *   in B are emitted as REGROUP with the next group number not used by A.
+ * - the listener is told the source is complete, so it can write back the
+ *   concept as a unit.
+ * </pre>
+ */
+public class RelationshipDiff {
+
+  /**
+   * The kind of change.
+   */
+  public enum DeltaType {
+
+    /** A relationship to add as inferred. */
+    ADD,
+
+    /** A previously inferred relationship to retire. */
+    RETIRE,
+
+    /** A role group to add, renumbered to a group not used by A. */
+    REGROUP
+  }
+
+  /**
+   * Receives the changes produced by {@link RelationshipDiff#run(int[])}.
+   */
+  public interface DeltaListener {
+
+    /**
+     * Handles one change.
+     *
+     * @param deltaType the delta type
+     * @param sourceId the source nid
+     * @param destinationId the destination nid
+     * @param typeId the type nid
+     * @param group the group (already renumbered for REGROUP)
+     * @param relNid the relationship nid (RETIRE only), otherwise
+     *          {@link RelationshipTable#NO_NID}
+     * @throws Exception the exception
+     */
+    public void delta(DeltaType deltaType, int sourceId, int destinationId,
+      int typeId, int group, int relNid) throws Exception;
+
+    /**
+     * Indicates all changes for the source have been emitted.
+     *
+     * @param sourceId the source nid
+     * @param changed whether any change was emitted for the source
+     * @param relsSeen the count of rows visited so far in both tables
+     * @return <code>true</code> to continue, <code>false</code> to cancel
+     * @throws Exception the exception
+     */
+    public boolean endConcept(int sourceId, boolean changed, int relsSeen)
+      throws Exception;
+  }
+
+  /** The previously inferred rels. */
+  private final RelationshipTable snorelA;
+
+  /** The classifier results. */
+  private final RelationshipTable snorelB;
+
+  /** The isa nid, for statistics. */
+  private final int isaNid;
+
+  /** The listener. */
+  private final DeltaListener listener;
+
+  /** Whether anything was emitted for the current source. */
+  private boolean changed;
+
+  // STATISTICS COUNTERS
+
+  /** The count concepts seen. */
+  private int countConceptsSeen = 0;
+
+  /** The count same. */
+  private int countSame = 0;
+
+  /** The count same isa. */
+  private int countSameISA = 0;
+
+  /** The count a diff. */
+  private int countA_Diff = 0;
+
+  /** The count a diff isa. */
+  private int countA_DiffISA = 0;
+
+  /** The count a total. */
+  private int countA_Total = 0;
+
+  /** The count b diff. */
+  private int countB_Diff = 0;
+
+  /** The count b diff isa. */
+  private int countB_DiffISA = 0;
+
+  /** The count b total. */
+  private int countB_Total = 0;
+
+  /** The count regrouped. */
+  private int countB_Regrouped = 0;
+
+  /** The lapse time. */
+  private long lapseTime = 0;
+
+  /**
+   * Instantiates a {@link RelationshipDiff} from the specified parameters.
+   *
+   * @param snorelA the previously inferred rels, sorted
+   * @param snorelB the classifier results, sorted
+   * @param isaNid the isa nid
+   * @param listener the listener
+   */
+  public RelationshipDiff(RelationshipTable snorelA,
+      RelationshipTable snorelB, int isaNid, DeltaListener listener) {
+    this.snorelA = snorelA;
+    this.snorelB = snorelB;
+    this.isaNid = isaNid;
+    this.listener = listener;
+  }
+
+  /**
+   * Runs the diff.
+   *
+   * @param sources the source nids to compare, or null for every source in
+   *          either table
+   * @return <code>true</code> if completed, <code>false</code> if cancelled
+   * @throws Exception the exception
+   */
+  public boolean run(int[] sources) throws Exception {
+    long startTime = System.currentTimeMillis();
+    int relsSeen = 0;
+    int[] filter = null;
+    if (sources != null) {
+      filter = sources.clone();
+      Arrays.sort(filter);
+    }
+    int sA = 0;
+    int sB = 0;
+    int f = 0;
+    try {
+      // BY SORT ORDER, LOWER NUMBER ADVANCES FIRST
+      while (true) {
+        int thisC1;
+        int indexA;
+        int indexB;
+        if (filter != null) {
+          if (f == filter.length) {
+            break;
+          }
+          thisC1 = filter[f++];
+          indexA = snorelA.indexOf(thisC1);
+          indexB = snorelB.indexOf(thisC1);
+        } else {
+          boolean done_A = sA == snorelA.getSourceCount();
+          boolean done_B = sB == snorelB.getSourceCount();
+          if (done_A && done_B) {
+            break;
+          }
+          if (done_B
+              || (!done_A && snorelA.getSourceNid(sA) <= snorelB
+                  .getSourceNid(sB))) {
+            thisC1 = snorelA.getSourceNid(sA);
+          } else {
+            thisC1 = snorelB.getSourceNid(sB);
+          }
+          indexA = !done_A && snorelA.getSourceNid(sA) == thisC1 ? sA++ : -1;
+          indexB = !done_B && snorelB.getSourceNid(sB) == thisC1 ? sB++ : -1;
+        }
+
+        int a0 = indexA < 0 ? 0 : snorelA.getStart(indexA);
+        int a1 = indexA < 0 ? 0 : snorelA.getEnd(indexA);
+        int b0 = indexB < 0 ? 0 : snorelB.getStart(indexB);
+        int b1 = indexB < 0 ? 0 : snorelB.getEnd(indexB);
+        relsSeen += (a1 - a0) + (b1 - b0);
+        countConceptsSeen++;
+
+        changed = false;
+        compareConcept(a0, a1, b0, b1);
+        if (!listener.endConcept(thisC1, changed, relsSeen)) {
+          return false;
+        }
+      }
+    } finally {
+      lapseTime = System.currentTimeMillis() - startTime;
+    }
+    return true;
+  }
+
+  /**
+   * Compares the rows of one source.
+   *
+   * @param a0 the first row in A
+   * @param a1 one past the last row in A
+   * @param b0 the first row in B
+   * @param b1 one past the last row in B
+   * @throws Exception the exception
+   */
+  private void compareConcept(int a0, int a1, int b0, int b1)
+    throws Exception {
+    int a = a0;
+    int b = b0;
+
+    if (a0 == a1 || b0 == b1) {
+      // LIST_A OR LIST_B DOES NOT HAVE THE CONCEPT
+      // COMPLETELY *RETIRE* ALL OF A OR *ADD* ALL OF B
+      for (; a < a1; a++) {
+        retireA(a, true);
+      }
+      for (; b < b1; b++) {
+        addB(b, snorelB.getGroup(b), DeltaType.ADD, true);
+      }
+      return;
+    }
+
+    // PROCESS WHILE BOTH HAVE GROUP 0
+    while (a < a1 && b < b1 && snorelA.getGroup(a) == 0
+        && snorelB.getGroup(b) == 0) {
+      int cmp =
+          RelationshipTable.compare(0, 0, snorelA.getTypeId(a),
+              snorelA.getDestinationId(a), 0, 0, snorelB.getTypeId(b),
+              snorelB.getDestinationId(b));
+      if (cmp == 0) {
+        // SAME - NOTHING TO WRITE IN THIS CASE
+        countA_Total++;
+        countB_Total++;
+        countSame++;
+        if (snorelA.getTypeId(a) == isaNid) {
+          countSameISA++;
+        }
+        a++;
+        b++;
+      } else if (cmp > 0) {
+        // REL_A > REL_B -- B has extra stuff
+        addB(b++, 0, DeltaType.ADD, true);
+      } else {
+        // REL_A < REL_B -- A has extra stuff
+        retireA(a++, true);
+      }
+    }
+    // REMAINDER GROUP 0 FOR C1
+    while (a < a1 && snorelA.getGroup(a) == 0) {
+      retireA(a++, true);
+    }
+    while (b < b1 && snorelB.getGroup(b) == 0) {
+      addB(b++, 0, DeltaType.ADD, true);
+    }
+    if (a == a1 && b == b1) {
+      return;
+    }
+
+    // ** SEGMENT GROUPS **
+    int[] groupsA = segment(snorelA, a, a1);
+    int[] groupsB = segment(snorelB, b, b1);
+    long[] hashesA = hashGroups(snorelA, groupsA);
+    long[] hashesB = hashGroups(snorelB, groupsB);
+
+    // FIND GROUPS IN A WITHOUT AN EQUAL IN B, WRITE AS "RETIRED"
+    for (int g = 0; g < groupsA.length - 1; g++) {
+      countA_Total += groupsA[g + 1] - groupsA[g];
+      if (!hasEqualGroup(snorelA, groupsA, g, hashesA[g], snorelB, groupsB,
+          hashesB)) {
+        for (int row = groupsA[g]; row < groupsA[g + 1]; row++) {
+          retireA(row, false);
+          countA_Diff++;
+        }
+      }
+    }
+
+    // FIND GROUPS IN B WITHOUT AN EQUAL IN A, WRITE AS "NEW, CURRENT"
+    // USING THE NEXT "AVAILABLE" ROLE GROUP NUMBER
+    int rgNum = 0;
+    int[] usedA = usedGroupNumbers(snorelA, groupsA);
+    for (int g = 0; g < groupsB.length - 1; g++) {
+      countB_Total += groupsB[g + 1] - groupsB[g];
+      if (!hasEqualGroup(snorelB, groupsB, g, hashesB[g], snorelA, groupsA,
+          hashesA)) {
+        rgNum = nextRoleGroupNumber(usedA, rgNum);
+        countB_Regrouped++;
+        for (int row = groupsB[g]; row < groupsB[g + 1]; row++) {
+          addB(row, rgNum, DeltaType.REGROUP, false);
+          countB_Diff++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Emits a retirement for a row of A.
+   *
+   * @param row the row
+   * @param count whether to count the row in the statistics
+   * @throws Exception the exception
+   */
+  private void retireA(int row, boolean count) throws Exception {
+    if (count) {
+      countA_Diff++;
+      countA_Total++;
+      if (snorelA.getTypeId(row) == isaNid) {
+        countA_DiffISA++;
+      }
+    }
+    changed = true;
+    listener.delta(DeltaType.RETIRE, snorelA.getSourceId(row),
+        snorelA.getDestinationId(row), snorelA.getTypeId(row),
+        snorelA.getGroup(row), snorelA.getRelNid(row));
+  }
+
+  /**
+   * Emits an addition for a row of B.
+   *
+   * @param row the row
+   * @param group the group to write
+   * @param deltaType the delta type
+   * @param count whether to count the row in the statistics
+   * @throws Exception the exception
+   */
+  private void addB(int row, int group, DeltaType deltaType, boolean count)
+    throws Exception {
+    if (count) {
+      countB_Diff++;
+      countB_Total++;
+      if (snorelB.getTypeId(row) == isaNid) {
+        countB_DiffISA++;
+      }
+    }
+    changed = true;
+    listener.delta(deltaType, snorelB.getSourceId(row),
+        snorelB.getDestinationId(row), snorelB.getTypeId(row), group,
+        RelationshipTable.NO_NID);
+  }
+
+  /**
+   * Segments a sorted row range into role groups.
+   *
+   * @param table the table
+   * @param from the first row
+   * @param to one past the last row
+   * @return the group boundaries; group g is rows [result[g], result[g+1])
+   */
+  private static int[] segment(RelationshipTable table, int from, int to) {
+    int count = 0;
+    for (int row = from; row < to; row++) {
+      if (row == from || table.getGroup(row) != table.getGroup(row - 1)) {
+        count++;
+      }
+    }
+    int[] bounds = new int[count + 1];
+    int g = 0;
+    for (int row = from; row < to; row++) {
+      if (row == from || table.getGroup(row) != table.getGroup(row - 1)) {
+        bounds[g++] = row;
+      }
+    }
+    bounds[count] = to;
+    return bounds;
+  }
+
+  /**
+   * Hashes the (type, destination) content of each group.
+   *
+   * @param table the table
+   * @param bounds the group boundaries
+   * @return the hashes
+   */
+  private static long[] hashGroups(RelationshipTable table, int[] bounds) {
+    long[] hashes = new long[bounds.length - 1];
+    for (int g = 0; g < hashes.length; g++) {
+      long h = 1;
+      for (int row = bounds[g]; row < bounds[g + 1]; row++) {
+        h = 31 * h + table.getTypeId(row);
+        h = 31 * h + table.getDestinationId(row);
+      }
+      hashes[g] = h;
+    }
+    return hashes;
+  }
+
+  /**
+   * Indicates whether group g of x has a group with the same (type,
+   * destination) content in y. Groups are sorted by type then destination
+   * within a group, so equal content is an equal row sequence.
+   *
+   * @param x the x table
+   * @param boundsX the x group boundaries
+   * @param g the group
+   * @param hash the hash of group g
+   * @param y the y table
+   * @param boundsY the y group boundaries
+   * @param hashesY the y hashes
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  private static boolean hasEqualGroup(RelationshipTable x, int[] boundsX,
+    int g, long hash, RelationshipTable y, int[] boundsY, long[] hashesY) {
+    int sizeX = boundsX[g + 1] - boundsX[g];
+    for (int h = 0; h < hashesY.length; h++) {
+      if (hashesY[h] != hash || boundsY[h + 1] - boundsY[h] != sizeX) {
+        continue;
+      }
+      boolean same = true;
+      for (int i = 0; i < sizeX && same; i++) {
+        int rowX = boundsX[g] + i;
+        int rowY = boundsY[h] + i;
+        same =
+            x.getTypeId(rowX) == y.getTypeId(rowY)
+                && x.getDestinationId(rowX) == y.getDestinationId(rowY);
+      }
+      if (same) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the sorted group numbers used by the groups.
+   *
+   * @param table the table
+   * @param bounds the group boundaries
+   * @return the group numbers
+   */
+  private static int[] usedGroupNumbers(RelationshipTable table, int[] bounds) {
+    int[] used = new int[bounds.length - 1];
+    for (int g = 0; g < used.length; g++) {
+      used[g] = table.getGroup(bounds[g]);
+    }
+    Arrays.sort(used);
+    return used;
+  }
+
+  /**
+   * Next role group number greater than gnum that is not used.
+   *
+   * @param used the sorted group numbers in use
+   * @param gnum the gnum
+   * @return the int
+   */
+  private static int nextRoleGroupNumber(int[] used, int gnum) {
+    int testNum = gnum + 1;
+    while (Arrays.binarySearch(used, testNum) >= 0) {
+      testNum++;
+    }
+    return testNum;
+  }
+
+  /**
+   * Returns the count of concepts visited.
+   *
+   * @return the count of concepts visited
+   */
+  public int getConceptsSeen() {
+    return countConceptsSeen;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("\r\n::: [Snorocket] compareAndWriteBack()");
+    s.append("\r\n::: [Time] Sort/Compare Input & Output: \t")
+        .append(lapseTime);
+    s.append("\t(mS)\t").append(((float) lapseTime / 1000) / 60)
+        .append("\t(min)");
+    s.append("\r\n");
+    s.append("\r\n::: ");
+    s.append("\r\n::: countConceptsSeen:\t").append(countConceptsSeen);
+    s.append("\r\n::: countSame:     \t").append(countSame);
+    s.append("\r\n::: countSameISA:  \t").append(countSameISA);
+    s.append("\r\n::: A == Classifier Output Path");
+    s.append("\r\n::: countA_Diff:   \t").append(countA_Diff);
+    s.append("\r\n::: countA_DiffISA:\t").append(countA_DiffISA);
+    s.append("\r\n::: countA_Total:  \t").append(countA_Total);
+    s.append("\r\n::: B == Classifier Solution Set");
+    s.append("\r\n::: countB_Diff:   \t").append(countB_Diff);
+    s.append("\r\n::: countB_DiffISA:\t").append(countB_DiffISA);
+    s.append("\r\n::: countB_Total:  \t").append(countB_Total);
+    s.append("\r\n::: countB_Regroup:\t").append(countB_Regrouped);
+    s.append("\r\n::: ");
+    return s.toString();
+  }
+}
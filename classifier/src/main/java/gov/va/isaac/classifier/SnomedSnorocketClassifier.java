@@ -4,11 +4,10 @@ import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.classifier.model.Concept;
 import gov.va.isaac.classifier.model.ConceptGroup;
+import gov.va.isaac.classifier.model.ConceptTable;
 import gov.va.isaac.classifier.model.EquivalentClasses;
-import gov.va.isaac.classifier.model.Relationship;
-import gov.va.isaac.classifier.model.RelationshipGroup;
-import gov.va.isaac.classifier.model.RelationshipGroupList;
-import gov.va.isaac.classifier.model.StringIDConcept;
+import gov.va.isaac.classifier.model.RelationshipTable;
+import gov.va.isaac.classifier.utils.ConcurrentNidBitSet;
 import gov.va.isaac.gui.conceptViews.helpers.ConceptViewerHelper;
 import gov.va.isaac.util.OTFUtility;
 import gov.va.isaac.util.ProgressEvent;
@@ -21,24 +20,34 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.ihtsdo.otf.tcc.api.blueprint.IdDirective;
 import org.ihtsdo.otf.tcc.api.blueprint.RefexDirective;
 import org.ihtsdo.otf.tcc.api.blueprint.RelationshipCAB;
+import org.ihtsdo.otf.tcc.api.chronicle.ComponentChronicleBI;
+import org.ihtsdo.otf.tcc.api.chronicle.ComponentVersionBI;
 import org.ihtsdo.otf.tcc.api.conattr.ConceptAttributeVersionBI;
+import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
+import org.ihtsdo.otf.tcc.api.concept.ConceptFetcherBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI;
+import org.ihtsdo.otf.tcc.api.concept.ProcessUnfetchedConceptDataBI;
 import org.ihtsdo.otf.tcc.api.coordinate.Status;
+import org.ihtsdo.otf.tcc.api.coordinate.ViewCoordinate;
 import org.ihtsdo.otf.tcc.api.metadata.binding.Snomed;
 import org.ihtsdo.otf.tcc.api.metadata.binding.TermAux;
 import org.ihtsdo.otf.tcc.api.nid.IntSet;
+import org.ihtsdo.otf.tcc.api.nid.NativeIdSetBI;
+import org.ihtsdo.otf.tcc.api.relationship.RelationshipChronicleBI;
 import org.ihtsdo.otf.tcc.api.relationship.RelationshipType;
 import org.ihtsdo.otf.tcc.api.relationship.RelationshipVersionBI;
 import org.ihtsdo.otf.tcc.datastore.BdbTerminologyStore;
@@ -72,7 +81,7 @@ public class SnomedSnorocketClassifier implements Classifier {
       .getLogger(SnomedSnorocketClassifier.class);
 
   /** The cancel flag. */
-  private boolean requestCancel = false;
+  private volatile boolean requestCancel = false;
 
   /** the count so far. */
   private int progress = 0;
@@ -101,26 +110,36 @@ public class SnomedSnorocketClassifier implements Classifier {
   /** The progress count. */
   private int progressCount = 0;
 
-  /** The edited snomed concepts. */
-  private List<StringIDConcept> editedSnomedConcepts;
+  /**
+   * The concepts in scope. Also used for the cycle check and for mapping nids
+   * to their classifier ids.
+   */
+  private static ConceptTable concepts;
 
-  /** The edit snomed rels. */
-  private List<Relationship> editedSnomedRels;
+  /** The edit snomed rels, kept so the working set can be saved. */
+  private static RelationshipTable editedSnomedRels;
 
-  /** The c rocket sno rels. */
-  private Map<Integer, List<Relationship>> snorocketRels;
+  /** The role ids of the last classification. */
+  private static int[] roles;
 
-  /** The prior inferred rels. */
-  private static Map<Integer, List<Relationship>> previousInferredRels;
+  /** The root nid of the last classification. */
+  private static int classifiedRootNid;
 
-  /** The previous inferred rels ct. */
-  private static int previousInferredRelsCt = 0;
+  /** The persisted working set, for incremental classification after restart. */
+  private static ClassifierStateSnapshot snapshot = ClassifierStateSnapshot
+      .getDefault();
 
-  /** The concepts. Map of id->seen */
-  private static Map<Integer, Boolean> cycleCheckConcepts;
+  /** The c rocket sno rels. */
+  private RelationshipTable snorocketRels;
+
+  /** The nid of the last relationship written back, null if none. */
+  private Integer writtenRelNid;
+
+  /** The prior inferred rels. */
+  private static RelationshipTable previousInferredRels;
 
-  /** The isa relationships map. Map of sourceId->destinationIds */
-  private static Map<Integer, List<Integer>> cycleCheckRelationships;
+  /** The stated isa relationships, for the cycle check. */
+  private static RelationshipTable cycleCheckRelationships;
 
   /** The cycle check report. */
   private String cycleCheckReport = "cycleCheck.txt";
@@ -134,9 +153,6 @@ public class SnomedSnorocketClassifier implements Classifier {
   /** The valid paths. */
   private IntSet validPaths = new IntSet();
 
-  /** An id map for resolving relationship ids later. */
-  private Set<Integer> nidSeen;
-
   /** The rocket_123. */
   private static Snorocket_123 rocket_123 = null;
 
@@ -146,6 +162,9 @@ public class SnomedSnorocketClassifier implements Classifier {
   /** The save equivalent concepts report. */
   private boolean saveEquivalentConceptsReport = true;
 
+  /** The number of changed concepts written back per commit. */
+  private int commitBatchSize = 5000;
+
   /**
    * Instantiates an empty {@link SnomedSnorocketClassifier}.
    *
@@ -174,15 +193,14 @@ public class SnomedSnorocketClassifier implements Classifier {
   @Override
   public void classify(int rootNid) throws Exception {
     // Reset data structures
-    editedSnomedConcepts = new ArrayList<>();
-    editedSnomedRels = new ArrayList<>();
-    previousInferredRels = new HashMap<>();
-    previousInferredRelsCt = 0;
-    cycleCheckConcepts = new HashMap<>(20000);
-    cycleCheckRelationships = new HashMap<>(20000);
+    concepts = new ConceptTable();
+    editedSnomedRels = new RelationshipTable();
+    previousInferredRels = new RelationshipTable();
+    cycleCheckRelationships = new RelationshipTable();
     incrementalClassificationSet = new IntSet();
-    nidSeen = new HashSet<>();
     rocket_123 = null;
+    roles = null;
+    snapshot.invalidate();
 
     // Set up progress monitoring
     progress = 0;
@@ -201,16 +219,21 @@ public class SnomedSnorocketClassifier implements Classifier {
     if (!continueWork()) {
       return;
     }
-    LOG.info("  concepts = " + editedSnomedConcepts.size());
+    LOG.info("  concepts = " + concepts.size());
     LOG.info("  stated rels = " + editedSnomedRels.size());
-    LOG.info("  inferred rels = " + previousInferredRelsCt);
+    LOG.info("  inferred rels = " + previousInferredRels.size());
 
     // Cycle check - at this point data structures are loaded
     fireProgressEvent(50, "Begin cycle check");
     CycleCheck cycleCheck = new CycleCheck();
-    cycleCheck.setConcepts(cycleCheckConcepts);
+    cycleCheck.setConcepts(concepts);
     cycleCheck.setIsarelationships(cycleCheckRelationships);
-    saveCycleCheckReport(cycleCheck.getConceptInLoop());
+    cycleCheck.setOutputFile(cycleCheckReport);
+    if (cycleCheck.cycleDetected()) {
+      LOG.warn("  " + cycleCheck.getCycles().size()
+          + " isa cycles detected, members will be inferred as equivalent");
+    }
+    saveCycleCheckReport(cycleCheck.getCycles());
     if (!continueWork()) {
       return;
     }
@@ -220,7 +243,6 @@ public class SnomedSnorocketClassifier implements Classifier {
 
     // load roles - this is an array of role concept ids
     int[] roleRefArray = getRoles(CONCEPT_ATTRIBUTE);
-    nidSeen = null;
     int roleCount = roleRefArray.length;
     // cannot handle > 100 roles
     if (roleCount > 100) {
@@ -231,124 +253,10 @@ public class SnomedSnorocketClassifier implements Classifier {
       throw new ClassificationException(errStr);
     }
 
-    // Set up data structures in memory efficient way
-    fireProgressEvent(56, "Setup classifier data structures - concepts");
-    final int reserved = 2;
-    int conceptCount = reserved;
-    int margin = editedSnomedConcepts.size() >> 2; // Add 50%
-    int[] conceptRefArray =
-        new int[editedSnomedConcepts.size() + margin + reserved];
-    conceptRefArray[IFactory_123.TOP_CONCEPT] = IFactory_123.TOP;
-    conceptRefArray[IFactory_123.BOTTOM_CONCEPT] = IFactory_123.BOTTOM;
-    Collections.sort(editedSnomedConcepts);
-    if (editedSnomedConcepts.get(0).id <= Integer.MIN_VALUE + reserved) {
-      throw new ClassificationException(
-          "SNOROCKET: TOP & BOTTOM nids NOT reserved.");
-    }
-    // Add concept ids to the array
-    for (StringIDConcept sc : editedSnomedConcepts) {
-      // This is the id based on "count"
-      conceptRefArray[conceptCount++] = sc.id;
-    }
-
-    // Fill array to make binary search work correctly.
-    Arrays.fill(conceptRefArray, conceptCount, conceptRefArray.length,
-        Integer.MAX_VALUE);
-
-    // Instantiate classifier
-    rocket_123 =
-        new Snorocket_123(conceptRefArray, conceptCount, roleRefArray,
-            roleCount, rootNid);
-
-    // Set isa nid
-    rocket_123.setIsaNid(Snomed.IS_A.getNid());
-
-    // Set role roots NID.
-    rocket_123.setRoleRoot(Snomed.IS_A.getNid(), true);
-    int roleRoot = OTFUtility.getConceptVersion(CONCEPT_ATTRIBUTE).getNid();
-    rocket_123.setRoleRoot(roleRoot, false);
-
-    // Non-grouping roles (from owl perl script)
-    // $nevergrouped{"123005000"} = "T"; # part-of is never grouped
-    // $nevergrouped{"272741003"} = "T"; # laterality is never grouped
-    // $nevergrouped{"127489000"} = "T"; # has-active-ingredient is never
-    // grouped
-    // $nevergrouped{"411116001"} = "T"; # has-dose-form is never grouped
-    rocket_123.setRoleNeverGrouped(Snomed.PART_OF.getNid());
-    rocket_123.setRoleNeverGrouped(Snomed.LATERALITY.getNid());
-    rocket_123.setRoleNeverGrouped(Snomed.HAS_ACTIVE_INGREDIENT.getNid());
-    rocket_123.setRoleNeverGrouped(Snomed.HAS_DOSE_FORM.getNid());
-
-    // right identities (from owl perl script)
-    // $rightid{"363701004"} = "127489000"; # direct-substance o
-    // has-active-ingredient -> direct-substance
-    rocket_123.addRoleComposition(new int[] {
-        Snomed.DIRECT_SUBSTANCE.getNid(), Snomed.HAS_ACTIVE_INGREDIENT.getNid()
-    }, Snomed.HAS_ACTIVE_INGREDIENT.getNid());
-
-    fireProgressEvent(57, "Setup classifier data structures - defined");
-    // Indicate defined concepts
-    for (int i = 0; i < editedSnomedConcepts.size(); i++) {
-      if (editedSnomedConcepts.get(i).isDefined) {
-        rocket_123.setConceptIdxAsDefined(i + reserved);
-      }
-    }
-    if (!continueWork()) {
-      return;
-    }
-
-    // Clear reference for memory
-    editedSnomedConcepts = null;
-
-    // Add relationships
-    fireProgressEvent(58, "Setup classifier data structures - defined");
-    progressCount = 0;
-    progress = 0;
-    int relsCt = editedSnomedRels.size();
-    Collections.sort(editedSnomedRels);
-    for (Relationship sr : editedSnomedRels) {
-      progressCount++;
-      int err =
-          rocket_123.addRelationship(sr.sourceId, sr.typeId, sr.destinationId,
-              sr.group);
-      if (!continueWork()) {
-        return;
-      }
-      if (err > 0) {
-        StringBuilder sb = new StringBuilder();
-        if ((err & 1) == 1) {
-          sb.append(" --UNDEFINED_C1-- " + sr.sourceId);
-        }
-        if ((err & 2) == 2) {
-          sb.append(" --UNDEFINED_ROLE-- " + sr.typeId);
-        }
-        if ((err & 4) == 4) {
-          sb.append(" --UNDEFINED_C2-- " + sr.destinationId);
-        }
-        LOG.info(sb.toString());
-      }
-      // Handle progress monitor - consider this part 58%-70%% of the process
-      @SuppressWarnings("cast")
-      final int currentProgress = (int) ((progressCount * 100) / relsCt);
-      if (currentProgress > progress) {
-        progress = currentProgress;
-        // 12 percentage points starting at 58
-        fireProgressEvent(((int) (progress * .12) + 58),
-            "Loading relationships");
-
-      }
-    }
-    if (!continueWork()) {
+    if (!loadClassifier(rootNid, roleRefArray)) {
       return;
     }
 
-    // clear reference for memory
-    editedSnomedRels = null;
-
-    // Run garbage collector
-    System.gc();
-    System.gc();
-
     // Classify
     fireProgressEvent(71, "Classify");
     long startTime = System.currentTimeMillis();
@@ -378,13 +286,14 @@ public class SnomedSnorocketClassifier implements Classifier {
 
     // Get distribution form of relationships and write back
     fireProgressEvent(90, "Compare relationships");
-    snorocketRels = new HashMap<>();
+    snorocketRels = new RelationshipTable(previousInferredRels.size());
     startTime = System.currentTimeMillis();
     ProcessResults pr = new ProcessResults(snorocketRels);
     rocket_123.getDistributionFormRelationships(pr);
     if (!continueWork()) {
       return;
     }
+    snorocketRels.sort();
     LOG.info("  count=" + pr.countRel + ", time= "
         + toStringLapseSec(startTime));
 
@@ -395,36 +304,26 @@ public class SnomedSnorocketClassifier implements Classifier {
     pr = null;
     // save for incremental classification
     // rocket_123 = null;
-    System.gc();
-    System.gc();
 
     // Write back results - disable commit listeners during this
+    long writeBackTime = System.currentTimeMillis();
     try {
       AppContext.getRuntimeGlobals().disableAllCommitListeners();
       startTime = System.currentTimeMillis();
       fireProgressEvent(93, "Write relationship changes");
-      List<Relationship> prevInferredRelsList = new ArrayList<>();
-      for (List<Relationship> rels : previousInferredRels.values()) {
-        prevInferredRelsList.addAll(rels);
-      }
-
-      List<Relationship> snorocketRelsList = new ArrayList<>();
-      for (List<Relationship> rels : snorocketRels.values()) {
-        snorocketRelsList.addAll(rels);
-      }
       LOG.info("start comparing");
-      LOG.info(compareAndWriteBack(prevInferredRelsList, snorocketRelsList));
+      LOG.info(compareAndWriteBack(previousInferredRels, snorocketRels, null));
       dataStore.commit();
     } catch (Exception e) {
       throw e;
     } finally {
       AppContext.getRuntimeGlobals().enableAllCommitListeners();
     }
+    saveState(getWriteBackCommitTime(writeBackTime));
+
     // Clear memory
     startTime = System.currentTimeMillis();
-    editedSnomedRels = null;
-    editedSnomedConcepts = null;
-    nidSeen = null;
+    snorocketRels = null;
 
     fireProgressEvent(100, "Finished");
     LOG.info("  total elapsed time = " + toStringLapseSec(startTime));
@@ -432,486 +331,177 @@ public class SnomedSnorocketClassifier implements Classifier {
   }
 
   /**
-   * Compare and write back.
+   * Instantiates {@link #rocket_123} and loads the concepts and stated
+   * relationships of the working set into it.
    *
-   * @param snorelA the snorel a
-   * @param snorelB the snorel b
-   * @return the string
+   * @param rootNid the root nid
+   * @param roleRefArray the role ids
+   * @return <code>true</code> if loaded, <code>false</code> if cancelled
    * @throws Exception the exception
    */
-  @SuppressWarnings("null")
-  private String compareAndWriteBack(List<Relationship> snorelA,
-    List<Relationship> snorelB) throws Exception {
-
-    int relsCt = snorelA.size() + snorelB.size();
-
-    // STATISTICS COUNTERS
-    int countConceptsSeen = 0;
-    int countSame = 0;
-    int countSameISA = 0;
-    int countA_Diff = 0;
-    int countA_DiffISA = 0;
-    int countA_Total = 0;
-    int countB_Diff = 0;
-    int countB_DiffISA = 0;
-    int countB_Total = 0;
+  private boolean loadClassifier(int rootNid, int[] roleRefArray)
+    throws Exception {
+    roles = roleRefArray;
+    classifiedRootNid = rootNid;
 
-    long startTime = System.currentTimeMillis();
-    Collections.sort(snorelA);
-    Collections.sort(snorelB);
-
-    // Typically, A is the Classifier Path (for previously inferred)
-    // Typically, B is the SnoRocket Results Set (for newly inferred)
-    Iterator<Relationship> itA = snorelA.iterator();
-    Iterator<Relationship> itB = snorelB.iterator();
-    Relationship rel_A = null;
-    boolean done_A = false;
-    if (itA.hasNext()) {
-      rel_A = itA.next();
-    } else {
-      done_A = true;
-    }
-    Relationship rel_B = null;
-    boolean done_B = false;
-    if (itB.hasNext()) {
-      rel_B = itB.next();
-    } else {
-      done_B = true;
+    // Set up data structures in memory efficient way
+    fireProgressEvent(56, "Setup classifier data structures - concepts");
+    final int reserved = 2;
+    int conceptCount = reserved;
+    int margin = concepts.size() >> 2; // Add 50%
+    int[] conceptRefArray = new int[concepts.size() + margin + reserved];
+    conceptRefArray[IFactory_123.TOP_CONCEPT] = IFactory_123.TOP;
+    conceptRefArray[IFactory_123.BOTTOM_CONCEPT] = IFactory_123.BOTTOM;
+    if (concepts.getNid(0) <= Integer.MIN_VALUE + reserved) {
+      throw new ClassificationException(
+          "SNOROCKET: TOP & BOTTOM nids NOT reserved.");
+    }
+    // Add concept ids to the array (already sorted)
+    for (int i = 0; i < concepts.size(); i++) {
+      // This is the id based on "count"
+      conceptRefArray[conceptCount++] = concepts.getNid(i);
     }
 
-    LOG.info("  previousInferredRelationships.size() = " + snorelA.size());
-    LOG.info("  snorocketRels.size() = " + snorelB.size());
-
-    // BY SORT ORDER, LOWER NUMBER ADVANCES FIRST
-    while (!done_A && !done_B) {
-      if (!continueWork()) {
-        return "cancelled";
-      }
-
-      // Handle progress monitor - consider this part 93%-100%% of the process
-      @SuppressWarnings("cast")
-      final int currentProgress = (int) ((progressCount * 100) / relsCt);
-      if (currentProgress > progress) {
-        progress = currentProgress;
-        // 7 percentage points starting at 93
-        fireProgressEvent(((int) (progress * .07) + 93),
-            "Loading relationships");
-
-      }
-      if (++countConceptsSeen % 25000 == 0) {
-        LOG.info("  count = " + countConceptsSeen);
-      }
-
-      if (rel_A.sourceId == rel_B.sourceId) {
-        // COMPLETELY PROCESS ALL C1 FOR BOTH IN & OUT
-        // PROCESS C1 WITH GROUP == 0
-        int thisC1 = rel_A.sourceId;
-
-        // PROCESS WHILE BOTH HAVE GROUP 0
-        while (rel_A.sourceId == thisC1 && rel_B.sourceId == thisC1
-            && rel_A.group == 0 && rel_B.group == 0 && !done_A && !done_B) {
-
-          // PROGESS GROUP ZERO
-          switch (compareRelationships(rel_A, rel_B)) {
-            case 1: // SAME
-              // GATHER STATISTICS
-              countA_Total++;
-              countB_Total++;
-              countSame++;
-              // NOTHING TO WRITE IN THIS CASE
-              if (rel_A.typeId == Snomed.IS_A.getNid()) {
-                countSameISA++;
-              }
-              if (itA.hasNext()) {
-                rel_A = itA.next();
-              } else {
-                done_A = true;
-              }
-              if (itB.hasNext()) {
-                rel_B = itB.next();
-              } else {
-                done_B = true;
-              }
-              break;
-
-            case 2: // REL_A > REL_B -- B has extra stuff
-              // WRITEBACK REL_B (Classifier Results) AS CURRENT
-              countB_Diff++;
-              countB_Total++;
-              if (rel_B.typeId == Snomed.IS_A.getNid()) {
-                countB_DiffISA++;
-              }
-
-              writeRel(rel_B, false, countConceptsSeen, "A");
-
-              if (itB.hasNext()) {
-                rel_B = itB.next();
-              } else {
-                done_B = true;
-              }
-              break;
-
-            case 3: // REL_A < REL_B -- A has extra stuff
-              // WRITEBACK REL_A (Classifier Input) AS RETIRED
-              // GATHER STATISTICS
-              countA_Diff++;
-              countA_Total++;
-              if (rel_A.typeId == Snomed.IS_A.getNid()) {
-                countA_DiffISA++;
-              }
-              writeRel(rel_A, true, countConceptsSeen, "B");
-              if (itA.hasNext()) {
-                rel_A = itA.next();
-              } else {
-                done_A = true;
-              }
-              break;
-            default:
-              throw new Exception("Unexpected condition.");
-          } // switch
-        }
-
-        // REMAINDER LIST_A GROUP 0 FOR C1
-        while (rel_A.sourceId == thisC1 && rel_A.group == 0 && !done_A) {
-
-          countA_Diff++;
-          countA_Total++;
-          if (rel_A.typeId == Snomed.IS_A.getNid()) {
-            countA_DiffISA++;
-          }
-          writeRel(rel_A, true, countConceptsSeen, "C");
-          if (itA.hasNext()) {
-            rel_A = itA.next();
-          } else {
-            done_A = true;
-            break;
-          }
-        }
-
-        // REMAINDER LIST_B GROUP 0 FOR C1
-        while (rel_B.sourceId == thisC1 && rel_B.group == 0 && !done_B) {
-          countB_Diff++;
-          countB_Total++;
-          if (rel_B.typeId == Snomed.IS_A.getNid()) {
-            countB_DiffISA++;
-          }
-          writeRel(rel_B, false, countConceptsSeen, "D");
-          if (itB.hasNext()) {
-            rel_B = itB.next();
-          } else {
-            done_B = true;
-            break;
-          }
-        }
-
-        // ** SEGMENT GROUPS **
-        RelationshipGroupList groupList_A = new RelationshipGroupList();
-        RelationshipGroupList groupList_B = new RelationshipGroupList();
-        RelationshipGroup groupA = null;
-        RelationshipGroup groupB = null;
-
-        // SEGMENT GROUPS IN LIST_A
-        int prevGroup = Integer.MIN_VALUE;
-        while (rel_A.sourceId == thisC1 && !done_A) {
-          if (rel_A.group != prevGroup) {
-            groupA = new RelationshipGroup();
-            groupList_A.add(groupA);
-          }
-
-          groupA.add(rel_A);
+    // Fill array to make binary search work correctly.
+    Arrays.fill(conceptRefArray, conceptCount, conceptRefArray.length,
+        Integer.MAX_VALUE);
 
-          prevGroup = rel_A.group;
-          if (itA.hasNext()) {
-            rel_A = itA.next();
-          } else {
-            done_A = true;
-          }
-        }
-        // SEGMENT GROUPS IN LIST_B
-        prevGroup = Integer.MIN_VALUE;
-        while (rel_B.sourceId == thisC1 && !done_B) {
-          if (rel_B.group != prevGroup) {
-            groupB = new RelationshipGroup();
-            groupList_B.add(groupB);
-          }
+    // Instantiate classifier
+    rocket_123 =
+        new Snorocket_123(conceptRefArray, conceptCount, roleRefArray,
+            roleRefArray.length, rootNid);
 
-          groupB.add(rel_B);
+    // Set isa nid
+    rocket_123.setIsaNid(Snomed.IS_A.getNid());
 
-          prevGroup = rel_B.group;
-          if (itB.hasNext()) {
-            rel_B = itB.next();
-          } else {
-            done_B = true;
-          }
-        }
+    // Set role roots NID.
+    rocket_123.setRoleRoot(Snomed.IS_A.getNid(), true);
+    int roleRoot = OTFUtility.getConceptVersion(CONCEPT_ATTRIBUTE).getNid();
+    rocket_123.setRoleRoot(roleRoot, false);
 
-        // FIND GROUPS IN GROUPLIST_A WITHOUT AN EQUAL IN GROUPLIST_B
-        // WRITE THESE GROUPED RELS AS "RETIRED"
-        RelationshipGroupList groupList_NotEqual;
-        if (groupList_A.size() > 0) {
-          groupList_NotEqual = groupList_A.whichNotEqual(groupList_B);
-          for (RelationshipGroup sg : groupList_NotEqual) {
-            for (Relationship sr_A : sg) {
-              writeRel(sr_A, true, countConceptsSeen, "E");
-            }
-          }
-          countA_Total += groupList_A.countRels();
-          countA_Diff += groupList_NotEqual.countRels();
-        }
+    // Non-grouping roles (from owl perl script)
+    // $nevergrouped{"123005000"} = "T"; # part-of is never grouped
+    // $nevergrouped{"272741003"} = "T"; # laterality is never grouped
+    // $nevergrouped{"127489000"} = "T"; # has-active-ingredient is never
+    // grouped
+    // $nevergrouped{"411116001"} = "T"; # has-dose-form is never grouped
+    rocket_123.setRoleNeverGrouped(Snomed.PART_OF.getNid());
+    rocket_123.setRoleNeverGrouped(Snomed.LATERALITY.getNid());
+    rocket_123.setRoleNeverGrouped(Snomed.HAS_ACTIVE_INGREDIENT.getNid());
+    rocket_123.setRoleNeverGrouped(Snomed.HAS_DOSE_FORM.getNid());
 
-        // FIND GROUPS IN GROUPLIST_B WITHOUT AN EQUAL IN GROUPLIST_A
-        // WRITE THESE GROUPED RELS AS "NEW, CURRENT"
-        int rgNum = 0; // USED TO DETERMINE "AVAILABLE" ROLE GROUP NUMBERS
-        if (groupList_B.size() > 0) {
-          groupList_NotEqual = groupList_B.whichNotEqual(groupList_A);
-          for (RelationshipGroup sg : groupList_NotEqual) {
-            if (sg.get(0).group != 0) {
-              rgNum = nextRoleGroupNumber(groupList_A, rgNum);
-              for (Relationship sr_B : sg) {
-                sr_B.group = rgNum;
-                writeRel(sr_B, false, countConceptsSeen, "F");
-              }
-            } else {
-              for (Relationship sr_B : sg) {
-                writeRel(sr_B, false, countConceptsSeen, "G");
-              }
-            }
-          }
-          countB_Total += groupList_A.countRels();
-          countB_Diff += groupList_NotEqual.countRels();
-        }
-      } else if (rel_A.sourceId > rel_B.sourceId) {
-        // CASE 2: LIST_B HAS CONCEPT NOT IN LIST_A
-        // COMPLETELY *ADD* ALL THIS C1 FOR REL_B AS NEW, CURRENT
-        int thisC1 = rel_B.sourceId;
-        while (rel_B.sourceId == thisC1) {
-          countB_Diff++;
-          countB_Total++;
-          if (rel_B.typeId == Snomed.IS_A.getNid()) {
-            countB_DiffISA++;
-          }
-          writeRel(rel_B, false, countConceptsSeen, "H");
-          if (itB.hasNext()) {
-            rel_B = itB.next();
-          } else {
-            done_B = true;
-            break;
-          }
-        }
+    // right identities (from owl perl script)
+    // $rightid{"363701004"} = "127489000"; # direct-substance o
+    // has-active-ingredient -> direct-substance
+    rocket_123.addRoleComposition(new int[] {
+        Snomed.DIRECT_SUBSTANCE.getNid(), Snomed.HAS_ACTIVE_INGREDIENT.getNid()
+    }, Snomed.HAS_ACTIVE_INGREDIENT.getNid());
 
-      } else {
-        // CASE 3: LIST_A HAS CONCEPT NOT IN LIST_B
-        // COMPLETELY *RETIRE* ALL THIS C1 FOR REL_A
-        int thisC1 = rel_A.sourceId;
-        while (rel_A.sourceId == thisC1) {
-          countA_Diff++;
-          countA_Total++;
-          if (rel_A.typeId == Snomed.IS_A.getNid()) {
-            countA_DiffISA++;
-          }
-          writeRel(rel_A, true, countConceptsSeen, "I");
-          if (itA.hasNext()) {
-            rel_A = itA.next();
-          } else {
-            done_A = true;
-            break;
-          }
-        }
+    fireProgressEvent(57, "Setup classifier data structures - defined");
+    // Indicate defined concepts
+    for (int i = 0; i < concepts.size(); i++) {
+      if (concepts.isDefined(i)) {
+        rocket_123.setConceptIdxAsDefined(i + reserved);
       }
     }
+    if (!continueWork()) {
+      rocket_123 = null;
+      return false;
+    }
 
-    // AT THIS POINT, THE PREVIOUS C1 HAS BE PROCESSED COMPLETELY
-    // AND, EITHER REL_A OR REL_B HAS BEEN COMPLETELY PROCESSED
-    // AND, ANY REMAINDER IS ONLY ON REL_LIST_A OR ONLY ON REL_LIST_B
-    // AND, THAT REMAINDER HAS A "STANDALONE" C1 VALUE
-    // THEREFORE THAT REMAINDER WRITEBACK COMPLETELY
-    // AS "NEW CURRENT" OR "OLD RETIRED"
-    //
-    // LASTLY, IF .NOT.DONE_A THEN THE NEXT REL_A IN ALREADY IN PLACE
-    while (!done_A) {
-      countA_Diff++;
-      countA_Total++;
-      if (rel_A.typeId == Snomed.IS_A.getNid()) {
-        countA_DiffISA++;
+    // Add relationships
+    fireProgressEvent(58, "Setup classifier data structures - defined");
+    progressCount = 0;
+    progress = 0;
+    int relsCt = editedSnomedRels.size();
+    for (int row = 0; row < relsCt; row++) {
+      progressCount++;
+      int err =
+          rocket_123.addRelationship(editedSnomedRels.getSourceId(row),
+              editedSnomedRels.getTypeId(row),
+              editedSnomedRels.getDestinationId(row),
+              editedSnomedRels.getGroup(row));
+      if (!continueWork()) {
+        rocket_123 = null;
+        return false;
       }
-      // COMPLETELY UPDATE ALL REMAINING REL_A AS RETIRED
-      writeRel(rel_A, true, countA_Diff, "J");
-      if (itA.hasNext()) {
-        rel_A = itA.next();
-      } else {
-        done_A = true;
-        break;
+      if (err > 0) {
+        StringBuilder sb = new StringBuilder();
+        if ((err & 1) == 1) {
+          sb.append(" --UNDEFINED_C1-- " + editedSnomedRels.getSourceId(row));
+        }
+        if ((err & 2) == 2) {
+          sb.append(" --UNDEFINED_ROLE-- " + editedSnomedRels.getTypeId(row));
+        }
+        if ((err & 4) == 4) {
+          sb.append(" --UNDEFINED_C2-- "
+              + editedSnomedRels.getDestinationId(row));
+        }
+        LOG.info(sb.toString());
       }
-    }
+      // Handle progress monitor - consider this part 58%-70%% of the process
+      @SuppressWarnings("cast")
+      final int currentProgress = (int) ((progressCount * 100) / relsCt);
+      if (currentProgress > progress) {
+        progress = currentProgress;
+        // 12 percentage points starting at 58
+        fireProgressEvent(((int) (progress * .12) + 58),
+            "Loading relationships");
 
-    while (!done_B) {
-      countB_Diff++;
-      countB_Total++;
-      if (rel_B.typeId == Snomed.IS_A.getNid()) {
-        countB_DiffISA++;
-      }
-      // COMPLETELY UPDATE ALL REMAINING REL_B AS NEW, CURRENT
-      writeRel(rel_B, false, countB_Diff, "K");
-      if (itB.hasNext()) {
-        rel_B = itB.next();
-      } else {
-        done_B = true;
-        break;
       }
     }
-
-    StringBuilder s = new StringBuilder();
-    s.append("\r\n::: [Snorocket] compareAndWriteBack()");
-    long lapseTime = System.currentTimeMillis() - startTime;
-    s.append("\r\n::: [Time] Sort/Compare Input & Output: \t")
-        .append(lapseTime);
-    s.append("\t(mS)\t").append(((float) lapseTime / 1000) / 60)
-        .append("\t(min)");
-    s.append("\r\n");
-    s.append("\r\n::: ");
-    s.append("\r\n::: countSame:     \t").append(countSame);
-    s.append("\r\n::: countSameISA:  \t").append(countSameISA);
-    s.append("\r\n::: A == Classifier Output Path");
-    s.append("\r\n::: countA_Diff:   \t").append(countA_Diff);
-    s.append("\r\n::: countA_DiffISA:\t").append(countA_DiffISA);
-    s.append("\r\n::: countA_Total:  \t").append(countA_Total);
-    s.append("\r\n::: B == Classifier Solution Set");
-    s.append("\r\n::: countB_Diff:   \t").append(countB_Diff);
-    s.append("\r\n::: countB_DiffISA:\t").append(countB_DiffISA);
-    s.append("\r\n::: countB_Total:  \t").append(countB_Total);
-    s.append("\r\n::: ");
-
-    return s.toString();
-  }
-
-  /**
-   * Compare relationships.
-   *
-   * @param in the in relationship
-   * @param out the out relationship
-   * @return the int indicating the nature of the change
-   */
-  private static int compareRelationships(Relationship in, Relationship out) {
-    if ((in.sourceId == out.sourceId) && (in.group == out.group)
-        && (in.typeId == out.typeId) && (in.destinationId == out.destinationId)) {
-      return 1; // SAME
-    } else if (in.sourceId > out.sourceId) {
-      return 2; // ADDED
-    } else if ((in.sourceId == out.sourceId) && (in.group > out.group)) {
-      return 2; // ADDED
-    } else if ((in.sourceId == out.sourceId) && (in.group == out.group)
-        && (in.typeId > out.typeId)) {
-      return 2; // ADDED
-    } else if ((in.sourceId == out.sourceId) && (in.group == out.group)
-        && (in.typeId == out.typeId) && (in.destinationId > out.destinationId)) {
-      return 2; // ADDED
-    } else {
-      return 3; // DROPPED
+    if (!continueWork()) {
+      rocket_123 = null;
+      return false;
     }
+    return true;
   }
 
   /**
-   * Write relationship.
+   * Compare and write back. Runs a {@link RelationshipDiff} over the sorted
+   * tables and applies its changes one concept at a time, committing every
+   * {@link #commitBatchSize} changed concepts.
    *
-   * @param relationship the relationship
-   * @param retired the retired
-   * @param countConceptsSeen the count concepts seen
-   * @param label the label
+   * @param snorelA the snorel a (previously inferred)
+   * @param snorelB the snorel b (classifier results)
+   * @param sources the source nids to compare, or null for all
+   * @return the string
    * @throws Exception the exception
    */
-  private void writeRel(Relationship relationship, boolean retired,
-    int countConceptsSeen, String label) throws Exception {
-
-    // add concept to commit list
-    dataStore.addUncommitted(OTFUtility
-        .getConceptVersion(relationship.sourceId));
-
-    // add rel
-    if (!retired) {
-      LOG.debug("ADD : " + relationship + " " + label);
-      // using generate random to work around an issue where the
-      // constructor thinks this object is a RelGroupChronicle
-      // that error was only sometimes being triggered when trying to add a new
-      // rel
-      final RelationshipCAB relCAB =
-          new RelationshipCAB(relationship.sourceId, relationship.typeId,
-              relationship.destinationId, relationship.group,
-              RelationshipType.INFERRED_ROLE, IdDirective.GENERATE_RANDOM);
-
-      OTFUtility.getBuilder().construct(relCAB);
-
-      // Add to previousInferredRels for incremental classification
-      addPreviousInferredRel(relationship.sourceId, relationship);
-    }
-
-    // retire rel
-    else {
-      LOG.debug("RETIRE REL : " + relationship + " " + relationship.getRelId()
-          + " " + label);
-      final RelationshipVersionBI<?> rel =
-          (RelationshipVersionBI<?>) dataStore.getComponent(Integer
-              .parseInt(relationship.getRelId()));
-      final RelationshipCAB rcab =
-          new RelationshipCAB(rel.getConceptNid(), rel.getTypeNid(),
-              rel.getDestinationNid(), 1, RelationshipType.getRelationshipType(
-                  rel.getRefinabilityNid(), rel.getCharacteristicNid()), rel,
-              OTFUtility.getViewCoordinate(), IdDirective.PRESERVE,
-              RefexDirective.EXCLUDE);
-      rcab.setStatus(Status.INACTIVE);
-      OTFUtility.getBuilder().constructIfNotCurrent(rcab);
-      // Remove from previously inferred rels for incremental classification
-      removePreviousInferredRel(relationship.sourceId, relationship);
-    }
-
-    // Commit periodically (for full case)
-    // if (countConceptsSeen % 5000 == 0) {
-    // LOG.info("    commit = " + countConceptsSeen);
-    // dataStore.commit();
-    // }
-  }
+  private String compareAndWriteBack(RelationshipTable snorelA,
+    RelationshipTable snorelB, IntSet sources) throws Exception {
 
-  /**
-   * Next role group number.
-   *
-   * @param relGroupList the sgl
-   * @param gnum the gnum
-   * @return the int
-   */
-  private static int nextRoleGroupNumber(RelationshipGroupList relGroupList,
-    int gnum) {
-
-    int testNum = gnum + 1;
-    int sglSize = relGroupList.size();
-    int trial = 0;
-    while (trial <= sglSize) {
-
-      boolean exists = false;
-      for (int i = 0; i < sglSize; i++) {
-        if (relGroupList.get(i).get(0).group == testNum) {
-          exists = true;
-        }
-      }
+    LOG.info("  previousInferredRelationships.size() = " + snorelA.size());
+    LOG.info("  snorocketRels.size() = " + snorelB.size());
 
-      if (exists == false) {
-        return testNum;
-      } else {
-        testNum++;
-        trial++;
-      }
+    progress = 0;
+    WriteBack writeBack = new WriteBack(snorelA.size() + snorelB.size());
+    RelationshipDiff diff =
+        new RelationshipDiff(snorelA, snorelB, Snomed.IS_A.getNid(), writeBack);
+    boolean completed =
+        diff.run(sources == null ? null : sources.getSetValues());
+    writtenRelNid = writeBack.lastRelNid;
+
+    // Index the inferred relationships written back
+    previousInferredRels.sort();
+    if (!completed) {
+      return "cancelled";
     }
-
-    return testNum;
+    return diff.toString() + "\r\n::: commits:         \t"
+        + writeBack.commitCount + "\r\n::: ";
   }
 
   /**
-   * Returns the all descendants.
+   * Returns the all descendants. The stated IS-A graph below the nid is walked
+   * with a work-stealing fork/join pool; each worker accumulates concepts and
+   * relationships into its own buffer and the buffers are merged into the
+   * classifier data structures (and sorted) once the walk completes.
    *
    * @param topNid the top level nid
    * @param nid the root nid
    * @param descendants the descendants
    * @throws Exception the exception
    */
-  @SuppressWarnings("cast")
   public void getAllDescendants(int topNid, int nid, final IntSet descendants)
     throws Exception {
     // return if cancelled
@@ -919,110 +509,61 @@ public class SnomedSnorocketClassifier implements Classifier {
       return;
     }
 
-    // return if seen already
-    if (descendants.contains(nid)) {
-      return;
+    final ConcurrentNidBitSet visited = new ConcurrentNidBitSet();
+    for (int seen : descendants.getSetValues()) {
+      visited.add(seen);
     }
-
-    // Process this concept
-    ConceptVersionBI concept = OTFUtility.getConceptVersion(nid);
-
-    // return if inactive
-    if (!concept.isActive()) {
-      return;
-    }
-
-    // return if the path of the concept is not valid
-    if (concept.getNid() != topNid
-        && !validPaths.contains(concept.getPathNid())) {
-      return;
+    final Queue<WalkBuffer> buffers = new ConcurrentLinkedQueue<>();
+    final ThreadLocal<WalkBuffer> localBuffer = ThreadLocal.withInitial(() -> {
+      WalkBuffer buffer = new WalkBuffer();
+      buffers.add(buffer);
+      return buffer;
+    });
+    final AtomicInteger count = new AtomicInteger(progressCount);
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    final ForkJoinPool pool =
+        new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    try {
+      pool.invoke(new DescendantWalk(topNid, nid, visited, localBuffer, count,
+          failure));
+    } finally {
+      pool.shutdown();
     }
-
-    progressCount++;
-
-    // Support for multiple threads
-    synchronized (this) {
-      descendants.add(nid);
+    progressCount = count.get();
+    if (failure.get() != null) {
+      throw failure.get();
     }
-    convertToOntologyObjects(topNid, concept);
 
-    // Handle progress monitor - consider this part 0%-50% of the process
-    final int currentProgress = (int) ((progressCount * 100) / progressMax);
-    if (currentProgress > progress) {
-      progress = currentProgress;
-      fireProgressEvent((int) (progress * .5), "Preparing data");
-    }
-    Set<Thread> threads = new HashSet<>();
-    final boolean[] b = new boolean[1];
-    final Exception[] exceptions = new Exception[1];
-    b[0] = false;
-    for (RelationshipVersionBI<?> r : concept
-        .getRelationshipsIncomingActiveIsa()) {
-      if (r.isStated() && r.isActive()) {
-        // Spin off separate threads for top level things
-        if (descendants.size() == 1) {
-          Thread t = new Thread(new Runnable() {
-            @Override
-            public void run() {
-              LOG.info("Create THREAD for " + r.getOriginNid());
-              try {
-                getAllDescendants(topNid, r.getOriginNid(), descendants);
-              } catch (Exception e) {
-                e.printStackTrace();
-                b[0] = true;
-                exceptions[0] = e;
-              }
-            }
-          });
-          threads.add(t);
-        } else {
-          getAllDescendants(topNid, r.getOriginNid(), descendants);
-        }
-      }
-    }
-    // If top-level call, wait for threads
-    if (threads.size() > 0) {
-      for (Thread t : threads) {
-        LOG.info("Start THREAD " + t);
-        t.start();
-      }
-      for (Thread t : threads) {
-        LOG.info("Join THREAD " + t);
-        t.join();
+    // Merge the per-worker buffers
+    LOG.info("  merge " + buffers.size() + " worker buffers");
+    for (WalkBuffer buffer : buffers) {
+      for (int i = 0; i < buffer.concepts.size(); i++) {
+        descendants.add(buffer.concepts.getNid(i));
       }
+      concepts.addAll(buffer.concepts);
+      editedSnomedRels.addAll(buffer.statedRels);
+      previousInferredRels.addAll(buffer.inferredRels);
+      cycleCheckRelationships.addAll(buffer.isaRels);
     }
+    concepts.sort();
+    editedSnomedRels.sort();
+    previousInferredRels.sort();
+    cycleCheckRelationships.sort();
   }
 
   /**
-   * Adds the previous inferred rel.
+   * Updates progress for the "Preparing data" phase, which is considered to be
+   * 0%-50% of the process.
    *
-   * @param nid the nid
-   * @param rel the rel
-   */
-  @SuppressWarnings("static-method")
-  private void addPreviousInferredRel(int nid, Relationship rel) {
-    List<Relationship> rels = null;
-    previousInferredRelsCt++;
-    if (previousInferredRels.containsKey(nid)) {
-      rels = previousInferredRels.get(nid);
-    } else {
-      rels = new ArrayList<>();
-      previousInferredRels.put(nid, rels);
-    }
-    previousInferredRels.get(nid).add(rel);
-  }
-
-  /**
-   * Removes the previous inferred rel.
-   *
-   * @param nid the nid
-   * @param rel the rel
+   * @param count the count of concepts processed so far
    */
-  @SuppressWarnings("static-method")
-  private void removePreviousInferredRel(int nid, Relationship rel) {
-    previousInferredRelsCt--;
-    if (previousInferredRels.containsKey(nid)) {
-      previousInferredRels.get(nid).remove(rel);
+  @SuppressWarnings("cast")
+  synchronized void updatePreparingProgress(int count) {
+    final int currentProgress = (int) ((count * 100) / progressMax);
+    if (currentProgress > progress) {
+      progress = currentProgress;
+      fireProgressEvent((int) (progress * .5), "Preparing data");
     }
   }
 
@@ -1067,27 +608,32 @@ public class SnomedSnorocketClassifier implements Classifier {
   }
 
   /**
-   * Save cycle check report.
+   * Save cycle check report. Each member of each cycle is written along with
+   * the number of the cycle it belongs to.
    *
-   * @param conceptInLoop the concept in loop
+   * @param cycles the cycles
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private void saveCycleCheckReport(Set<Integer> conceptInLoop)
-    throws IOException {
+  private void saveCycleCheckReport(List<int[]> cycles) throws IOException {
     if (!saveCycleCheckReport) {
       return;
     }
-    if (conceptInLoop == null) {
+    if (cycles == null || cycles.isEmpty()) {
       return;
     }
     FileOutputStream fos = new FileOutputStream(cycleCheckReport);
     OutputStreamWriter osw = new OutputStreamWriter(fos, "UTF-8");
     BufferedWriter bw = new BufferedWriter(osw);
-    bw.append("conceptId");
+    bw.append("cycle\tconceptId");
     bw.append("\r\n");
-    for (Integer concept : conceptInLoop) {
-      bw.append(concept.toString());
-      bw.append("\r\n");
+    int cycleNumber = 1;
+    for (int[] cycle : cycles) {
+      for (int concept : cycle) {
+        bw.append(String.valueOf(cycleNumber)).append("\t")
+            .append(String.valueOf(concept));
+        bw.append("\r\n");
+      }
+      cycleNumber++;
     }
     bw.close();
     bw = null;
@@ -1147,29 +693,15 @@ public class SnomedSnorocketClassifier implements Classifier {
    *
    * @param topNid the top nid
    * @param concept the concept
+   * @param buffer the buffer of the calling worker
    * @throws Exception the exception
    */
-  private synchronized void convertToOntologyObjects(int topNid,
-    ConceptVersionBI concept) throws Exception {
+  private void convertToOntologyObjects(int topNid, ConceptVersionBI concept,
+    WalkBuffer buffer) throws Exception {
 
     // Add concept
-    StringIDConcept stringIdConcept =
-        new StringIDConcept(concept.getNid(), String.valueOf(concept.getNid()),
-            concept.getConceptAttributes()
-                .getVersion(OTFUtility.getViewCoordinate()).isDefined());
-
-    // save so we can map nids to their classifier ids.
-    nidSeen.add(concept.getNid());
-    editedSnomedConcepts.add(stringIdConcept);
-
-    // Add concept for cycle check
-    int nid = concept.getNid();
-    cycleCheckConcepts.put(nid, false);
-    List<Integer> parentIds = new ArrayList<>();
-    if (cycleCheckRelationships.containsKey(nid)) {
-      parentIds = cycleCheckRelationships.get(nid);
-    }
-    cycleCheckRelationships.put(nid, parentIds);
+    buffer.concepts.add(concept.getNid(), concept.getConceptAttributes()
+        .getVersion(OTFUtility.getViewCoordinate()).isDefined());
 
     // Do not process relationships for the top nid (e.g. SNOMED root)
     if (concept.getNid() == topNid) {
@@ -1190,28 +722,34 @@ public class SnomedSnorocketClassifier implements Classifier {
         return;
       }
 
-      Relationship rel =
-          new Relationship(relationship.getConceptNid(),
-              relationship.getDestinationNid(), relationship.getTypeNid(),
-              relationship.getGroup(), String.valueOf(relationship.getNid()));
       if (relationship.isStated()) {
         // add stated rels for classification
-        editedSnomedRels.add(rel);
+        addRelationship(buffer.statedRels, relationship);
 
         // add stated rel for cycle check
         if (relationship.getTypeNid() == Snomed.IS_A.getLenient().getNid()) {
-          parentIds.add(relationship.getDestinationNid());
-
+          addRelationship(buffer.isaRels, relationship);
         }
       } else if (relationship.isInferred()) {
         // Add prior inferred rels
-        addPreviousInferredRel(relationship.getConceptNid(), rel);
+        addRelationship(buffer.inferredRels, relationship);
       } else {
         // these are the "additional" relationships, ignore them
       }
     }
-    cycleCheckRelationships.put(nid, parentIds);
+  }
 
+  /**
+   * Adds the relationship version to the table.
+   *
+   * @param table the table
+   * @param relationship the relationship
+   */
+  private static void addRelationship(RelationshipTable table,
+    RelationshipVersionBI<?> relationship) {
+    table.add(relationship.getConceptNid(), relationship.getDestinationNid(),
+        relationship.getTypeNid(), relationship.getGroup(),
+        relationship.getNid());
   }
 
   /**
@@ -1236,7 +774,7 @@ public class SnomedSnorocketClassifier implements Classifier {
       // Keep only entries for which concepts exist,
       // others are likely in different paths
       // this also sort uniques any duplicates from previous call
-      if (nidSeen.contains(childNid)) {
+      if (concepts.contains(childNid)) {
         children.add(childNid);
       }
     }
@@ -1276,13 +814,252 @@ public class SnomedSnorocketClassifier implements Classifier {
     return s.toString();
   }
 
+  /**
+   * Applies the changes of a {@link RelationshipDiff}. Blueprints for a concept
+   * are constructed as its changes arrive, and the concept is added to the
+   * commit list once when it is complete.
+   */
+  private class WriteBack implements RelationshipDiff.DeltaListener {
+
+    /** The total rows in both tables, for progress. */
+    private final int relsCt;
+
+    /** The view coordinate, resolved once for the whole write back. */
+    private final ViewCoordinate vc;
+
+    /** The changed concepts since the last commit. */
+    private int uncommittedCount = 0;
+
+    /** The commit count. */
+    int commitCount = 0;
+
+    /** The nid of the last relationship written, null if none. */
+    Integer lastRelNid;
+
+    /**
+     * Instantiates a new {@link WriteBack}.
+     *
+     * @param relsCt the total rows in both tables
+     * @throws Exception the exception
+     */
+    WriteBack(int relsCt) throws Exception {
+      this.relsCt = relsCt;
+      this.vc = OTFUtility.getViewCoordinate();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * gov.va.isaac.classifier.RelationshipDiff.DeltaListener#delta(gov.va.isaac
+     * .classifier.RelationshipDiff.DeltaType, int, int, int, int, int)
+     */
+    @Override
+    public void delta(RelationshipDiff.DeltaType deltaType, int sourceId,
+      int destinationId, int typeId, int group, int relNid) throws Exception {
+
+      // add rel
+      if (deltaType != RelationshipDiff.DeltaType.RETIRE) {
+        LOG.debug(deltaType + " : " + sourceId + ": " + typeId + ": "
+            + destinationId + ": " + group);
+        // using generate random to work around an issue where the
+        // constructor thinks this object is a RelGroupChronicle
+        // that error was only sometimes being triggered when trying to add a
+        // new rel
+        final RelationshipCAB relCAB =
+            new RelationshipCAB(sourceId, typeId, destinationId, group,
+                RelationshipType.INFERRED_ROLE, IdDirective.GENERATE_RANDOM);
+        RelationshipChronicleBI rel = OTFUtility.getBuilder().construct(relCAB);
+
+        // Add to previousInferredRels for incremental classification
+        previousInferredRels.add(sourceId, destinationId, typeId, group,
+            rel.getNid());
+        lastRelNid = rel.getNid();
+      }
+
+      // retire rel
+      else {
+        LOG.debug("RETIRE REL : " + sourceId + ": " + typeId + ": "
+            + destinationId + ": " + group + ": " + relNid);
+        final RelationshipVersionBI<?> rel =
+            (RelationshipVersionBI<?>) dataStore.getComponent(relNid)
+                .getVersion(vc);
+        if (rel == null) {
+          LOG.warn("  no current version of relationship " + relNid);
+          return;
+        }
+        final RelationshipCAB rcab =
+            new RelationshipCAB(rel.getConceptNid(), rel.getTypeNid(),
+                rel.getDestinationNid(), rel.getGroup(),
+                RelationshipType.getRelationshipType(rel.getRefinabilityNid(),
+                    rel.getCharacteristicNid()), rel, vc, IdDirective.PRESERVE,
+                RefexDirective.EXCLUDE);
+        rcab.setStatus(Status.INACTIVE);
+        OTFUtility.getBuilder().constructIfNotCurrent(rcab);
+        // Remove from previously inferred rels for incremental classification
+        previousInferredRels.remove(sourceId, destinationId, typeId, group,
+            relNid);
+        lastRelNid = relNid;
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * gov.va.isaac.classifier.RelationshipDiff.DeltaListener#endConcept(int,
+     * boolean, int)
+     */
+    @SuppressWarnings("cast")
+    @Override
+    public boolean endConcept(int sourceId, boolean changed, int relsSeen)
+      throws Exception {
+      if (changed) {
+        // add concept to commit list, once for all of its changes
+        dataStore.addUncommitted(OTFUtility.getConceptVersion(sourceId));
+        if (++uncommittedCount >= commitBatchSize) {
+          LOG.info("    commit = " + uncommittedCount);
+          dataStore.commit();
+          commitCount++;
+          uncommittedCount = 0;
+        }
+      }
+
+      // Handle progress monitor - consider this part 93%-100%% of the process
+      final int currentProgress =
+          relsCt == 0 ? 100 : (int) (((long) relsSeen * 100) / relsCt);
+      if (currentProgress > progress) {
+        progress = currentProgress;
+        // 7 percentage points starting at 93
+        fireProgressEvent(((int) (progress * .07) + 93),
+            "Write relationship changes");
+      }
+      return continueWork();
+    }
+  }
+
+  /**
+   * Per-worker accumulator for the descendant walk. Only ever touched by the
+   * worker thread that owns it until the walk has completed.
+   */
+  private static class WalkBuffer {
+
+    /** The concepts. */
+    final ConceptTable concepts = new ConceptTable();
+
+    /** The stated rels. */
+    final RelationshipTable statedRels = new RelationshipTable();
+
+    /** The previously inferred rels. */
+    final RelationshipTable inferredRels = new RelationshipTable();
+
+    /** The stated isa rels. */
+    final RelationshipTable isaRels = new RelationshipTable();
+  }
+
+  /**
+   * Fork/join task visiting one concept and forking a task for each of its
+   * stated IS-A children.
+   */
+  private class DescendantWalk extends RecursiveAction {
+
+    /** The serial version uid. */
+    private static final long serialVersionUID = 1L;
+
+    /** The top nid. */
+    private final int topNid;
+
+    /** The nid. */
+    private final int nid;
+
+    /** The visited nids. */
+    private final ConcurrentNidBitSet visited;
+
+    /** The per-worker buffer. */
+    private final ThreadLocal<WalkBuffer> localBuffer;
+
+    /** The count of concepts processed. */
+    private final AtomicInteger count;
+
+    /** The first failure encountered by any worker. */
+    private final AtomicReference<Exception> failure;
+
+    /**
+     * Instantiates a new {@link DescendantWalk}.
+     *
+     * @param topNid the top nid
+     * @param nid the nid
+     * @param visited the visited nids
+     * @param localBuffer the per-worker buffer
+     * @param count the count of concepts processed
+     * @param failure the first failure
+     */
+    DescendantWalk(int topNid, int nid, ConcurrentNidBitSet visited,
+        ThreadLocal<WalkBuffer> localBuffer, AtomicInteger count,
+        AtomicReference<Exception> failure) {
+      this.topNid = topNid;
+      this.nid = nid;
+      this.visited = visited;
+      this.localBuffer = localBuffer;
+      this.count = count;
+      this.failure = failure;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    protected void compute() {
+      // return if cancelled, failed, or seen already
+      if (!continueWork() || failure.get() != null || !visited.add(nid)) {
+        return;
+      }
+
+      List<DescendantWalk> children = new ArrayList<>();
+      try {
+        // Process this concept
+        ConceptVersionBI concept = OTFUtility.getConceptVersion(nid);
+
+        // return if inactive
+        if (!concept.isActive()) {
+          return;
+        }
+
+        // return if the path of the concept is not valid
+        if (concept.getNid() != topNid
+            && !validPaths.contains(concept.getPathNid())) {
+          return;
+        }
+
+        convertToOntologyObjects(topNid, concept, localBuffer.get());
+        updatePreparingProgress(count.incrementAndGet());
+
+        for (RelationshipVersionBI<?> r : concept
+            .getRelationshipsIncomingActiveIsa()) {
+          if (r.isStated() && r.isActive()
+              && !visited.contains(r.getOriginNid())) {
+            children.add(new DescendantWalk(topNid, r.getOriginNid(), visited,
+                localBuffer, count, failure));
+          }
+        }
+      } catch (Exception e) {
+        LOG.error("Unexpected error walking descendants of " + nid, e);
+        failure.compareAndSet(null, e);
+        return;
+      }
+      invokeAll(children);
+    }
+  }
+
   /**
    * Processes Results.
    */
   private class ProcessResults implements I_Callback {
 
     /** The snorels. */
-    private Map<Integer, List<Relationship>> snorels;
+    private RelationshipTable snorels;
 
     /** The count rel. */
     int countRel = 0; // STATISTICS COUNTER
@@ -1292,7 +1069,7 @@ public class SnomedSnorocketClassifier implements Classifier {
      *
      * @param snorels the snorels
      */
-    public ProcessResults(Map<Integer, List<Relationship>> snorels) {
+    public ProcessResults(RelationshipTable snorels) {
       this.snorels = snorels;
       this.countRel = 0;
     }
@@ -1308,14 +1085,8 @@ public class SnomedSnorocketClassifier implements Classifier {
     public void addRelationship(int conceptId1, int roleId, int conceptId2,
       int group) {
       countRel++;
-      Relationship relationship =
-          new Relationship(conceptId1, conceptId2, roleId, group);
-      List<Relationship> rels = snorels.get(conceptId1);
-      if (rels == null) {
-        rels = new ArrayList<>();
-        snorels.put(conceptId1, rels);
-      }
-      rels.add(relationship);
+      snorels.add(conceptId1, conceptId2, roleId, group,
+          RelationshipTable.NO_NID);
       if (countRel % 25000 == 0) {
         LOG.info("rels processed " + countRel);
       }
@@ -1419,10 +1190,16 @@ public class SnomedSnorocketClassifier implements Classifier {
   @Override
   public void incrementalClassify() throws Exception {
 
-    // Full classification is needed
+    // Full classification is needed, unless a saved working set is available.
+    // A restored working set is loaded into the classifier only once the
+    // concepts touched since it was saved are read, so it is classified once.
+    boolean restored = false;
     if (rocket_123 == null) {
-      LOG.warn("Full classification must be done before incremental classification can be used.");
-      return;
+      if (!restoreState()) {
+        LOG.warn("Full classification must be done before incremental classification can be used.");
+        return;
+      }
+      restored = true;
     }
 
     // add concepts - add to cycle check data structures too
@@ -1440,15 +1217,12 @@ public class SnomedSnorocketClassifier implements Classifier {
       ConceptAttributeVersionBI<?> attributes =
           ConceptViewerHelper.getConceptAttributes(concept);
       classifiableConceptFound = true;
-      rocket_123.addConcept(nid, attributes.isDefined());
+      if (!restored) {
+        rocket_123.addConcept(nid, attributes.isDefined());
+      }
 
       // Add cycle check info
-      cycleCheckConcepts.put(nid, false);
-      List<Integer> parentIds = new ArrayList<>();
-      if (cycleCheckRelationships.containsKey(nid)) {
-        parentIds = cycleCheckRelationships.get(nid);
-      }
-      cycleCheckRelationships.put(nid, parentIds);
+      concepts.add(nid, attributes.isDefined());
 
       // Iterate through relationships
       for (RelationshipVersionBI<?> relationship : concept
@@ -1456,29 +1230,28 @@ public class SnomedSnorocketClassifier implements Classifier {
 
         if (relationship.isStated()) {
           // add stated rels for classification
-          rocket_123.addRelationship(relationship.getConceptNid(),
-              relationship.getTypeNid(), relationship.getDestinationNid(),
-              relationship.getGroup());
+          if (!restored) {
+            rocket_123.addRelationship(relationship.getConceptNid(),
+                relationship.getTypeNid(), relationship.getDestinationNid(),
+                relationship.getGroup());
+          }
+          addRelationship(editedSnomedRels, relationship);
 
           // add stated rel for cycle check
           if (relationship.getTypeNid() == Snomed.IS_A.getLenient().getNid()) {
-            parentIds.add(relationship.getDestinationNid());
-
+            addRelationship(cycleCheckRelationships, relationship);
           }
         } else if (relationship.isInferred()) {
-          // Add inferred rels to previous inferred rels
-          Relationship rel =
-              new Relationship(relationship.getConceptNid(),
-                  relationship.getDestinationNid(), relationship.getTypeNid(),
-                  relationship.getGroup(),
-                  String.valueOf(relationship.getNid()));
           // Add prior inferred rels
-          addPreviousInferredRel(relationship.getConceptNid(), rel);
+          addRelationship(previousInferredRels, relationship);
         }
       }
-      cycleCheckRelationships.put(nid, parentIds);
 
     }
+    concepts.sort();
+    editedSnomedRels.sort();
+    cycleCheckRelationships.sort();
+    previousInferredRels.sort();
 
     // Bail if no classifiable concepts found
     if (!classifiableConceptFound) {
@@ -1487,13 +1260,18 @@ public class SnomedSnorocketClassifier implements Classifier {
 
     // Cycle check - at this point data structures are loaded
     CycleCheck cycleCheck = new CycleCheck();
-    cycleCheck.setConcepts(cycleCheckConcepts);
+    cycleCheck.setConcepts(concepts);
     cycleCheck.setIsarelationships(cycleCheckRelationships);
-    if (cycleCheck.getConceptInLoop() != null) {
-      throw new Exception("A cycle has been detected.");
+    cycleCheck.setOutputFile(cycleCheckReport);
+    if (cycleCheck.cycleDetected()) {
+      saveCycleCheckReport(cycleCheck.getCycles());
+      throw new ClassificationException("A cycle has been detected.");
     }
 
     // classify
+    if (restored && !loadClassifier(classifiedRootNid, roles)) {
+      return;
+    }
     rocket_123.classify();
 
     // Handle equivalents
@@ -1504,29 +1282,244 @@ public class SnomedSnorocketClassifier implements Classifier {
 
     // handle inferred relationship changes
     // Get distribution form of relationships and write back
-    snorocketRels = new HashMap<>();
+    snorocketRels = new RelationshipTable(previousInferredRels.size());
     ProcessResults pr = new ProcessResults(snorocketRels);
     rocket_123.getDistributionFormRelationships(pr);
+    snorocketRels.sort();
 
     // Write back results - disable commit listeners during this
+    long writeBackTime = System.currentTimeMillis();
     try {
       AppContext.getRuntimeGlobals().disableAllCommitListeners();
-      List<Relationship> prevInferredRelsList = new ArrayList<>();
-      List<Relationship> snorocketRelsList = new ArrayList<>();
-      for (int nid : incrementalClassificationSet.getSetValues()) {
-        prevInferredRelsList.addAll(previousInferredRels.get(nid));
-        snorocketRelsList.addAll(snorocketRels.get(nid));
-      }
-      LOG.info(compareAndWriteBack(prevInferredRelsList, snorocketRelsList));
+      LOG.info(compareAndWriteBack(previousInferredRels, snorocketRels,
+          incrementalClassificationSet));
       dataStore.commit();
     } catch (Exception e) {
       throw e;
     } finally {
-      AppContext.getRuntimeGlobals().disableAllCommitListeners();
+      AppContext.getRuntimeGlobals().enableAllCommitListeners();
     }
+    snorocketRels = null;
+    saveState(getWriteBackCommitTime(writeBackTime));
 
   }
 
+  /**
+   * Restores the working set saved by the last classification, brought up to
+   * date with the concepts committed since - those in the touched journal, and
+   * those with versions in the store newer than the saved commit time, which
+   * catches the commits the journal misses. The saved relationships of those
+   * concepts are dropped, {@link #incrementalClassify()} re-reads them.
+   *
+   * The Snorocket taxonomy is not saved, so {@link #rocket_123} is left to be
+   * loaded from the restored working set and classified once, with the changes.
+   *
+   * @return <code>true</code> if restored, <code>false</code> if there is no
+   *         saved working set, or it is no longer usable
+   * @throws Exception the exception
+   */
+  private boolean restoreState() throws Exception {
+    if (!snapshot.load()) {
+      return false;
+    }
+    long startTime = System.currentTimeMillis();
+    int[] committed = getConceptsCommittedSince(snapshot.getLastCommitTime());
+    if (committed == null) {
+      if (continueWork()) {
+        LOG.warn("Components were retired since the saved classifier state was taken, "
+            + "it is discarded");
+        snapshot.invalidate();
+      }
+      return false;
+    }
+    IntSet touched = new IntSet(snapshot.getTouched());
+    for (int nid : committed) {
+      touched.add(nid);
+    }
+
+    concepts = new ConceptTable(snapshot.getConcepts().size());
+    concepts.addAll(snapshot.getConcepts());
+    editedSnomedRels = withoutSources(snapshot.getStatedRels(), touched);
+    previousInferredRels =
+        withoutSources(snapshot.getPreviousInferredRels(), touched);
+    cycleCheckRelationships = new RelationshipTable();
+    final int isaNid = Snomed.IS_A.getNid();
+    for (int row = 0; row < editedSnomedRels.size(); row++) {
+      if (editedSnomedRels.getTypeId(row) == isaNid) {
+        cycleCheckRelationships.add(editedSnomedRels.getSourceId(row),
+            editedSnomedRels.getDestinationId(row), isaNid,
+            editedSnomedRels.getGroup(row), editedSnomedRels.getRelNid(row));
+      }
+    }
+    cycleCheckRelationships.sort();
+    incrementalClassificationSet = touched;
+    classifiedRootNid = snapshot.getRootNid();
+    roles = snapshot.getRoles();
+
+    LOG.info("  restored classifier state as of "
+        + new Date(snapshot.getLastCommitTime()) + ", "
+        + touched.size() + " concepts touched since, "
+        + toStringLapseSec(startTime));
+    return true;
+  }
+
+  /**
+   * Returns the concepts with a concept attribute or outgoing relationship
+   * version committed after the specified time. Reads the whole store, as the
+   * touched journal misses commits made while the classifier commit listener
+   * was disabled, or never enabled.
+   *
+   * @param time the time
+   * @return the concept nids, or <code>null</code> if one of those versions
+   *         retires a component - which incremental classification can't
+   *         handle - or if cancelled
+   * @throws Exception the exception
+   */
+  private int[] getConceptsCommittedSince(final long time) throws Exception {
+    long startTime = System.currentTimeMillis();
+    final Queue<Integer> committed = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean retired = new AtomicBoolean();
+    dataStore.iterateConceptDataInParallel(new ProcessUnfetchedConceptDataBI() {
+      @Override
+      public void processUnfetchedConceptData(int cNid, ConceptFetcherBI fetcher)
+        throws Exception {
+        if (retired.get()) {
+          return;
+        }
+        ConceptChronicleBI concept = fetcher.fetch();
+        boolean changed = false;
+        if (concept.getConceptAttributes() != null) {
+          changed = committedSince(concept.getConceptAttributes(), time, retired);
+        }
+        for (RelationshipChronicleBI relationship : concept
+            .getRelationshipsOutgoing()) {
+          changed |= committedSince(relationship, time, retired);
+        }
+        if (changed) {
+          committed.add(cNid);
+        }
+      }
+
+      @Override
+      public NativeIdSetBI getNidSet() throws IOException {
+        return null;
+      }
+
+      @Override
+      public String getTitle() {
+        return "Find concepts committed since the saved classifier state";
+      }
+
+      @Override
+      public boolean continueWork() {
+        return !retired.get() && SnomedSnorocketClassifier.this.continueWork();
+      }
+
+      @Override
+      public boolean allowCancel() {
+        return false;
+      }
+    });
+    LOG.info("  " + committed.size() + " concepts committed since "
+        + new Date(time) + (retired.get() ? ", including retirements" : "")
+        + ", " + toStringLapseSec(startTime));
+    if (retired.get() || !continueWork()) {
+      return null;
+    }
+    int[] nids = new int[committed.size()];
+    int i = 0;
+    for (int nid : committed) {
+      nids[i++] = nid;
+    }
+    return nids;
+  }
+
+  /**
+   * Indicates whether or not the component has a version committed after the
+   * specified time, flagging it if such a version is inactive.
+   *
+   * @param component the component
+   * @param time the time
+   * @param retired set if a version committed after the time is inactive
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  private static boolean committedSince(ComponentChronicleBI<?> component,
+    long time, AtomicBoolean retired) {
+    boolean committed = false;
+    for (ComponentVersionBI version : component.getVersions()) {
+      // Uncommitted versions have a time of Long.MAX_VALUE
+      if (version.getTime() > time && version.getTime() != Long.MAX_VALUE) {
+        committed = true;
+        if (!version.isActive()) {
+          retired.set(true);
+        }
+      }
+    }
+    return committed;
+  }
+
+  /**
+   * Returns a copy of the relationship table without the relationships of the
+   * specified source concepts.
+   *
+   * @param rels the rels
+   * @param sources the source nids
+   * @return the relationship table, sorted
+   */
+  private static RelationshipTable withoutSources(RelationshipTable rels,
+    IntSet sources) {
+    RelationshipTable kept = new RelationshipTable(rels.size());
+    for (int row = 0; row < rels.size(); row++) {
+      if (!rels.isRemoved(row) && !sources.contains(rels.getSourceId(row))) {
+        kept.add(rels.getSourceId(row), rels.getDestinationId(row),
+            rels.getTypeId(row), rels.getGroup(row), rels.getRelNid(row));
+      }
+    }
+    kept.sort();
+    return kept;
+  }
+
+  /**
+   * Returns the time of the commit that wrote back the last classification,
+   * read from the last relationship written. If nothing was written there was
+   * nothing to commit, and the working set is as of the start of the write
+   * back.
+   *
+   * @param writeBackTime the time the write back started
+   * @return the commit time
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private long getWriteBackCommitTime(long writeBackTime) throws IOException {
+    long commitTime = Long.MIN_VALUE;
+    if (writtenRelNid != null) {
+      for (ComponentVersionBI version : dataStore.getComponent(writtenRelNid)
+          .getVersions()) {
+        if (version.getTime() != Long.MAX_VALUE) {
+          commitTime = Math.max(commitTime, version.getTime());
+        }
+      }
+      writtenRelNid = null;
+    }
+    return commitTime == Long.MIN_VALUE ? writeBackTime : commitTime;
+  }
+
+  /**
+   * Saves the working set so incremental classification can resume after a
+   * restart.
+   *
+   * @param commitTime the time of the commit that wrote back the results
+   */
+  private void saveState(long commitTime) {
+    try {
+      snapshot.save(commitTime, classifiedRootNid, roles,
+          concepts, editedSnomedRels, previousInferredRels);
+    } catch (IOException e) {
+      LOG.warn("Unable to save the classifier state, "
+          + "the next session will need a full classification", e);
+      snapshot.invalidate();
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -1535,13 +1528,16 @@ public class SnomedSnorocketClassifier implements Classifier {
    * .ihtsdo.otf.tcc.api.nid.IntSet)
    */
   @Override
-  public void addToIncrementalClassificationSet(IntSet conceptSet) {
+  public void addToIncrementalClassificationSet(IntSet conceptSet)
+    throws Exception {
     // Skip if full classification hasn't been run
     if (rocket_123 != null) {
       for (int nid : conceptSet.getSetValues()) {
         incrementalClassificationSet.add(nid);
       }
     }
+    // Journal for the saved working set, in case of a restart
+    snapshot.appendTouched(conceptSet.getSetValues());
   }
 
   /*
@@ -1551,8 +1547,8 @@ public class SnomedSnorocketClassifier implements Classifier {
    */
   @Override
   public boolean isIncrementalClassifyReady() {
-    // If classifier data structures are populated, we're ready
-    return rocket_123 != null;
+    // If classifier data structures are populated or saved, we're ready
+    return rocket_123 != null || snapshot.exists();
   }
 
   /*
@@ -1563,12 +1559,14 @@ public class SnomedSnorocketClassifier implements Classifier {
   @Override
   public void clearStaticState() {
     // Essentially reset the classifier for a new full classification
-    previousInferredRels = new HashMap<>();
-    previousInferredRelsCt = 0;
-    cycleCheckConcepts = new HashMap<>(20000);
-    cycleCheckRelationships = new HashMap<>(20000);
+    concepts = new ConceptTable();
+    editedSnomedRels = new RelationshipTable();
+    previousInferredRels = new RelationshipTable();
+    cycleCheckRelationships = new RelationshipTable();
     incrementalClassificationSet = new IntSet();
     rocket_123 = null;
+    roles = null;
+    snapshot.invalidate();
   }
 
   /*
@@ -0,0 +1,178 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.classifier.model;
+
+import java.util.Arrays;
+
+/**
+ * The Class ConceptTable. A primitive store of concept nids and their
+ * definition status, used as the classifier working set in place of lists of
+ * {@link StringIDConcept} and boxed nid sets/maps.
+ *
+ * After {@link #sort()} the nids are unique and ascending, and
+ * {@link #indexOf(int)} gives the dense position of a nid, which other
+ * structures can use to key primitive arrays.
+ */
+public class ConceptTable {
+
+  /** The entries, (nid << 1) | defined. */
+  private long[] entries;
+
+  /** The entry count. */
+  private int size = 0;
+
+  /** The number of entries covered by the last sort. */
+  private int sortedSize = 0;
+
+  /**
+   * Instantiates an empty {@link ConceptTable}.
+   */
+  public ConceptTable() {
+    this(1024);
+  }
+
+  /**
+   * Instantiates an empty {@link ConceptTable} with the specified capacity.
+   *
+   * @param capacity the initial capacity
+   */
+  public ConceptTable(int capacity) {
+    entries = new long[Math.max(capacity, 16)];
+  }
+
+  /**
+   * Adds a concept.
+   *
+   * @param nid the nid
+   * @param isDefined true if the concept is Fully Defined, false if primitive
+   */
+  public void add(int nid, boolean isDefined) {
+    if (size == entries.length) {
+      entries = Arrays.copyOf(entries, size + (size >> 1));
+    }
+    entries[size++] = ((long) nid << 1) | (isDefined ? 1 : 0);
+  }
+
+  /**
+   * Adds all concepts of another table.
+   *
+   * @param other the other table
+   */
+  public void addAll(ConceptTable other) {
+    if (size + other.size > entries.length) {
+      entries = Arrays.copyOf(entries, size + other.size);
+    }
+    System.arraycopy(other.entries, 0, entries, size, other.size);
+    size += other.size;
+  }
+
+  /**
+   * Sorts by nid, drops duplicate nids (the entry added last is kept, so a
+   * concept re-added after an edit takes its new definition status) and trims
+   * the storage.
+   */
+  public void sort() {
+    if (size > 1) {
+      // Sort keys of (nid << 32) | position, so equal nids keep the order
+      // they were added in
+      long[] keys = new long[size];
+      for (int i = 0; i < size; i++) {
+        keys[i] = ((entries[i] >> 1) << 32) | i;
+      }
+      Arrays.sort(keys);
+      long[] sorted = new long[Math.max(size, 16)];
+      int j = -1;
+      for (long key : keys) {
+        long entry = entries[(int) key];
+        if (j >= 0 && (sorted[j] >> 1) == (entry >> 1)) {
+          sorted[j] = entry;
+        } else {
+          sorted[++j] = entry;
+        }
+      }
+      entries = sorted;
+      size = j + 1;
+    }
+    entries = Arrays.copyOf(entries, Math.max(size, 16));
+    sortedSize = size;
+  }
+
+  /**
+   * Returns the number of concepts.
+   *
+   * @return the size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the nid at the specified position.
+   *
+   * @param i the position
+   * @return the nid
+   */
+  public int getNid(int i) {
+    return (int) (entries[i] >> 1);
+  }
+
+  /**
+   * Indicates whether or not the concept at the specified position is defined.
+   *
+   * @param i the position
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  public boolean isDefined(int i) {
+    return (entries[i] & 1) == 1;
+  }
+
+  /**
+   * Returns the position of the nid. Only concepts covered by the last
+   * {@link #sort()} are found.
+   *
+   * @param nid the nid
+   * @return the position, or a negative value if not found
+   */
+  public int indexOf(int nid) {
+    int lo = 0;
+    int hi = sortedSize - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int midNid = getNid(mid);
+      if (midNid < nid) {
+        lo = mid + 1;
+      } else if (midNid > nid) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(lo + 1);
+  }
+
+  /**
+   * Indicates whether or not the nid is in the table.
+   *
+   * @param nid the nid
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  public boolean contains(int nid) {
+    return indexOf(nid) >= 0;
+  }
+}
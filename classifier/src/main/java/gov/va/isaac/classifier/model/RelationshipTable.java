@@ -0,0 +1,554 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.classifier.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Class RelationshipTable. A columnar, primitive store of relationships
+ * (source, type, destination, group and relationship nid) used as the
+ * classifier working set in place of lists of {@link Relationship} objects.
+ *
+ * <pre>
+ * After {@link #sort()} the rows are in C1-Group-Type-C2 order (the same as
+ * {@link Relationship#compareTo(Object)}), removed rows are dropped, and a
+ * CSR (compressed sparse row) index by source nid is available:
+ *
+ *   getSourceCount()        - number of distinct sources
+ *   getSourceNid(s)         - the s'th source nid, ascending
+ *   getStart(s), getEnd(s)  - the row range [start, end) for that source
+ *
+ * Rows added after the last sort are held in an unindexed tail until the
+ * next sort, so the index can be walked safely while rows are appended.
+ * </pre>
+ */
+public class RelationshipTable {
+
+  /** The value used when a relationship has no nid (e.g. Snorocket output). */
+  public static final int NO_NID = Integer.MAX_VALUE;
+
+  /** The default initial capacity. */
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  /** Below this size, ranges are insertion sorted. */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /** The source nids. */
+  private int[] sourceIds;
+
+  /** The type nids. */
+  private int[] typeIds;
+
+  /** The destination nids. */
+  private int[] destinationIds;
+
+  /** The role groups. */
+  private int[] groups;
+
+  /** The relationship nids. */
+  private int[] relNids;
+
+  /** The removed flags, null until the first removal. */
+  private boolean[] removed;
+
+  /** The row count. */
+  private int size = 0;
+
+  /** The count of removed rows. */
+  private int removedCount = 0;
+
+  /** The distinct, ascending source nids of the index. */
+  private int[] indexSourceIds = new int[0];
+
+  /** The index offsets, indexOffsets[s] is the first row of source s. */
+  private int[] indexOffsets = new int[] {
+    0
+  };
+
+  /**
+   * Instantiates an empty {@link RelationshipTable}.
+   */
+  public RelationshipTable() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Instantiates an empty {@link RelationshipTable} with the specified
+   * capacity.
+   *
+   * @param capacity the initial capacity
+   */
+  public RelationshipTable(int capacity) {
+    capacity = Math.max(capacity, 16);
+    sourceIds = new int[capacity];
+    typeIds = new int[capacity];
+    destinationIds = new int[capacity];
+    groups = new int[capacity];
+    relNids = new int[capacity];
+  }
+
+  /**
+   * Adds a relationship row.
+   *
+   * @param sourceId the source nid
+   * @param destinationId the destination nid
+   * @param typeId the type nid
+   * @param group the group
+   * @param relNid the relationship nid, or {@link #NO_NID}
+   */
+  public void add(int sourceId, int destinationId, int typeId, int group,
+    int relNid) {
+    ensureCapacity(size + 1);
+    sourceIds[size] = sourceId;
+    destinationIds[size] = destinationId;
+    typeIds[size] = typeId;
+    groups[size] = group;
+    relNids[size] = relNid;
+    size++;
+  }
+
+  /**
+   * Adds all rows of another table, skipping removed rows.
+   *
+   * @param other the other table
+   */
+  public void addAll(RelationshipTable other) {
+    ensureCapacity(size + other.size);
+    for (int i = 0; i < other.size; i++) {
+      if (!other.isRemoved(i)) {
+        add(other.sourceIds[i], other.destinationIds[i], other.typeIds[i],
+            other.groups[i], other.relNids[i]);
+      }
+    }
+  }
+
+  /**
+   * Marks the row matching the relationship as removed. Only indexed rows are
+   * considered. The row is physically dropped at the next {@link #sort()}.
+   *
+   * @param sourceId the source nid
+   * @param destinationId the destination nid
+   * @param typeId the type nid
+   * @param group the group
+   * @param relNid the relationship nid
+   * @return <code>true</code> if a row was removed
+   */
+  public boolean remove(int sourceId, int destinationId, int typeId, int group,
+    int relNid) {
+    int s = indexOf(sourceId);
+    if (s < 0) {
+      return false;
+    }
+    for (int i = indexOffsets[s]; i < indexOffsets[s + 1]; i++) {
+      if (!isRemoved(i) && typeIds[i] == typeId
+          && destinationIds[i] == destinationId && groups[i] == group
+          && relNids[i] == relNid) {
+        if (removed == null) {
+          removed = new boolean[sourceIds.length];
+        }
+        removed[i] = true;
+        removedCount++;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sorts the rows in C1-Group-Type-C2 order, drops removed and duplicate rows,
+   * trims the columns and rebuilds the source index.
+   */
+  public void sort() {
+    // Drop removed rows
+    if (removedCount > 0) {
+      int j = 0;
+      for (int i = 0; i < size; i++) {
+        if (!removed[i]) {
+          copyRow(i, j++);
+        }
+      }
+      size = j;
+    }
+    removed = null;
+    removedCount = 0;
+
+    quickSort(0, size - 1);
+
+    // Drop exact duplicates
+    if (size > 1) {
+      int j = 1;
+      for (int i = 1; i < size; i++) {
+        if (compareRows(i, j - 1) != 0) {
+          copyRow(i, j++);
+        }
+      }
+      size = j;
+    }
+    trim();
+
+    // Build CSR index by source
+    int sourceCount = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || sourceIds[i] != sourceIds[i - 1]) {
+        sourceCount++;
+      }
+    }
+    indexSourceIds = new int[sourceCount];
+    indexOffsets = new int[sourceCount + 1];
+    int s = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || sourceIds[i] != sourceIds[i - 1]) {
+        indexSourceIds[s] = sourceIds[i];
+        indexOffsets[s++] = i;
+      }
+    }
+    indexOffsets[sourceCount] = size;
+  }
+
+  /**
+   * Returns the number of rows, including removed rows not yet dropped.
+   *
+   * @return the size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of distinct source nids in the index.
+   *
+   * @return the source count
+   */
+  public int getSourceCount() {
+    return indexSourceIds.length;
+  }
+
+  /**
+   * Returns the source nid at the specified index position.
+   *
+   * @param s the index position
+   * @return the source nid
+   */
+  public int getSourceNid(int s) {
+    return indexSourceIds[s];
+  }
+
+  /**
+   * Returns the first row for the source at the specified index position.
+   *
+   * @param s the index position
+   * @return the start row
+   */
+  public int getStart(int s) {
+    return indexOffsets[s];
+  }
+
+  /**
+   * Returns one past the last row for the source at the specified index
+   * position.
+   *
+   * @param s the index position
+   * @return the end row
+   */
+  public int getEnd(int s) {
+    return indexOffsets[s + 1];
+  }
+
+  /**
+   * Returns the index position of the source nid.
+   *
+   * @param sourceId the source nid
+   * @return the index position, or a negative value if not indexed
+   */
+  public int indexOf(int sourceId) {
+    return Arrays.binarySearch(indexSourceIds, sourceId);
+  }
+
+  /**
+   * Returns the source nid of a row.
+   *
+   * @param row the row
+   * @return the source nid
+   */
+  public int getSourceId(int row) {
+    return sourceIds[row];
+  }
+
+  /**
+   * Returns the destination nid of a row.
+   *
+   * @param row the row
+   * @return the destination nid
+   */
+  public int getDestinationId(int row) {
+    return destinationIds[row];
+  }
+
+  /**
+   * Returns the type nid of a row.
+   *
+   * @param row the row
+   * @return the type nid
+   */
+  public int getTypeId(int row) {
+    return typeIds[row];
+  }
+
+  /**
+   * Returns the group of a row.
+   *
+   * @param row the row
+   * @return the group
+   */
+  public int getGroup(int row) {
+    return groups[row];
+  }
+
+  /**
+   * Returns the relationship nid of a row.
+   *
+   * @param row the row
+   * @return the relationship nid, or {@link #NO_NID}
+   */
+  public int getRelNid(int row) {
+    return relNids[row];
+  }
+
+  /**
+   * Indicates whether or not the row has been removed.
+   *
+   * @param row the row
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  public boolean isRemoved(int row) {
+    return removed != null && removed[row];
+  }
+
+  /**
+   * Materializes a row as a {@link Relationship}.
+   *
+   * @param row the row
+   * @return the relationship
+   */
+  public Relationship getRelationship(int row) {
+    if (relNids[row] == NO_NID) {
+      return new Relationship(sourceIds[row], destinationIds[row],
+          typeIds[row], groups[row]);
+    }
+    return new Relationship(sourceIds[row], destinationIds[row], typeIds[row],
+        groups[row], String.valueOf(relNids[row]));
+  }
+
+  /**
+   * Materializes the rows of the source at the specified index position, in
+   * C1-Group-Type-C2 order.
+   *
+   * @param s the index position
+   * @return the relationships
+   */
+  public List<Relationship> getRelationships(int s) {
+    List<Relationship> rels = new ArrayList<>(getEnd(s) - getStart(s));
+    for (int i = getStart(s); i < getEnd(s); i++) {
+      if (!isRemoved(i)) {
+        rels.add(getRelationship(i));
+      }
+    }
+    return rels;
+  }
+
+  /**
+   * Ensures capacity.
+   *
+   * @param capacity the capacity
+   */
+  private void ensureCapacity(int capacity) {
+    if (capacity <= sourceIds.length) {
+      return;
+    }
+    int newCapacity =
+        Math.max(capacity, sourceIds.length + (sourceIds.length >> 1));
+    sourceIds = Arrays.copyOf(sourceIds, newCapacity);
+    typeIds = Arrays.copyOf(typeIds, newCapacity);
+    destinationIds = Arrays.copyOf(destinationIds, newCapacity);
+    groups = Arrays.copyOf(groups, newCapacity);
+    relNids = Arrays.copyOf(relNids, newCapacity);
+    if (removed != null) {
+      removed = Arrays.copyOf(removed, newCapacity);
+    }
+  }
+
+  /**
+   * Trims the columns to the row count.
+   */
+  private void trim() {
+    int capacity = Math.max(size, 16);
+    if (capacity == sourceIds.length) {
+      return;
+    }
+    sourceIds = Arrays.copyOf(sourceIds, capacity);
+    typeIds = Arrays.copyOf(typeIds, capacity);
+    destinationIds = Arrays.copyOf(destinationIds, capacity);
+    groups = Arrays.copyOf(groups, capacity);
+    relNids = Arrays.copyOf(relNids, capacity);
+  }
+
+  /**
+   * Copies a row.
+   *
+   * @param from the from row
+   * @param to the to row
+   */
+  private void copyRow(int from, int to) {
+    sourceIds[to] = sourceIds[from];
+    typeIds[to] = typeIds[from];
+    destinationIds[to] = destinationIds[from];
+    groups[to] = groups[from];
+    relNids[to] = relNids[from];
+  }
+
+  /**
+   * Swaps two rows.
+   *
+   * @param a the a row
+   * @param b the b row
+   */
+  private void swap(int a, int b) {
+    int t = sourceIds[a];
+    sourceIds[a] = sourceIds[b];
+    sourceIds[b] = t;
+    t = typeIds[a];
+    typeIds[a] = typeIds[b];
+    typeIds[b] = t;
+    t = destinationIds[a];
+    destinationIds[a] = destinationIds[b];
+    destinationIds[b] = t;
+    t = groups[a];
+    groups[a] = groups[b];
+    groups[b] = t;
+    t = relNids[a];
+    relNids[a] = relNids[b];
+    relNids[b] = t;
+  }
+
+  /**
+   * Compares two rows in C1-Group-Type-C2 order, then by relationship nid.
+   *
+   * @param a the a row
+   * @param b the b row
+   * @return the comparison
+   */
+  private int compareRows(int a, int b) {
+    int result =
+        compare(sourceIds[a], groups[a], typeIds[a], destinationIds[a],
+            sourceIds[b], groups[b], typeIds[b], destinationIds[b]);
+    if (result == 0 && relNids[a] != relNids[b]) {
+      return relNids[a] < relNids[b] ? -1 : 1;
+    }
+    return result;
+  }
+
+  /**
+   * Compares two tuples in C1-Group-Type-C2 order.
+   *
+   * @param sourceA the source a
+   * @param groupA the group a
+   * @param typeA the type a
+   * @param destA the dest a
+   * @param sourceB the source b
+   * @param groupB the group b
+   * @param typeB the type b
+   * @param destB the dest b
+   * @return the comparison
+   */
+  public static int compare(int sourceA, int groupA, int typeA, int destA,
+    int sourceB, int groupB, int typeB, int destB) {
+    if (sourceA != sourceB) {
+      return sourceA < sourceB ? -1 : 1;
+    }
+    if (groupA != groupB) {
+      return groupA < groupB ? -1 : 1;
+    }
+    if (typeA != typeB) {
+      return typeA < typeB ? -1 : 1;
+    }
+    if (destA != destB) {
+      return destA < destB ? -1 : 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Quick sorts the inclusive row range, recursing on the smaller partition so
+   * the stack depth stays logarithmic.
+   *
+   * @param lo the low row
+   * @param hi the high row
+   */
+  private void quickSort(int lo, int hi) {
+    while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+      // median of three, moved to lo
+      int mid = (lo + hi) >>> 1;
+      if (compareRows(mid, lo) < 0) {
+        swap(mid, lo);
+      }
+      if (compareRows(hi, lo) < 0) {
+        swap(hi, lo);
+      }
+      if (compareRows(hi, mid) < 0) {
+        swap(hi, mid);
+      }
+      swap(lo, mid);
+
+      // Hoare partition around the pivot at lo
+      int i = lo;
+      int j = hi + 1;
+      while (true) {
+        while (compareRows(++i, lo) < 0) {
+          if (i == hi) {
+            break;
+          }
+        }
+        while (compareRows(lo, --j) < 0) {
+          // the pivot itself stops the scan
+        }
+        if (i >= j) {
+          break;
+        }
+        swap(i, j);
+      }
+      swap(lo, j);
+
+      if (j - lo < hi - j) {
+        quickSort(lo, j - 1);
+        lo = j + 1;
+      } else {
+        quickSort(j + 1, hi);
+        hi = j - 1;
+      }
+    }
+    // insertion sort the remainder
+    for (int i = lo + 1; i <= hi; i++) {
+      for (int j = i; j > lo && compareRows(j, j - 1) < 0; j--) {
+        swap(j, j - 1);
+      }
+    }
+  }
+}
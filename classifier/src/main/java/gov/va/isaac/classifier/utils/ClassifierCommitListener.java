@@ -21,12 +21,15 @@ package gov.va.isaac.classifier.utils;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.classifier.Classifier;
+import gov.va.isaac.classifier.ClassifierStateSnapshot;
 import gov.va.isaac.classifier.SnomedSnorocketClassifier;
 import gov.va.isaac.config.profiles.UserProfile;
 import gov.va.isaac.config.profiles.UserProfileManager;
 import gov.va.isaac.interfaces.utility.CommitListenerI;
 import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
 import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -184,7 +187,8 @@ public class ClassifierCommitListener implements PropertyChangeListener,
                   Classifier classifier = new SnomedSnorocketClassifier();
 
                   // Identify if any components have been retired
-                  // if so, clear the classifier state and send user a warning
+                  // if so, clear the classifier state (including the saved
+                  // working set) and send user a warning
                   LOG.debug(" Check for retirements");
                   if (includesRetirements) {
                     LOG.debug("   retirements = true");
@@ -220,6 +224,15 @@ public class ClassifierCommitListener implements PropertyChangeListener,
     AppContext.getService(UserProfileManager.class).registerLoginCallback(
         (user) -> {
           enable();
+          // Read the saved working set in the background, so the first
+          // incremental classification of the session need not read it
+          Utility.execute(WorkPool.BACKGROUND, () -> {
+            try {
+              ClassifierStateSnapshot.getDefault().load();
+            } catch (Exception e) {
+              LOG.warn("Unable to load the saved classifier state", e);
+            }
+          });
         });
   }
 
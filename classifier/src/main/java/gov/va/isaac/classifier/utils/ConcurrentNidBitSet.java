@@ -0,0 +1,102 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.classifier.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free bit set keyed by nid. Nids are spread across the whole int range
+ * (they start at {@link Integer#MIN_VALUE}), so the bits are held in lazily
+ * allocated pages rather than one large array.
+ */
+public class ConcurrentNidBitSet {
+
+  /** The number of bits per page (2^16). */
+  private static final int PAGE_BITS = 16;
+
+  /** The number of longs per page. */
+  private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) >>> 6;
+
+  /** The pages. */
+  private final AtomicReferenceArray<AtomicLongArray> pages =
+      new AtomicReferenceArray<>(1 << (32 - PAGE_BITS));
+
+  /**
+   * Instantiates an empty {@link ConcurrentNidBitSet}.
+   */
+  public ConcurrentNidBitSet() {
+    // do nothing
+  }
+
+  /**
+   * Sets the bit for the nid.
+   *
+   * @param nid the nid
+   * @return <code>true</code> if the bit was not previously set (e.g. this call
+   *         "claimed" the nid), <code>false</code> otherwise
+   */
+  public boolean add(int nid) {
+    final int index = nid - Integer.MIN_VALUE;
+    final AtomicLongArray page = getPage(index >>> PAGE_BITS, true);
+    final int word = (index & ((1 << PAGE_BITS) - 1)) >>> 6;
+    final long mask = 1L << (index & 63);
+    while (true) {
+      long current = page.get(word);
+      if ((current & mask) != 0) {
+        return false;
+      }
+      if (page.compareAndSet(word, current, current | mask)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Indicates whether or not the bit for the nid is set.
+   *
+   * @param nid the nid
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  public boolean contains(int nid) {
+    final int index = nid - Integer.MIN_VALUE;
+    final AtomicLongArray page = getPage(index >>> PAGE_BITS, false);
+    if (page == null) {
+      return false;
+    }
+    final int word = (index & ((1 << PAGE_BITS) - 1)) >>> 6;
+    return (page.get(word) & (1L << (index & 63))) != 0;
+  }
+
+  /**
+   * Returns the page, optionally creating it.
+   *
+   * @param pageIndex the page index
+   * @param create the create flag
+   * @return the page
+   */
+  private AtomicLongArray getPage(int pageIndex, boolean create) {
+    AtomicLongArray page = pages.get(pageIndex);
+    if (page == null && create) {
+      pages.compareAndSet(pageIndex, null, new AtomicLongArray(WORDS_PER_PAGE));
+      page = pages.get(pageIndex);
+    }
+    return page;
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.classifier.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link ConceptTableTest}
+ */
+public class ConceptTableTest {
+
+  @Test
+  public void testSortOrdersAndDropsDuplicates() {
+    ConceptTable table = new ConceptTable();
+    table.add(-5, false);
+    table.add(7, true);
+    table.add(-2147483000, false);
+    table.add(7, true);
+    table.sort();
+
+    Assert.assertEquals(3, table.size());
+    Assert.assertEquals(-2147483000, table.getNid(0));
+    Assert.assertEquals(-5, table.getNid(1));
+    Assert.assertEquals(7, table.getNid(2));
+    Assert.assertTrue(table.isDefined(2));
+    Assert.assertEquals(1, table.indexOf(-5));
+    Assert.assertFalse(table.contains(8));
+  }
+
+  @Test
+  public void testDefinedToPrimitiveEdit() {
+    // As incrementalClassify re-adds an edited concept after the working set
+    ConceptTable table = new ConceptTable();
+    table.add(-10, true);
+    table.add(-20, true);
+    table.sort();
+    table.add(-10, false);
+    table.sort();
+
+    Assert.assertEquals(2, table.size());
+    Assert.assertFalse(table.isDefined(table.indexOf(-10)));
+    Assert.assertTrue(table.isDefined(table.indexOf(-20)));
+  }
+
+  @Test
+  public void testPrimitiveToDefinedEdit() {
+    ConceptTable table = new ConceptTable();
+    table.add(-10, false);
+    table.add(-10, true);
+    table.sort();
+
+    Assert.assertEquals(1, table.size());
+    Assert.assertTrue(table.isDefined(0));
+  }
+
+  @Test
+  public void testAddAllKeepsTheLaterTable() {
+    ConceptTable table = new ConceptTable();
+    table.add(3, true);
+    ConceptTable edits = new ConceptTable();
+    edits.add(3, false);
+    table.addAll(edits);
+    table.sort();
+
+    Assert.assertEquals(1, table.size());
+    Assert.assertFalse(table.isDefined(0));
+  }
+}
@@ -22,7 +22,6 @@ package gov.va.isaac.request.uscrs;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.gui.SimpleDisplayConcept;
-import gov.va.isaac.gui.conceptViews.helpers.ConceptViewerHelper;
 import gov.va.isaac.interfaces.gui.constants.SharedServiceNames;
 import gov.va.isaac.interfaces.gui.views.commonFunctionality.ExportTaskHandlerI;
 import gov.va.isaac.request.ContentRequestHandler;
@@ -33,7 +32,9 @@ import gov.va.isaac.request.uscrs.USCRSBatchTemplate.PICKLIST_Relationship_Type;
 import gov.va.isaac.request.uscrs.USCRSBatchTemplate.PICKLIST_Semantic_Tag;
 import gov.va.isaac.request.uscrs.USCRSBatchTemplate.PICKLIST_Source_Terminology;
 import gov.va.isaac.request.uscrs.USCRSBatchTemplate.SHEET;
+import gov.va.isaac.util.IdentifierResolver;
 import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.ViewCoordinateProvider;
 
 import java.io.File;
 import java.io.IOException;
@@ -73,7 +74,6 @@ import org.ihtsdo.otf.tcc.api.relationship.RelationshipChronicleBI;
 import org.ihtsdo.otf.tcc.api.relationship.RelationshipVersionBI;
 import org.ihtsdo.otf.tcc.datastore.Bdb;
 import org.ihtsdo.otf.tcc.datastore.stamp.StampBdb;
-import org.jfree.util.Log;
 import org.jvnet.hk2.annotations.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -325,7 +325,7 @@ public class UscrsContentRequestHandler implements ExportTaskHandlerI
 		for (RelationshipChronicleBI rel : concept.getRelationshipsOutgoing())
 		{
 			ViewCoordinate vc;
-			vc = OTFUtility.getViewCoordinate();
+			vc = ViewCoordinateProvider.copy(OTFUtility.getViewCoordinate());
 			vc.setRelationshipAssertionType(RelAssertionType.STATED);
 			//RelationshipVersionBI<?> relVersion = rel.getVersion(vc); //TODO: This was leading to possible issues. Needs more testing..
 			
@@ -738,50 +738,27 @@ public class UscrsContentRequestHandler implements ExportTaskHandlerI
 	
 	
 	private int getSct(int nid) {
-		
-		int descIdAttempt = 0, relIdAttempt = 0;
-		try {
-			descIdAttempt = Integer.parseInt(ConceptViewerHelper.getSctId(OTFUtility.getComponentChronicle(nid).getVersion(OTFUtility.getViewCoordinate())));
-		} catch(Exception e) {
-			//Eat it
-			//TODO - no - you shouldn't be taking an error here.  the poorly written ConceptViewerHelper is going to return the String "Unreleased" if it 
-			//doesn't find one - we should fix the API to be proper.  It should return an int and throw a checked exception if none is available, or perhaps, 
-			//return an Integer, and return null if none is available.
-		}
-		
-		try {
-			relIdAttempt = Integer.parseInt(ConceptViewerHelper.getSctId(OTFUtility.getComponentVersion(nid)));
-		} catch(Exception e) {
-			//Eat it
-		}
-		
-		try 
+		try
 		{
-			//TODO get rid of these sysouts - put in log statements if you want debug output
-			if(OTFUtility.getComponentChronicle(nid).getVersion(OTFUtility.getViewCoordinate()) != null && descIdAttempt != 0) { //Description
-				System.out.println("Fetching SCT of a Description");
-				return Integer.parseInt(ConceptViewerHelper.getSctId(OTFUtility.getComponentChronicle(nid).getVersion(OTFUtility.getViewCoordinate())));
-				
-			} else if(OTFUtility.getComponentVersion(nid) != null && relIdAttempt != 0) { //Relationship
-				System.out.println("Fetching SCT of a Relationship");
-				return Integer.parseInt(ConceptViewerHelper.getSctId(OTFUtility.getComponentVersion(nid)));
-			} else { 
-				System.out.println("Fetching SCT of a Concept (Probably)");
-				if(Integer.parseInt(ConceptViewerHelper.getSctId(OTFUtility.getConceptVersion(nid))) != 0) { //Concept
-					return Integer.parseInt(ConceptViewerHelper.getSctId(OTFUtility.getConceptVersion(nid)));
-				} else {
-					return currentRequestUuidMap.get(OTFUtility.getConceptVersion(nid).getPrimordialUuid());
-				}
+			long sctId = AppContext.getService(IdentifierResolver.class).getSctId(nid, OTFUtility.getViewCoordinate());
+			if (sctId == IdentifierResolver.NO_SCTID)
+			{
+				//Not released - use the id assigned to it in this request, if any
+				Integer requestId = currentRequestUuidMap.get(ExtendedAppContext.getDataStore().getUuidPrimordialForNid(nid));
+				return requestId == null ? 0 : requestId;
 			}
-			
-			
-		} catch(Exception e) 
-		{ 
-			Log.error("We could not get the SCT from the Given NID");
-			e.printStackTrace();  //TODO nope
+			if (sctId > Integer.MAX_VALUE)
+			{
+				LOG.error("SCTID " + sctId + " of nid " + nid + " does not fit the spreadsheet's numeric id");
+				return 0;
+			}
+			return (int) sctId;
+		}
+		catch(Exception e)
+		{
+			LOG.error("We could not get the SCT from the Given NID", e);
 			return 0;  //document the failure behavior - is 0 an appropriate thing to return if no sctid could be found?
 		}
-		
 	}
 	
 	/**
@@ -8,6 +8,7 @@ import gov.va.isaac.interfaces.gui.views.commonFunctionality.ExportTaskViewI;
 import gov.va.isaac.interfaces.utility.DialogResponse;
 import gov.va.isaac.util.OTFUtility;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 
 import java.io.File;
 import java.io.IOException;
@@ -104,7 +105,7 @@ public class UscrsPopupHandler implements ExportTaskViewI {
 			ExportTaskHandlerI uscrsExporter = AppContext.getService(ExportTaskHandlerI.class, SharedServiceNames.USCRS);
 			if(uscrsExporter != null) {
 				Task<Integer> task = uscrsExporter.createTask(conceptStream, file.toPath());
-				Utility.execute(task);
+				Utility.execute(WorkPool.BACKGROUND, task);
 				int count = task.get();
 				AppContext.getCommonDialogs().showInformationDialog("USCRS Content Request", "Content request submission successful. Output: " + count + "\n\n Upload ");
 			} else {
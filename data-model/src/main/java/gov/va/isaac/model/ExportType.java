@@ -31,6 +31,7 @@ import com.sun.javafx.collections.ImmutableObservableList;
 public enum ExportType {
 
     OWL("Owl", "xml"),
+    OWL_FUNCTIONAL("Owl (functional syntax, streamed)", "ofn"),
     RF2("RF2", null),
     ECONCEPT("eConcept", ".jbin");
 
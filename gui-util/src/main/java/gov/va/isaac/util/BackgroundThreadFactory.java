@@ -28,11 +28,24 @@ import java.util.concurrent.ThreadFactory;
  */
 public final class BackgroundThreadFactory implements ThreadFactory {
 
+    private final String namePrefix;
+
+    public BackgroundThreadFactory() {
+        this("Background");
+    }
+
+    /**
+     * @param namePrefix the start of the thread names, which end with "-Thread-" and the thread id
+     */
+    public BackgroundThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
     @Override
     public Thread newThread(Runnable r) {
         Thread t = Executors.defaultThreadFactory().newThread(r);
         t.setDaemon(true);
-        t.setName("Background-Thread-" + t.getId());
+        t.setName(namePrefix + "-Thread-" + t.getId());
         return t;
     }
 }
\ No newline at end of file
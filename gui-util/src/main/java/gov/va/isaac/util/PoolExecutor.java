@@ -0,0 +1,224 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.util;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PoolExecutor}
+ *
+ * A fixed size, named thread pool which runs queued tasks by {@link Priority}, and in submission order
+ * within a priority.  The queue is bounded - tasks submitted to a full queue are rejected, and counted.
+ *
+ * Tasks may be given an owner, typically the view that submitted them, so that everything an owner has
+ * queued or running can be cancelled at once with {@link #cancel(Object)}.  Running tasks are marked
+ * cancelled but not interrupted - the Berkeley DB store and Lucene treat an interrupt during I/O as fatal.
+ *
+ * See {@link WorkPool} for the pools of the application.
+ */
+public class PoolExecutor extends ThreadPoolExecutor
+{
+	public enum Priority {HIGH, NORMAL, LOW}
+
+	private final String name_;
+	private final int maxQueued_;
+	private final AtomicLong sequence_ = new AtomicLong();
+	private final AtomicLong rejected_ = new AtomicLong();
+	private final Set<PoolTask<?>> running_ = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param name the name of the pool, also used to name its threads
+	 * @param threads the number of threads
+	 * @param maxQueued the number of tasks which may wait for a thread before new ones are rejected
+	 */
+	public PoolExecutor(String name, int threads, int maxQueued)
+	{
+		super(threads, threads, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new BackgroundThreadFactory(name));
+		name_ = name;
+		maxQueued_ = maxQueued;
+		allowCoreThreadTimeOut(true);
+		setRejectedExecutionHandler((r, executor) ->
+		{
+			rejected_.incrementAndGet();
+			throw new RejectedExecutionException("The " + name_ + " pool rejected a task - " + getMetrics());
+		});
+	}
+
+	/**
+	 * Queues a task at {@link Priority#NORMAL}, with no owner.
+	 * @see java.util.concurrent.ThreadPoolExecutor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(Runnable command)
+	{
+		PoolTask<?> task = (command instanceof PoolTask ? (PoolTask<?>) command : new PoolTask<Object>(Executors.callable(command), Priority.NORMAL, null));
+		if (getQueue().size() >= maxQueued_)
+		{
+			getRejectedExecutionHandler().rejectedExecution(task, this);
+			return;
+		}
+		super.execute(task);
+	}
+
+	/**
+	 * Queues a task.
+	 *
+	 * @param priority the priority
+	 * @param owner the owner to cancel the task by, or null
+	 * @param task the task
+	 * @return the future of the task
+	 */
+	public <T> Future<T> submit(Priority priority, Object owner, Callable<T> task)
+	{
+		PoolTask<T> poolTask = new PoolTask<>(task, priority, owner);
+		execute(poolTask);
+		return poolTask;
+	}
+
+	/**
+	 * Queues a task.
+	 *
+	 * @param priority the priority
+	 * @param owner the owner to cancel the task by, or null
+	 * @param task the task
+	 * @return the future of the task
+	 */
+	public Future<?> submit(Priority priority, Object owner, Runnable task)
+	{
+		return submit(priority, owner, Executors.callable(task));
+	}
+
+	/**
+	 * Removes the queued tasks of an owner, and cancels its running ones without interrupting them.
+	 * Long running tasks should check {@link Future#isCancelled()} if they are to stop early.
+	 *
+	 * @param owner the owner, compared by identity
+	 * @return the number of tasks cancelled
+	 */
+	public int cancel(Object owner)
+	{
+		int cancelled = 0;
+		for (Runnable r : getQueue())
+		{
+			PoolTask<?> task = (PoolTask<?>) r;
+			if (task.owner_ == owner && getQueue().remove(task))
+			{
+				task.cancel(false);
+				cancelled++;
+			}
+		}
+		for (PoolTask<?> task : running_)
+		{
+			if (task.owner_ == owner && task.cancel(false))
+			{
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	public String getName()
+	{
+		return name_;
+	}
+
+	/**
+	 * @return the number of tasks waiting for a thread
+	 */
+	public int getQueueDepth()
+	{
+		return getQueue().size();
+	}
+
+	/**
+	 * @return the number of tasks rejected because the queue was full, or the pool shut down
+	 */
+	public long getRejectedCount()
+	{
+		return rejected_.get();
+	}
+
+	/**
+	 * @return the queue depth, active, completed and rejected counts, for logging
+	 */
+	public String getMetrics()
+	{
+		return name_ + " [queued=" + getQueueDepth() + ", active=" + getActiveCount() + ", completed=" + getCompletedTaskCount()
+			+ ", rejected=" + getRejectedCount() + "]";
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable)
+	{
+		return new PoolTask<>(callable, Priority.NORMAL, null);
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value)
+	{
+		return new PoolTask<>(Executors.callable(runnable, value), Priority.NORMAL, null);
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r)
+	{
+		running_.add((PoolTask<?>) r);
+		super.beforeExecute(t, r);
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t)
+	{
+		super.afterExecute(r, t);
+		running_.remove(r);
+	}
+
+	private class PoolTask<T> extends FutureTask<T> implements Comparable<PoolTask<?>>
+	{
+		private final Priority priority_;
+		private final Object owner_;
+		private final long sequence_;
+
+		PoolTask(Callable<T> callable, Priority priority, Object owner)
+		{
+			super(callable);
+			priority_ = priority;
+			owner_ = owner;
+			sequence_ = PoolExecutor.this.sequence_.getAndIncrement();
+		}
+
+		@Override
+		public int compareTo(PoolTask<?> o)
+		{
+			int result = priority_.compareTo(o.priority_);
+			return result != 0 ? result : Long.compare(sequence_, o.sequence_);
+		}
+	}
+}
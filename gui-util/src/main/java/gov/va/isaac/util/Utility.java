@@ -18,61 +18,73 @@
  */
 package gov.va.isaac.util;
 
+import gov.va.isaac.util.PoolExecutor.Priority;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 
  * {@link Utility}
  *
+ * The execute and submit methods without a {@link WorkPool} run on {@link WorkPool#INTERACTIVE}.
+ *
  * @author ocarlsen
  * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
  */
 public class Utility {
 
-    private static final ThreadPoolExecutor EXECUTOR = buildExecutor();
-    private static final ScheduledExecutorService scheduledExecutor_ = Executors.newScheduledThreadPool(1, new BackgroundThreadFactory());
-
-    private static ThreadPoolExecutor buildExecutor() {
-
-        // Thread pool settings.
-        int corePoolSize = 10;
-        int maximumPoolSize = 60;
-        int keepAliveTime = 60;
-        TimeUnit timeUnit = TimeUnit.SECONDS;
-        LinkedBlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<Runnable>();
-        BackgroundThreadFactory threadFactory = new BackgroundThreadFactory();
-
-        return new ThreadPoolExecutor(
-                corePoolSize,
-                maximumPoolSize,
-                keepAliveTime,
-                timeUnit,
-                workQueue,
-                threadFactory);
-    }
+    private static final ScheduledExecutorService scheduledExecutor_ = Executors.newScheduledThreadPool(1, new BackgroundThreadFactory("Scheduled"));
 
     public static void execute(Runnable command) {
-        EXECUTOR.execute(command);
+        execute(WorkPool.INTERACTIVE, command);
     }
     
     public static <T> Future<T> submit(Callable<T> task) {
-        return EXECUTOR.submit(task);
+        return WorkPool.INTERACTIVE.getExecutor().submit(task);
     }
     
     public static Future<?> submit(Runnable task) {
-        return EXECUTOR.submit(task);
+        return WorkPool.INTERACTIVE.getExecutor().submit(task);
     }
     
     public static <T> Future<?> submit(Runnable task, T result) {
-        return EXECUTOR.submit(task, result);
+        return WorkPool.INTERACTIVE.getExecutor().submit(task, result);
+    }
+    
+    public static void execute(WorkPool pool, Runnable command) {
+        pool.getExecutor().execute(command);
+    }
+    
+    /**
+     * @param owner the owner to cancel the task by with {@link #cancel(Object)}, or null
+     */
+    public static void execute(WorkPool pool, Priority priority, Object owner, Runnable command) {
+        pool.getExecutor().submit(priority, owner, command);
+    }
+    
+    public static <T> Future<T> submit(WorkPool pool, Callable<T> task) {
+        return pool.getExecutor().submit(task);
+    }
+    
+    /**
+     * @param owner the owner to cancel the task by with {@link #cancel(Object)}, or null
+     */
+    public static <T> Future<T> submit(WorkPool pool, Priority priority, Object owner, Callable<T> task) {
+        return pool.getExecutor().submit(priority, owner, task);
+    }
+    
+    /**
+     * Cancels the queued and running tasks of an owner, in all pools.
+     * 
+     * @return the number of tasks cancelled
+     */
+    public static int cancel(Object owner) {
+        return WorkPool.cancelAll(owner);
     }
     
     public static ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
@@ -129,7 +141,7 @@ public class Utility {
     
     public static void shutdownThreadPools()
     {
-        EXECUTOR.shutdownNow();
+        WorkPool.shutdownAll();
         scheduledExecutor_.shutdownNow();
     }
     
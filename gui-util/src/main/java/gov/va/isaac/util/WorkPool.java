@@ -0,0 +1,94 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.util;
+
+/**
+ * {@link WorkPool}
+ *
+ * The thread pools of the application, sized separately so that one kind of work can't starve another.
+ * Each pool is created on first use.
+ *
+ * <ul>
+ * <li>{@link #INTERACTIVE} - lookups a user is waiting on: searches, taxonomy expansion, loading views</li>
+ * <li>{@link #BACKGROUND} - long running, CPU bound work: indexing, exports, classification, rule engines</li>
+ * <li>{@link #IO} - work which mostly waits on disk or network: databases, change sets, downloads, sync</li>
+ * </ul>
+ */
+public enum WorkPool
+{
+	INTERACTIVE("Interactive", Math.max(10, Runtime.getRuntime().availableProcessors()), 100000),
+	BACKGROUND("Background", Math.max(2, Runtime.getRuntime().availableProcessors() / 2), 10000),
+	IO("IO", 4, 10000);
+
+	private final String name_;
+	private final int threads_;
+	private final int maxQueued_;
+	private volatile PoolExecutor executor_;
+
+	private WorkPool(String name, int threads, int maxQueued)
+	{
+		name_ = name;
+		threads_ = threads;
+		maxQueued_ = maxQueued;
+	}
+
+	public PoolExecutor getExecutor()
+	{
+		if (executor_ == null)
+		{
+			synchronized (this)
+			{
+				if (executor_ == null)
+				{
+					executor_ = new PoolExecutor(name_, threads_, maxQueued_);
+				}
+			}
+		}
+		return executor_;
+	}
+
+	/**
+	 * Cancels the tasks of an owner in every pool.
+	 *
+	 * @see PoolExecutor#cancel(Object)
+	 */
+	public static int cancelAll(Object owner)
+	{
+		int cancelled = 0;
+		for (WorkPool pool : values())
+		{
+			if (pool.executor_ != null)
+			{
+				cancelled += pool.executor_.cancel(owner);
+			}
+		}
+		return cancelled;
+	}
+
+	static void shutdownAll()
+	{
+		for (WorkPool pool : values())
+		{
+			if (pool.executor_ != null)
+			{
+				pool.executor_.shutdownNow();
+			}
+		}
+	}
+}
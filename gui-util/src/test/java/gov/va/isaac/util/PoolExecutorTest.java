@@ -0,0 +1,123 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.util;
+
+import gov.va.isaac.util.PoolExecutor.Priority;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link PoolExecutorTest}
+ */
+public class PoolExecutorTest
+{
+	@Test
+	public void priorityOrder() throws Exception
+	{
+		PoolExecutor executor = new PoolExecutor("Test", 1, 100);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> await(release));
+
+		List<String> order = new CopyOnWriteArrayList<>();
+		executor.submit(Priority.LOW, null, () -> order.add("low"));
+		executor.submit(Priority.NORMAL, null, () -> order.add("normal 1"));
+		executor.submit(Priority.HIGH, null, () -> order.add("high"));
+		Future<?> last = executor.submit(Priority.NORMAL, null, () -> order.add("normal 2"));
+		release.countDown();
+
+		executor.submit(Priority.LOW, null, () -> null).get(10, TimeUnit.SECONDS);
+		Assert.assertTrue(last.isDone());
+		Assert.assertEquals("[high, normal 1, normal 2, low]", order.toString());
+		executor.shutdown();
+	}
+
+	@Test
+	public void cancelByOwner() throws Exception
+	{
+		PoolExecutor executor = new PoolExecutor("Test", 1, 100);
+		Object owner = new Object();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> running = executor.submit(Priority.NORMAL, owner, () ->
+		{
+			started.countDown();
+			await(release);
+		});
+		Future<?> queued = executor.submit(Priority.NORMAL, owner, () -> {});
+		Future<?> other = executor.submit(Priority.NORMAL, new Object(), () -> {});
+		started.await();
+
+		Assert.assertEquals(2, executor.cancel(owner));
+		Assert.assertTrue(running.isCancelled());
+		Assert.assertTrue(queued.isCancelled());
+		release.countDown();
+		other.get(10, TimeUnit.SECONDS);
+		Assert.assertFalse(other.isCancelled());
+		executor.shutdown();
+	}
+
+	@Test
+	public void boundedQueue() throws Exception
+	{
+		PoolExecutor executor = new PoolExecutor("Test", 1, 2);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		executor.execute(() ->
+		{
+			started.countDown();
+			await(release);
+		});
+		started.await();
+		executor.execute(() -> {});
+		executor.execute(() -> {});
+		Assert.assertEquals(2, executor.getQueueDepth());
+		try
+		{
+			executor.execute(() -> {});
+			Assert.fail("Expected the full queue to reject the task");
+		}
+		catch (RejectedExecutionException e)
+		{
+			// expected
+		}
+		Assert.assertEquals(1, executor.getRejectedCount());
+		release.countDown();
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		Assert.assertEquals(3, executor.getCompletedTaskCount());
+	}
+
+	private static void await(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
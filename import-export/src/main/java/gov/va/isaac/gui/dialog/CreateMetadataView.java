@@ -27,6 +27,7 @@ import gov.va.isaac.interfaces.gui.views.PopupViewI;
 import gov.va.isaac.models.api.BdbInformationModelService;
 import gov.va.isaac.models.api.InformationModelService;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -138,6 +139,6 @@ public class CreateMetadataView implements PopupViewI, IsaacViewWithMenusI {
             .otherwise(Cursor.DEFAULT);
     parent.getScene().cursorProperty().bind(cursorBinding);
 
-    Utility.execute(task);
+    Utility.execute(WorkPool.BACKGROUND, task);
   }
 }
\ No newline at end of file
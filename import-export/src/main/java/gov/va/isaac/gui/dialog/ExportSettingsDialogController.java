@@ -23,6 +23,7 @@ import gov.va.isaac.ie.ExportHandler;
 import gov.va.isaac.model.InformationModelType;
 import gov.va.isaac.models.InformationModel;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 
 import java.io.File;
 import java.io.IOException;
@@ -171,6 +172,6 @@ public class ExportSettingsDialogController {
         ObjectBinding<Cursor> cursorBinding = Bindings.when(task.runningProperty()).then(Cursor.WAIT).otherwise(Cursor.DEFAULT);
         stage.getScene().cursorProperty().bind(cursorBinding);
 
-        Utility.execute(task);
+        Utility.execute(WorkPool.BACKGROUND, task);
     }
 }
@@ -127,6 +127,7 @@ public class ExportFileHandler {
       }
 
       EConceptExporter econceptExporter = new EConceptExporter(outputStream);
+      econceptExporter.setParallel(true);
       exporter = econceptExporter;
       econceptExporter.addProgressListener(listener);
       econceptExporter.export(pathNid);
@@ -135,14 +136,16 @@ public class ExportFileHandler {
 
     }
 
-    // Handle Owl
-    else if (exportType == ExportType.OWL) {
+    // Handle Owl - RDF/XML built in memory, or functional syntax streamed
+    else if (exportType == ExportType.OWL
+        || exportType == ExportType.OWL_FUNCTIONAL) {
       // Can only export SNOMED at this time
       if (pathNid != Snomed.SNOMED_RELEASE_PATH.getNid()) {
         throw new UnsupportedOperationException(
             "OWL Exporter only supports SNOMED path at this time.");
       }
-      String fileName = "snomed.owl";
+      boolean streaming = exportType == ExportType.OWL_FUNCTIONAL;
+      String fileName = streaming ? "snomed.ofn" : "snomed.owl";
       File file = new File(folder, fileName);
       checkExists(file);
       OutputStream outputStream = null;
@@ -158,6 +161,8 @@ public class ExportFileHandler {
       }
 
       OWLExporter owlExporter = new OWLExporter(outputStream);
+      owlExporter.setStreaming(streaming);
+      owlExporter.setParallel(streaming);
       exporter = owlExporter;
       owlExporter.addProgressListener(listener);
       owlExporter.export(pathNid);
@@ -184,6 +189,8 @@ public class ExportFileHandler {
               COUNTRY_CODE.US, namespace, Calendar.getInstance().getTime(),
               pathNid, OTFUtility.getViewCoordinate(), taxonomyParentNids);
       exporter = rf2Export;
+      rf2Export.setParallel(true);
+      rf2Export.setSortOutput(true);
       rf2Export.addProgressListener(listener);
       rf2Export.export(pathNid);
       rf2Export.writeOneTimeFiles();
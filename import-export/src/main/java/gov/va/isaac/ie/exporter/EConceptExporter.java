@@ -8,13 +8,12 @@ import gov.va.isaac.util.ProgressEvent;
 import gov.va.isaac.util.ProgressListener;
 import gov.va.isaac.util.OTFUtility;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptFetcherBI;
@@ -33,6 +32,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Handler for export to file in eConcept format.
  *
+ * Concepts are serialized through an {@link EConceptFileWriter}; with
+ * {@link #setParallel(boolean)} they are converted and serialized on all
+ * cores, leaving one thread to write them - in the same order, so the output
+ * is the same either way.
+ *
  * @author tnaing
  * @author bcarlsen
  */
@@ -52,14 +56,17 @@ public class EConceptExporter extends CommonBase implements
   private static BdbTerminologyStore dataStore = ExtendedAppContext
       .getDataStore();
 
-  /** The dos. */
-  private DataOutputStream dos;
+  /** The writer. */
+  private EConceptFileWriter writer;
 
   /** The count. */
-  private int count = 0;
+  private AtomicInteger count = new AtomicInteger();
 
   /** The all concepts count. */
-  private int allCount = 0;
+  private AtomicInteger allCount = new AtomicInteger();
+
+  /** The parallel flag. */
+  private boolean parallel = false;
 
   /** The path nid. */
   private int pathNid;
@@ -71,7 +78,7 @@ public class EConceptExporter extends CommonBase implements
   private int progressMax = 0;
 
   /**  The request cancel. */
-  private boolean requestCancel = false;
+  private volatile boolean requestCancel = false;
   
   /**
    * Instantiates a {@link EConceptExporter} from the specified parameters.
@@ -79,7 +86,39 @@ public class EConceptExporter extends CommonBase implements
    * @param fileOutputStream the file output stream
    */
   public EConceptExporter(OutputStream fileOutputStream) {
-    dos = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+    writer = new EConceptFileWriter(fileOutputStream);
+  }
+
+  /**
+   * Instantiates a {@link EConceptExporter} writing to the specified file,
+   * optionally gzip compressed and split into parts.
+   *
+   * @param file the file
+   * @param compress the compress flag
+   * @param maxPartBytes the maximum uncompressed bytes per part, 0 for a single
+   *          file
+   */
+  public EConceptExporter(File file, boolean compress, long maxPartBytes) {
+    writer = new EConceptFileWriter(file, compress, maxPartBytes);
+  }
+
+  /**
+   * Sets the parallel flag. When set, concepts are converted and serialized on
+   * all cores.
+   *
+   * @param parallel the parallel flag
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  /**
+   * Returns the files written, once the export is done.
+   *
+   * @return the files, empty when exporting to a stream
+   */
+  public List<File> getFiles() {
+    return writer.getFiles();
   }
 
   /**
@@ -92,10 +131,12 @@ public class EConceptExporter extends CommonBase implements
   public void export(int pathNid) throws Exception {
     this.pathNid = pathNid;
     vc = makeViewCoordinate(pathNid);
-    dataStore.iterateConceptDataInSequence(this);
-    
-    dos.flush();
-    dos.close();
+    try {
+      writer.writeAll(getNidSet().getSetValues(),
+          nid -> convert(dataStore.getConceptVersion(vc, nid)), parallel);
+    } finally {
+      writer.close();
+    }
     LOG.info("Wrote " + count + " concepts.");
   }
 
@@ -127,29 +168,52 @@ public class EConceptExporter extends CommonBase implements
    * processUnfetchedConceptData(int,
    * org.ihtsdo.otf.tcc.api.concept.ConceptFetcherBI)
    */
-  @SuppressWarnings("cast")
   @Override
   public void processUnfetchedConceptData(int cNid, ConceptFetcherBI fetcher)
     throws Exception {
-    ConceptVersionBI concept = fetcher.fetch(vc);
-    allCount++;
+    TtkConceptChronicle converted = convert(fetcher.fetch(vc));
+    if (converted != null) {
+      writer.write(converted);
+    }
+  }
+
+  /**
+   * Converts the concept, if it qualifies for export.
+   *
+   * @param concept the concept
+   * @return the converted concept, or <code>null</code> if it doesn't qualify
+   *         or the export is cancelled
+   * @throws Exception the exception
+   */
+  @SuppressWarnings("cast")
+  private TtkConceptChronicle convert(ConceptVersionBI concept)
+    throws Exception {
+    if (requestCancel) {
+      return null;
+    }
+    int ct = allCount.incrementAndGet();
+    TtkConceptChronicle converted = null;
     if (LOG.isDebugEnabled())
     {
       if (concept.getPrimordialUuid().toString().equals("")){
         LOG.debug("Found a concept with no primoridial UUID: {}", concept);
-        return;
+        return null;
       }
     }
     if (Exporter.isQualifying(concept.getNid(), pathNid, vc)) {
-      count++;
-      TtkConceptChronicle converted = ChronicleConverter.convert(concept);
-      converted.writeExternal(dos);
+      count.incrementAndGet();
+      converted = ChronicleConverter.convert(concept);
     }
     // Handle progress monitor
-    if ((int) ((allCount * 100) / progressMax) > progress) {
-      progress = (allCount * 100) / progressMax;
-      fireProgressEvent(progress, progress + " % finished");
+    if ((int) ((ct * 100L) / progressMax) > progress) {
+      synchronized (this) {
+        if ((int) ((ct * 100L) / progressMax) > progress) {
+          progress = (int) ((ct * 100L) / progressMax);
+          fireProgressEvent(progress, progress + " % finished");
+        }
+      }
     }
+    return converted;
   }
   
 	public static ViewCoordinate makeViewCoordinate(int pathInput) {
@@ -180,7 +244,7 @@ public class EConceptExporter extends CommonBase implements
 	}
 
   public int getCount() {
-	  return count;
+	  return count.get();
   }
   
   /*
@@ -0,0 +1,482 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.ie.exporter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import org.ihtsdo.otf.tcc.dto.TtkConceptChronicle;
+
+/**
+ * A writer for eConcept (.jbin) files whose concepts may be converted and
+ * serialized on all cores. Concepts are serialized in chunks, each numbered in
+ * the order of its concepts, and a dedicated thread compresses and writes the
+ * chunks in that order, so serialization never waits on disk I/O.
+ *
+ * {@link #writeAll(int[], Converter, boolean)} cuts the concepts into the same
+ * chunks whether or not it runs in parallel, so the output is the same, byte
+ * for byte, either way. Output may be gzip compressed, and may be split into
+ * parts of a bounded size that can be loaded in parallel; a part always ends on
+ * a concept boundary.
+ */
+public class EConceptFileWriter {
+
+  /** The number of concepts {@link #writeAll} serializes into one chunk. */
+  private static final int BATCH_SIZE = 256;
+
+  /** The size at which {@link #write(TtkConceptChronicle)} hands a chunk over. */
+  private static final int CHUNK_SIZE = 256 * 1024;
+
+  /** The chunks that may be in the works at once, so serialization can't run away. */
+  private static final int MAX_PENDING_CHUNKS = 64;
+
+  /** The chunk marking the end of the output. */
+  private static final Chunk END_OF_FILE = new Chunk(-1, new byte[0]);
+
+  /**
+   * Converts a concept for {@link EConceptFileWriter#writeAll}.
+   */
+  public interface Converter {
+
+    /**
+     * Converts the concept.
+     *
+     * @param nid the concept nid
+     * @return the concept, or <code>null</code> to leave it out
+     * @throws Exception the exception
+     */
+    TtkConceptChronicle convert(int nid) throws Exception;
+  }
+
+  /** The file, or the name pattern of the parts. */
+  private final File file;
+
+  /** The compress flag. */
+  private final boolean compress;
+
+  /** The maximum uncompressed bytes per part, 0 for a single file. */
+  private final long maxPartBytes;
+
+  /** The stream, when writing to a stream rather than a file. */
+  private final OutputStream stream;
+
+  /** The files written. */
+  private final List<File> files = Collections
+      .synchronizedList(new ArrayList<>());
+
+  /** The chunks handed over, in no particular order. */
+  private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+
+  /** A permit for each chunk that may be in the works. */
+  private final Semaphore pendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+
+  /** The sequence number of the next chunk. */
+  private long nextSequence = 0;
+
+  /** The concepts of {@link #write(TtkConceptChronicle)} not yet handed over. */
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+      CHUNK_SIZE + 64 * 1024);
+
+  /** The out. */
+  private final DataOutputStream out = new DataOutputStream(bytes);
+
+  /** The writer stage thread. */
+  private final Thread writerThread;
+
+  /** The first failure, of the writer stage or of a serializing thread. */
+  private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+  /** The closed flag. */
+  private boolean closed = false;
+
+  /**
+   * Instantiates a {@link EConceptFileWriter} writing a single uncompressed
+   * stream, which is closed with the writer.
+   *
+   * @param out the out
+   */
+  public EConceptFileWriter(OutputStream out) {
+    this(null, out, false, 0);
+  }
+
+  /**
+   * Instantiates a {@link EConceptFileWriter} writing files. When split, parts
+   * are named after the file with a part number before the extension, e.g.
+   * <code>eConcepts-2.jbin</code>. Compressed files get a <code>.gz</code>
+   * suffix.
+   *
+   * @param file the file
+   * @param compress the compress flag
+   * @param maxPartBytes the maximum uncompressed bytes per part, 0 for a single
+   *          file
+   */
+  public EConceptFileWriter(File file, boolean compress, long maxPartBytes) {
+    this(file, null, compress, maxPartBytes);
+  }
+
+  /**
+   * Instantiates a {@link EConceptFileWriter} and starts its writer stage.
+   *
+   * @param file the file
+   * @param stream the stream
+   * @param compress the compress flag
+   * @param maxPartBytes the max part bytes
+   */
+  private EConceptFileWriter(File file, OutputStream stream, boolean compress,
+      long maxPartBytes) {
+    this.file = file;
+    this.stream = stream;
+    this.compress = compress;
+    this.maxPartBytes = maxPartBytes;
+    writerThread =
+        new Thread(this::drain, "eConcept writer "
+            + (file == null ? "" : file.getName()));
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Converts and writes the concepts in the order of the nids, in chunks of
+   * {@link #BATCH_SIZE} concepts. When parallel, the chunks are converted and
+   * serialized on all cores, and still written in order.
+   *
+   * @param nids the concept nids, in output order
+   * @param converter the converter
+   * @param parallel the parallel flag
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeAll(int[] nids, Converter converter, boolean parallel)
+    throws IOException {
+    ExecutorService pool =
+        parallel ? Executors.newFixedThreadPool(Runtime.getRuntime()
+            .availableProcessors()) : null;
+    try {
+      for (int start = 0; start < nids.length && failure.get() == null; start +=
+          BATCH_SIZE) {
+        final int from = start;
+        final int to = Math.min(nids.length, start + BATCH_SIZE);
+        final long sequence = reserveSequence();
+        if (pool == null) {
+          handOff(sequence, serialize(nids, from, to, converter));
+        } else {
+          pool.execute(() -> {
+            byte[] chunk = new byte[0];
+            try {
+              chunk = serialize(nids, from, to, converter);
+            } catch (Exception e) {
+              fail(e instanceof IOException ? (IOException) e
+                  : new IOException("Unable to serialize eConcepts", e));
+            }
+            // hand over even a failed chunk, so the writer stage isn't left
+            // waiting for it
+            handOff(sequence, chunk);
+          });
+        }
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+        try {
+          pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+          pool.shutdownNow();
+          Thread.currentThread().interrupt();
+          fail(new IOException("Interrupted writing eConcepts", e));
+        }
+      }
+    }
+    checkFailure();
+  }
+
+  /**
+   * Serializes a concept. Concepts written this way and by
+   * {@link #writeAll(int[], Converter, boolean)} come out in the order they
+   * were written.
+   *
+   * @param concept the concept
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void write(TtkConceptChronicle concept)
+    throws IOException {
+    concept.writeExternal(out);
+    if (bytes.size() >= CHUNK_SIZE) {
+      handOffBuffer();
+    }
+  }
+
+  /**
+   * Returns the files written, in order.
+   *
+   * @return the files, empty when writing to a stream
+   */
+  public List<File> getFiles() {
+    return new ArrayList<>(files);
+  }
+
+  /**
+   * Hands over the concepts not yet handed over and waits for the writer stage
+   * to finish. Must be called after all writing is done.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (bytes.size() > 0) {
+        handOffBuffer();
+      }
+    } finally {
+      chunks.add(END_OF_FILE);
+      try {
+        writerThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted writing eConcepts", e);
+      }
+    }
+    checkFailure();
+  }
+
+  /**
+   * Writes the chunks handed over in sequence order until the end of file
+   * marker, starting a new part when the current one is full.
+   */
+  private void drain() {
+    Map<Long, byte[]> waiting = new HashMap<>();
+    long next = 0;
+    OutputStream partOut = null;
+    long partBytes = 0;
+    try {
+      while (true) {
+        Chunk chunk = chunks.take();
+        if (chunk == END_OF_FILE) {
+          break;
+        }
+        waiting.put(chunk.sequence, chunk.bytes);
+        byte[] bytes;
+        while ((bytes = waiting.remove(next)) != null) {
+          next++;
+          pendingChunks.release();
+          // after a failure keep taking chunks, so no producer blocks forever
+          if (failure.get() == null) {
+            try {
+              if (partOut == null) {
+                partOut = openPart();
+                partBytes = 0;
+              }
+              partOut.write(bytes);
+              partBytes += bytes.length;
+              if (maxPartBytes > 0 && partBytes >= maxPartBytes) {
+                partOut.close();
+                partOut = null;
+              }
+            } catch (IOException e) {
+              fail(e);
+            }
+          }
+        }
+      }
+      if (!waiting.isEmpty() && failure.get() == null) {
+        fail(new IOException("eConcept chunk " + next + " was never written"));
+      }
+      // always leave a file behind, even if empty
+      if (partOut == null && files.isEmpty() && failure.get() == null) {
+        partOut = openPart();
+      }
+    } catch (InterruptedException e) {
+      fail(new IOException("Interrupted writing eConcepts", e));
+    } catch (IOException e) {
+      fail(e);
+    } finally {
+      if (partOut != null) {
+        try {
+          partOut.close();
+        } catch (IOException e) {
+          fail(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Opens the next part.
+   *
+   * @return the output stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private OutputStream openPart() throws IOException {
+    if (stream != null) {
+      return new BufferedOutputStream(stream, CHUNK_SIZE);
+    }
+    File part = file;
+    if (maxPartBytes > 0) {
+      String name = file.getName();
+      int dot = name.lastIndexOf('.');
+      String base = dot < 0 ? name : name.substring(0, dot);
+      String extension = dot < 0 ? "" : name.substring(dot);
+      part =
+          new File(file.getParentFile(), base + "-" + (files.size() + 1)
+              + extension);
+    }
+    if (compress) {
+      part = new File(part.getPath() + ".gz");
+    }
+    files.add(part);
+    OutputStream partOut = new FileOutputStream(part);
+    if (compress) {
+      return new GZIPOutputStream(partOut, CHUNK_SIZE);
+    }
+    return new BufferedOutputStream(partOut, CHUNK_SIZE);
+  }
+
+  /**
+   * Serializes the concepts of a chunk.
+   *
+   * @param nids the nids
+   * @param from the first position of the chunk
+   * @param to the position after the chunk
+   * @param converter the converter
+   * @return the serialized concepts
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static byte[] serialize(int[] nids, int from, int to,
+    Converter converter) throws IOException {
+    ByteArrayOutputStream chunk = new ByteArrayOutputStream(64 * 1024);
+    DataOutputStream chunkOut = new DataOutputStream(chunk);
+    for (int i = from; i < to; i++) {
+      TtkConceptChronicle concept;
+      try {
+        concept = converter.convert(nids[i]);
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException("Unable to convert concept " + nids[i], e);
+      }
+      if (concept != null) {
+        concept.writeExternal(chunkOut);
+      }
+    }
+    chunkOut.flush();
+    return chunk.toByteArray();
+  }
+
+  /**
+   * Reserves the sequence number of the next chunk, waiting while too many
+   * chunks are in the works.
+   *
+   * @return the sequence number
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private synchronized long reserveSequence() throws IOException {
+    checkFailure();
+    try {
+      pendingChunks.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted writing eConcepts", e);
+    }
+    return nextSequence++;
+  }
+
+  /**
+   * Hands the concepts of {@link #write(TtkConceptChronicle)} to the writer
+   * stage.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void handOffBuffer() throws IOException {
+    out.flush();
+    handOff(reserveSequence(), bytes.toByteArray());
+    bytes.reset();
+  }
+
+  /**
+   * Hands a chunk to the writer stage.
+   *
+   * @param sequence the sequence number
+   * @param chunk the serialized concepts
+   */
+  private void handOff(long sequence, byte[] chunk) {
+    chunks.add(new Chunk(sequence, chunk));
+  }
+
+  /**
+   * Records a failure, unless one is recorded already.
+   *
+   * @param e the failure
+   */
+  private void fail(IOException e) {
+    failure.compareAndSet(null, e);
+  }
+
+  /**
+   * Rethrows a failure of the writer stage or of a serializing thread.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void checkFailure() throws IOException {
+    if (failure.get() != null) {
+      throw new IOException("Unable to write eConcepts", failure.get());
+    }
+  }
+
+  /**
+   * Serialized concepts and their place in the output.
+   */
+  private static class Chunk {
+
+    /** The sequence number. */
+    final long sequence;
+
+    /** The bytes. */
+    final byte[] bytes;
+
+    /**
+     * Instantiates a {@link Chunk} from the specified parameters.
+     *
+     * @param sequence the sequence number
+     * @param bytes the bytes
+     */
+    Chunk(long sequence, byte[] bytes) {
+      this.sequence = sequence;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -1,23 +1,31 @@
 package gov.va.isaac.ie.exporter;
 
+import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
-import gov.va.isaac.gui.conceptViews.helpers.ConceptViewerHelper;
 import gov.va.isaac.models.util.CommonBase;
+import gov.va.isaac.util.IdentifierResolver;
 import gov.va.isaac.util.ProgressEvent;
 import gov.va.isaac.util.ProgressListener;
 import gov.va.isaac.util.OTFUtility;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ihtsdo.otf.tcc.api.concept.ConceptFetcherBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI;
@@ -50,10 +58,17 @@ import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.ac.manchester.cs.owl.owlapi.OWLDataFactoryImpl;
+
 /**
  * Handler for exporting SNOMED to Owl. NOTE: this only works presently for
  * SNOMED and US English.
  *
+ * By default the ontology is built in memory and saved as RDF/XML. In streaming
+ * mode the axioms of each concept are written in OWL functional syntax as soon
+ * as the concept is converted, so memory use doesn't grow with the terminology,
+ * and concepts may be converted in parallel.
+ *
  * @author Tim Kao
  */
 public class OWLExporter extends CommonBase implements Exporter,
@@ -69,39 +84,58 @@ public class OWLExporter extends CommonBase implements Exporter,
   private static BdbTerminologyStore dataStore = ExtendedAppContext
       .getDataStore();
 
+  /** The identifier resolver. */
+  private IdentifierResolver idResolver = AppContext
+      .getService(IdentifierResolver.class);
+
   /** The dos. */
   private DataOutputStream dos;
 
   /** The count. */
-  private int count = 0;
+  private AtomicInteger count = new AtomicInteger();
 
   /** The all concepts count. */
-  private int allCount = 0;
+  private AtomicInteger allCount = new AtomicInteger();
 
   /** The path nid. */
   private int pathNid;
 
-  /** The manager. */
-  private static OWLOntologyManager manager = OWLManager
-      .createOWLOntologyManager();
+  /** The manager, one per export so no ontology outlives it. */
+  private OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
 
-  /** The snomed ontology. */
-  private static OWLOntology snomed = null;
+  /** The snomed ontology, only built when not streaming. */
+  private OWLOntology snomed = null;
 
   /** The owl data factory. */
-  private static OWLDataFactory factory = manager.getOWLDataFactory();
+  private OWLDataFactory factory = manager.getOWLDataFactory();
+
+  /** The owl data factory of each worker thread, when parallel. */
+  private ThreadLocal<OWLDataFactory> threadFactory = ThreadLocal
+      .withInitial(OWLDataFactoryImpl::new);
 
   /** The pm. */
   private static PrefixManager pm = new DefaultPrefixManager("id/");
 
   /** The format. */
-  private static OWLOntologyFormat format = new RDFXMLOntologyFormat();
+  private OWLOntologyFormat format = new RDFXMLOntologyFormat();
+
+  /** The ontology annotations. */
+  private List<OWLAnnotation> ontologyAnnotations = new ArrayList<>();
+
+  /** The streaming flag. */
+  private boolean streaming = false;
 
-  /** The set of axioms. */
-  private Set<OWLAxiom> setOfAxioms = new HashSet<>();
+  /** The parallel flag. */
+  private boolean parallel = false;
+
+  /** The functional syntax writer, when streaming. */
+  private OWLFunctionalSyntaxWriter owlWriter;
+
+  /** The nids of the properties already declared. */
+  private Set<Integer> declaredProperties = ConcurrentHashMap.newKeySet();
 
   /** The request cancel. */
-  private boolean requestCancel = false;
+  private volatile boolean requestCancel = false;
 
   //
   // Hardcoded SNOMED info
@@ -166,40 +200,53 @@ public class OWLExporter extends CommonBase implements Exporter,
    */
   public OWLExporter(OutputStream fileOutputStream) throws Exception {
     dos = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
-    if (snomed == null) {
-      // Create a new ontology
-      snomed =
-          manager
-              .createOntology(new OWLOntologyID(snomedIRI, snomedVersionIRI));
-      format.setParameter("xml:base", snomedNamespace);
-
-      // Obtain SNOMED root concept
-      // TODO: this needs to be generalized
-      UUID snomedRootUUID = Taxonomies.SNOMED.getUuids()[0];
-      ConceptVersionBI snomedRootConcept =
-          OTFUtility.getConceptVersion(snomedRootUUID);
-
-      // Add annotation based on root concept
-      for (DescriptionVersionBI<?> desc : snomedRootConcept
-          .getDescriptionsActive()) {
-        if (desc.getText().contains("Release")) {
-          manager.applyChange(new AddOntologyAnnotation(snomed, factory
-              .getOWLAnnotation(factory
-                  .getOWLAnnotationProperty(OWLRDFVocabulary.OWL_VERSION_INFO
-                      .getIRI()), factory.getOWLLiteral(desc.getText()))));
-        }
-        if (desc.getText().contains("IHTSDO")) {
-          manager.applyChange(new AddOntologyAnnotation(snomed, factory
-              .getOWLAnnotation(factory
-                  .getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_COMMENT
-                      .getIRI()), factory.getOWLLiteral(desc.getText()))));
-        }
+    format.setParameter("xml:base", snomedNamespace);
+
+    // Obtain SNOMED root concept
+    // TODO: this needs to be generalized
+    UUID snomedRootUUID = Taxonomies.SNOMED.getUuids()[0];
+    ConceptVersionBI snomedRootConcept =
+        OTFUtility.getConceptVersion(snomedRootUUID);
+
+    // Add annotation based on root concept
+    for (DescriptionVersionBI<?> desc : snomedRootConcept
+        .getDescriptionsActive()) {
+      if (desc.getText().contains("Release")) {
+        ontologyAnnotations.add(factory.getOWLAnnotation(factory
+            .getOWLAnnotationProperty(OWLRDFVocabulary.OWL_VERSION_INFO
+                .getIRI()), factory.getOWLLiteral(desc.getText())));
+      }
+      if (desc.getText().contains("IHTSDO")) {
+        ontologyAnnotations.add(factory.getOWLAnnotation(factory
+            .getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_COMMENT.getIRI()),
+            factory.getOWLLiteral(desc.getText())));
       }
-      manager.applyChange(new AddOntologyAnnotation(snomed, factory
-          .getOWLAnnotation(factory
-              .getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI()),
-              factory.getOWLLiteral(snomedOntologyName))));
     }
+    ontologyAnnotations.add(factory.getOWLAnnotation(
+        factory.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI()),
+        factory.getOWLLiteral(snomedOntologyName)));
+  }
+
+  /**
+   * Sets the streaming flag. When set, the ontology is written in OWL
+   * functional syntax concept by concept instead of being saved as RDF/XML at
+   * the end.
+   *
+   * @param streaming the streaming flag
+   */
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  /**
+   * Sets the parallel flag. When set while streaming, concepts are converted by
+   * the terminology store's worker threads, and come out in no particular
+   * order. Ignored when not streaming.
+   *
+   * @param parallel the parallel flag
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
   }
 
   /**
@@ -211,11 +258,37 @@ public class OWLExporter extends CommonBase implements Exporter,
   @Override
   public void export(int pathNid) throws Exception {
     this.pathNid = pathNid;
-    dataStore.iterateConceptDataInSequence(this);
-    manager.addAxioms(snomed, setOfAxioms);
-    manager.saveOntology(snomed, format, dos);
-    dos.flush();
-    dos.close();
+    // one pass to read the SCTIDs of the exported concepts, rather than a lookup
+    // per class expression
+    idResolver.warm(getNidSet().getSetValues(), OTFUtility.getViewCoordinate());
+    if (streaming) {
+      Writer out =
+          new BufferedWriter(new OutputStreamWriter(dos,
+              StandardCharsets.UTF_8), 1 << 16);
+      owlWriter = new OWLFunctionalSyntaxWriter(out);
+      owlWriter.writeHeader(snomedIRI, snomedVersionIRI, ontologyAnnotations);
+      if (parallel) {
+        dataStore.iterateConceptDataInParallel(this);
+      } else {
+        dataStore.iterateConceptDataInSequence(this);
+      }
+      owlWriter.finish();
+      out.close();
+    } else {
+      snomed =
+          manager
+              .createOntology(new OWLOntologyID(snomedIRI, snomedVersionIRI));
+      for (OWLAnnotation annotation : ontologyAnnotations) {
+        manager.applyChange(new AddOntologyAnnotation(snomed, annotation));
+      }
+      parallel = false;
+      dataStore.iterateConceptDataInSequence(this);
+      manager.saveOntology(snomed, format, dos);
+      manager.removeOntology(snomed);
+      snomed = null;
+      dos.flush();
+      dos.close();
+    }
     LOG.info("Wrote " + count + " concepts.");
   }
 
@@ -255,15 +328,19 @@ public class OWLExporter extends CommonBase implements Exporter,
       throw new InterruptedException();
     ConceptVersionBI concept = fetcher.fetch(OTFUtility.getViewCoordinate());
     LOG.debug("Process concept " + concept.getPrimordialUuid());
-    allCount++;
+    int ct = allCount.incrementAndGet();
     if (Exporter.isQualifying(concept.getNid(), pathNid)) {
-      count++;
+      count.incrementAndGet();
       convertToOWLObjects(concept);
     }
     // Handle progress monitor
-    if ((int) ((allCount * 100) / progressMax) > progress) {
-      progress = (allCount * 100) / progressMax;
-      fireProgressEvent(progress, progress + " % finished");
+    if ((int) ((ct * 100L) / progressMax) > progress) {
+      synchronized (this) {
+        if ((int) ((ct * 100L) / progressMax) > progress) {
+          progress = (int) ((ct * 100L) / progressMax);
+          fireProgressEvent(progress, progress + " % finished");
+        }
+      }
     }
   }
 
@@ -290,7 +367,7 @@ public class OWLExporter extends CommonBase implements Exporter,
   }
 
   /**
-   * Convert to owl objects.
+   * Convert to owl objects, and writes them out or adds them to the ontology.
    *
    * @param currentConcept the current concept
    * @throws Exception the exception
@@ -303,6 +380,10 @@ public class OWLExporter extends CommonBase implements Exporter,
       return;
     }
 
+    // Sorted, so the axioms of a concept always come out in the same order
+    Set<OWLAxiom> setOfAxioms = new TreeSet<>();
+    OWLDataFactory factory = parallel ? threadFactory.get() : this.factory;
+
     // Create an Owl class for each concept
     OWLClass currentConceptClass =
         createOWLAxiomsFromConceptVersionBI(setOfAxioms, factory, pm,
@@ -338,9 +419,7 @@ public class OWLExporter extends CommonBase implements Exporter,
         .getRelationshipsOutgoingActiveIsa()) {
       if (rel.isStated()) {
         parentClasses.add(factory.getOWLClass(
-            ":"
-                + getSnomedConceptID(OTFUtility.getConceptVersion(rel
-                    .getDestinationNid())), pm));
+            ":" + getSnomedConceptID(rel.getDestinationNid()), pm));
       }
     }
 
@@ -360,14 +439,20 @@ public class OWLExporter extends CommonBase implements Exporter,
         continue;
       }
 
-      OWLObjectProperty relationshipTypeProperty =
-          createOWLPropertyAxiomsFromConceptVersionBI(setOfAxioms, factory, pm,
-              OTFUtility.getConceptVersion(rel.getTypeNid()));
+      // Declare each property once, rather than fetching its concept per use
+      OWLObjectProperty relationshipTypeProperty;
+      if (declaredProperties.add(rel.getTypeNid())) {
+        relationshipTypeProperty =
+            createOWLPropertyAxiomsFromConceptVersionBI(setOfAxioms, factory,
+                pm, OTFUtility.getConceptVersion(rel.getTypeNid()));
+      } else {
+        relationshipTypeProperty =
+            factory.getOWLObjectProperty(
+                ":" + getSnomedConceptID(rel.getTypeNid()), pm);
+      }
       OWLClass destinationClass =
           factory.getOWLClass(
-              ":"
-                  + getSnomedConceptID(OTFUtility.getConceptVersion(rel
-                      .getDestinationNid())), pm);
+              ":" + getSnomedConceptID(rel.getDestinationNid()), pm);
 
       OWLClassExpression owlRel =
           factory.getOWLObjectSomeValuesFrom(relationshipTypeProperty,
@@ -440,6 +525,12 @@ public class OWLExporter extends CommonBase implements Exporter,
             owlRelationships));
       }
     }
+
+    if (streaming) {
+      owlWriter.write(owlWriter.render(setOfAxioms));
+    } else {
+      manager.addAxioms(snomed, setOfAxioms);
+    }
   }
 
   // Helper methods
@@ -536,9 +627,7 @@ public class OWLExporter extends CommonBase implements Exporter,
     for (RelationshipVersionBI<?> rel : conceptVersionBI
         .getRelationshipsOutgoingActiveIsa()) {
       if (rel.isStated()) {
-        String sctid =
-            getSnomedConceptID(OTFUtility.getConceptVersion(rel
-                .getDestinationNid()));
+        String sctid = getSnomedConceptID(rel.getDestinationNid());
         // Skip the root of the attributes tree
         if (!sctid.equals(snomedConceptAttributeModelConcept)) {
           OWLObjectProperty parent =
@@ -579,13 +668,24 @@ public class OWLExporter extends CommonBase implements Exporter,
    */
   private String getSnomedConceptID(ConceptVersionBI conceptVersionBI)
     throws Exception {
-    String id = ConceptViewerHelper.getSctId(conceptVersionBI).trim();
-    if ("Unreleased".equalsIgnoreCase(id)) {
+    long sctId =
+        idResolver.getSctId(conceptVersionBI, OTFUtility.getViewCoordinate());
+    if (sctId == IdentifierResolver.NO_SCTID) {
       return conceptVersionBI.getPrimordialUuid().toString();
-    } else {
-      // do nothing
     }
-    return id;
+    return Long.toString(sctId);
+  }
+
+  /**
+   * Returns the snomed concept id of the concept with the specified nid,
+   * without fetching the concept.
+   *
+   * @param nid the concept nid
+   * @return the snomed concept id
+   * @throws Exception the exception
+   */
+  private String getSnomedConceptID(int nid) throws Exception {
+    return idResolver.getSctIdOrUuid(nid, OTFUtility.getViewCoordinate());
   }
 
   /**
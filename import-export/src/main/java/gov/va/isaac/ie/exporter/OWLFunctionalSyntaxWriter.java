@@ -0,0 +1,175 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.ie.exporter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collection;
+
+import org.coode.owlapi.functionalrenderer.OWLObjectRenderer;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.util.DefaultPrefixManager;
+
+/**
+ * Writes an ontology in OWL functional syntax one block of axioms at a time, so
+ * an export never holds more than the axioms of the concepts being converted.
+ * The axioms and annotations themselves are rendered by the OWL API's own
+ * functional syntax renderer, so any axiom the OWL API supports can be written.
+ *
+ * Blocks are rendered independently and written whole, so several threads may
+ * render and write blocks concurrently.
+ */
+public class OWLFunctionalSyntaxWriter {
+
+  /** The namespace of the default prefix, for SNOMED concepts. */
+  public static final String SNOMED_ID_NAMESPACE = "http://snomed.info/id/";
+
+  /** The relative form of SNOMED concept IRIs, as made by the prefix manager. */
+  private static final String SNOMED_ID_RELATIVE = "id/";
+
+  /** The standard prefixes, in declaration order. */
+  private static final String[][] PREFIXES = {
+      {
+          "owl:", "http://www.w3.org/2002/07/owl#"
+      }, {
+          "rdf:", "http://www.w3.org/1999/02/22-rdf-syntax-ns#"
+      }, {
+          "xml:", "http://www.w3.org/XML/1998/namespace"
+      }, {
+          "xsd:", "http://www.w3.org/2001/XMLSchema#"
+      }, {
+          "rdfs:", "http://www.w3.org/2000/01/rdf-schema#"
+      }
+  };
+
+  /** The writer. */
+  private final Writer out;
+
+  /**
+   * The prefixes the renderer abbreviates IRIs with. The default prefix maps to
+   * the relative form of SNOMED concept IRIs, which the header declares as the
+   * SNOMED namespace. Only read once set up, so shared by all renderers.
+   */
+  private final DefaultPrefixManager prefixes;
+
+  /**
+   * An empty, anonymous ontology for the renderers - the axioms are rendered on
+   * their own, and the header is written here.
+   */
+  private final OWLOntology renderOntology;
+
+  /**
+   * Instantiates a {@link OWLFunctionalSyntaxWriter}.
+   *
+   * @param out the writer
+   * @throws OWLOntologyCreationException if the ontology for the renderers
+   *           can't be made
+   */
+  public OWLFunctionalSyntaxWriter(Writer out)
+      throws OWLOntologyCreationException {
+    this.out = out;
+    prefixes = new DefaultPrefixManager(SNOMED_ID_RELATIVE);
+    for (String[] prefix : PREFIXES) {
+      prefixes.setPrefix(prefix[0], prefix[1]);
+    }
+    renderOntology = OWLManager.createOWLOntologyManager().createOntology();
+  }
+
+  /**
+   * Writes the prefixes and opens the ontology.
+   *
+   * @param ontologyIRI the ontology iri
+   * @param versionIRI the version iri
+   * @param annotations the ontology annotations
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void writeHeader(IRI ontologyIRI, IRI versionIRI,
+    Collection<OWLAnnotation> annotations) throws IOException {
+    StringWriter header = new StringWriter();
+    header.append("Prefix(:=<").append(SNOMED_ID_NAMESPACE).append(">)\n");
+    for (String[] prefix : PREFIXES) {
+      header.append("Prefix(").append(prefix[0]).append("=<")
+          .append(prefix[1]).append(">)\n");
+    }
+    header.append("\n\nOntology(<").append(ontologyIRI.toString())
+        .append("> <").append(versionIRI.toString()).append(">\n");
+    OWLObjectRenderer renderer = createRenderer(header);
+    for (OWLAnnotation annotation : annotations) {
+      annotation.accept(renderer);
+      header.append('\n');
+    }
+    header.append('\n');
+    out.write(header.toString());
+  }
+
+  /**
+   * Renders axioms, one per line.
+   *
+   * @param axioms the axioms
+   * @return the rendered block
+   */
+  public String render(Collection<OWLAxiom> axioms) {
+    StringWriter block = new StringWriter(axioms.size() * 96);
+    OWLObjectRenderer renderer = createRenderer(block);
+    for (OWLAxiom axiom : axioms) {
+      axiom.accept(renderer);
+      block.append('\n');
+    }
+    return block.toString();
+  }
+
+  /**
+   * Writes a rendered block.
+   *
+   * @param block the block
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void write(String block) throws IOException {
+    out.write(block);
+  }
+
+  /**
+   * Closes the ontology and flushes, leaving the underlying writer open.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void finish() throws IOException {
+    out.write(")\n");
+    out.flush();
+  }
+
+  /**
+   * Creates a renderer writing to the specified writer. Renderers keep state
+   * while rendering, so each block gets its own.
+   *
+   * @param writer the writer
+   * @return the renderer
+   */
+  private OWLObjectRenderer createRenderer(Writer writer) {
+    OWLObjectRenderer renderer = new OWLObjectRenderer(renderOntology, writer);
+    renderer.setPrefixManager(prefixes);
+    return renderer;
+  }
+}
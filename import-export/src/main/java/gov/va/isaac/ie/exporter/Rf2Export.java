@@ -16,27 +16,29 @@
  */
 package gov.va.isaac.ie.exporter;
 
+import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
-import gov.va.isaac.gui.conceptViews.helpers.ConceptViewerHelper;
 import gov.va.isaac.ie.exporter.Rf2File.ReleaseType;
 import gov.va.isaac.util.AbstractProgressReporter;
+import gov.va.isaac.util.IdentifierResolver;
 import gov.va.isaac.util.ProgressListener;
 import gov.va.isaac.util.OTFUtility;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ihtsdo.otf.tcc.api.chronicle.ComponentVersionBI;
 import org.ihtsdo.otf.tcc.api.conattr.ConceptAttributeChronicleBI;
@@ -149,8 +151,8 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
   /** The excluded refset ids. */
   private Set<Integer> excludedRefsetIds;
 
-  /** The lang refex nids. */
-  private Set<Integer> langRefexNids = new HashSet<>();
+  /** The lang refex nids, collected by all processing threads. */
+  private Set<Integer> langRefexNids = ConcurrentHashMap.newKeySet();
 
   /** The possible lang refex nids. */
   private Set<Integer> possibleLangRefexNids = new HashSet<>();
@@ -163,14 +165,19 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
       .fromString("d1871eb0-8a47-11e1-b0c4-0800200c9a66");
 
   /**  The request cancel. */
-  private boolean requestCancel = false;
+  private volatile boolean requestCancel = false;
   
   /** The count. */
-  @SuppressWarnings("unused")
-  private int count = 0;
+  private AtomicInteger count = new AtomicInteger();
 
   /** The all concept count. */
-  private int allCount = 0;
+  private AtomicInteger allCount = new AtomicInteger();
+
+  /** The release file writers. */
+  private List<Rf2FileWriter> fileWriters = new ArrayList<>();
+
+  /** The parallel flag. */
+  private boolean parallel = false;
 
   /**
    * private static UUID MODULE_DEPEND_NAMESPACE = UUID
@@ -196,8 +203,12 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
   private static BdbTerminologyStore dataStore = ExtendedAppContext
       .getDataStore();
 
+  /** The identifier resolver. */
+  private IdentifierResolver idResolver = AppContext
+      .getService(IdentifierResolver.class);
+
   /** the count so far. */
-  private int progress = 0;
+  private volatile int progress = 0;
 
   /** the total. */
   private int progressMax = 0;
@@ -330,51 +341,22 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
             + country.getFormatedCountryCode().toUpperCase() + namespace + "_"
             + effectiveDateString + ".txt");
 
-    FileOutputStream conceptOs = new FileOutputStream(conceptsFile);
-    conceptsWriter =
-        new BufferedWriter(new OutputStreamWriter(conceptOs, "UTF8"));
-    FileOutputStream descriptionOs = new FileOutputStream(descriptionsFile);
-    descriptionsWriter =
-        new BufferedWriter(new OutputStreamWriter(descriptionOs, "UTF8"));
-    FileOutputStream textDefinitionOs =
-        new FileOutputStream(textDefinitionsFile);
-    textDefinitionsWriter =
-        new BufferedWriter(new OutputStreamWriter(textDefinitionOs, "UTF8"));
-    FileOutputStream relOs = new FileOutputStream(relationshipsFile);
-    relationshipsWriter =
-        new BufferedWriter(new OutputStreamWriter(relOs, "UTF8"));
-    FileOutputStream relStatedOs =
-        new FileOutputStream(relationshipsStatedFile);
-    relationshipsStatedWriter =
-        new BufferedWriter(new OutputStreamWriter(relStatedOs, "UTF8"));
-
-    FileOutputStream pubIdOs = new FileOutputStream(identifiersFile);
-    identifiersWriter =
-        new BufferedWriter(new OutputStreamWriter(pubIdOs, "UTF8"));
-    FileOutputStream associationOs = new FileOutputStream(associationFile);
-    associationWriter =
-        new BufferedWriter(new OutputStreamWriter(associationOs, "UTF8"));
-    FileOutputStream attributeValueOs =
-        new FileOutputStream(attributeValueFile);
-    attributeValueWriter =
-        new BufferedWriter(new OutputStreamWriter(attributeValueOs, "UTF8"));
-    FileOutputStream langRefOs = new FileOutputStream(langRefsetsFile);
-    langRefsetsWriter =
-        new BufferedWriter(new OutputStreamWriter(langRefOs, "UTF8"));
+    conceptsWriter = openWriter(conceptsFile);
+    descriptionsWriter = openWriter(descriptionsFile);
+    textDefinitionsWriter = openWriter(textDefinitionsFile);
+    relationshipsWriter = openWriter(relationshipsFile);
+    relationshipsStatedWriter = openWriter(relationshipsStatedFile);
+
+    identifiersWriter = openWriter(identifiersFile);
+    associationWriter = openWriter(associationFile);
+    attributeValueWriter = openWriter(attributeValueFile);
+    langRefsetsWriter = openWriter(langRefsetsFile);
     if (otherLangRefsetsFile != null) {
-      FileOutputStream langOs = new FileOutputStream(otherLangRefsetsFile);
-      otherLangRefsetsWriter =
-          new BufferedWriter(new OutputStreamWriter(langOs, "UTF8"));
+      otherLangRefsetsWriter = openWriter(otherLangRefsetsFile);
     }
-    FileOutputStream modDependOs = new FileOutputStream(modDependFile);
-    modDependWriter =
-        new BufferedWriter(new OutputStreamWriter(modDependOs, "UTF8"));
-    FileOutputStream descTypeOs = new FileOutputStream(descTypeFile);
-    descTypeWriter =
-        new BufferedWriter(new OutputStreamWriter(descTypeOs, "UTF8"));
-    FileOutputStream refDescOs = new FileOutputStream(refsetDescFile);
-    refsetDescWriter =
-        new BufferedWriter(new OutputStreamWriter(refDescOs, "UTF8"));
+    modDependWriter = openWriter(modDependFile);
+    descTypeWriter = openWriter(descTypeFile);
+    refsetDescWriter = openWriter(refsetDescFile);
 
     for (Rf2File.ConceptsFileFields field : Rf2File.ConceptsFileFields.values()) {
       conceptsWriter.write(field.headerText + field.seperator);
@@ -441,6 +423,11 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
       refsetDescWriter.write(field.headerText + field.seperator);
     }
 
+    // headers go out before any rows
+    for (Rf2FileWriter writer : fileWriters) {
+      writer.flush();
+    }
+
     ConceptSpec fsnDesc =
         new ConceptSpec("Fully specified name (core metadata concept)",
             UUID.fromString("00791270-77c9-32b6-b34f-d932569bd2bf"));
@@ -462,6 +449,47 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
       possibleLangRefexNids.add(desc.getNid());
     }
     conceptsToProcess = dataStore.getAllConceptNids();
+    viewCoordinate
+        .setContradictionManagerPolicy(ContradictionManagerPolicy.LAST_COMMIT_WINS);
+  }
+
+  /**
+   * Opens a release file writer.
+   *
+   * @param file the file
+   * @return the writer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private Writer openWriter(File file) throws IOException {
+    Rf2FileWriter writer = new Rf2FileWriter(file);
+    fileWriters.add(writer);
+    return writer;
+  }
+
+  /**
+   * Sets the parallel flag. When set, concepts are processed by the terminology
+   * store's worker threads, and the rows of each release file come out in no
+   * particular order unless {@link #setSortOutput(boolean)} is also set.
+   *
+   * @param parallel the parallel flag
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  /**
+   * Sets the sort output flag. When set, the rows of each release file are
+   * sorted by id, then effective time, when the file is closed, so the output
+   * is deterministic. The sort is an external merge sort - see
+   * {@link Rf2FileWriter} - so it takes a bounded amount of heap, but as much
+   * temporary disk as the largest file.
+   *
+   * @param sortOutput the sort output flag
+   */
+  public void setSortOutput(boolean sortOutput) {
+    for (Rf2FileWriter writer : fileWriters) {
+      writer.setSortRows(sortOutput);
+    }
   }
 
   /**
@@ -486,7 +514,14 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
    */
   @Override
   public void export(int pathNid) throws Exception {
-    dataStore.iterateConceptDataInSequence(this);
+    // one pass to read the SCTIDs of the exported concepts, rather than a lookup
+    // per id per row
+    idResolver.warm(conceptsToProcess.getSetValues(), viewCoordinate);
+    if (parallel) {
+      dataStore.iterateConceptDataInParallel(this);
+    } else {
+      dataStore.iterateConceptDataInSequence(this);
+    }
   }
 
   /**
@@ -812,26 +847,7 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
    * @throws IOException Signals that an I/O exception has occurred.
    */
   private String getSctIdOrUuidForNid(int typeNid) throws IOException {
-    String sctId = null;
-    try {
-      viewCoordinate
-          .setContradictionManagerPolicy(ContradictionManagerPolicy.LAST_COMMIT_WINS);
-      ComponentVersionBI componentVersion =
-          dataStore.getComponentVersion(viewCoordinate, typeNid);
-      if (componentVersion != null) {
-        sctId = ConceptViewerHelper.getSctId(componentVersion);
-      }
-    } catch (ContradictionException e) {
-      throw new IOException("Unable to get SCTID for " + typeNid, e);
-    }
-
-    if (sctId == null || "Unreleased".equals(sctId)) {
-      sctId = dataStore.getUuidPrimordialForNid(typeNid).toString();
-    }
-    if ("Unreleased".equals(sctId)) {
-      LOG.info("Unreleased SCTID for " + sctId);
-    }
-    return sctId;
+    return idResolver.getSctIdOrUuid(typeNid, viewCoordinate);
   }
 
   /**
@@ -1351,16 +1367,20 @@ public class Rf2Export extends AbstractProgressReporter implements Exporter,
   public void processUnfetchedConceptData(int cNid, ConceptFetcherBI fetcher)
     throws Exception {
     if (conceptsToProcess.isMember(cNid)) {
-      count++;
+      count.incrementAndGet();
       ConceptVersionBI concept = fetcher.fetch(OTFUtility.getViewCoordinate());
       LOG.debug("Process concept " + concept.getPrimordialUuid());
       process(concept);
     }
-    allCount++;
+    int ct = allCount.incrementAndGet();
     // Handle progress monitor
-    if ((int) ((allCount * 100) / progressMax) > progress) {
-      progress = (allCount * 100) / progressMax;
-      fireProgressEvent(progress, progress + " % finished");
+    if ((int) ((ct * 100L) / progressMax) > progress) {
+      synchronized (this) {
+        if ((int) ((ct * 100L) / progressMax) > progress) {
+          progress = (int) ((ct * 100L) / progressMax);
+          fireProgressEvent(progress, progress + " % finished");
+        }
+      }
     }
   }
 
@@ -0,0 +1,505 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.ie.exporter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A writer for one RF2 release file that may be written by many threads at
+ * once. Each thread formats rows into its own buffer, and whole rows are handed
+ * in chunks to a dedicated thread that drains them to the file, so formatting
+ * never waits on disk I/O or on other threads.
+ *
+ * Rows from different threads come out in no particular order. Set
+ * {@link #setSortRows(boolean)} to sort the rows (after the header) by the id
+ * column, then effective time, once the file is closed, so the output is
+ * deterministic. The sort is an external merge sort, so it needs about
+ * {@link #RUN_SIZE} chars of heap and as much temporary disk as the file,
+ * whatever the file size.
+ */
+public class Rf2FileWriter extends Writer {
+
+  /** The RF2 row terminator. */
+  private static final String ROW_END = "\r\n";
+
+  /** The size at which a thread hands its buffered rows to the writer stage. */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * The chars of rows sorted in memory at once when sorting - about 32 MB of
+   * heap for the text, plus the row objects.
+   */
+  private static final long RUN_SIZE = 16L * 1024 * 1024;
+
+  /** The row order, see {@link #compareRows(String, String)}. */
+  private static final Comparator<String> ROW_ORDER =
+      Rf2FileWriter::compareRows;
+
+  /** The chunk marking the end of the file. */
+  private static final String END_OF_FILE = new String();
+
+  /** The file. */
+  private final File file;
+
+  /** The sort rows flag. */
+  private volatile boolean sortRows = false;
+
+  /** The chunks waiting to be written, bounded so formatting can't run away. */
+  private final BlockingQueue<String> chunks = new ArrayBlockingQueue<>(64);
+
+  /** The buffer of each thread writing to this file. */
+  private final ThreadLocal<StringBuilder> buffer = ThreadLocal
+      .withInitial(this::register);
+
+  /** All buffers, to flush on close. */
+  private final Queue<StringBuilder> buffers = new ConcurrentLinkedQueue<>();
+
+  /** The writer stage thread. */
+  private final Thread writerThread;
+
+  /** The first failure of the writer stage. */
+  private volatile IOException failure;
+
+  /** The closed flag. */
+  private boolean closed = false;
+
+  /**
+   * Instantiates a {@link Rf2FileWriter} and starts its writer stage.
+   *
+   * @param file the file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Rf2FileWriter(File file) throws IOException {
+    this.file = file;
+    final Writer out = openWriter(file);
+    writerThread = new Thread(() -> drain(out), "RF2 writer " + file.getName());
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Sets the sort rows flag.
+   *
+   * @param sortRows the sort rows flag
+   */
+  public void setSortRows(boolean sortRows) {
+    this.sortRows = sortRows;
+  }
+
+  /**
+   * Writes the chunks handed over by the formatting threads until the end of
+   * file marker.
+   *
+   * @param out the out
+   */
+  private void drain(Writer out) {
+    try {
+      while (true) {
+        String chunk = chunks.take();
+        if (chunk == END_OF_FILE) {
+          break;
+        }
+        // after a failure keep taking chunks, so no producer blocks forever
+        if (failure == null) {
+          try {
+            out.write(chunk);
+          } catch (IOException e) {
+            failure = e;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      failure = new IOException("Interrupted writing " + file, e);
+    } finally {
+      try {
+        out.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Registers a buffer for the calling thread.
+   *
+   * @return the buffer
+   */
+  private StringBuilder register() {
+    StringBuilder sb = new StringBuilder(CHUNK_SIZE + 1024);
+    buffers.add(sb);
+    return sb;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.io.Writer#write(java.lang.String)
+   */
+  @Override
+  public void write(String str) throws IOException {
+    StringBuilder sb = buffer.get();
+    synchronized (sb) {
+      sb.append(str);
+      // only hand over whole rows
+      if (sb.length() >= CHUNK_SIZE && str.endsWith(ROW_END)) {
+        handOff(sb);
+      }
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.io.Writer#write(char[], int, int)
+   */
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    write(new String(cbuf, off, len));
+  }
+
+  /**
+   * Hands the buffered rows to the writer stage.
+   *
+   * @param sb the buffer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void handOff(StringBuilder sb) throws IOException {
+    checkFailure();
+    try {
+      chunks.put(sb.toString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted writing " + file, e);
+    }
+    sb.setLength(0);
+  }
+
+  /**
+   * Rethrows a failure of the writer stage.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("Unable to write " + file, failure);
+    }
+  }
+
+  /**
+   * Hands the rows buffered by the calling thread to the writer stage, e.g. so
+   * the header goes out before any rows of other threads. Only call between
+   * rows.
+   *
+   * @see java.io.Writer#flush()
+   */
+  @Override
+  public void flush() throws IOException {
+    StringBuilder sb = buffer.get();
+    synchronized (sb) {
+      if (sb.length() > 0) {
+        handOff(sb);
+      }
+    }
+  }
+
+  /**
+   * Hands over the rows left in every thread's buffer, waits for the writer
+   * stage to finish and sorts the rows if requested. Must be called after all
+   * writing threads are done.
+   *
+   * @see java.io.Writer#close()
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (StringBuilder sb : buffers) {
+      synchronized (sb) {
+        if (sb.length() > 0) {
+          handOff(sb);
+        }
+      }
+    }
+    try {
+      chunks.put(END_OF_FILE);
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted writing " + file, e);
+    }
+    checkFailure();
+    if (sortRows) {
+      sort();
+    }
+  }
+
+  /**
+   * Sorts the rows of the file by id, then effective time, keeping the header
+   * first. An external merge sort: runs of at most {@link #RUN_SIZE} chars are
+   * sorted in memory and spilled to temporary files next to the file, then
+   * merged, so the heap needed is bounded by the run size rather than the
+   * file size. A file that fits in one run is sorted in memory.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void sort() throws IOException {
+    String header;
+    List<File> runs = new ArrayList<>();
+    List<String> rows = new ArrayList<>();
+    try {
+      try (BufferedReader in = openReader(file)) {
+        header = in.readLine();
+        if (header == null) {
+          return;
+        }
+        long runChars = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+          rows.add(line);
+          runChars += line.length();
+          if (runChars >= RUN_SIZE) {
+            runs.add(spill(rows, runs.size()));
+            runChars = 0;
+          }
+        }
+      }
+      if (runs.isEmpty()) {
+        Collections.sort(rows, ROW_ORDER);
+        try (Writer out = openWriter(file)) {
+          out.write(header + ROW_END);
+          for (String row : rows) {
+            out.write(row + ROW_END);
+          }
+        }
+        return;
+      }
+      if (!rows.isEmpty()) {
+        runs.add(spill(rows, runs.size()));
+      }
+      merge(header, runs);
+    } finally {
+      for (File run : runs) {
+        Files.deleteIfExists(run.toPath());
+      }
+    }
+  }
+
+  /**
+   * Sorts the rows and writes them to a run file, then clears them.
+   *
+   * @param rows the rows
+   * @param index the run index
+   * @return the run file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private File spill(List<String> rows, int index) throws IOException {
+    Collections.sort(rows, ROW_ORDER);
+    File run = new File(file.getPath() + ".run" + index);
+    try (Writer out = openWriter(run)) {
+      for (String row : rows) {
+        out.write(row);
+        out.write('\n');
+      }
+    }
+    rows.clear();
+    return run;
+  }
+
+  /**
+   * Merges the sorted runs into the file, after the header.
+   *
+   * @param header the header
+   * @param runs the runs
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void merge(String header, List<File> runs) throws IOException {
+    List<BufferedReader> readers = new ArrayList<>();
+    try (Writer out = openWriter(file)) {
+      // the current row of each run, ordered by row then run
+      PriorityQueue<Entry<String, BufferedReader>> heads =
+          new PriorityQueue<>(runs.size(), (a, b) -> ROW_ORDER.compare(
+              a.getKey(), b.getKey()));
+      for (File run : runs) {
+        BufferedReader in = openReader(run);
+        readers.add(in);
+        String row = in.readLine();
+        if (row != null) {
+          heads.add(new SimpleEntry<>(row, in));
+        }
+      }
+      out.write(header + ROW_END);
+      while (!heads.isEmpty()) {
+        Entry<String, BufferedReader> head = heads.poll();
+        out.write(head.getKey() + ROW_END);
+        String row = head.getValue().readLine();
+        if (row != null) {
+          heads.add(new SimpleEntry<>(row, head.getValue()));
+        }
+      }
+    } finally {
+      for (BufferedReader in : readers) {
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Compares rows by their id column, then effective time, then the whole
+   * row. Numeric ids (SCTIDs) are compared by value, other ids (refset member
+   * UUIDs) as text, and numeric ids sort before others.
+   *
+   * @param a the a
+   * @param b the b
+   * @return the comparison
+   */
+  static int compareRows(String a, String b) {
+    int aEnd = columnEnd(a, 0);
+    int bEnd = columnEnd(b, 0);
+    boolean aNumeric = isNumeric(a, 0, aEnd);
+    boolean bNumeric = isNumeric(b, 0, bEnd);
+    int cmp;
+    if (aNumeric != bNumeric) {
+      return aNumeric ? -1 : 1;
+    } else if (aNumeric && aEnd != bEnd) {
+      cmp = aEnd - bEnd;
+    } else {
+      cmp = compareRange(a, 0, aEnd, b, 0, bEnd);
+    }
+    if (cmp != 0) {
+      return cmp;
+    }
+    // effective time is yyyyMMdd, so compares as text
+    cmp =
+        compareRange(a, aEnd + 1, columnEnd(a, aEnd + 1), b, bEnd + 1,
+            columnEnd(b, bEnd + 1));
+    return cmp != 0 ? cmp : a.compareTo(b);
+  }
+
+  /**
+   * Returns the end of the tab separated column starting at the position.
+   *
+   * @param row the row
+   * @param start the start
+   * @return the end
+   */
+  private static int columnEnd(String row, int start) {
+    if (start > row.length()) {
+      return row.length();
+    }
+    int end = row.indexOf('\t', start);
+    return end < 0 ? row.length() : end;
+  }
+
+  /**
+   * Indicates whether or not the range holds only digits, without leading
+   * zeros.
+   *
+   * @param row the row
+   * @param start the start
+   * @param end the end
+   * @return <code>true</code> if so, <code>false</code> otherwise
+   */
+  private static boolean isNumeric(String row, int start, int end) {
+    if (end == start || (row.charAt(start) == '0' && end - start > 1)) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      char c = row.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares two ranges as text. A range starting past its end is empty.
+   *
+   * @param a the a
+   * @param aStart the a start
+   * @param aEnd the a end
+   * @param b the b
+   * @param bStart the b start
+   * @param bEnd the b end
+   * @return the comparison
+   */
+  private static int compareRange(String a, int aStart, int aEnd, String b,
+    int bStart, int bEnd) {
+    aStart = Math.min(aStart, aEnd);
+    bStart = Math.min(bStart, bEnd);
+    int len = Math.min(aEnd - aStart, bEnd - bStart);
+    for (int i = 0; i < len; i++) {
+      char ca = a.charAt(aStart + i);
+      char cb = b.charAt(bStart + i);
+      if (ca != cb) {
+        return ca - cb;
+      }
+    }
+    return (aEnd - aStart) - (bEnd - bStart);
+  }
+
+  /**
+   * Opens a UTF-8 reader.
+   *
+   * @param f the file
+   * @return the reader
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static BufferedReader openReader(File f) throws IOException {
+    return new BufferedReader(new InputStreamReader(new FileInputStream(f),
+        StandardCharsets.UTF_8), CHUNK_SIZE);
+  }
+
+  /**
+   * Opens a UTF-8 writer.
+   *
+   * @param f the file
+   * @return the writer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Writer openWriter(File f) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f),
+        StandardCharsets.UTF_8), CHUNK_SIZE);
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.ie.exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Reads the output of {@link OWLFunctionalSyntaxWriter} back with the OWL API's
+ * functional syntax parser, for the axioms the {@link OWLExporter} makes and
+ * for some it doesn't.
+ */
+public class OWLFunctionalSyntaxWriterTest {
+
+  /** The factory. */
+  private final OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+  /**
+   * Test that a written ontology reads back with the same annotations and
+   * axioms.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    IRI ontologyIRI = IRI.create("http://snomed.info/sct/900000000000207008");
+    IRI versionIRI = IRI.create(ontologyIRI + "/version/20140131");
+    List<OWLAnnotation> annotations =
+        Collections.singletonList(factory.getOWLAnnotation(
+            factory.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_COMMENT
+                .getIRI()), factory.getOWLLiteral("An \"ontology\"")));
+
+    // as the exporter makes them, relative to the SNOMED namespace
+    List<OWLAxiom> axioms = axioms("id/");
+
+    StringWriter out = new StringWriter();
+    OWLFunctionalSyntaxWriter writer = new OWLFunctionalSyntaxWriter(out);
+    writer.writeHeader(ontologyIRI, versionIRI, annotations);
+    writer.write(writer.render(axioms.subList(0, 4)));
+    writer.write(writer.render(axioms.subList(4, axioms.size())));
+    writer.finish();
+
+    OWLOntology read =
+        OWLManager.createOWLOntologyManager()
+            .loadOntologyFromOntologyDocument(
+                new StringDocumentSource(out.toString()));
+    assertEquals(ontologyIRI, read.getOntologyID().getOntologyIRI());
+    assertEquals(versionIRI, read.getOntologyID().getVersionIRI());
+    assertEquals(new HashSet<>(annotations), read.getAnnotations());
+    Set<OWLAxiom> expected =
+        new HashSet<>(axioms(OWLFunctionalSyntaxWriter.SNOMED_ID_NAMESPACE));
+    assertEquals(expected, read.getAxioms());
+  }
+
+  /**
+   * Returns one axiom of each kind tested.
+   *
+   * @param namespace the namespace of the concepts
+   * @return the axioms
+   */
+  private List<OWLAxiom> axioms(String namespace) {
+    OWLClass a = factory.getOWLClass(IRI.create(namespace + "1"));
+    OWLClass b = factory.getOWLClass(IRI.create(namespace + "2"));
+    OWLClass c = factory.getOWLClass(IRI.create(namespace + "3"));
+    OWLObjectProperty r =
+        factory.getOWLObjectProperty(IRI.create(namespace + "10"));
+    OWLObjectProperty s =
+        factory.getOWLObjectProperty(IRI.create(namespace + "11"));
+    OWLObjectProperty t =
+        factory.getOWLObjectProperty(IRI.create(namespace + "12"));
+
+    List<OWLAxiom> axioms = new ArrayList<>();
+    // those the exporter makes
+    axioms.add(factory.getOWLDeclarationAxiom(a));
+    axioms.add(factory.getOWLDeclarationAxiom(r));
+    axioms.add(factory.getOWLAnnotationAssertionAxiom(a.getIRI(), factory
+        .getOWLAnnotation(factory.getRDFSLabel(),
+            factory.getOWLLiteral("Fracture of \\ \"bone\"", "en"))));
+    axioms.add(factory.getOWLSubClassOfAxiom(a, factory
+        .getOWLObjectIntersectionOf(b, factory.getOWLObjectSomeValuesFrom(r,
+            factory.getOWLObjectSomeValuesFrom(s, c)))));
+    axioms.add(factory.getOWLEquivalentClassesAxiom(b,
+        factory.getOWLObjectIntersectionOf(c,
+            factory.getOWLObjectSomeValuesFrom(r, a))));
+    axioms.add(factory.getOWLSubObjectPropertyOfAxiom(s, r));
+    // and some it doesn't
+    axioms.add(factory.getOWLSubPropertyChainOfAxiom(Arrays.asList(r, s), t));
+    axioms.add(factory.getOWLTransitiveObjectPropertyAxiom(t));
+    axioms.add(factory.getOWLDisjointClassesAxiom(a, c));
+    axioms.add(factory.getOWLSubClassOfAxiom(c, factory
+        .getOWLObjectUnionOf(a, factory.getOWLObjectAllValuesFrom(r,
+            factory.getOWLObjectComplementOf(b)))));
+    axioms.add(factory.getOWLAnnotationAssertionAxiom(c.getIRI(),
+        factory.getOWLAnnotation(factory.getRDFSComment(), b.getIRI())));
+    return axioms;
+  }
+}
@@ -22,6 +22,7 @@ import gov.va.isaac.AppContext;
 import gov.va.isaac.gui.util.ErrorMarkerUtils;
 import gov.va.isaac.util.Utility;
 import gov.va.isaac.util.ValidBooleanBinding;
+import gov.va.isaac.util.WorkPool;
 import java.net.URL;
 import java.util.ResourceBundle;
 import java.util.function.Consumer;
@@ -186,7 +187,7 @@ public class DownloaderController
 			});
 			progressBar.progressProperty().bind(dut.progressProperty());
 			statusLabel.textProperty().bind(dut.titleProperty());
-			Utility.execute(dut);
+			Utility.execute(WorkPool.IO, dut);
 		}
 		catch (Exception e)
 		{
@@ -30,6 +30,7 @@ import gov.va.isaac.interfaces.gui.ApplicationMenus;
 import gov.va.isaac.interfaces.gui.MenuItemI;
 import gov.va.isaac.interfaces.gui.views.IsaacViewWithMenusI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -70,7 +71,7 @@ public class IndexView implements IsaacViewWithMenusI {
 			@Override
 			public void handleMenuSelection(Window parent)
 			{
-				Utility.execute(() ->
+				Utility.execute(WorkPool.BACKGROUND, () ->
 				{
 					try
 					{
@@ -19,6 +19,8 @@ package gov.va.isaac.drools.evaluators;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.drools.evaluators.facts.ConceptFact;
 import gov.va.isaac.drools.evaluators.facts.DescFact;
+import gov.va.isaac.drools.helper.DroolsLookupCache;
+import gov.va.isaac.util.ViewCoordinateProvider;
 
 import java.io.IOException;
 
@@ -88,7 +90,8 @@ public class IsKindOfEvaluatorDefinition extends IsaacBaseEvaluatorDefinition im
 				{
 					throw new UnsupportedOperationException("Can't convert: " + value1);
 				}
-				ViewCoordinate coordinate = possibleKind.getViewCoordinate();
+				// a copy - the coordinate of the fact may be shared with other facts, or pinned
+				ViewCoordinate coordinate = ViewCoordinateProvider.copy(possibleKind.getViewCoordinate());
 				coordinate.setRelationshipAssertionType(RelAssertionType.STATED);
 				possibleKind = possibleKind.getVersion(coordinate);
 				ConceptVersionBI parentKind = null;
@@ -113,7 +116,7 @@ public class IsKindOfEvaluatorDefinition extends IsaacBaseEvaluatorDefinition im
 					ConceptFact fact = (ConceptFact) value2;
 					parentKind = (ConceptVersionBI) fact.getConcept();
 				}
-				return this.getOperator().isNegated() ^ (possibleKind.isKindOf(parentKind));
+				return this.getOperator().isNegated() ^ (AppContext.getService(DroolsLookupCache.class).isKindOf(possibleKind, parentKind));
 			}
 			catch (IOException e)
 			{
@@ -19,6 +19,7 @@ package gov.va.isaac.drools.evaluators;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.drools.evaluators.facts.ConceptFact;
 import gov.va.isaac.drools.evaluators.facts.DescFact;
+import gov.va.isaac.drools.helper.DroolsLookupCache;
 
 import java.io.IOException;
 
@@ -109,7 +110,7 @@ public class IsKindOfInferredEvaluatorDefinition extends IsaacBaseEvaluatorDefin
 					ConceptFact fact = (ConceptFact) value2;
 					parentKind = (ConceptVersionBI) fact.getConcept();
 				}
-				return this.getOperator().isNegated() ^ (possibleKind.isKindOf(parentKind));
+				return this.getOperator().isNegated() ^ (AppContext.getService(DroolsLookupCache.class).isKindOf(possibleKind, parentKind));
 			}
 			catch (IOException e)
 			{
@@ -0,0 +1,424 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.drools.helper;
+
+import gov.va.isaac.AppContext;
+import gov.va.isaac.ExtendedAppContext;
+import gov.va.isaac.config.profiles.UserProfileBindings;
+import gov.va.isaac.util.OTFUtility;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Singleton;
+import org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI;
+import org.ihtsdo.otf.tcc.api.contradiction.ContradictionException;
+import org.ihtsdo.otf.tcc.api.coordinate.Status;
+import org.ihtsdo.otf.tcc.api.coordinate.ViewCoordinate;
+import org.ihtsdo.otf.tcc.api.nid.NativeIdSetBI;
+import org.ihtsdo.otf.tcc.api.refex.RefexVersionBI;
+import org.ihtsdo.otf.tcc.api.relationship.RelAssertionType;
+import org.ihtsdo.otf.tcc.api.store.TerminologyDI.CONCEPT_EVENT;
+import org.jvnet.hk2.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link DroolsLookupCache}
+ *
+ * The refset membership and isKindOf answers of the drools helpers and evaluators, so that a rule evaluated
+ * over thousands of facts doesn't scan a refset, or walk the IS-A hierarchy, for each one.
+ *
+ * The members of a refset are read into a bitset of nids the first time the refset is asked about.  Members
+ * of an annotation style refset live on the member concepts, so those are checked (and remembered) one
+ * concept at a time.  isKindOf answers are remembered per (child, ancestor) pair, separately for each view
+ * coordinate - its path, time, allowed status and stated / inferred view.  The refset answers, and the
+ * isKindOf answers by nid, assume the view coordinate of the logged in user - everything is dropped when its
+ * path, time or stated / inferred policy changes.
+ *
+ * A commit drops the refsets committed, and the membership answers of the concepts committed.  Every
+ * isKindOf answer is dropped on any commit, as an IS-A change to a concept changes the answers of all of
+ * its descendants.  Past {@link #MAX_KIND_OF_ENTRIES} answers a table is simply started over.
+ */
+@Service
+@Singleton
+public class DroolsLookupCache implements PropertyChangeListener
+{
+	private static final Logger LOG = LoggerFactory.getLogger(DroolsLookupCache.class);
+
+	public static final int MAX_KIND_OF_ENTRIES = 1000000;
+
+	private final ConcurrentHashMap<Integer, Membership> refsets_ = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<CoordinateKey, ConcurrentHashMap<Long, Boolean>> kindOf_ = new ConcurrentHashMap<>();
+	//isKindOf answers for the coordinate of OTFUtility.getViewCoordinate(), whatever its assertion type
+	private final ConcurrentHashMap<Long, Boolean> defaultKindOf_ = new ConcurrentHashMap<>();
+	//Bumped by each invalidation, so an answer read before an invalidation isn't stored after it
+	private final AtomicInteger generation_ = new AtomicInteger();
+	private volatile boolean listening_ = false;
+
+	DroolsLookupCache()
+	{
+		// created by HK2
+	}
+
+	/**
+	 * @param conceptNid the possible member
+	 * @param refsetNid the refset concept
+	 * @return true if the concept is an active member of the refset, on the view coordinate of the logged in user
+	 */
+	public boolean isMemberOf(int conceptNid, int refsetNid) throws IOException
+	{
+		startListening();
+		Membership membership = refsets_.get(refsetNid);
+		if (membership == null)
+		{
+			int generation = generation_.get();
+			membership = readMembership(refsetNid);
+			if (membership == null)
+			{
+				return false;
+			}
+			if (generation == generation_.get())
+			{
+				Membership existing = refsets_.putIfAbsent(refsetNid, membership);
+				membership = (existing == null ? membership : existing);
+			}
+		}
+		return membership.isMember(conceptNid);
+	}
+
+	/**
+	 * @param childNid the possible descendant
+	 * @param ancestorNid the possible ancestor
+	 * @return true if the child is a kind of the ancestor, on the view coordinate of the logged in user.  False
+	 * if either concept doesn't exist.
+	 */
+	public boolean isKindOf(int childNid, int ancestorNid) throws IOException, ContradictionException
+	{
+		startListening();
+		long key = key(childNid, ancestorNid);
+		Boolean result = defaultKindOf_.get(key);
+		if (result == null)
+		{
+			int generation = generation_.get();
+			ConceptVersionBI child = OTFUtility.getConceptVersion(childNid);
+			ConceptVersionBI ancestor = OTFUtility.getConceptVersion(ancestorNid);
+			result = (child != null && ancestor != null && child.isKindOf(ancestor));
+			store(defaultKindOf_, key, result, generation);
+		}
+		return result;
+	}
+
+	/**
+	 * @param child the possible descendant, on the coordinate to evaluate with
+	 * @param ancestor the possible ancestor
+	 * @return {@link ConceptVersionBI#isKindOf(ConceptVersionBI)}, remembered for the coordinate of the child
+	 */
+	public boolean isKindOf(ConceptVersionBI child, ConceptVersionBI ancestor) throws IOException, ContradictionException
+	{
+		if (ancestor == null)
+		{
+			return child.isKindOf(ancestor);
+		}
+		startListening();
+		return isKindOf(CoordinateKey.of(child.getViewCoordinate()), child.getNid(), ancestor.getNid(), () -> child.isKindOf(ancestor));
+	}
+
+	boolean isKindOf(CoordinateKey coordinate, int childNid, int ancestorNid, KindOfLookup lookup) throws IOException, ContradictionException
+	{
+		ConcurrentHashMap<Long, Boolean> table = kindOf_.computeIfAbsent(coordinate, c -> new ConcurrentHashMap<>());
+		long key = key(childNid, ancestorNid);
+		Boolean result = table.get(key);
+		if (result == null)
+		{
+			int generation = generation_.get();
+			result = lookup.isKindOf();
+			store(table, key, result, generation);
+		}
+		return result;
+	}
+
+	/**
+	 * Drops everything remembered about the specified concepts, and all isKindOf answers.  Called for each
+	 * commit, and by validation of uncommitted changes, whose answers mustn't outlive the validation.
+	 *
+	 * @param conceptNids the concepts which changed
+	 */
+	public void invalidate(int[] conceptNids)
+	{
+		generation_.incrementAndGet();
+		for (int nid : conceptNids)
+		{
+			refsets_.remove(nid);
+		}
+		for (Membership membership : refsets_.values())
+		{
+			membership.forget(conceptNids);
+		}
+		kindOf_.clear();
+		defaultKindOf_.clear();
+	}
+
+	/**
+	 * Drops everything.
+	 */
+	public void clear()
+	{
+		generation_.incrementAndGet();
+		refsets_.clear();
+		kindOf_.clear();
+		defaultKindOf_.clear();
+	}
+
+	/**
+	 * Drops the concepts of each commit.
+	 *
+	 * @see java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent)
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent evt)
+	{
+		if (CONCEPT_EVENT.POST_COMMIT.name().equals(evt.getPropertyName()) && evt.getNewValue() instanceof NativeIdSetBI)
+		{
+			try
+			{
+				invalidate(((NativeIdSetBI) evt.getNewValue()).getSetValues());
+			}
+			catch (Exception e)
+			{
+				LOG.warn("Unable to read committed concepts, dropping all cached drools lookups", e);
+				clear();
+			}
+		}
+	}
+
+	private Membership readMembership(int refsetNid) throws IOException
+	{
+		ConceptVersionBI refset = OTFUtility.getConceptVersion(refsetNid);
+		if (refset == null)
+		{
+			return null;
+		}
+		if (refset.isAnnotationStyleRefex())
+		{
+			return new Membership(refsetNid, true);
+		}
+		Membership membership = new Membership(refsetNid, false);
+		for (RefexVersionBI<?> r : refset.getRefsetMembersActive())
+		{
+			membership.setMember(r.getReferencedComponentNid(), true);
+		}
+		LOG.debug("Read {} members of refset {}", membership.members_.cardinality(), refsetNid);
+		return membership;
+	}
+
+	private void store(ConcurrentHashMap<Long, Boolean> table, long key, boolean result, int generation)
+	{
+		if (generation != generation_.get())
+		{
+			return;
+		}
+		if (table.size() >= MAX_KIND_OF_ENTRIES)
+		{
+			table.clear();
+		}
+		table.put(key, result);
+	}
+
+	private static long key(int childNid, int ancestorNid)
+	{
+		return ((long) childNid << 32) | (ancestorNid & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Nids are handed out upwards from Integer.MIN_VALUE, so this is the position of a nid in a bitset - or -1 for
+	 * a nid that can't be kept in one.
+	 */
+	private static int index(int nid)
+	{
+		return nid < 0 ? nid - Integer.MIN_VALUE : -1;
+	}
+
+	private void startListening()
+	{
+		if (listening_)
+		{
+			return;
+		}
+		// not in the constructor, which may run before the store is open
+		synchronized (this)
+		{
+			if (!listening_)
+			{
+				UserProfileBindings bindings = AppContext.getService(UserProfileBindings.class);
+				bindings.getViewCoordinatePath().addListener((observable, oldValue, newValue) -> clear());
+				bindings.getStatedInferredPolicy().addListener((observable, oldValue, newValue) -> clear());
+				bindings.getViewCoordinateTime().addListener((observable, oldValue, newValue) -> clear());
+				ExtendedAppContext.getDataStore().addPropertyChangeListener(CONCEPT_EVENT.POST_COMMIT, this);
+				listening_ = true;
+			}
+		}
+	}
+
+	interface KindOfLookup
+	{
+		boolean isKindOf() throws IOException, ContradictionException;
+	}
+
+	/**
+	 * The parts of a view coordinate an isKindOf answer depends on.  {@link ViewCoordinate} itself isn't used as the key, as
+	 * the coordinates handed out are copies, and its allowed status set may be changed after the fact.
+	 */
+	static class CoordinateKey
+	{
+		private final RelAssertionType assertionType_;
+		private final int pathNid_;
+		private final long time_;
+		private final EnumSet<Status> allowedStatus_;
+
+		CoordinateKey(RelAssertionType assertionType, int pathNid, long time, EnumSet<Status> allowedStatus)
+		{
+			assertionType_ = assertionType;
+			pathNid_ = pathNid;
+			time_ = time;
+			allowedStatus_ = EnumSet.copyOf(allowedStatus);
+		}
+
+		static CoordinateKey of(ViewCoordinate coordinate)
+		{
+			return new CoordinateKey(coordinate.getRelationshipAssertionType(), coordinate.getViewPosition().getPath().getConceptNid(),
+					coordinate.getViewPosition().getTime(), coordinate.getAllowedStatus());
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof CoordinateKey))
+			{
+				return false;
+			}
+			CoordinateKey other = (CoordinateKey) obj;
+			return assertionType_ == other.assertionType_ && pathNid_ == other.pathNid_ && time_ == other.time_
+					&& allowedStatus_.equals(other.allowedStatus_);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(assertionType_, pathNid_, time_, allowedStatus_);
+		}
+	}
+
+	private class Membership
+	{
+		private final int refsetNid_;
+		private final boolean annotationStyle_;
+		private final BitSet members_ = new BitSet();
+		//For annotation style refsets, the concepts checked so far
+		private final BitSet checked_;
+
+		Membership(int refsetNid, boolean annotationStyle)
+		{
+			refsetNid_ = refsetNid;
+			annotationStyle_ = annotationStyle;
+			checked_ = annotationStyle ? new BitSet() : null;
+		}
+
+		boolean isMember(int conceptNid) throws IOException
+		{
+			int index = index(conceptNid);
+			if (!annotationStyle_)
+			{
+				synchronized (this)
+				{
+					return index >= 0 && members_.get(index);
+				}
+			}
+			if (index >= 0)
+			{
+				synchronized (this)
+				{
+					if (checked_.get(index))
+					{
+						return members_.get(index);
+					}
+				}
+			}
+			int generation = generation_.get();
+			boolean member = readAnnotationMembership(conceptNid);
+			if (index >= 0 && generation == generation_.get())
+			{
+				synchronized (this)
+				{
+					checked_.set(index);
+					members_.set(index, member);
+				}
+			}
+			return member;
+		}
+
+		synchronized void setMember(int nid, boolean member)
+		{
+			int index = index(nid);
+			if (index >= 0)
+			{
+				members_.set(index, member);
+			}
+		}
+
+		synchronized void forget(int[] conceptNids)
+		{
+			if (!annotationStyle_)
+			{
+				// the members live on the refset concept, which drops the whole refset
+				return;
+			}
+			for (int nid : conceptNids)
+			{
+				int index = index(nid);
+				if (index >= 0)
+				{
+					checked_.clear(index);
+					members_.clear(index);
+				}
+			}
+		}
+
+		private boolean readAnnotationMembership(int conceptNid) throws IOException
+		{
+			ConceptVersionBI concept = OTFUtility.getConceptVersion(conceptNid);
+			if (concept == null)
+			{
+				return false;
+			}
+			for (RefexVersionBI<?> r : concept.getAnnotationsActive(OTFUtility.getViewCoordinate()))
+			{
+				if (r.getAssemblageNid() == refsetNid_)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -18,20 +18,21 @@
  */
 package gov.va.isaac.drools.helper;
 
+import gov.va.isaac.AppContext;
+import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.drools.testmodel.DrComponent;
 import gov.va.isaac.drools.testmodel.DrConcept;
 import gov.va.isaac.drools.testmodel.DrDescription;
 import gov.va.isaac.drools.testmodel.DrRelationship;
-import gov.va.isaac.util.OTFUtility;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Hashtable;
 import java.util.UUID;
 
-import org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI;
-import org.ihtsdo.otf.tcc.api.refex.RefexVersionBI;
+import org.ihtsdo.otf.tcc.api.store.TerminologyStoreDI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -531,59 +532,38 @@ public class TerminologyHelperDrools
 
 	public boolean isMemberOf(String conceptUUID, String refsetUUID) throws Exception
 	{
-		ConceptVersionBI concept = OTFUtility.getConceptVersion(UUID.fromString(conceptUUID));
-		if (concept == null)
+		int conceptNid = getNid(conceptUUID);
+		int refsetNid = getNid(refsetUUID);
+		if (conceptNid == 0 || refsetNid == 0)
 		{
 			return false;
 		}
-
-		ConceptVersionBI refset = OTFUtility.getConceptVersion(UUID.fromString(refsetUUID));
-		if (refset == null)
-		{
-			return false;
-		}
-		
-		if (refset.isAnnotationStyleRefex())
-		{
-			for (RefexVersionBI<?> r : concept.getAnnotationsActive(OTFUtility.getViewCoordinate()))
-			{
-				if (r.getAssemblageNid() == refset.getNid())
-				{
-					return true;
-				}
-			}
-		}
-		else
-		{
-			for (RefexVersionBI<?> r : refset.getRefsetMembersActive())
-			{
-				if (r.getReferencedComponentNid() == concept.getNid())
-				{
-					return true;
-				}
-			}
-		}
-		return false;
+		return AppContext.getService(DroolsLookupCache.class).isMemberOf(conceptNid, refsetNid);
 	}
 
 	public boolean isParentOf(String parentUUID, String subtypeUUID) throws Exception
 	{
-		ConceptVersionBI parentConcept = OTFUtility.getConceptVersion(UUID.fromString(parentUUID));
-		if (parentConcept == null)
-		{
-			return false;
-		}
-
-		ConceptVersionBI subtypeConcept = OTFUtility.getConceptVersion(UUID.fromString(subtypeUUID));
-		if (subtypeConcept == null)
+		int parentNid = getNid(parentUUID);
+		int subtypeNid = getNid(subtypeUUID);
+		if (parentNid == 0 || subtypeNid == 0)
 		{
 			return false;
 		}
-		return subtypeConcept.isKindOf(parentConcept);
+		return AppContext.getService(DroolsLookupCache.class).isKindOf(subtypeNid, parentNid);
 	}
 
 	public boolean isParentOfOrEqualTo(String parent, String subtype) throws Exception
 	{
 		return subtype.equals(parent) || isParentOf(parent, subtype);
 	}
+
+	/**
+	 * @return the nid of the concept, or 0 if it isn't in the DB
+	 */
+	private int getNid(String uuid) throws IOException
+	{
+		UUID id = UUID.fromString(uuid);
+		TerminologyStoreDI dataStore = ExtendedAppContext.getDataStore();
+		return dataStore.hasUuid(id) ? dataStore.getNidForUuids(id) : 0;
+	}
 }
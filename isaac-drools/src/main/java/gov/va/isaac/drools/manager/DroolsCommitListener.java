@@ -23,6 +23,7 @@ import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.config.profiles.UserProfile;
 import gov.va.isaac.config.profiles.UserProfileManager;
 import gov.va.isaac.drools.gui.DroolsValidationFailureView;
+import gov.va.isaac.drools.helper.DroolsLookupCache;
 import gov.va.isaac.drools.helper.ResultsCollector;
 import gov.va.isaac.drools.helper.ResultsItem;
 import gov.va.isaac.drools.helper.templates.AbstractTemplate;
@@ -34,11 +35,15 @@ import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyVetoException;
 import java.beans.VetoableChangeListener;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-
-import javafx.beans.property.SimpleBooleanProperty;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -48,6 +53,7 @@ import org.ihtsdo.otf.tcc.api.chronicle.ComponentChronicleBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
 import org.ihtsdo.otf.tcc.api.coordinate.Status;
 import org.ihtsdo.otf.tcc.api.description.DescriptionChronicleBI;
+import org.ihtsdo.otf.tcc.api.description.DescriptionVersionBI;
 import org.ihtsdo.otf.tcc.api.metadata.binding.SnomedMetadataRf2;
 import org.ihtsdo.otf.tcc.api.nid.NativeIdSetBI;
 import org.ihtsdo.otf.tcc.api.store.TerminologyDI.CONCEPT_EVENT;
@@ -153,113 +159,48 @@ public class DroolsCommitListener implements CommitListenerI, VetoableChangeList
 		}
 		try
 		{
-			SimpleBooleanProperty fail = new SimpleBooleanProperty(false);
 			if (CONCEPT_EVENT.PRE_COMMIT.name().equals(evt.getPropertyName()))
 			{
 				LOG.debug("pre-commit triggered in drools listener");
 				
 				int[] allConceptNids = ((NativeIdSetBI) evt.getNewValue()).getSetValues();
 				
-				for (int nid : allConceptNids)
+				LinkedHashMap<UncommittedDescription, List<Object>> facts = readUncommittedDescriptions(allConceptNids);
+				if (facts.size() == 0)
 				{
-					ConceptChronicleBI ccbi = ExtendedAppContext.getDataStore().getConceptForNid(nid);
-					if (ccbi instanceof ConceptChronicle)
-					{
-						ConceptChronicle cc = (ConceptChronicle)ccbi;
-						for (int componentNid : cc.getUncommittedNids().getListArray())
-						{
-							ComponentChronicleBI<?> comChronicleBI = ExtendedAppContext.getDataStore().getComponent(componentNid);
-							
-							if (comChronicleBI instanceof DescriptionChronicleBI)
-							{
-								for (String s : dem_.getLoadedExecutors())
-								{
-									
-									LOG.debug("Running rule {}", s);
-									DroolsExecutor de = dem_.getDroolsExecutor(s);
-
-									DescriptionChronicleBI dc = (DescriptionChronicleBI)comChronicleBI;
-									dc.getVersions().forEach((dcvi) ->
-									{
-										try
-										{
-											if (!dcvi.isUncommitted())
-											{
-												return;
-											}
-											ArrayList<Object> facts = new ArrayList<>();
-											
-											DrDescription d = new DrDescription();
-											d.setLang(dcvi.getLang());
-											d.setStatusUuid(dcvi.getStatus() == Status.ACTIVE ? SnomedMetadataRf2.ACTIVE_VALUE_RF2.getUuids()[0].toString() : 
-												SnomedMetadataRf2.INACTIVE_VALUE_RF2.getUuids()[0].toString());
-											d.setText(dcvi.getText());
-											
-											facts.add(d);
-											
-											Map<String, Object> globals = new HashMap<>();
-											
-											ResultsCollector rc = new ResultsCollector();
-											
-											globals.put("resultsCollector", rc);
-											
-											int fireCount = de.fireAllRules(globals, facts);
-											
-											LOG.debug("Fire count was " + fireCount);
-											
-											if (rc.getResultsItems().size() > 0)
-											{
-												fail.set(true);
-												System.out.println("Failed test info:");
-												for (ResultsItem r : rc.getResultsItems())
-												{
-													try
-													{
-														AppContext.getService(DroolsValidationFailureView.class).addFailure(r);
-													}
-													catch (Exception e)
-													{
-														LOG.error("Problem displaying error");
-													}
-													System.out.println("resultsItem: ");
-													System.out.println(r.getMessage());
-													System.out.println(r.getSeverity());
-													System.out.println(r.getRuleUuid());
-													System.out.println(r.getErrorCode());
-												}
-												
-												for (AbstractTemplate  t :rc.getTemplates())
-												{
-													
-													if (t instanceof DescriptionTemplate)
-													{
-														System.out.println("Suggested fix: '" + ((DescriptionTemplate)t).getText() + "'");
-													}
-													else
-													{
-														System.out.println(t.toString());
-													}
-												}
-											}
-										}
-										catch (Exception e)
-										{
-											LOG.error("Unexpected error running pre commit drools rule", e);
-										}
-									});
-								}
-							}
-						}
-						
-					}
-					else
+					return;
+				}
+				
+				// The lookups remembered for these concepts are of their committed state, and the ones made during validation
+				// are of the uncommitted state - which may yet be cancelled
+				DroolsLookupCache lookupCache = AppContext.getService(DroolsLookupCache.class);
+				lookupCache.invalidate(allConceptNids);
+				List<Map<Integer, ResultsCollector>> failures;
+				try
+				{
+					// Each executor evaluates all of the facts of the commit in one session, and the executors run in parallel
+					failures = dem_.getLoadedExecutors().parallelStream()
+							.map((executorName) -> runExecutor(executorName, facts))
+							.collect(Collectors.toList());
+				}
+				finally
+				{
+					lookupCache.invalidate(allConceptNids);
+				}
+				
+				TreeSet<Integer> failedNids = new TreeSet<>();
+				for (Map<Integer, ResultsCollector> executorFailures : failures)
+				{
+					for (Entry<Integer, ResultsCollector> failure : executorFailures.entrySet())
 					{
-						LOG.error("Unexpected chronicle type {}!", ccbi);
+						failedNids.add(failure.getKey());
+						reportFailure(failure.getKey(), failure.getValue());
 					}
 				}
 				
-				if (fail.get())
+				if (failedNids.size() > 0)
 				{
+					LOG.info("Drools validation failed for the components {}", failedNids);
 					throw new PropertyVetoException("Failed Drools Validators", evt);
 				}
 			}
@@ -273,5 +214,137 @@ public class DroolsCommitListener implements CommitListenerI, VetoableChangeList
 			LOG.error("Unexpected error processing commit notification", e);
 		}
 	}
-
+	
+	/**
+	 * @return the facts for each uncommitted version of each description in the concepts being committed
+	 */
+	private LinkedHashMap<UncommittedDescription, List<Object>> readUncommittedDescriptions(int[] conceptNids) throws IOException
+	{
+		LinkedHashMap<UncommittedDescription, List<Object>> facts = new LinkedHashMap<>();
+		
+		for (int nid : conceptNids)
+		{
+			ConceptChronicleBI ccbi = ExtendedAppContext.getDataStore().getConceptForNid(nid);
+			if (ccbi instanceof ConceptChronicle)
+			{
+				ConceptChronicle cc = (ConceptChronicle)ccbi;
+				for (int componentNid : cc.getUncommittedNids().getListArray())
+				{
+					ComponentChronicleBI<?> comChronicleBI = ExtendedAppContext.getDataStore().getComponent(componentNid);
+					
+					if (comChronicleBI instanceof DescriptionChronicleBI)
+					{
+						for (DescriptionVersionBI<?> dcvi : ((DescriptionChronicleBI)comChronicleBI).getVersions())
+						{
+							if (!dcvi.isUncommitted())
+							{
+								continue;
+							}
+							DrDescription d = new DrDescription();
+							d.setLang(dcvi.getLang());
+							d.setStatusUuid(dcvi.getStatus() == Status.ACTIVE ? SnomedMetadataRf2.ACTIVE_VALUE_RF2.getUuids()[0].toString() : 
+								SnomedMetadataRf2.INACTIVE_VALUE_RF2.getUuids()[0].toString());
+							d.setText(dcvi.getText());
+							
+							ArrayList<Object> descriptionFacts = new ArrayList<>(1);
+							descriptionFacts.add(d);
+							facts.put(new UncommittedDescription(componentNid), descriptionFacts);
+						}
+					}
+				}
+			}
+			else
+			{
+				LOG.error("Unexpected chronicle type {}!", ccbi);
+			}
+		}
+		return facts;
+	}
+	
+	/**
+	 * Evaluate all of the facts with one executor.
+	 * @return the results of each failed component, by component nid
+	 */
+	private Map<Integer, ResultsCollector> runExecutor(String executorName, Map<UncommittedDescription, List<Object>> facts)
+	{
+		HashMap<Integer, ResultsCollector> failures = new HashMap<>();
+		try
+		{
+			LOG.debug("Running rule {} against {} descriptions", executorName, facts.size());
+			DroolsExecutor de = dem_.getDroolsExecutor(executorName);
+			
+			Map<String, Object> globals = new HashMap<>();
+			ResultsCollector rc = new ResultsCollector();
+			globals.put("resultsCollector", rc);
+			
+			de.fireAllRulesForEach(globals, facts, (description, fireCount) ->
+			{
+				LOG.debug("Fire count was " + fireCount);
+				// Hand this component's results over, and give the collector a clean slate for the next one - the collector also
+				// drops repeated messages, which must only happen within one component
+				if (rc.getResultsItems().size() > 0)
+				{
+					ResultsCollector componentResults = failures.get(description.componentNid);
+					if (componentResults == null)
+					{
+						componentResults = new ResultsCollector();
+						failures.put(description.componentNid, componentResults);
+					}
+					componentResults.getResultsItems().addAll(rc.getResultsItems());
+					componentResults.getTemplates().addAll(rc.getTemplates());
+				}
+				rc.getResultsItems().clear();
+				rc.getTemplates().clear();
+			});
+		}
+		catch (Exception e)
+		{
+			LOG.error("Unexpected error running pre commit drools rule " + executorName, e);
+		}
+		return failures;
+	}
+	
+	private void reportFailure(int componentNid, ResultsCollector rc)
+	{
+		LOG.info("Drools validation failed for component {}", componentNid);
+		for (ResultsItem r : rc.getResultsItems())
+		{
+			try
+			{
+				AppContext.getService(DroolsValidationFailureView.class).addFailure(r);
+			}
+			catch (Exception e)
+			{
+				LOG.error("Problem displaying error");
+			}
+			LOG.debug("Failed rule {} - error code {}, severity {}: {}", r.getRuleUuid(), r.getErrorCode(), r.getSeverity(), r.getMessage());
+		}
+		
+		for (AbstractTemplate  t :rc.getTemplates())
+		{
+			
+			if (t instanceof DescriptionTemplate)
+			{
+				LOG.debug("Suggested fix: '{}'", ((DescriptionTemplate)t).getText());
+			}
+			else
+			{
+				LOG.debug("Suggested fix: {}", t);
+			}
+		}
+	}
+	
+	/**
+	 * The key of the facts for one uncommitted description version - compared by identity, as a description may have more than
+	 * one uncommitted version.
+	 */
+	private static class UncommittedDescription
+	{
+		private final int componentNid;
+		
+		UncommittedDescription(int componentNid)
+		{
+			this.componentNid = componentNid;
+		}
+	}
 }
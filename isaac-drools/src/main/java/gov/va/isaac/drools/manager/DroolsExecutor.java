@@ -41,12 +41,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.BiConsumer;
 
 import org.kie.api.KieBaseConfiguration;
 import org.kie.api.definition.rule.Rule;
 import org.kie.api.io.Resource;
 import org.kie.api.io.ResourceType;
 import org.kie.api.runtime.rule.ConsequenceExceptionHandler;
+import org.kie.api.runtime.rule.FactHandle;
 import org.kie.internal.KnowledgeBase;
 import org.kie.internal.KnowledgeBaseFactory;
 import org.kie.internal.builder.KnowledgeBuilder;
@@ -290,6 +292,68 @@ public class DroolsExecutor
 		}
 	}
 	
+	/**
+	 * Runs the rules against each of a group of fact sets, in one session - rather than paying for a new session for each set, 
+	 * as calling {@link #fireAllRules(Map, Collection)} for each would.
+	 * 
+	 * Each fact set is inserted, the rules are fired, and the facts are removed again before the next set is inserted - so each set is 
+	 * evaluated on its own, as it would be in a session of its own.  The globals, however, are shared by all of the sets, and facts
+	 * inserted by the rules themselves are not removed - so this doesn't suit rules that work that way.
+	 * 
+	 * @param globals - the globals for the session
+	 * @param factSets - the facts to evaluate, by a key that identifies them to the caller (such as a component nid)
+	 * @param afterEach - called after the rules are fired for each fact set, with its key and the number of rules fired - typically to 
+	 * read (and reset) a results collector global
+	 */
+	public <K> void fireAllRulesForEach(Map<String, Object> globals, Map<K, ? extends Collection<?>> factSets, BiConsumer<K, Integer> afterEach)
+			throws DroolsException, IOException
+	{
+		StatefulKnowledgeSession ksession = null;
+		try
+		{
+			ksession = kbase_.newStatefulKnowledgeSession();
+
+			for (Map.Entry<String, Object> e : globals.entrySet())
+			{
+				ksession.setGlobal(e.getKey(), e.getValue());
+			}
+			
+			ArrayList<FactHandle> handles = new ArrayList<>();
+			for (Map.Entry<K, ? extends Collection<?>> factSet : factSets.entrySet())
+			{
+				for (Object fact : factSet.getValue())
+				{
+					handles.add(ksession.insert(fact));
+				}
+				int fireCount = ksession.fireAllRules();
+				for (FactHandle handle : handles)
+				{
+					ksession.delete(handle);
+				}
+				handles.clear();
+				afterEach.accept(factSet.getKey(), fireCount);
+			}
+		}
+		catch (Exception e)
+		{
+			if (e instanceof DroolsException)
+			{
+				throw e;
+			}
+			else
+			{
+				throw new IOException("Problem executing drools rules", e);
+			}
+		}
+		finally
+		{
+			if (ksession != null)
+			{
+				ksession.dispose();
+			}
+		}
+	}
+	
 	/**
 	 * Open a new stateful session - return it to the user to do with as they please.
 	 * 
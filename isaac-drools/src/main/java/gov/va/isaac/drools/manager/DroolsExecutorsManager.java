@@ -18,19 +18,30 @@ package gov.va.isaac.drools.manager;
 import eu.infomas.annotation.ClassPathScanner;
 import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 import javax.inject.Singleton;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
 import org.jvnet.hk2.annotations.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,11 +61,12 @@ import org.slf4j.LoggerFactory;
  * 
  * Rules are compiled to the folder "drools-rules/compiled-drools-rules".  
  * 
- * Any pre-compiled rules (files with a .kpkgs extension) will be loaded first.
- * 
- * Then, all .drl files are checked (including files written from the classpath) and any .drl file
- * that doesn't have a corresponding .kpkgs file is compiled.  Also, any drl file that is newer than
- * the corresponding .kpkgs file is recompiled.
+ * Each compiled package (a .kpkgs file) is stored with a .hash file - the hash of the drools version, the 
+ * extra evaluators and the .drl source it was compiled from.  A .drl file (including files written from the 
+ * classpath) whose hash matches is loaded from its package, anything else is compiled, and its package written 
+ * out.  If the drools version can't be told, every .drl file is compiled.
+ * Pre-compiled packages that have no .drl file are loaded as is.  The packages are loaded and compiled 
+ * in parallel, and the time taken for each is logged.
  * 
  * Each individual .drl file that is found gets configured into its own DroolsExecutor instance.
  * 
@@ -73,7 +85,10 @@ public class DroolsExecutorsManager implements ServicesToPreloadI
 	
 	private Logger logger = LoggerFactory.getLogger(DroolsExecutorsManager.class);
 	
-	private HashMap<String, DroolsExecutor> loadedExecutors_ = new HashMap<>();
+	//The version of the drools compiler, part of the hash of each compiled package - or null, if it can't be told
+	private static final String DROOLS_VERSION = readDroolsVersion();
+	
+	private ConcurrentHashMap<String, DroolsExecutor> loadedExecutors_ = new ConcurrentHashMap<>();
 	
 	private CountDownLatch cdl_ = new CountDownLatch(1);
 	
@@ -87,37 +102,59 @@ public class DroolsExecutorsManager implements ServicesToPreloadI
 	{
 		//For HK2 to call
 		//runs in a background thread
-		Utility.execute(() -> init());
+		Utility.execute(WorkPool.BACKGROUND, () -> init());
 	}
 
 	private void init()
 	{
 		logger.info("Configuring the Drools Rules Engine");
+		long start = System.currentTimeMillis();
 		try
 		{
-			//First, load any previously compiled rules
 			compiledRuleDirectory_.mkdirs();
+			if (DROOLS_VERSION == null)
+			{
+				logger.warn("Unable to tell the drools version - all rules will be compiled, rather than loaded from compiled packages");
+			}
 			
 			writeDRLFilesFromClassPath();
 			
-			
 			logger.debug("Checking for compiled rules in " + compiledRuleDirectory_.getAbsolutePath());
-			
-			if (compiledRuleDirectory_.exists())
-			{
-				loadFromFolder(compiledRuleDirectory_, "");
-			}
+			HashMap<String, File> compiledFiles = new HashMap<>();
+			findFiles(compiledRuleDirectory_, "", ".kpkgs", compiledFiles);
 			
 			logger.debug("Checking for drools rules in " + droolsRulesFolder_.getAbsolutePath());
-			
+			HashMap<String, File> drlFiles = new HashMap<>();
 			if (droolsRulesFolder_.exists())
 			{
-				compileFromFolder(droolsRulesFolder_, "");
+				findFiles(droolsRulesFolder_, "", ".drl", drlFiles);
 			}
 			else
 			{
 				logger.info("No drools rules folder was found at " + droolsRulesFolder_.getAbsolutePath());
 			}
+			
+			//Each package is independent of the others, so they are loaded (or compiled) in parallel.  Not on the BACKGROUND 
+			//pool this runs on - anything waiting on init from a BACKGROUND thread would starve it.
+			ArrayList<Supplier<DroolsExecutor>> loads = new ArrayList<>();
+			for (Entry<String, File> drl : drlFiles.entrySet())
+			{
+				loads.add(() -> loadOrCompile(drl.getKey(), drl.getValue(), compiledFiles.get(drl.getKey())));
+			}
+			for (Entry<String, File> compiled : compiledFiles.entrySet())
+			{
+				//packages made by createDroolsExecutor(...) have no drl file
+				if (!drlFiles.containsKey(compiled.getKey()))
+				{
+					loads.add(() -> load(compiled.getKey(), compiled.getValue()));
+				}
+			}
+			loads.parallelStream().forEach(load -> load.get());
+			logger.info("Loaded {} drools rule packages in {} ms", loadedExecutors_.size(), System.currentTimeMillis() - start);
+		}
+		catch (Exception e)
+		{
+			logger.error("Unexpected error loading drools rules", e);
 		}
 		finally
 		{
@@ -125,85 +162,162 @@ public class DroolsExecutorsManager implements ServicesToPreloadI
 		}
 	}
 	
-	private void loadFromFolder(File folder, String relativeParentPortion)
+	private void findFiles(File folder, String relativeParentPortion, String extension, HashMap<String, File> found)
 	{
 		for (File f : folder.listFiles())
 		{
-			if (f.isFile() && f.getName().toLowerCase().endsWith(".kpkgs"))
+			if (f.isFile() && f.getName().toLowerCase().endsWith(extension))
 			{
-				try
-				{
-					logger.info("Loading Compiled Rule " + f.getAbsolutePath());
-
-					String name = relativeParentPortion + nameFromFile(f);
-					
-					DroolsExecutor de = new DroolsExecutor(name, f);
-					loadedExecutors_.put(name, de);
-				}
-				catch (Exception e)
-				{
-					logger.error("Problem reading compiled rule file - skipping", e);
-				}
+				found.put(relativeParentPortion + nameFromFile(f), f);
 			}
 			else if (f.isDirectory())
 			{
-				loadFromFolder(f, relativeParentPortion + f.getName() + ".");
+				findFiles(f, relativeParentPortion + f.getName() + ".", extension, found);
 			}
 		}
 	}
 	
-	private void compileFromFolder(File folder, String relativeParentPortion)
+	/**
+	 * Loads the compiled package of a drl file if it was compiled from the same source, by the same drools version, with 
+	 * the same extra evaluators - otherwise compiles the drl file, and writes out the package.
+	 * @return the executor, or null, if the rules could neither be loaded nor compiled
+	 */
+	private DroolsExecutor loadOrCompile(String name, File drlFile, File compiledFile)
 	{
-		for (File f : folder.listFiles())
+		long start = System.currentTimeMillis();
+		EnumSet<ExtraEvaluators> extraEvaluators = EnumSet.allOf(ExtraEvaluators.class);
+		String hash = null;
+		try
 		{
-			if (f.isFile() && f.getName().toLowerCase().endsWith(".drl"))
+			//without a version, no hash is written, so the package is never reused
+			hash = (DROOLS_VERSION == null ? null : hash(drlFile, extraEvaluators));
+			File hashFile = new File(compiledRuleDirectory_, name + ".hash");
+			if (hash != null && compiledFile != null && hashFile.isFile() 
+					&& hash.equals(new String(Files.readAllBytes(hashFile.toPath()), StandardCharsets.UTF_8).trim()))
 			{
-				logger.info("Checking Rule " + f.getAbsolutePath());
-
-				String name = relativeParentPortion + nameFromFile(f);
-				DroolsExecutor alreadyLoaded = loadedExecutors_.get(name);
-				if (alreadyLoaded != null)
+				logger.debug("Skipping " + drlFile + " because it is already compiled");
+				DroolsExecutor de = load(name, compiledFile);
+				if (de != null)
 				{
-					//If the drl file on disk is older than the compiled file - skip
-					if (f.lastModified() <= alreadyLoaded.getCompileTime())
-					{
-						logger.debug("Skipping " + f + " because it is already compiled");
-						continue;
-					}
-					else
-					{
-						logger.debug("Drools file " + f + " is newer than compiled package - will recompile");
-					}
-				}
-				else
-				{
-					logger.info("Compiling Rule " + f);
-				}
-				
-				try
-				{
-					//otherwise - compile
-					DroolsExecutor de = new DroolsExecutor(name, EnumSet.allOf(ExtraEvaluators.class), f);
-					loadedExecutors_.put(name, de);
-					
-					File compiledTo = new File(compiledRuleDirectory_, name + ".kpkgs");
-					
-					//serialize
-					ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(compiledTo));
-					out.writeObject(de.getKnowledgePackages());
-					out.close();
-				}
-				catch (Exception e)
-				{
-					logger.error("Problem compiling drools file " + f.getAbsolutePath(), e);
+					return de;
 				}
 			}
-			else if (f.isDirectory())
+			else if (compiledFile != null)
+			{
+				logger.debug("Drools file " + drlFile + " has changed since the package was compiled - will recompile");
+			}
+		}
+		catch (Exception e)
+		{
+			logger.warn("Unable to check the compiled package of " + drlFile + " - will recompile", e);
+		}
+		
+		try
+		{
+			logger.info("Compiling Rule " + drlFile);
+			DroolsExecutor de = new DroolsExecutor(name, extraEvaluators, drlFile);
+			loadedExecutors_.put(name, de);
+			writeCompiled(name, de, hash);
+			logger.info("Compiled rule package {} in {} ms", name, System.currentTimeMillis() - start);
+			return de;
+		}
+		catch (Exception e)
+		{
+			logger.error("Problem compiling drools file " + drlFile.getAbsolutePath(), e);
+			if (compiledFile != null)
 			{
-				compileFromFolder(f, relativeParentPortion + f.getName() + ".");
+				logger.info("Falling back to the previously compiled package of " + name);
+				return load(name, compiledFile);
 			}
+			return null;
+		}
+	}
+	
+	/**
+	 * @return the executor, or null, if the file could not be read
+	 */
+	private DroolsExecutor load(String name, File compiledFile)
+	{
+		long start = System.currentTimeMillis();
+		try
+		{
+			logger.info("Loading Compiled Rule " + compiledFile.getAbsolutePath());
+			DroolsExecutor de = new DroolsExecutor(name, compiledFile);
+			loadedExecutors_.put(name, de);
+			logger.info("Loaded compiled rule package {} in {} ms", name, System.currentTimeMillis() - start);
+			return de;
+		}
+		catch (Exception e)
+		{
+			logger.error("Problem reading compiled rule file - skipping", e);
+			return null;
 		}
 	}
+	
+	/**
+	 * Serializes the packages of an executor, along with the hash of the source they were compiled from, if known.
+	 */
+	private void writeCompiled(String name, DroolsExecutor de, String hash) throws IOException
+	{
+		File compiledTo = new File(compiledRuleDirectory_, name + ".kpkgs");
+		File hashFile = new File(compiledRuleDirectory_, name + ".hash");
+		
+		//write to a temp file first, so a failed write doesn't leave a broken package behind
+		File temp = new File(compiledRuleDirectory_, name + ".kpkgs.tmp");
+		try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(temp)))
+		{
+			out.writeObject(de.getKnowledgePackages());
+		}
+		Files.move(temp.toPath(), compiledTo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		
+		if (hash == null)
+		{
+			Files.deleteIfExists(hashFile.toPath());
+		}
+		else
+		{
+			Files.write(hashFile.toPath(), hash.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * @return the SHA-256 of the drools version, the extra evaluators and the content of the file, as hex
+	 */
+	private String hash(File drlFile, EnumSet<ExtraEvaluators> extraEvaluators) throws IOException, NoSuchAlgorithmException
+	{
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		md.update(DROOLS_VERSION.getBytes(StandardCharsets.UTF_8));
+		md.update(extraEvaluators.toString().getBytes(StandardCharsets.UTF_8));
+		md.update(Files.readAllBytes(drlFile.toPath()));
+		return String.format("%064x", new BigInteger(1, md.digest()));
+	}
+	
+	/**
+	 * The drools jars are built by maven, so carry their version in their pom.properties - the manifest 
+	 * Implementation-Version is only a fallback, as it isn't always set.
+	 * @return the version of the drools compiler, or null, if it can't be told
+	 */
+	private static String readDroolsVersion()
+	{
+		try (InputStream is = KnowledgeBuilderFactory.class.getClassLoader().getResourceAsStream("META-INF/maven/org.drools/drools-compiler/pom.properties"))
+		{
+			if (is != null)
+			{
+				Properties p = new Properties();
+				p.load(is);
+				String version = p.getProperty("version");
+				if (version != null && version.trim().length() > 0)
+				{
+					return version.trim();
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			//fall through to the manifest
+		}
+		return KnowledgeBuilderFactory.class.getPackage().getImplementationVersion();
+	}
 
 	private String nameFromFile(File f)
 	{
@@ -270,12 +384,8 @@ public class DroolsExecutorsManager implements ServicesToPreloadI
 		DroolsExecutor de = new DroolsExecutor(localName, EnumSet.allOf(ExtraEvaluators.class), kbFiles);
 		loadedExecutors_.put(localName, de);
 		
-		File compiledTo = new File(compiledRuleDirectory_, localName + ".kpkgs");
-		
-		//serialize
-		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(compiledTo));
-		out.writeObject(de.getKnowledgePackages());
-		out.close();
+		//serialize - without a source hash, so it is never confused with the package of a drl file of the same name
+		writeCompiled(localName, de, null);
 		return de;
 	}
 	
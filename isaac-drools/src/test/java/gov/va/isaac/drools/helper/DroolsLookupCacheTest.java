@@ -0,0 +1,81 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.drools.helper;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ihtsdo.otf.tcc.api.contradiction.ContradictionException;
+import org.ihtsdo.otf.tcc.api.coordinate.Status;
+import org.ihtsdo.otf.tcc.api.relationship.RelAssertionType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link DroolsLookupCacheTest}
+ *
+ * Checks that isKindOf answers are remembered per view coordinate, not just per stated / inferred view.
+ */
+public class DroolsLookupCacheTest
+{
+	private static final int PATH = -2000;
+	private static final int CHILD = -1000;
+	private static final int ANCESTOR = -999;
+
+	@Test
+	public void testKindOfPerCoordinate() throws IOException, ContradictionException
+	{
+		DroolsLookupCache cache = new DroolsLookupCache();
+		AtomicInteger lookups = new AtomicInteger();
+		DroolsLookupCache.CoordinateKey now = key(RelAssertionType.INFERRED, Long.MAX_VALUE);
+		DroolsLookupCache.CoordinateKey before = key(RelAssertionType.INFERRED, 1000L);
+
+		// the child only became a kind of the ancestor after the earlier time
+		Assert.assertTrue(cache.isKindOf(now, CHILD, ANCESTOR, () -> lookups.incrementAndGet() > 0));
+		Assert.assertFalse(cache.isKindOf(before, CHILD, ANCESTOR, () -> lookups.incrementAndGet() < 0));
+		Assert.assertEquals(2, lookups.get());
+
+		// answered from the cache, for the same coordinate - even a fresh copy of it
+		Assert.assertTrue(cache.isKindOf(key(RelAssertionType.INFERRED, Long.MAX_VALUE), CHILD, ANCESTOR, () -> lookups.incrementAndGet() < 0));
+		Assert.assertFalse(cache.isKindOf(before, CHILD, ANCESTOR, () -> lookups.incrementAndGet() > 0));
+		Assert.assertEquals(2, lookups.get());
+
+		cache.clear();
+		Assert.assertFalse(cache.isKindOf(now, CHILD, ANCESTOR, () -> lookups.incrementAndGet() < 0));
+		Assert.assertEquals(3, lookups.get());
+	}
+
+	@Test
+	public void testCoordinateKey()
+	{
+		Assert.assertEquals(key(RelAssertionType.STATED, 5L), key(RelAssertionType.STATED, 5L));
+		Assert.assertEquals(key(RelAssertionType.STATED, 5L).hashCode(), key(RelAssertionType.STATED, 5L).hashCode());
+		Assert.assertNotEquals(key(RelAssertionType.STATED, 5L), key(RelAssertionType.INFERRED, 5L));
+		Assert.assertNotEquals(key(RelAssertionType.STATED, 5L), key(RelAssertionType.STATED, 6L));
+		Assert.assertNotEquals(key(RelAssertionType.STATED, 5L), new DroolsLookupCache.CoordinateKey(RelAssertionType.STATED, PATH + 1, 5L,
+				EnumSet.of(Status.ACTIVE)));
+		Assert.assertNotEquals(key(RelAssertionType.STATED, 5L), new DroolsLookupCache.CoordinateKey(RelAssertionType.STATED, PATH, 5L,
+				EnumSet.of(Status.ACTIVE, Status.INACTIVE)));
+	}
+
+	private static DroolsLookupCache.CoordinateKey key(RelAssertionType assertionType, long time)
+	{
+		return new DroolsLookupCache.CoordinateKey(assertionType, PATH, time, EnumSet.of(Status.ACTIVE));
+	}
+}
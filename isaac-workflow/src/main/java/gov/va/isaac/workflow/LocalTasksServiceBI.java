@@ -19,6 +19,7 @@
 package gov.va.isaac.workflow;
 
 import gov.va.isaac.workflow.exceptions.DatastoreException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -51,6 +52,17 @@ public interface LocalTasksServiceBI {
     List<LocalTask> getTasks() throws DatastoreException;
     List<LocalTask> getTasksByComponentId(UUID componentId) throws DatastoreException;
     void saveTask(LocalTask task) throws DatastoreException;
+    void saveTasks(Collection<LocalTask> tasks) throws DatastoreException;
+
+    /**
+     * @return the id, owner and status (only) of the open tasks of the owner, and of the tasks with the specified ids
+     */
+    List<LocalTask> getTaskStates(String owner, Collection<Long> ids) throws DatastoreException;
+    long getSyncHighWaterMark(String owner) throws DatastoreException;
+    /**
+     * {@link #saveTasks(Collection)}, and records the high water mark of the owner, in one transaction
+     */
+    void saveSyncedTasks(String owner, Collection<LocalTask> tasks, long highWaterMark) throws DatastoreException;
 
     void completeTask(Long taskId, Map<String, String> outputVariables) throws DatastoreException;
     void releaseTask(Long taskId) throws DatastoreException;
@@ -0,0 +1,200 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link CoalescingRunner}
+ *
+ * Runs a task on its own thread, on request.  Requests never block the caller, and the requests which arrive
+ * while the task is waiting to run are coalesced - the task runs once, and each of them gets that result.  A
+ * request which arrives while the task is running waits for the next run, so that its result reflects whatever
+ * changed before the request.
+ */
+public class CoalescingRunner<R>
+{
+	private static final Logger log = LoggerFactory.getLogger(CoalescingRunner.class);
+
+	private final String name_;
+	private final Supplier<R> task_;
+	private final Function<Exception, R> onError_;
+	private final Object lock_ = new Object();
+	private List<Consumer<R>> pending_ = new ArrayList<>();
+	private int requests_ = 0;
+	private int runs_ = 0;
+	private volatile boolean run_ = true;
+	private Thread thread_;
+
+	/**
+	 * @param name the name of the thread
+	 * @param task the task to run
+	 * @param onError creates the result passed to the callbacks when the task throws
+	 */
+	public CoalescingRunner(String name, Supplier<R> task, Function<Exception, R> onError)
+	{
+		name_ = name;
+		task_ = task;
+		onError_ = onError;
+	}
+
+	/**
+	 * Starts the thread - requests made before this run once it starts.
+	 */
+	public synchronized void start()
+	{
+		if (thread_ == null)
+		{
+			thread_ = new Thread(this::runRequests, name_);
+			thread_.setDaemon(true);
+			thread_.start();
+		}
+	}
+
+	/**
+	 * Request a run of the task.  Returns immediately.
+	 *
+	 * @param callback called, on the thread of the runner, with the result of the run which serves this request
+	 */
+	public void request(Consumer<R> callback)
+	{
+		synchronized (lock_)
+		{
+			pending_.add(callback);
+			requests_++;
+			lock_.notifyAll();
+		}
+	}
+
+	/**
+	 * Request a run of the task, and wait for its result.
+	 */
+	public R requestAndWait() throws InterruptedException
+	{
+		AtomicReference<R> result = new AtomicReference<>();
+		CountDownLatch cdl = new CountDownLatch(1);
+		request(r ->
+		{
+			result.set(r);
+			cdl.countDown();
+		});
+		cdl.await();
+		return result.get();
+	}
+
+	/**
+	 * @return the number of requests made
+	 */
+	public int getRequestCount()
+	{
+		synchronized (lock_)
+		{
+			return requests_;
+		}
+	}
+
+	/**
+	 * @return the number of times the task was run
+	 */
+	public int getRunCount()
+	{
+		synchronized (lock_)
+		{
+			return runs_;
+		}
+	}
+
+	/**
+	 * Stops the thread, and drops the pending requests.
+	 */
+	public synchronized void stop()
+	{
+		run_ = false;
+		synchronized (lock_)
+		{
+			pending_.clear();
+		}
+		if (thread_ != null)
+		{
+			thread_.interrupt();
+		}
+	}
+
+	private void runRequests()
+	{
+		log.debug("{} thread launches", name_);
+		while (run_)
+		{
+			List<Consumer<R>> callbacks;
+			try
+			{
+				synchronized (lock_)
+				{
+					while (pending_.isEmpty())
+					{
+						lock_.wait();
+					}
+					callbacks = pending_;
+					pending_ = new ArrayList<>();
+					runs_++;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				log.debug("{} thread was interrupted", name_);
+				continue;
+			}
+
+			if (callbacks.size() > 1)
+			{
+				log.debug("{} coalesced {} requests into one run", name_, callbacks.size());
+			}
+			R result;
+			try
+			{
+				result = task_.get();
+			}
+			catch (Exception e)
+			{
+				log.error("Unexpected error", e);
+				result = onError_.apply(e);
+			}
+			for (Consumer<R> callback : callbacks)
+			{
+				try
+				{
+					callback.accept(result);
+				}
+				catch (RuntimeException e)
+				{
+					log.error("Unexpected error in a callback of " + name_, e);
+				}
+			}
+		}
+		log.debug("{} thread ends", name_);
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.engine;
+
+import gov.va.isaac.util.BackgroundThreadFactory;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link RemoteCallExecutor}
+ *
+ * Runs calls to the workflow server on a fixed number of threads - so that independent calls (the actions of
+ * different tasks, the creation of different process instances) overlap their round trips, without flooding the
+ * server.  Every batch submitted shares the same threads, so batches submitted together are bounded together.
+ *
+ * A call mustn't wait on another batch - the threads it would wait for may all be busy with its own batch.
+ */
+public class RemoteCallExecutor
+{
+	/**
+	 * A call to make for one item
+	 */
+	@FunctionalInterface
+	public static interface RemoteCall<T>
+	{
+		void call(T item) throws Exception;
+	}
+
+	/**
+	 * The calls submitted for a collection of items
+	 */
+	public static class Batch<T>
+	{
+		private final List<T> items_ = new ArrayList<>();
+		private final List<Future<?>> futures_ = new ArrayList<>();
+
+		/**
+		 * Waits for every call of the batch to finish.
+		 *
+		 * @return each item whose call failed, with the failure - in the order submitted
+		 * @throws InterruptedException if interrupted - the calls not yet started are cancelled
+		 */
+		public List<Entry<T, Exception>> await() throws InterruptedException
+		{
+			List<Entry<T, Exception>> failures = new ArrayList<>();
+			try
+			{
+				for (int i = 0; i < futures_.size(); i++)
+				{
+					try
+					{
+						futures_.get(i).get();
+					}
+					catch (ExecutionException e)
+					{
+						failures.add(new SimpleImmutableEntry<>(items_.get(i),
+								e.getCause() instanceof Exception ? (Exception) e.getCause() : e));
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				for (Future<?> future : futures_)
+				{
+					future.cancel(false);
+				}
+				throw e;
+			}
+			return failures;
+		}
+
+		public int size()
+		{
+			return items_.size();
+		}
+	}
+
+	private final ExecutorService executor_;
+	private final int maxConcurrent_;
+
+	/**
+	 * @param maxConcurrent the most calls to run at once
+	 * @param threadName the start of the thread names
+	 */
+	public RemoteCallExecutor(int maxConcurrent, String threadName)
+	{
+		maxConcurrent_ = maxConcurrent;
+		executor_ = Executors.newFixedThreadPool(maxConcurrent, new BackgroundThreadFactory(threadName));
+	}
+
+	/**
+	 * Starts the call for each item, and returns without waiting for them.
+	 */
+	public <T> Batch<T> submit(Collection<T> items, RemoteCall<T> call)
+	{
+		Batch<T> batch = new Batch<>();
+		for (T item : items)
+		{
+			batch.items_.add(item);
+			batch.futures_.add(executor_.submit(() ->
+			{
+				call.call(item);
+				return null;
+			}));
+		}
+		return batch;
+	}
+
+	/**
+	 * Makes the call for each item, and waits for them all - see {@link Batch#await()}
+	 */
+	public <T> List<Entry<T, Exception>> invokeAll(Collection<T> items, RemoteCall<T> call) throws InterruptedException
+	{
+		return submit(items, call).await();
+	}
+
+	public int getMaxConcurrent()
+	{
+		return maxConcurrent_;
+	}
+
+	/**
+	 * Stops the threads - calls which haven't started are dropped, calls in flight are interrupted.
+	 */
+	public void shutdown()
+	{
+		executor_.shutdownNow();
+	}
+}
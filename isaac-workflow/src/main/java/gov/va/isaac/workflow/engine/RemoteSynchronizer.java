@@ -35,7 +35,7 @@ import java.rmi.RemoteException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map.Entry;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 import javax.inject.Inject;
@@ -51,6 +51,12 @@ import org.slf4j.LoggerFactory;
 /**
  * {@link RemoteSynchronizer}
  *
+ * Synchronizes the local workflow DB with the workflow server, on a background thread.  Sync requests which pile up
+ * while a sync waits to run are served by one sync - see {@link CoalescingRunner}.  Each sync uploads the pending
+ * task actions and process instance creation requests together, {@link #MAX_CONCURRENT_REMOTE_CALLS} calls at a
+ * time, then fetches the tasks of the user.  The inbox is reloaded from the local DB once the fetch completes, even
+ * if some of the uploaded actions or requests failed - those are reported on the {@link SynchronizeResult}.
+ *
  * @author alo
  * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
  */
@@ -59,10 +65,18 @@ import org.slf4j.LoggerFactory;
 public class RemoteSynchronizer implements ServicesToPreloadI
 {
 	private static final Logger log = LoggerFactory.getLogger(RemoteSynchronizer.class);
-	private SynchronizeResult mostRecentResult_ = null;
-	private ArrayBlockingQueue<Consumer<SynchronizeResult>> queuedSyncRequests_ = new ArrayBlockingQueue<>(10);
-	private volatile boolean run_ = true;
-	private Thread runThread_;
+
+	public static final int MAX_CONCURRENT_REMOTE_CALLS = 4;
+
+	private volatile SynchronizeResult mostRecentResult_ = null;
+	private final CoalescingRunner<SynchronizeResult> syncRunner_ = new CoalescingRunner<>("Workflow sync", this::synchronizeWithRemote, e ->
+	{
+		SynchronizeResult sr = new SynchronizeResult();
+		sr.unexpectedException(new DatastoreException("Unexpected error running sync", e));
+		mostRecentResult_ = sr;
+		return sr;
+	});
+	private final RemoteCallExecutor remoteCalls_ = new RemoteCallExecutor(MAX_CONCURRENT_REMOTE_CALLS, "Workflow remote call");
 
 	@Inject private ProcessInstanceServiceBI pis_;
 	@Inject private LocalTasksServiceBI lts_;
@@ -86,13 +100,22 @@ public class RemoteSynchronizer implements ServicesToPreloadI
 
 	/**
 	 * Request a remote synchronization. This call returns immediately, the call runs in a background thread.
+	 * If a sync is already waiting to run, this request is served by it.
 	 * 
 	 * @param callback - optional - pass in a callback function if you want notification of when the synchronize completes.
 	 */
 	public void synchronize(Consumer<SynchronizeResult> callback)
 	{
 		log.info("Queuing a sync request");
-		queuedSyncRequests_.add(callback == null ? noCallBackRequested : callback);
+		syncRunner_.request(callback == null ? noCallBackRequested : callback);
+	}
+
+	/**
+	 * @return the result of the most recent sync, or null if none ran yet
+	 */
+	public SynchronizeResult getMostRecentResult()
+	{
+		return mostRecentResult_;
 	}
 
 	/**
@@ -128,9 +151,7 @@ public class RemoteSynchronizer implements ServicesToPreloadI
 	public void loadRequested()
 	{
 		log.debug("load requested");
-		runThread_ = new Thread(new SyncRunner(), "Workflow sync");
-		runThread_.setDaemon(true);
-		runThread_.start();
+		syncRunner_.start();
 	}
 
 	/**
@@ -140,45 +161,8 @@ public class RemoteSynchronizer implements ServicesToPreloadI
 	public void shutdown()
 	{
 		log.debug("shutdown called");
-		run_ = false;
-		queuedSyncRequests_.clear();
-		runThread_.interrupt();
-	}
-
-	private class SyncRunner implements Runnable
-	{
-		@Override
-		public void run()
-		{
-			log.debug("Background sync thread launches");
-			while (run_)
-			{
-				Consumer<SynchronizeResult> callback = null;
-				try
-				{
-					callback = queuedSyncRequests_.take();
-					log.debug("Running synchronize");
-					mostRecentResult_ = synchronizeWithRemote();
-					callback.accept(mostRecentResult_);
-					callback = null;
-				}
-				catch (InterruptedException e)
-				{
-					log.debug("SyncRunner was interrupted");
-				}
-				catch (Exception e)
-				{
-					log.error("Unexpected error", e);
-					if (callback != null)
-					{
-						SynchronizeResult sr = new SynchronizeResult();
-						sr.unexpectedException(new DatastoreException("Unexpected error running sync", e));
-						callback.accept(sr);
-					}
-				}
-			}
-			log.debug("Background sync thread ends");
-		}
+		syncRunner_.stop();
+		remoteCalls_.shutdown();
 	}
 
 	private SynchronizeResult synchronizeWithRemote()
@@ -187,102 +171,114 @@ public class RemoteSynchronizer implements ServicesToPreloadI
 		SynchronizeResult result = new SynchronizeResult();
 		try
 		{
-			// Upload pending actions
+			long stageStart = System.currentTimeMillis();
 			TaskService remoteService = rwe_.getRemoteTaskService();
-			int countActions = 0;
 			String userId = ExtendedAppContext.getCurrentlyLoggedInUserProfile().getWorkflowUsername();
+
+			// Upload pending actions and pending requests - they don't depend on each other, so they are sent together
 			List<LocalTask> actions = lts_.getOwnedTasksByActionStatus(TaskActionStatus.Pending);
-			for (LocalTask loopTask : actions)
+			List<ProcessInstanceCreationRequestI> pendingRequests = pis_.getOpenOwnedRequests(userId);
+			RemoteCallExecutor.Batch<LocalTask> actionCalls = remoteCalls_.submit(actions, loopTask -> uploadAction(remoteService, userId, loopTask));
+			RemoteCallExecutor.Batch<ProcessInstanceCreationRequestI> requestCalls = remoteCalls_.submit(pendingRequests,
+					loopP -> lwre_.requestProcessInstanceCreationToServer(loopP));
+
+			int countActions = actions.size();
+			for (Entry<LocalTask, Exception> failure : actionCalls.await())
 			{
-				try
-				{
-					Task remoteTask = remoteService.getTaskById(loopTask.getId());
-					if (remoteTask != null)
-					{
-						remoteTask.getTaskData().getStatus();
-						if (remoteTask.getTaskData().getStatus().equals(Status.Completed))
-						{
-							// too late, task not available
-						}
-						else if (remoteTask.getTaskData().getStatus().equals(Status.Reserved))
-						{
-							// start and action
-							if (loopTask.getAction().equals(Action.COMPLETE))
-							{
-								remoteService.start(loopTask.getId(), userId);
-								remoteService.complete(loopTask.getId(), userId, toObjectValueMap(loopTask.getOutputVariables()));
-								lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Complete, loopTask.getOutputVariables());
-							}
-							else if (loopTask.getAction().equals(Action.RELEASE))
-							{
-								remoteService.release(loopTask.getId(), userId);
-								lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Canceled, loopTask.getOutputVariables());
-							}
-						}
-						else if (remoteTask.getTaskData().getStatus().equals(Status.InProgress))
-						{
-							// action
-							if (loopTask.getAction().equals(Action.COMPLETE))
-							{
-								remoteService.complete(loopTask.getId(), userId, toObjectValueMap(loopTask.getOutputVariables()));
-								lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Complete, loopTask.getOutputVariables());
-							}
-							else if (loopTask.getAction().equals(Action.RELEASE))
-							{
-								remoteService.release(loopTask.getId(), userId);
-								lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Canceled, loopTask.getOutputVariables());
-							}
-						}
-					}
-				}
-				catch (DatastoreException e)
-				{
-					result.addError(loopTask, e);
-					log.error("Error during local task loop: " + loopTask.toString(), e);
-				}
-				countActions++;
+				Exception e = failure.getValue();
+				result.addError(failure.getKey(), e instanceof DatastoreException ? (DatastoreException) e
+						: new DatastoreException("Error uploading the action of task " + failure.getKey().getId(), e));
+				log.error("Error during local task loop: " + failure.getKey().toString(), e);
 			}
-
-			// Upload pending requests
-			int countInstances = 0;
-			List<ProcessInstanceCreationRequestI> pendingRequests = pis_.getOpenOwnedRequests(userId);
-			for (ProcessInstanceCreationRequestI loopP : pendingRequests)
+			int countInstances = pendingRequests.size();
+			for (Entry<ProcessInstanceCreationRequestI, Exception> failure : requestCalls.await())
 			{
-				try
-				{
-					lwre_.requestProcessInstanceCreationToServer(loopP);
-					countInstances++;
-				}
-				catch (RemoteException | DatastoreException e)
-				{
-					result.addError(loopP, e);
-					log.error("Error during pending requests loop: " + loopP.toString(), e);
-				}
+				result.addError(failure.getKey(), failure.getValue());
+				log.error("Error during pending requests loop: " + failure.getKey().toString(), failure.getValue());
+				countInstances--;
 			}
+			stageStart = endStage(result, "upload", stageStart);
 
 			// Sync tasks
 			TasksFetcher tf = new TasksFetcher();
-			String fetchSummary = tf.fetchTasks(userId);
+			String fetchSummary = tf.fetchTasks(userId, remoteCalls_);
+			endStage(result, "fetch", stageStart);
 
-			log.info("Remote Sync finished " + (result.hasError() ? "with errors" : "successfully"));
+			log.info("Remote Sync finished " + (result.hasError() ? "with errors" : "successfully") + " - " + result.getStageTimes());
 			log.debug("   - Actions processed: {}", countActions);
 			log.debug("   - Instances processed: {}", countInstances);
 			log.debug("   - Fetch Summary: {}", fetchSummary);
 			
 			result.setResults(countActions, countInstances, fetchSummary);
-			if (!result.hasError())
-			{
-				AppContext.getService(WorkflowInbox.class).reloadContent();
-			}
+			// the fetch went through, so the local DB is current - a failed upload of a single item is no reason not to show it
+			AppContext.getService(WorkflowInbox.class).reloadContent();
 		}
 		catch (RemoteException | DatastoreException ex)
 		{
 			log.error("Error synchronizing", ex);
 			result.unexpectedException(ex);
 		}
+		catch (InterruptedException ex)
+		{
+			log.info("Remote sync was interrupted");
+			result.unexpectedException(ex);
+		}
+		mostRecentResult_ = result;
 		return result;
 	}
 
+	private void uploadAction(TaskService remoteService, String userId, LocalTask loopTask) throws DatastoreException
+	{
+		Task remoteTask = remoteService.getTaskById(loopTask.getId());
+		if (remoteTask != null)
+		{
+			if (remoteTask.getTaskData().getStatus().equals(Status.Completed))
+			{
+				// too late, task not available
+			}
+			else if (remoteTask.getTaskData().getStatus().equals(Status.Reserved))
+			{
+				// start and action
+				if (loopTask.getAction().equals(Action.COMPLETE))
+				{
+					remoteService.start(loopTask.getId(), userId);
+					remoteService.complete(loopTask.getId(), userId, toObjectValueMap(loopTask.getOutputVariables()));
+					lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Complete, loopTask.getOutputVariables());
+				}
+				else if (loopTask.getAction().equals(Action.RELEASE))
+				{
+					remoteService.release(loopTask.getId(), userId);
+					lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Canceled, loopTask.getOutputVariables());
+				}
+			}
+			else if (remoteTask.getTaskData().getStatus().equals(Status.InProgress))
+			{
+				// action
+				if (loopTask.getAction().equals(Action.COMPLETE))
+				{
+					remoteService.complete(loopTask.getId(), userId, toObjectValueMap(loopTask.getOutputVariables()));
+					lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Complete, loopTask.getOutputVariables());
+				}
+				else if (loopTask.getAction().equals(Action.RELEASE))
+				{
+					remoteService.release(loopTask.getId(), userId);
+					lts_.setAction(loopTask.getId(), loopTask.getAction(), TaskActionStatus.Canceled, loopTask.getOutputVariables());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the time of a stage of the sync
+	 * @return the end time of the stage - the start of the next
+	 */
+	private static long endStage(SynchronizeResult result, String stage, long stageStart)
+	{
+		long now = System.currentTimeMillis();
+		result.addStageTime(stage, now - stageStart);
+		return now;
+	}
+
 	private HashMap<String, Object> toObjectValueMap(Map<String, String> sourceMap)
 	{
 		HashMap<String, Object> result = new HashMap<String, Object>();
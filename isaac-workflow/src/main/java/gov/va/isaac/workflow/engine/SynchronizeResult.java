@@ -22,6 +22,9 @@ import gov.va.isaac.interfaces.workflow.ProcessInstanceCreationRequestI;
 import gov.va.isaac.workflow.LocalTask;
 import gov.va.isaac.workflow.exceptions.DatastoreException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javafx.util.Pair;
 
 /**
@@ -37,6 +40,7 @@ public class SynchronizeResult
 	
 	private int actionsProcessed_, instancesProcessed_;
 	private String summary_ = "Unexpected Error";
+	private LinkedHashMap<String, Long> stageTimes_ = new LinkedHashMap<>();
 	
 	protected SynchronizeResult()
 	{
@@ -66,6 +70,19 @@ public class SynchronizeResult
 		summary_ = fetchSummary;
 	}
 	
+	protected void addStageTime(String stage, long millis)
+	{
+		stageTimes_.put(stage, millis);
+	}
+
+	/**
+	 * @return the time taken by each stage of the sync which ran, in ms, in the order they ran
+	 */
+	public Map<String, Long> getStageTimes()
+	{
+		return Collections.unmodifiableMap(stageTimes_);
+	}
+
 	public boolean hasError()
 	{
 		if (unexpectedException_ != null || localTaskErrors_.size() > 0 || creationRequestErrors_.size() > 0)
@@ -20,10 +20,17 @@ package gov.va.isaac.workflow.persistence;
 
 import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import javax.inject.Singleton;
 import javax.sql.DataSource;
@@ -47,6 +54,7 @@ public final class DatastoreManager implements ServicesToPreloadI
 	private static final String driver = "org.apache.derby.jdbc.EmbeddedDriver";
 	private static final String protocol = "jdbc:derby:";
 	private static final String dbName = "workflowDB";
+	private static final int MAX_STATEMENTS_PER_CONNECTION = 50;
 
 	private final Logger log = LoggerFactory.getLogger(DatastoreManager.class);
 	private final CountDownLatch cdl = new CountDownLatch(1);
@@ -72,6 +80,130 @@ public final class DatastoreManager implements ServicesToPreloadI
 		return dataSource_;
 	}
 
+	/**
+	 * Creates the indexes of a table which don't exist yet - so that indexes added in later releases are also
+	 * created in existing databases.  Doesn't commit.
+	 * 
+	 * @param conn the connection
+	 * @param table the table name
+	 * @param indexes the name and the comma separated columns of each index
+	 */
+	public static void createMissingIndexes(Connection conn, String table, String[][] indexes) throws SQLException
+	{
+		HashSet<String> existing = new HashSet<>();
+		try (ResultSet rs = conn.getMetaData().getIndexInfo(null, "WORKFLOW", table, false, false))
+		{
+			while (rs.next())
+			{
+				if (rs.getString("INDEX_NAME") != null)
+				{
+					existing.add(rs.getString("INDEX_NAME").toUpperCase());
+				}
+			}
+		}
+		try (Statement s = conn.createStatement())
+		{
+			for (String[] index : indexes)
+			{
+				if (!existing.contains(index[0].toUpperCase()))
+				{
+					s.execute("create index " + index[0] + " on " + table + "(" + index[1] + ")");
+					LoggerFactory.getLogger(DatastoreManager.class).info("Created index {} on {}({})", index[0], table, index[1]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the variable columns of a table which still hold XMLEncoder output with {@link VariableCodec}.  Runs
+	 * once per table - a database property records that the table is migrated, so later starts skip the scan.
+	 * Workflow history nested in the variables is left as it is, {@link VariableCodec} reads both.  Doesn't commit.
+	 * 
+	 * @param conn the connection
+	 * @param table the table name
+	 * @param idColumn the (numeric) primary key column
+	 * @param columns the variable columns
+	 */
+	public static void migrateVariables(Connection conn, String table, String idColumn, String... columns) throws SQLException
+	{
+		String property = "gov.va.isaac.workflow.variableCodec." + table;
+		try (PreparedStatement ps = conn.prepareStatement("values SYSCS_UTIL.SYSCS_GET_DATABASE_PROPERTY(?)"))
+		{
+			ps.setString(1, property);
+			try (ResultSet rs = ps.executeQuery())
+			{
+				if (rs.next() && String.valueOf(VariableCodec.VERSION).equals(rs.getString(1)))
+				{
+					return;
+				}
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		List<Object[]> updates = new ArrayList<>();
+		try (Statement s = conn.createStatement();
+				ResultSet rs = s.executeQuery("select " + idColumn + ", " + String.join(", ", columns) + " from " + table))
+		{
+			while (rs.next())
+			{
+				Object[] update = new Object[columns.length + 1];
+				boolean xml = false;
+				for (int i = 0; i < columns.length; i++)
+				{
+					String value = rs.getString(i + 2);
+					if (VariableCodec.isXML(value))
+					{
+						xml = true;
+						value = VariableCodec.encode(VariableCodec.decode(value));
+					}
+					update[i] = value;
+				}
+				if (xml)
+				{
+					update[columns.length] = rs.getLong(1);
+					updates.add(update);
+				}
+			}
+		}
+
+		if (updates.size() > 0)
+		{
+			StringBuilder sql = new StringBuilder("update " + table + " set ");
+			for (int i = 0; i < columns.length; i++)
+			{
+				sql.append(i > 0 ? ", " : "").append(columns[i]).append(" = ?");
+			}
+			sql.append(" where ").append(idColumn).append(" = ?");
+			try (PreparedStatement ps = conn.prepareStatement(sql.toString()))
+			{
+				for (int i = 0; i < updates.size(); i++)
+				{
+					Object[] update = updates.get(i);
+					for (int j = 0; j < columns.length; j++)
+					{
+						ps.setString(j + 1, (String) update[j]);
+					}
+					ps.setLong(columns.length + 1, (Long) update[columns.length]);
+					ps.addBatch();
+					if ((i + 1) % LocalTasksDAO.BATCH_SIZE == 0)
+					{
+						ps.executeBatch();
+					}
+				}
+				ps.executeBatch();
+			}
+		}
+
+		try (PreparedStatement ps = conn.prepareStatement("call SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(?, ?)"))
+		{
+			ps.setString(1, property);
+			ps.setString(2, String.valueOf(VariableCodec.VERSION));
+			ps.execute();
+		}
+		LoggerFactory.getLogger(DatastoreManager.class).info("Migrated the variables of {} rows of {} from XML in {} ms", updates.size(), table,
+				System.currentTimeMillis() - start);
+	}
+
 	/**
 	 * @see gov.va.isaac.interfaces.utility.ServicesToPreloadI#loadRequested()
 	 */
@@ -83,7 +215,7 @@ public final class DatastoreManager implements ServicesToPreloadI
 			return;
 		}
 		//start up Derby in a background thread
-		Utility.execute(() -> {
+		Utility.execute(WorkPool.IO, () -> {
 			try
 			{
 				File derbyFolder = new File(dbName); 
@@ -126,6 +258,9 @@ public final class DatastoreManager implements ServicesToPreloadI
 				cpds.setJdbcUrl(protocol + dbName);
 				cpds.setUser("workflow");
 				cpds.setPassword("workflow");
+				//Cache the prepared statements of each connection - the DAOs only use prepared statements with constant SQL,
+				//so after the first use of a connection, preparing a statement doesn't go back to Derby
+				cpds.setMaxStatementsPerConnection(MAX_STATEMENTS_PER_CONNECTION);
 
 				log.info("Opening the connection pool on the DB folder {}", derbyFolder.getAbsolutePath());
 				
@@ -22,29 +22,22 @@ import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.util.OTFUtility;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import gov.va.isaac.workflow.Action;
 import gov.va.isaac.workflow.LocalTask;
 import gov.va.isaac.workflow.LocalTasksServiceBI;
 import gov.va.isaac.workflow.TaskActionStatus;
 import gov.va.isaac.workflow.exceptions.DatastoreException;
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
 import javax.inject.Singleton;
 import javax.sql.DataSource;
 import org.jvnet.hk2.annotations.Service;
@@ -64,14 +57,15 @@ import org.slf4j.LoggerFactory;
 public class LocalTasksApi implements LocalTasksServiceBI {
     private static final Logger log = LoggerFactory.getLogger(LocalTasksApi.class);
     
-    private final Set<ActionEventListener> actionEventListeners = new HashSet<>();
+    //Events are fired by the concurrent calls of the sync, while listeners come and go on the FX thread
+    private final Set<ActionEventListener> actionEventListeners = new CopyOnWriteArraySet<>();
     
     private DataSource dataSource;
     
     private LocalTasksApi()
     {
         //For HK2 to construct
-        Utility.execute(() -> getDataSource());
+        Utility.execute(WorkPool.IO, () -> getDataSource());
     }
     
     private DataSource getDataSource()
@@ -100,101 +94,64 @@ public class LocalTasksApi implements LocalTasksServiceBI {
 
     @Override
     public void saveTask(LocalTask task) throws DatastoreException {
-    	final Action action = Action.NONE;
-    	final TaskActionStatus actionStatus = TaskActionStatus.None;
-
-    	WorkflowHistoryHelper.createAndAddNewEntry(task, action, task.getInputVariables());
-
-        try (Connection conn = getDataSource().getConnection()) {
-            try {
-                PreparedStatement psInsert = conn.prepareStatement("insert into local_tasks values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
-                psInsert.setLong(1, task.getId());
-                psInsert.setString(2, task.getName());
-                psInsert.setString(3, task.getComponentId());
-                psInsert.setString(4, task.getComponentName());
-                psInsert.setString(5, task.getStatus().name());
-                psInsert.setString(6, task.getOwner());
-                psInsert.setString(7, action.name());
-                psInsert.setString(8, actionStatus.name());
-                psInsert.setString(9, serializeMap(task.getInputVariables()));
-                psInsert.setString(10, "");
-                psInsert.executeUpdate();
-                conn.commit();
-                log.debug("Task {} saved", task.getId());
-
-                if (actionEventListeners.size() > 0) {
-                	final ActionEvent event = new ActionEvent() {
-            			@Override
-            			public Long getTaskId() {
-            				return task.getId();
-            			}
+        saveTasks(Collections.singletonList(task));
+    }
 
-            			@Override
-            			public Action getAction() {
-            				return action;
-            			}
+    /**
+     * Inserts the new tasks, and updates the owner and status of the existing ones, in one transaction.
+     * 
+     * @see gov.va.isaac.workflow.LocalTasksServiceBI#saveTasks(java.util.Collection)
+     */
+    @Override
+    public void saveTasks(Collection<LocalTask> tasks) throws DatastoreException {
+        if (tasks.size() == 0) {
+            return;
+        }
+        save(tasks, null, 0);
+    }
 
-            			@Override
-            			public TaskActionStatus getActionStatus() {
-            				return actionStatus;
-            			}
+    /**
+     * @see gov.va.isaac.workflow.LocalTasksServiceBI#saveSyncedTasks(java.lang.String, java.util.Collection, long)
+     */
+    @Override
+    public void saveSyncedTasks(String owner, Collection<LocalTask> tasks, long highWaterMark) throws DatastoreException {
+        save(tasks, owner, highWaterMark);
+    }
 
-            			@Override
-            			public Map<String, String> getOutputVariables() {
-            				return Collections.unmodifiableMap(new HashMap<>());
-            			}
-            		};
+    private void save(Collection<LocalTask> tasks, String syncOwner, long highWaterMark) throws DatastoreException {
+        for (LocalTask task : tasks) {
+            //Tasks read for their state alone carry no variables - and only the variables of new tasks are written
+            if (task.getInputVariables() != null) {
+                WorkflowHistoryHelper.createAndAddNewEntry(task, Action.NONE, task.getInputVariables());
+            }
+        }
 
-                	for (ActionEventListener listener : actionEventListeners) {
-                		//Utility.execute(() -> listener.handle(event));
-                		listener.handle(event);
-                	}
-                }
-            } catch (SQLException ex) {
-                if (ex.getSQLState().equals("23505")) {
-                    log.info("Task {} already exists", task.getId());
-                    LocalTask taskInDb = getTask(task.getId());
-                    if (task.equals(taskInDb)) {
-                        log.debug(" No changes.");
-                    } else {
-                        if (!task.getOwner().equals(taskInDb.getOwner())) {
-                            log.info(" User has changed from {} to {}.", taskInDb.getOwner(), task.getOwner());
-                            PreparedStatement psUpdateUser = conn.prepareStatement("update local_tasks set owner = ? where id = ?");
-                            psUpdateUser.setString(1, task.getOwner());
-                            psUpdateUser.setInt(2, Integer.parseInt(task.getId().toString()));
-                            int updatedRowCount = psUpdateUser.executeUpdate();
-                            if (updatedRowCount != 1)
-                            {
-                                throw new DatastoreException("update owner on existing task failed!");
-                            }
-                            conn.commit();
-                        }
-                        if (!task.getStatus().equals(taskInDb.getStatus())) {
-                            log.info(" Status has changed from {} to {}.", taskInDb.getStatus(), task.getStatus());
-                            PreparedStatement psUpdateStatus = conn.prepareStatement("update local_tasks set status = ? where id = ?");
-                            psUpdateStatus.setString(1, task.getStatus().name());
-                            psUpdateStatus.setInt(2, Integer.parseInt(task.getId().toString()));
-                            int updatedRowCount = psUpdateStatus.executeUpdate();
-                            if (updatedRowCount != 1)
-                            {
-                                throw new DatastoreException("update status on existing task failed!");
-                            }
-                            conn.commit();
-                        }
-                        //log.error("-Unknown?-");
-                    };
-                } else {
-                    throw new DatastoreException(ex);
+        LocalTasksDAO.UpsertResult result;
+        long start = System.currentTimeMillis();
+        try (Connection conn = getDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try (LocalTasksDAO dao = new LocalTasksDAO(conn)) {
+                result = dao.upsert(tasks);
+                if (syncOwner != null) {
+                    dao.setSyncHighWaterMark(syncOwner, highWaterMark);
                 }
+                conn.commit();
+            } catch (SQLException | DatastoreException | RuntimeException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (RuntimeException re) {
-            log.error("Caught {} \"{}\" saving task #{}: {}", re.getClass().getName(), re.getLocalizedMessage(), task.getId(), task);
+            log.error("Caught {} \"{}\" saving {} tasks: {}", re.getClass().getName(), re.getLocalizedMessage(), tasks.size(), tasks);
             throw re;
-        }
-        catch (SQLException e)
-        {
+        } catch (SQLException e) {
             throw new DatastoreException(e);
         }
+        log.debug("Saved {} tasks in {} ms - {} new, {} updated", tasks.size(), System.currentTimeMillis() - start, result.getInserted().size(),
+                result.getUpdatedCount());
+
+        for (LocalTask task : result.getInserted()) {
+            fireActionEvent(task.getId(), Action.NONE, TaskActionStatus.None, new HashMap<>());
+        }
     }
 
     @Override
@@ -207,53 +164,18 @@ public class LocalTasksApi implements LocalTasksServiceBI {
         LocalTask task = this.getTask(taskId);
         WorkflowHistoryHelper.createAndAddNewEntry(task, action, outputVariables);
         
-        try (Connection conn = getDataSource().getConnection()){
-            PreparedStatement psUpdateStatus = conn.prepareStatement("update local_tasks set action = ?, actionStatus = ?, outputVariables = ? where id = ?");
-            psUpdateStatus.setString(1, action.name());
-            psUpdateStatus.setString(2, actionStatus.name());
-            psUpdateStatus.setString(3, serializeMap(outputVariables));
-            psUpdateStatus.setInt(4, Integer.parseInt(taskId.toString()));
-            int updatedRowCount = psUpdateStatus.executeUpdate();
-            if (updatedRowCount != 1)
-            {
+        try (Connection conn = getDataSource().getConnection(); LocalTasksDAO dao = new LocalTasksDAO(conn)) {
+            if (!dao.updateAction(taskId, action, actionStatus, outputVariables)) {
                 throw new DatastoreException("update action on existing task failed!");
             }
             conn.commit();
-
-            if (actionEventListeners.size() > 0) {
-            	final ActionEvent event = new ActionEvent() {
-        			@Override
-        			public Long getTaskId() {
-        				return taskId;
-        			}
-
-        			@Override
-        			public Action getAction() {
-        				return action;
-        			}
-
-        			@Override
-        			public TaskActionStatus getActionStatus() {
-        				return actionStatus;
-        			}
-
-        			@Override
-        			public Map<String, String> getOutputVariables() {
-        				return Collections.unmodifiableMap(outputVariables);
-        			}
-        		};
-
-            	for (ActionEventListener listener : actionEventListeners) {
-            		//Utility.execute(() -> listener.handle(event));
-            		listener.handle(event);
-            	}
-            }
         } catch (RuntimeException re) {
             log.error("Caught {} \"{}\" setting Action {} with TaskActionStatus {} on task {}: {}", re.getClass().getName(), re.getLocalizedMessage(), action, actionStatus, taskId, outputVariables);
             throw re;
         } catch (SQLException ex1) {
             throw new DatastoreException(ex1);
         }
+        fireActionEvent(taskId, action, actionStatus, outputVariables);
         if ((task.getName().equals("Approve content") || task.getName().equals("Adjudicate content"))
                 && action == Action.COMPLETE
                 && actionStatus == TaskActionStatus.Pending
@@ -284,162 +206,95 @@ public class LocalTasksApi implements LocalTasksServiceBI {
 
     @Override
     public List<LocalTask> getOpenOwnedTasks() throws DatastoreException {
-        List<LocalTask> tasks = new ArrayList<>();
-        try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM local_tasks where owner = '" + ExtendedAppContext.getCurrentlyLoggedInUserProfile().getWorkflowUsername() 
-                    + "' and (status = 'Reserved' or status = 'InProgress')");
-            while (rs.next()) {
-                tasks.add(readTask(rs));
-            }
-        } catch (SQLException ex) {
-            throw new DatastoreException(ex);
-        }
-        return tasks;
+        return query(dao -> dao.getOpenOwnedTasks(getWorkflowUsername()));
     }
 
     @Override
     public List<LocalTask> getOwnedTasksByStatus(Status status) throws DatastoreException {
-        List<LocalTask> tasks = new ArrayList<>();
-        try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM local_tasks where owner = '" + ExtendedAppContext.getCurrentlyLoggedInUserProfile().getWorkflowUsername() 
-                    + "' and status = '" + status + "'");
-            while (rs.next()) {
-                tasks.add(readTask(rs));
-            }
-        } catch (SQLException ex) {
-            throw new DatastoreException(ex);
-        }
-        return tasks;
+        return query(dao -> dao.getOwnedTasksByStatus(getWorkflowUsername(), status));
     }
     
     @Override
     public List<LocalTask> getOwnedTasksByActionStatus(TaskActionStatus actionStatus) throws DatastoreException {
-        List<LocalTask> tasks = new ArrayList<>();
-        try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            //we will need to change the userId in the DB - if the user enters a different workflow username
-            ResultSet rs = s.executeQuery("SELECT * FROM local_tasks where owner = '" + ExtendedAppContext.getCurrentlyLoggedInUserProfile().getWorkflowUsername() 
-                    + "' and actionStatus = '" + actionStatus + "'");
-            while (rs.next()) {
-                tasks.add(readTask(rs));
-            }
-        } catch (SQLException ex) {
-            throw new DatastoreException(ex);
-        }
-        return tasks;
+        //we will need to change the userId in the DB - if the user enters a different workflow username
+        return query(dao -> dao.getOwnedTasksByActionStatus(getWorkflowUsername(), actionStatus));
     }
 
     @Override
     public List<LocalTask> getOpenOwnedTasksByComponentId(UUID componentId) throws DatastoreException {
-        List<LocalTask> tasks = new ArrayList<>();
-        try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM local_tasks where owner = '" + ExtendedAppContext.getCurrentlyLoggedInUserProfile().getWorkflowUsername() 
-                    + "' and componentId = '" + componentId.toString() + "' and (status = 'Reserved' or status = 'InProgress')");
-            while (rs.next()) {
-                tasks.add(readTask(rs));
-            }
-        } catch (SQLException ex) {
-            throw new DatastoreException(ex);
-        }
-        return tasks;
+        return query(dao -> dao.getOpenOwnedTasksByComponentId(getWorkflowUsername(), componentId));
     }
     
     @Override
     public List<LocalTask> getTasksByComponentId(UUID componentId) throws DatastoreException {
-        List<LocalTask> tasks = new ArrayList<>();
-        try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM local_tasks where componentId = '" + componentId.toString() + "'");
-            while (rs.next()) {
-                tasks.add(readTask(rs));
-            }
-        } catch (SQLException ex) {
-            throw new DatastoreException(ex);
-        }
-        return tasks;
+        return query(dao -> dao.getTasksByComponentId(componentId));
     }
 
     @Override
     public List<LocalTask> getTasks() throws DatastoreException {
-        List<LocalTask> tasks = new ArrayList<>();
-        try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM local_tasks");
-            while (rs.next()) {
-                tasks.add(readTask(rs));
-            }
-        } catch (SQLException ex) {
-            throw new DatastoreException(ex);
-        }
-        return tasks;
+        return query(dao -> dao.getTasks());
     }
 
     @Override
     public LocalTask getTask(Long id) throws DatastoreException {
-        try (Connection conn = getDataSource().getConnection()){
-            LocalTask task = null;
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM local_tasks where id = " + id);
-            if (!rs.next()) {
-                // no results
-            } else {
-                task = readTask(rs);
-                return task;
-            }
+        return query(dao -> dao.getTask(id));
+    }
 
-            return task;
-        } catch (SQLException ex) {
-            throw new DatastoreException(ex);
-        }
+    @Override
+    public List<LocalTask> getTaskStates(String owner, Collection<Long> ids) throws DatastoreException {
+        return query(dao -> dao.getTaskStates(owner, ids));
     }
 
-    private LocalTask readTask(ResultSet rs) throws SQLException {
-        LocalTask task = new LocalTask();
-        
-        try {
-            task.setId(rs.getLong(1));
-            task.setName(rs.getString(2));
-            task.setComponentId(rs.getString(3));
-            task.setComponentName(rs.getString(4));
-            task.setStatus(Status.valueOf(rs.getString(5)));
-            task.setOwner(rs.getString(6));
-            task.setAction(Action.valueOf(rs.getString(7)));
-            task.setActionStatus(TaskActionStatus.valueOf(rs.getString(8)));
-            task.setInputVariables(deserializeMap(rs.getString(9)));
-            task.setOutputVariables(deserializeMap(rs.getString(10)));
-        } catch (RuntimeException e) {
-            log.error("Caught {} \"{}\" reading task #{}", e.getClass().getName(), e.getLocalizedMessage(), rs.getLong(1));
-            throw e;
-        }
+    @Override
+    public long getSyncHighWaterMark(String owner) throws DatastoreException {
+        return query(dao -> dao.getSyncHighWaterMark(owner));
+    }
 
-        return task;
+    @FunctionalInterface
+    private static interface Query<T> {
+        T run(LocalTasksDAO dao) throws SQLException;
     }
 
-    private static String serializeMap(Map<String, String> map) {
-        if (map == null) {
-            return "";
+    private <T> T query(Query<T> query) throws DatastoreException {
+        try (Connection conn = getDataSource().getConnection(); LocalTasksDAO dao = new LocalTasksDAO(conn)) {
+            return query.run(dao);
+        } catch (SQLException ex) {
+            throw new DatastoreException(ex);
         }
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        XMLEncoder xmlEncoder = new XMLEncoder(bos);
-        xmlEncoder.writeObject(map);
-        xmlEncoder.close();
+    }
 
-        String serializedMap = bos.toString();
-        return serializedMap;
+    private String getWorkflowUsername() {
+        return ExtendedAppContext.getCurrentlyLoggedInUserProfile().getWorkflowUsername();
     }
 
-    private static Map<String, String> deserializeMap(String serializedMap) {
-        if (serializedMap == null || serializedMap.isEmpty()) {
-            return new HashMap<String, String>();
-        } else {
-            XMLDecoder xmlDecoder = new XMLDecoder(new ByteArrayInputStream(serializedMap.getBytes()));
-            @SuppressWarnings("unchecked")
-            Map<String, String> parsedMap = (Map<String, String>) xmlDecoder.readObject();
-            xmlDecoder.close();
-            return parsedMap;
+    private void fireActionEvent(Long taskId, Action action, TaskActionStatus actionStatus, Map<String, String> outputVariables) {
+        if (actionEventListeners.size() > 0) {
+            final ActionEvent event = new ActionEvent() {
+                @Override
+                public Long getTaskId() {
+                    return taskId;
+                }
+
+                @Override
+                public Action getAction() {
+                    return action;
+                }
+
+                @Override
+                public TaskActionStatus getActionStatus() {
+                    return actionStatus;
+                }
+
+                @Override
+                public Map<String, String> getOutputVariables() {
+                    return Collections.unmodifiableMap(outputVariables);
+                }
+            };
+
+            for (ActionEventListener listener : actionEventListeners) {
+                //Utility.execute(() -> listener.handle(event));
+                listener.handle(event);
+            }
         }
     }
 
@@ -447,31 +302,7 @@ public class LocalTasksApi implements LocalTasksServiceBI {
     public void createSchema() throws DatastoreException {
         try (Connection conn = getDataSource().getConnection()){
             log.info("Creating Workflow LOCAL_TASKS schema");
-            DatabaseMetaData dbmd = conn.getMetaData();
-            ResultSet rs = dbmd.getTables(null, "WORKFLOW", "LOCAL_TASKS", null);
-            if (!rs.next()) {
-                Statement s = conn.createStatement();
-                s.execute("create table LOCAL_TASKS("
-                        + "id bigint PRIMARY KEY, "
-                        + "name varchar(40), "
-                        + "componentId varchar(40), "
-                        + "componentName varchar(255), "
-                        + "status varchar(40), "
-                        + "owner varchar(40), "
-                        + "action varchar(40), "
-                        + "actionStatus varchar(40), "
-                        + "inputVariables long varchar, "
-                        + "outputVariables long varchar)");
-                
-                s.execute("create index LOCAL_TASKS_status_idx on LOCAL_TASKS(status)");
-                s.execute("create index LOCAL_TASKS_actionStatus_idx on LOCAL_TASKS(actionStatus)");
-                s.execute("create index LOCAL_TASKS_componentId_idx on LOCAL_TASKS(componentId)");
-                
-                conn.commit();
-                log.info("Created table LOCAL_TASKS");
-            } else {
-                log.info("LOCAL_TASKS already exists!");
-            }
+            LocalTasksDAO.createSchema(conn);
         } catch (SQLException ex) {
             throw new DatastoreException(ex);
         }
@@ -480,19 +311,11 @@ public class LocalTasksApi implements LocalTasksServiceBI {
     @Override
     public void dropSchema() throws DatastoreException {
         try (Connection conn = getDataSource().getConnection()){
-            log.info("Dropping table local_tasks");
-            Statement s = conn.createStatement();
-            s.execute("drop table LOCAL_TASKS");
+            log.info("Dropping tables LOCAL_TASKS and TASK_SYNC");
+            LocalTasksDAO.dropSchema(conn);
             conn.commit();
         } catch (SQLException ex) {
-            if (ex.getMessage().contains("does not exist"))
-            {
-                log.info("Table did not exist");
-            }
-            else
-            {
-                throw new DatastoreException(ex);
-            }
+            throw new DatastoreException(ex);
         }
     }
 
@@ -0,0 +1,516 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.persistence;
+
+import gov.va.isaac.workflow.Action;
+import gov.va.isaac.workflow.LocalTask;
+import gov.va.isaac.workflow.TaskActionStatus;
+import gov.va.isaac.workflow.exceptions.DatastoreException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import org.kie.api.task.model.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LocalTasksDAO}
+ *
+ * The SQL of the LOCAL_TASKS table, run on one connection.  Every statement is a {@link PreparedStatement} with
+ * constant SQL, prepared once per DAO - and, since the pool caches statements per connection (see {@link DatastoreManager}),
+ * usually once per connection - so Derby parses and plans each statement once, rather than once per task.
+ *
+ * Nothing is committed here - the caller owns the transaction.  {@link #upsert(Collection)} writes in JDBC batches
+ * of {@link #BATCH_SIZE}.
+ *
+ * The TASK_SYNC table holds the high water mark of the task synchronization of each owner - see
+ * {@link gov.va.isaac.workflow.sync.TaskReconciler}.
+ */
+public class LocalTasksDAO implements AutoCloseable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(LocalTasksDAO.class);
+
+	public static final int BATCH_SIZE = 200;
+
+	private static final String COLUMNS = "id, name, componentId, componentName, status, owner, action, actionStatus, inputVariables, outputVariables";
+	private static final String SELECT = "SELECT " + COLUMNS + " FROM LOCAL_TASKS";
+	private static final String SELECT_BY_ID = SELECT + " where id = ?";
+	private static final String SELECT_BY_COMPONENT = SELECT + " where componentId = ?";
+	private static final String SELECT_OWNED_BY_STATUS = SELECT + " where owner = ? and status = ?";
+	private static final String SELECT_OWNED_BY_ACTION_STATUS = SELECT + " where owner = ? and actionStatus = ?";
+	private static final String SELECT_OPEN_OWNED = SELECT + " where owner = ? and (status = ? or status = ?)";
+	private static final String SELECT_OPEN_OWNED_BY_COMPONENT = SELECT + " where owner = ? and componentId = ? and (status = ? or status = ?)";
+	private static final String SELECT_STATES = "SELECT id, owner, status FROM LOCAL_TASKS";
+	private static final String SELECT_OPEN_OWNED_STATES = SELECT_STATES + " where owner = ? and (status = ? or status = ?)";
+	private static final String SELECT_STATES_BY_IDS;
+	private static final String INSERT = "insert into LOCAL_TASKS (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String UPDATE_OWNER_AND_STATUS = "update LOCAL_TASKS set owner = ?, status = ? where id = ?";
+	private static final String UPDATE_ACTION = "update LOCAL_TASKS set action = ?, actionStatus = ?, outputVariables = ? where id = ?";
+	private static final String SELECT_HIGH_WATER_MARK = "SELECT highWaterMark FROM TASK_SYNC where owner = ?";
+	private static final String INSERT_HIGH_WATER_MARK = "insert into TASK_SYNC (owner, highWaterMark, syncTime) values (?, ?, ?)";
+	private static final String UPDATE_HIGH_WATER_MARK = "update TASK_SYNC set highWaterMark = ?, syncTime = ? where owner = ?";
+
+	//The number of ids looked up by each execution of SELECT_STATES_BY_IDS - a fixed count, so the statement is prepared once
+	private static final int IDS_PER_LOOKUP = 100;
+
+	static
+	{
+		StringBuilder sql = new StringBuilder(SELECT_STATES + " where id in (?");
+		for (int i = 1; i < IDS_PER_LOOKUP; i++)
+		{
+			sql.append(", ?");
+		}
+		SELECT_STATES_BY_IDS = sql.append(")").toString();
+	}
+
+	//name, columns - the owner indexes serve the queries of the logged in user
+	private static final String[][] INDEXES = {
+		{"LOCAL_TASKS_status_idx", "status"},
+		{"LOCAL_TASKS_actionStatus_idx", "actionStatus"},
+		{"LOCAL_TASKS_componentId_idx", "componentId"},
+		{"LOCAL_TASKS_owner_status_idx", "owner, status"},
+		{"LOCAL_TASKS_owner_actionStatus_idx", "owner, actionStatus"},
+		{"LOCAL_TASKS_owner_componentId_idx", "owner, componentId"}};
+
+	private final Connection conn_;
+	private final HashMap<String, PreparedStatement> statements_ = new HashMap<>();
+
+	/**
+	 * The tasks written by {@link LocalTasksDAO#upsert(Collection)}
+	 */
+	public static class UpsertResult
+	{
+		private final List<LocalTask> inserted_ = new ArrayList<>();
+		private int updated_ = 0;
+
+		/**
+		 * @return the tasks which were not in the DB
+		 */
+		public List<LocalTask> getInserted()
+		{
+			return inserted_;
+		}
+
+		/**
+		 * @return the number of tasks whose owner or status changed
+		 */
+		public int getUpdatedCount()
+		{
+			return updated_;
+		}
+	}
+
+	public LocalTasksDAO(Connection conn)
+	{
+		conn_ = conn;
+	}
+
+	/**
+	 * Creates the LOCAL_TASKS and TASK_SYNC tables if they don't exist, and any of their indexes which don't exist.
+	 */
+	public static void createSchema(Connection conn) throws SQLException
+	{
+		createTable(conn, "LOCAL_TASKS", "create table LOCAL_TASKS("
+				+ "id bigint PRIMARY KEY, "
+				+ "name varchar(40), "
+				+ "componentId varchar(40), "
+				+ "componentName varchar(255), "
+				+ "status varchar(40), "
+				+ "owner varchar(40), "
+				+ "action varchar(40), "
+				+ "actionStatus varchar(40), "
+				+ "inputVariables long varchar, "
+				+ "outputVariables long varchar)");
+		createTable(conn, "TASK_SYNC", "create table TASK_SYNC("
+				+ "owner varchar(40) PRIMARY KEY, "
+				+ "highWaterMark bigint, "
+				+ "syncTime bigint)");
+		DatastoreManager.createMissingIndexes(conn, "LOCAL_TASKS", INDEXES);
+		DatastoreManager.migrateVariables(conn, "LOCAL_TASKS", "id", "inputVariables", "outputVariables");
+		conn.commit();
+	}
+
+	/**
+	 * Drops the LOCAL_TASKS and TASK_SYNC tables, where they exist.  Doesn't commit.
+	 */
+	public static void dropSchema(Connection conn) throws SQLException
+	{
+		for (String table : new String[] {"LOCAL_TASKS", "TASK_SYNC"})
+		{
+			if (tableExists(conn, table))
+			{
+				try (Statement s = conn.createStatement())
+				{
+					s.execute("drop table " + table);
+				}
+				LOG.info("Dropped table {}", table);
+			}
+			else
+			{
+				LOG.info("Table {} did not exist", table);
+			}
+		}
+	}
+
+	public LocalTask getTask(long id) throws SQLException
+	{
+		PreparedStatement ps = prepare(SELECT_BY_ID);
+		ps.setLong(1, id);
+		List<LocalTask> tasks = readTasks(ps);
+		return tasks.size() == 0 ? null : tasks.get(0);
+	}
+
+	public List<LocalTask> getTasks() throws SQLException
+	{
+		return readTasks(prepare(SELECT));
+	}
+
+	public List<LocalTask> getTasksByComponentId(UUID componentId) throws SQLException
+	{
+		PreparedStatement ps = prepare(SELECT_BY_COMPONENT);
+		ps.setString(1, componentId.toString());
+		return readTasks(ps);
+	}
+
+	/**
+	 * @return the tasks of the owner which are Reserved or InProgress
+	 */
+	public List<LocalTask> getOpenOwnedTasks(String owner) throws SQLException
+	{
+		PreparedStatement ps = prepare(SELECT_OPEN_OWNED);
+		ps.setString(1, owner);
+		ps.setString(2, Status.Reserved.name());
+		ps.setString(3, Status.InProgress.name());
+		return readTasks(ps);
+	}
+
+	/**
+	 * @return the tasks of the owner on the component which are Reserved or InProgress
+	 */
+	public List<LocalTask> getOpenOwnedTasksByComponentId(String owner, UUID componentId) throws SQLException
+	{
+		PreparedStatement ps = prepare(SELECT_OPEN_OWNED_BY_COMPONENT);
+		ps.setString(1, owner);
+		ps.setString(2, componentId.toString());
+		ps.setString(3, Status.Reserved.name());
+		ps.setString(4, Status.InProgress.name());
+		return readTasks(ps);
+	}
+
+	public List<LocalTask> getOwnedTasksByStatus(String owner, Status status) throws SQLException
+	{
+		PreparedStatement ps = prepare(SELECT_OWNED_BY_STATUS);
+		ps.setString(1, owner);
+		ps.setString(2, status.name());
+		return readTasks(ps);
+	}
+
+	public List<LocalTask> getOwnedTasksByActionStatus(String owner, TaskActionStatus actionStatus) throws SQLException
+	{
+		PreparedStatement ps = prepare(SELECT_OWNED_BY_ACTION_STATUS);
+		ps.setString(1, owner);
+		ps.setString(2, actionStatus.name());
+		return readTasks(ps);
+	}
+
+	/**
+	 * Reads the id, owner and status - and nothing else - of the open (Reserved or InProgress) tasks of the owner,
+	 * and of the tasks with the specified ids.
+	 *
+	 * @return the tasks found, each once, in no particular order
+	 */
+	public List<LocalTask> getTaskStates(String owner, Collection<Long> ids) throws SQLException
+	{
+		HashMap<Long, LocalTask> states = new HashMap<>();
+		PreparedStatement ps = prepare(SELECT_OPEN_OWNED_STATES);
+		ps.setString(1, owner);
+		ps.setString(2, Status.Reserved.name());
+		ps.setString(3, Status.InProgress.name());
+		readStates(ps, states);
+		readStates(ids, states);
+		return new ArrayList<>(states.values());
+	}
+
+	/**
+	 * @return the highest task id the owner was synchronized with, 0 if none
+	 */
+	public long getSyncHighWaterMark(String owner) throws SQLException
+	{
+		PreparedStatement ps = prepare(SELECT_HIGH_WATER_MARK);
+		ps.setString(1, owner);
+		try (ResultSet rs = ps.executeQuery())
+		{
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+	public void setSyncHighWaterMark(String owner, long highWaterMark) throws SQLException
+	{
+		long now = System.currentTimeMillis();
+		PreparedStatement ps = prepare(UPDATE_HIGH_WATER_MARK);
+		ps.setLong(1, highWaterMark);
+		ps.setLong(2, now);
+		ps.setString(3, owner);
+		if (ps.executeUpdate() == 0)
+		{
+			ps = prepare(INSERT_HIGH_WATER_MARK);
+			ps.setString(1, owner);
+			ps.setLong(2, highWaterMark);
+			ps.setLong(3, now);
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Inserts the tasks which aren't in the DB - with no action, and no output variables - and updates the owner and
+	 * status of those which are, where they changed.  If a task is passed more than once, the last one is written.
+	 *
+	 * @return the tasks inserted, and the number updated
+	 * @throws DatastoreException if an existing task could not be updated
+	 */
+	public UpsertResult upsert(Collection<LocalTask> tasks) throws SQLException, DatastoreException
+	{
+		LinkedHashMap<Long, LocalTask> unique = new LinkedHashMap<>();
+		for (LocalTask task : tasks)
+		{
+			unique.put(task.getId(), task);
+		}
+
+		UpsertResult result = new UpsertResult();
+		HashMap<Long, LocalTask> existing = new HashMap<>();
+		readStates(unique.keySet(), existing);
+		PreparedStatement insert = prepare(INSERT);
+		PreparedStatement update = prepare(UPDATE_OWNER_AND_STATUS);
+		int inserts = 0;
+		int updates = 0;
+
+		for (LocalTask task : unique.values())
+		{
+			LocalTask state = existing.get(task.getId());
+			if (state == null)
+			{
+				insert.setLong(1, task.getId());
+				insert.setString(2, task.getName());
+				insert.setString(3, task.getComponentId());
+				insert.setString(4, task.getComponentName());
+				insert.setString(5, task.getStatus().name());
+				insert.setString(6, task.getOwner());
+				insert.setString(7, Action.NONE.name());
+				insert.setString(8, TaskActionStatus.None.name());
+				insert.setString(9, VariableCodec.encode(task.getInputVariables()));
+				insert.setString(10, "");
+				insert.addBatch();
+				result.inserted_.add(task);
+				if (++inserts % BATCH_SIZE == 0)
+				{
+					insert.executeBatch();
+				}
+			}
+			else if (!Objects.equals(state.getOwner(), task.getOwner()) || state.getStatus() != task.getStatus())
+			{
+				LOG.debug("Task {} has changed from {} {} to {} {}", task.getId(), state.getOwner(), state.getStatus(), task.getOwner(), task.getStatus());
+				update.setString(1, task.getOwner());
+				update.setString(2, task.getStatus().name());
+				update.setLong(3, task.getId());
+				update.addBatch();
+				result.updated_++;
+				if (++updates % BATCH_SIZE == 0)
+				{
+					checkUpdated(update.executeBatch());
+				}
+			}
+		}
+		if (inserts % BATCH_SIZE != 0)
+		{
+			insert.executeBatch();
+		}
+		if (updates % BATCH_SIZE != 0)
+		{
+			checkUpdated(update.executeBatch());
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the task was updated, false if it doesn't exist
+	 */
+	public boolean updateAction(long id, Action action, TaskActionStatus actionStatus, Map<String, String> outputVariables) throws SQLException
+	{
+		PreparedStatement ps = prepare(UPDATE_ACTION);
+		ps.setString(1, action.name());
+		ps.setString(2, actionStatus.name());
+		ps.setString(3, VariableCodec.encode(outputVariables));
+		ps.setLong(4, id);
+		return ps.executeUpdate() == 1;
+	}
+
+	/**
+	 * Closes the statements - which returns them to the statement cache of the pool.  Doesn't close the connection.
+	 */
+	@Override
+	public void close() throws SQLException
+	{
+		for (PreparedStatement ps : statements_.values())
+		{
+			ps.close();
+		}
+		statements_.clear();
+	}
+
+	private PreparedStatement prepare(String sql) throws SQLException
+	{
+		PreparedStatement ps = statements_.get(sql);
+		if (ps == null)
+		{
+			ps = conn_.prepareStatement(sql);
+			statements_.put(sql, ps);
+		}
+		return ps;
+	}
+
+	private static boolean tableExists(Connection conn, String table) throws SQLException
+	{
+		DatabaseMetaData dbmd = conn.getMetaData();
+		try (ResultSet rs = dbmd.getTables(null, "WORKFLOW", table, null))
+		{
+			return rs.next();
+		}
+	}
+
+	private static void createTable(Connection conn, String table, String ddl) throws SQLException
+	{
+		if (tableExists(conn, table))
+		{
+			LOG.info("{} already exists!", table);
+			return;
+		}
+		try (Statement s = conn.createStatement())
+		{
+			s.execute(ddl);
+		}
+		LOG.info("Created table {}", table);
+	}
+
+	/**
+	 * Looks up the states of the ids {@link #IDS_PER_LOOKUP} at a time - the last lookup is padded with a repeated id.
+	 */
+	private void readStates(Collection<Long> ids, Map<Long, LocalTask> states) throws SQLException
+	{
+		if (ids.isEmpty())
+		{
+			return;
+		}
+		PreparedStatement ps = prepare(SELECT_STATES_BY_IDS);
+		int i = 0;
+		long last = 0;
+		for (Long id : ids)
+		{
+			last = id;
+			ps.setLong((i++ % IDS_PER_LOOKUP) + 1, id);
+			if (i % IDS_PER_LOOKUP == 0)
+			{
+				readStates(ps, states);
+			}
+		}
+		if (i % IDS_PER_LOOKUP != 0)
+		{
+			for (; i % IDS_PER_LOOKUP != 0; i++)
+			{
+				ps.setLong((i % IDS_PER_LOOKUP) + 1, last);
+			}
+			readStates(ps, states);
+		}
+	}
+
+	private static void readStates(PreparedStatement ps, Map<Long, LocalTask> states) throws SQLException
+	{
+		try (ResultSet rs = ps.executeQuery())
+		{
+			while (rs.next())
+			{
+				LocalTask state = new LocalTask();
+				state.setId(rs.getLong(1));
+				state.setOwner(rs.getString(2));
+				state.setStatus(Status.valueOf(rs.getString(3)));
+				states.put(state.getId(), state);
+			}
+		}
+	}
+
+	private static void checkUpdated(int[] counts) throws DatastoreException
+	{
+		for (int count : counts)
+		{
+			if (count != 1 && count != Statement.SUCCESS_NO_INFO)
+			{
+				throw new DatastoreException("update owner / status on existing task failed!");
+			}
+		}
+	}
+
+	private static List<LocalTask> readTasks(PreparedStatement ps) throws SQLException
+	{
+		List<LocalTask> tasks = new ArrayList<>();
+		try (ResultSet rs = ps.executeQuery())
+		{
+			while (rs.next())
+			{
+				tasks.add(readTask(rs));
+			}
+		}
+		return tasks;
+	}
+
+	private static LocalTask readTask(ResultSet rs) throws SQLException
+	{
+		LocalTask task = new LocalTask();
+
+		try
+		{
+			task.setId(rs.getLong(1));
+			task.setName(rs.getString(2));
+			task.setComponentId(rs.getString(3));
+			task.setComponentName(rs.getString(4));
+			task.setStatus(Status.valueOf(rs.getString(5)));
+			task.setOwner(rs.getString(6));
+			task.setAction(Action.valueOf(rs.getString(7)));
+			task.setActionStatus(TaskActionStatus.valueOf(rs.getString(8)));
+			task.setInputVariables(VariableCodec.decode(rs.getString(9)));
+			task.setOutputVariables(VariableCodec.decode(rs.getString(10)));
+		}
+		catch (RuntimeException e)
+		{
+			LOG.error("Caught {} \"{}\" reading task #{}", e.getClass().getName(), e.getLocalizedMessage(), rs.getLong(1));
+			throw e;
+		}
+
+		return task;
+	}
+}
@@ -21,13 +21,10 @@ package gov.va.isaac.workflow.persistence;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.interfaces.workflow.ProcessInstanceCreationRequestI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import gov.va.isaac.workflow.ProcessInstanceCreationRequest;
 import gov.va.isaac.workflow.ProcessInstanceServiceBI;
 import gov.va.isaac.workflow.exceptions.DatastoreException;
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -35,7 +32,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -58,12 +54,18 @@ import org.slf4j.LoggerFactory;
 public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServiceBI {
 
     private final Logger log = LoggerFactory.getLogger(ProcessInstanceCreationRequestsAPI.class);
+    //name, columns
+    private static final String[][] INDEXES = {
+        {"WORKFLOW_status_idx", "status"},
+        {"WORKFLOW_component_id_idx", "component_id"},
+        {"WORKFLOW_wf_id_idx", "wf_id"},
+        {"WORKFLOW_user_id_status_idx", "user_id, status"}};
     private DataSource dataSource;
     
     private ProcessInstanceCreationRequestsAPI() {
         //For HK2 to construct
         //start the init process
-        Utility.execute(() -> getDataSource());
+        Utility.execute(WorkPool.IO, () -> getDataSource());
     }
     
     private DataSource getDataSource()
@@ -101,7 +103,7 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
             psInsert.setLong(7, System.currentTimeMillis());
             psInsert.setLong(8, 0L);
             psInsert.setLong(9, 0L);
-            psInsert.setString(10, serializeMap(variables));
+            psInsert.setString(10, VariableCodec.encode(variables));
             psInsert.executeUpdate();
             
             ProcessInstanceCreationRequestI result = new ProcessInstanceCreationRequest();
@@ -148,9 +150,10 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
     public List<ProcessInstanceCreationRequestI> getOpenOwnedRequests(String owner) throws DatastoreException {
         List<ProcessInstanceCreationRequestI> requests = new ArrayList<>();
         try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM PINST_REQUESTS where user_id = '" + owner + "' and status = '"
-                    + ProcessInstanceCreationRequestI.RequestStatus.REQUESTED.name() + "'");
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM PINST_REQUESTS where user_id = ? and status = ?");
+            ps.setString(1, owner);
+            ps.setString(2, ProcessInstanceCreationRequestI.RequestStatus.REQUESTED.name());
+            ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 requests.add(readRequest(rs));
             }
@@ -164,8 +167,10 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
     public List<ProcessInstanceCreationRequestI> getOwnedRequestsByStatus(String owner, ProcessInstanceCreationRequestI.RequestStatus status) throws DatastoreException {
         List<ProcessInstanceCreationRequestI> requests = new ArrayList<>();
         try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM PINST_REQUESTS where user_id = '" + owner + "' and status = '" + status.name() + "'");
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM PINST_REQUESTS where user_id = ? and status = ?");
+            ps.setString(1, owner);
+            ps.setString(2, status.name());
+            ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 requests.add(readRequest(rs));
             }
@@ -179,9 +184,11 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
     public List<ProcessInstanceCreationRequestI> getOpenOwnedRequestsByComponentId(String owner, UUID componentId) throws DatastoreException {
         List<ProcessInstanceCreationRequestI> requests = new ArrayList<>();
         try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM PINST_REQUESTS where user_id = '" + owner + "' and component_id = '" + componentId + "' and status = '"
-                    + ProcessInstanceCreationRequestI.RequestStatus.REQUESTED.name() + "'");
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM PINST_REQUESTS where user_id = ? and component_id = ? and status = ?");
+            ps.setString(1, owner);
+            ps.setString(2, String.valueOf(componentId));
+            ps.setString(3, ProcessInstanceCreationRequestI.RequestStatus.REQUESTED.name());
+            ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 requests.add(readRequest(rs));
             }
@@ -195,8 +202,9 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
     public List<ProcessInstanceCreationRequestI> getRequestsByComponentId(UUID componentId) throws DatastoreException {
         List<ProcessInstanceCreationRequestI> requests = new ArrayList<>();
         try (Connection conn = getDataSource().getConnection()){
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM PINST_REQUESTS where component_id = '" + componentId + "'");
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM PINST_REQUESTS where component_id = ?");
+            ps.setString(1, String.valueOf(componentId));
+            ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 requests.add(readRequest(rs));
             }
@@ -208,10 +216,14 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
 
     @Override
     public ProcessInstanceCreationRequestI getRequestByWfId(Long wfId) throws DatastoreException {
+        if (wfId == null) {
+            return null;
+        }
         try (Connection conn = getDataSource().getConnection()){
             ProcessInstanceCreationRequestI request = null;
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM PINST_REQUESTS where wf_id = " + wfId);
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM PINST_REQUESTS where wf_id = ?");
+            ps.setLong(1, wfId);
+            ResultSet rs = ps.executeQuery();
             if (!rs.next()) {
                 // no results
             } else {
@@ -244,8 +256,9 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
     public ProcessInstanceCreationRequestI getRequest(int id) throws DatastoreException {
         try (Connection conn = getDataSource().getConnection()){
             ProcessInstanceCreationRequestI request = null;
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("SELECT * FROM PINST_REQUESTS where id = " + id);
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM PINST_REQUESTS where id = ?");
+            ps.setInt(1, id);
+            ResultSet rs = ps.executeQuery();
             if (!rs.next()) {
                 // no results
             } else {
@@ -286,7 +299,7 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
             request.setSyncMessage(rs.getString(8));
             request.setRequestTime(rs.getLong(9));
             request.setSyncTime(rs.getLong(10));
-            request.setVariables(rs.getString(11).isEmpty() ? new HashMap<String, String>() : deserializeMap(rs.getString(11)));
+            request.setVariables(VariableCodec.decode(rs.getString(11)));
 
             return request;
         }
@@ -316,13 +329,12 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
                         + "request_time bigint, "
                         + "sync_time bigint, "
                         + "variables long varchar)");
-                s.execute("create index WORKFLOW_status_idx on PINST_REQUESTS(status)");
-                s.execute("create index WORKFLOW_component_id_idx on PINST_REQUESTS(component_id)");
-                s.execute("create index WORKFLOW_wf_id_idx on PINST_REQUESTS(wf_id)");
                 log.debug("Created table PINST_REQUESTS");
             } else {
                 log.debug("PINST_REQUESTS already exists!");
             }
+            DatastoreManager.createMissingIndexes(conn, "PINST_REQUESTS", INDEXES);
+            DatastoreManager.migrateVariables(conn, "PINST_REQUESTS", "id", "variables");
             conn.commit();
         } catch (SQLException ex) {
             throw new DatastoreException(ex);
@@ -345,35 +357,4 @@ public class ProcessInstanceCreationRequestsAPI implements ProcessInstanceServic
         }
     }
 
-    private String serializeMap(Map<String, String> map ) {
-        if (map == null) {
-            return "";
-        }
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        XMLEncoder xmlEncoder = new XMLEncoder(bos);
-        xmlEncoder.writeObject(map);
-        xmlEncoder.close();
-
-        String serializedMap = bos.toString();
-        return serializedMap;
-    }
-
-    @SuppressWarnings("unchecked")
-    private Map<String, String> deserializeMap(String serializedMap) {
-        if (serializedMap == null || serializedMap.isEmpty()) {
-            return new HashMap<String, String>();
-        } else {
-            try (XMLDecoder xmlDecoder = new XMLDecoder(new ByteArrayInputStream(serializedMap.getBytes())))
-            {
-                return (Map<String, String>) xmlDecoder.readObject();
-            }
-            catch (Exception e)
-            {
-                log.error("Unexpected error while deserializing map", e);
-                throw e;
-            }
-            
-        }
-    }
-
 }
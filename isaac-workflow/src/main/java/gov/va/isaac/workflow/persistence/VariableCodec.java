@@ -0,0 +1,293 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.persistence;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * {@link VariableCodec}
+ *
+ * Encodes workflow variables - a Map&lt;String, String&gt;, or a list of them for the workflow history - into the
+ * text columns of the workflow DB, in place of {@link java.beans.XMLEncoder}.
+ *
+ * The encoding is a version header, then counts and length prefixed strings:
+ * <pre>
+ * #1;2;3:key5:value4:key2-
+ * </pre>
+ * is version 1, a map of 2 entries, "key" = "value" and "key2" = null.  A list of maps is the count of maps followed
+ * by each map.  Nothing is escaped, and decoding is a single pass with no reflection.
+ *
+ * Values written by XMLEncoder (which start with '&lt;') are still decoded, with {@link XMLDecoder}.
+ *
+ * The codec is only for local storage.  A value that is itself sent to the workflow server - the workflow history, which
+ * is a task variable - must stay in the XMLEncoder format the server side expects, see {@link #encodeListXML(List)}.
+ */
+public final class VariableCodec
+{
+	public static final int VERSION = 1;
+	private static final String HEADER = "#" + VERSION + ";";
+
+	private VariableCodec()
+	{
+		//static methods only
+	}
+
+	/**
+	 * @param variables the variables, or null
+	 * @return the encoded variables, or an empty string if null
+	 */
+	public static String encode(Map<String, String> variables)
+	{
+		if (variables == null)
+		{
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(HEADER.length() + 16 + (variables.size() * 32));
+		sb.append(HEADER);
+		writeMap(sb, variables);
+		return sb.toString();
+	}
+
+	/**
+	 * @param encoded the output of {@link #encode(Map)}, or of XMLEncoder - may be null or empty
+	 * @return the variables, an empty map if there are none
+	 * @throws IllegalArgumentException if the value can't be decoded
+	 */
+	public static Map<String, String> decode(String encoded)
+	{
+		if (encoded == null || encoded.isEmpty())
+		{
+			return new HashMap<>();
+		}
+		if (isXML(encoded))
+		{
+			return decodeXML(encoded);
+		}
+		Reader reader = new Reader(encoded);
+		return reader.readMap();
+	}
+
+	/**
+	 * @param entries the list of variable maps, or null
+	 * @return the encoded list, or an empty string if null
+	 */
+	public static String encodeList(List<Map<String, String>> entries)
+	{
+		if (entries == null)
+		{
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(HEADER.length() + 16 + (entries.size() * 128));
+		sb.append(HEADER);
+		sb.append(entries.size()).append(';');
+		for (Map<String, String> entry : entries)
+		{
+			writeMap(sb, entry);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param entries the list of variable maps, or null
+	 * @return the list as written by XMLEncoder, for a value sent to the workflow server, or an empty string if null
+	 */
+	public static String encodeListXML(List<Map<String, String>> entries)
+	{
+		if (entries == null)
+		{
+			return "";
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (XMLEncoder xmlEncoder = new XMLEncoder(bos, StandardCharsets.UTF_8.name(), true, 0))
+		{
+			xmlEncoder.writeObject(entries);
+		}
+		return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param encoded the output of {@link #encodeList(List)}, or of XMLEncoder - may be null or empty
+	 * @return the list of variable maps, an empty list if there are none
+	 * @throws IllegalArgumentException if the value can't be decoded
+	 */
+	public static List<Map<String, String>> decodeList(String encoded)
+	{
+		if (encoded == null || encoded.isEmpty())
+		{
+			return new ArrayList<>();
+		}
+		if (isXML(encoded))
+		{
+			return decodeXML(encoded);
+		}
+		Reader reader = new Reader(encoded);
+		int count = reader.readCount();
+		List<Map<String, String>> entries = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			entries.add(reader.readMap());
+		}
+		return entries;
+	}
+
+	/**
+	 * @return true if the value was written by XMLEncoder, rather than by this codec
+	 */
+	public static boolean isXML(String encoded)
+	{
+		return encoded != null && encoded.startsWith("<");
+	}
+
+	private static void writeMap(StringBuilder sb, Map<String, String> variables)
+	{
+		if (variables == null)
+		{
+			sb.append('-');
+			return;
+		}
+		sb.append(variables.size()).append(';');
+		for (Entry<String, String> entry : variables.entrySet())
+		{
+			writeString(sb, entry.getKey());
+			writeString(sb, entry.getValue());
+		}
+	}
+
+	private static void writeString(StringBuilder sb, String value)
+	{
+		if (value == null)
+		{
+			sb.append('-');
+		}
+		else
+		{
+			sb.append(value.length()).append(':').append(value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T decodeXML(String encoded)
+	{
+		try (XMLDecoder xmlDecoder = new XMLDecoder(new ByteArrayInputStream(encoded.getBytes(StandardCharsets.UTF_8))))
+		{
+			return (T) xmlDecoder.readObject();
+		}
+	}
+
+	private static class Reader
+	{
+		private final String s_;
+		private int pos_;
+
+		Reader(String encoded)
+		{
+			s_ = encoded;
+			if (!encoded.startsWith(HEADER))
+			{
+				throw new IllegalArgumentException("Unsupported workflow variable encoding: "
+						+ encoded.substring(0, Math.min(encoded.length(), 8)));
+			}
+			pos_ = HEADER.length();
+		}
+
+		Map<String, String> readMap()
+		{
+			if (peek() == '-')
+			{
+				pos_++;
+				return null;
+			}
+			int count = readCount();
+			HashMap<String, String> variables = new HashMap<>(Math.max(4, (int) (count / .75f) + 1));
+			for (int i = 0; i < count; i++)
+			{
+				String key = readString();
+				variables.put(key, readString());
+			}
+			return variables;
+		}
+
+		int readCount()
+		{
+			return readInt(';');
+		}
+
+		private String readString()
+		{
+			if (peek() == '-')
+			{
+				pos_++;
+				return null;
+			}
+			int length = readInt(':');
+			if (pos_ + length > s_.length())
+			{
+				throw malformed();
+			}
+			String value = s_.substring(pos_, pos_ + length);
+			pos_ += length;
+			return value;
+		}
+
+		private int readInt(char terminator)
+		{
+			int value = 0;
+			int start = pos_;
+			char c;
+			while ((c = peek()) != terminator)
+			{
+				if (c < '0' || c > '9' || pos_ - start > 9)
+				{
+					throw malformed();
+				}
+				value = (value * 10) + (c - '0');
+				pos_++;
+			}
+			if (pos_ == start)
+			{
+				throw malformed();
+			}
+			pos_++;
+			return value;
+		}
+
+		private char peek()
+		{
+			if (pos_ >= s_.length())
+			{
+				throw malformed();
+			}
+			return s_.charAt(pos_);
+		}
+
+		private IllegalArgumentException malformed()
+		{
+			return new IllegalArgumentException("Malformed workflow variables at position " + pos_);
+		}
+	}
+}
@@ -27,10 +27,6 @@ package gov.va.isaac.workflow.persistence;
 import gov.va.isaac.workflow.Action;
 import gov.va.isaac.workflow.LocalTask;
 
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -137,14 +133,8 @@ public class WorkflowHistoryHelper {
 			logger.warn("serialized null listOfHistoryEntryMaps into zero-length string \"\"");
 			return "";
 		}
-		logger.debug("serializing listOfHistoryEntryMaps of size {}: {}", listOfHistoryEntryMaps.size(), listOfHistoryEntryMaps);
-
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		XMLEncoder xmlEncoder = new XMLEncoder(bos);
-		xmlEncoder.writeObject(listOfHistoryEntryMaps);
-		xmlEncoder.close();
-
-		String serializedMaps = bos.toString();
+		// the history is a task variable, sent to the workflow server on completion - so it stays XML, not the local DB codec
+		String serializedMaps = VariableCodec.encodeListXML(listOfHistoryEntryMaps);
 		
 		logger.debug("serialized listOfHistoryEntryMaps of size {} into XML: {}", listOfHistoryEntryMaps.size(), serializedMaps);
 		return serializedMaps;
@@ -152,14 +142,12 @@ public class WorkflowHistoryHelper {
 
 	private static List<Map<String, String>> deserializeMaps(String listOfSerializedMaps) {
 		if (listOfSerializedMaps == null || listOfSerializedMaps.isEmpty()) {
-			logger.warn("null or empty xml string passed.  Returning empty history entry map list.");
+			logger.warn("null or empty string passed.  Returning empty history entry map list.");
 			return new ArrayList<Map<String, String>>();
 		} else {
-			XMLDecoder xmlDecoder = new XMLDecoder(new ByteArrayInputStream(listOfSerializedMaps.getBytes()));
-			@SuppressWarnings("unchecked")
-			List<Map<String, String>> parsedMaps = (List<Map<String, String>>) xmlDecoder.readObject();
-			xmlDecoder.close();
-			logger.debug("deserialized xml string \"{}\" into list of history entry maps with {} entries: {}", listOfSerializedMaps, parsedMaps.size(), parsedMaps.toString());
+			// history written by older releases is XMLEncoder output, which the codec still reads
+			List<Map<String, String>> parsedMaps = VariableCodec.decodeList(listOfSerializedMaps);
+			logger.debug("deserialized string \"{}\" into list of history entry maps with {} entries: {}", listOfSerializedMaps, parsedMaps.size(), parsedMaps.toString());
 			return parsedMaps;
 		}
 	}
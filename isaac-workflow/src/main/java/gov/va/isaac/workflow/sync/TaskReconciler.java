@@ -0,0 +1,190 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.sync;
+
+import gov.va.isaac.workflow.LocalTask;
+import gov.va.isaac.workflow.exceptions.DatastoreException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import org.kie.api.task.model.Status;
+import org.kie.api.task.model.TaskSummary;
+
+/**
+ * {@link TaskReconciler}
+ *
+ * Works out which of the tasks owned by a user on the server are new to the local DB, which have a new owner or
+ * status, and which of the open local tasks of the user are gone from the server - from hashed sets of task ids,
+ * and the id, owner and status of the local tasks, without reading their variables.
+ *
+ * The server hands out task ids in increasing order, so a task above the high water mark - the highest id of the
+ * last synchronization - can only be in the local DB as an open task of the user, which are always read.  Only the
+ * ids at or below the mark are looked up.  A wrong guess (a task saved locally by some other path) costs a fetch
+ * of the task variables, not correctness - the upsert checks the DB again.
+ */
+public class TaskReconciler
+{
+	/**
+	 * Reads the id, owner and status of the open tasks of the owner, and of the tasks with the specified ids -
+	 * see {@link gov.va.isaac.workflow.LocalTasksServiceBI#getTaskStates(String, Collection)}
+	 */
+	@FunctionalInterface
+	public static interface StateReader
+	{
+		Collection<LocalTask> read(String owner, Collection<Long> ids) throws DatastoreException;
+	}
+
+	/**
+	 * The differences between the server and the local DB
+	 */
+	public static class Result
+	{
+		private final List<TaskSummary> new_ = new ArrayList<>();
+		private final List<TaskSummary> changed_ = new ArrayList<>();
+		private final List<LocalTask> removed_ = new ArrayList<>();
+		private final long highWaterMark_;
+		private final int lookedUp_;
+
+		private Result(long highWaterMark, int lookedUp)
+		{
+			highWaterMark_ = highWaterMark;
+			lookedUp_ = lookedUp;
+		}
+
+		/**
+		 * @return the tasks of the server which are not in the local DB
+		 */
+		public List<TaskSummary> getNew()
+		{
+			return new_;
+		}
+
+		/**
+		 * @return the tasks of the server whose owner or status differ in the local DB
+		 */
+		public List<TaskSummary> getChanged()
+		{
+			return changed_;
+		}
+
+		/**
+		 * @return the open local tasks of the user which the server no longer has as open tasks of the user - these
+		 * hold the id, owner and status only
+		 */
+		public List<LocalTask> getRemoved()
+		{
+			return removed_;
+		}
+
+		/**
+		 * @return the high water mark to record for the next synchronization
+		 */
+		public long getHighWaterMark()
+		{
+			return highWaterMark_;
+		}
+
+		/**
+		 * @return the number of server task ids which were looked up in the local DB
+		 */
+		public int getLookedUpCount()
+		{
+			return lookedUp_;
+		}
+
+		public int size()
+		{
+			return new_.size() + changed_.size() + removed_.size();
+		}
+	}
+
+	private final String owner_;
+	private final long highWaterMark_;
+
+	/**
+	 * @param owner the user whose tasks are reconciled
+	 * @param highWaterMark the high water mark recorded by the last synchronization of the user, 0 if none
+	 */
+	public TaskReconciler(String owner, long highWaterMark)
+	{
+		owner_ = owner;
+		highWaterMark_ = highWaterMark;
+	}
+
+	/**
+	 * @param remoteTasks the open (Reserved or InProgress) tasks of the owner on the server
+	 * @param stateReader the reader of the local task states
+	 */
+	public Result reconcile(Collection<TaskSummary> remoteTasks, StateReader stateReader) throws DatastoreException
+	{
+		LinkedHashMap<Long, TaskSummary> remote = new LinkedHashMap<>((int) (remoteTasks.size() / .75f) + 1);
+		List<Long> lookUp = new ArrayList<>();
+		long highWaterMark = highWaterMark_;
+		for (TaskSummary task : remoteTasks)
+		{
+			remote.put(task.getId(), task);
+			if (task.getId() <= highWaterMark_)
+			{
+				lookUp.add(task.getId());
+			}
+			highWaterMark = Math.max(highWaterMark, task.getId());
+		}
+
+		Collection<LocalTask> states = stateReader.read(owner_, lookUp);
+		HashMap<Long, LocalTask> local = new HashMap<>((int) (states.size() / .75f) + 1);
+		for (LocalTask state : states)
+		{
+			local.put(state.getId(), state);
+		}
+
+		Result result = new Result(highWaterMark, lookUp.size());
+		for (TaskSummary task : remote.values())
+		{
+			LocalTask state = local.get(task.getId());
+			if (state == null)
+			{
+				result.new_.add(task);
+			}
+			else if (!Objects.equals(state.getOwner(), getOwner(task)) || state.getStatus() != task.getStatus())
+			{
+				result.changed_.add(task);
+			}
+		}
+		for (LocalTask state : local.values())
+		{
+			if (!remote.containsKey(state.getId()) && owner_.equals(state.getOwner())
+					&& (state.getStatus() == Status.Reserved || state.getStatus() == Status.InProgress))
+			{
+				result.removed_.add(state);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The owner of a task, as {@link LocalTask#LocalTask(TaskSummary, boolean)} reads it
+	 */
+	private static String getOwner(TaskSummary task)
+	{
+		return task.getActualOwner() == null ? "" : task.getActualOwner().getId();
+	}
+}
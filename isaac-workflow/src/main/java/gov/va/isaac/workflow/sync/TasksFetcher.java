@@ -22,11 +22,14 @@ import gov.va.isaac.AppContext;
 import gov.va.isaac.workflow.LocalTask;
 import gov.va.isaac.workflow.LocalTasksServiceBI;
 import gov.va.isaac.workflow.TaskActionStatus;
+import gov.va.isaac.workflow.engine.RemoteCallExecutor;
 import gov.va.isaac.workflow.engine.RemoteWfEngine;
 import gov.va.isaac.workflow.exceptions.DatastoreException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map.Entry;
 import org.kie.api.task.TaskService;
 import org.kie.api.task.model.Status;
 import org.kie.api.task.model.TaskSummary;
@@ -60,47 +63,60 @@ public class TasksFetcher {
     }
 
     public String fetchTasks(String userId) throws DatastoreException, RemoteException {
-        String result = "";
-        int countNew = 0;
-        int countUpdated = 0;
-        int countRemoved = 0;
+        return fetchTasks(userId, null);
+    }
+
+    /**
+     * @param remoteCalls the executor for reading the variables of the new tasks concurrently, or null to read them
+     * one at a time
+     */
+    public String fetchTasks(String userId, RemoteCallExecutor remoteCalls) throws DatastoreException, RemoteException {
         List<TaskSummary> tasksSummaries = remoteTaskService.getTasksOwnedByStatus(userId, reservedStatuses, locale);
-        for (TaskSummary loopTask : tasksSummaries) {
-            log.debug("Owned: " + loopTask.getId() + " - " + loopTask.getName() + " - " + loopTask.getStatus().name() + " - " + loopTask.getActualOwner());
-            LocalTask dbTask = persistenceApi.getTask(loopTask.getId());
-            if (dbTask == null) {
+        long start = System.currentTimeMillis();
+        TaskReconciler reconciler = new TaskReconciler(userId, persistenceApi.getSyncHighWaterMark(userId));
+        TaskReconciler.Result delta = reconciler.reconcile(tasksSummaries, persistenceApi::getTaskStates);
+        //All of the changes are saved together, in one transaction
+        List<LocalTask> changedTasks = Collections.synchronizedList(new ArrayList<>(delta.size()));
+        if (remoteCalls == null) {
+            for (TaskSummary loopTask : delta.getNew()) {
                 log.debug("Task is new: " + loopTask.getId());
-                LocalTask loopLocal = new LocalTask(loopTask, true);
-                persistenceApi.saveTask(loopLocal);
-                countNew++;
-            } else if (!dbTask.getOwner().equals(loopTask.getActualOwner().getId()) || !dbTask.getStatus().name().equals(loopTask.getStatus().name())) {
-                log.debug("Task has changed: " + loopTask.getId());
-                LocalTask loopLocal = new LocalTask(loopTask, true);
-                persistenceApi.saveTask(loopLocal);
-                countUpdated++;
-            } else {
-                log.debug("Task: " + loopTask.getId() + " No changes");
+                changedTasks.add(new LocalTask(loopTask, true));
             }
+        } else {
+            readNewTasks(delta.getNew(), remoteCalls, changedTasks);
         }
-        List<LocalTask> openOwnedTasks = persistenceApi.getOpenOwnedTasks();
-        log.debug("Looking for missing tasks. LocalCount = " + openOwnedTasks.size() + ", FetchCount = " + tasksSummaries.size());
-        for (LocalTask loopLocalTask : openOwnedTasks) {
-            boolean isInFetchCursor = false;
-            for (TaskSummary loopCursorTask : tasksSummaries) {
-                if (loopCursorTask.getId() == loopLocalTask.getId()) {
-                    isInFetchCursor = true;
-                }
-            }
-            if (!isInFetchCursor) {
-                log.info("Missing task: " + loopLocalTask.getId());
-                loopLocalTask.setStatus(Status.Obsolete);
-                loopLocalTask.setActionStatus(TaskActionStatus.Canceled);
-                persistenceApi.saveTask(loopLocalTask);
-                countRemoved++;
-            }
+        for (TaskSummary loopTask : delta.getChanged()) {
+            log.debug("Task has changed: " + loopTask.getId());
+            //Only the owner and status of an existing task are saved, so the variables aren't fetched
+            changedTasks.add(new LocalTask(loopTask, false));
+        }
+        for (LocalTask loopLocalTask : delta.getRemoved()) {
+            log.info("Missing task: " + loopLocalTask.getId());
+            loopLocalTask.setStatus(Status.Obsolete);
+            loopLocalTask.setActionStatus(TaskActionStatus.Canceled);
+            changedTasks.add(loopLocalTask);
+        }
+        persistenceApi.saveSyncedTasks(userId, changedTasks, delta.getHighWaterMark());
+        log.debug("Synchronized {} remote tasks in {} ms, looked up {} locally, high water mark {}", tasksSummaries.size(),
+                System.currentTimeMillis() - start, delta.getLookedUpCount(), delta.getHighWaterMark());
+        return "Tasks -> New: " + delta.getNew().size() + " Updated: " + delta.getChanged().size() + " Removed: " + delta.getRemoved().size();
+    }
+
+    private void readNewTasks(List<TaskSummary> newTasks, RemoteCallExecutor remoteCalls, List<LocalTask> changedTasks) throws RemoteException {
+        List<Entry<TaskSummary, Exception>> failures;
+        try {
+            failures = remoteCalls.invokeAll(newTasks, loopTask -> {
+                log.debug("Task is new: " + loopTask.getId());
+                changedTasks.add(new LocalTask(loopTask, true));
+            });
+        } catch (InterruptedException e) {
+            throw new RemoteException("Interrupted while reading the new tasks", e);
+        }
+        //As when read one at a time, nothing is saved if a new task can't be read
+        if (failures.size() > 0) {
+            Exception e = failures.get(0).getValue();
+            throw e instanceof RemoteException ? (RemoteException) e : new RemoteException("Error reading task " + failures.get(0).getKey().getId(), e);
         }
-        result = "Tasks -> New: " + countNew + " Updated: " + countUpdated + " Removed: " + countRemoved; 
-        return result;
     }
 
     public void claimBatch(String userId, Integer limit) throws Exception {
@@ -0,0 +1,198 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.demo;
+
+import gov.va.isaac.workflow.Action;
+import gov.va.isaac.workflow.LocalTask;
+import gov.va.isaac.workflow.TaskActionStatus;
+import gov.va.isaac.workflow.persistence.LocalTasksDAO;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.kie.api.task.model.Status;
+
+/**
+ * {@link LocalTasksLoadTest}
+ *
+ * Times the writes and reads of {@link LocalTasksDAO} against an in memory Derby DB, and prints the throughput
+ * of each - along with that of the old approach, one concatenated SQL statement and one commit per task, for
+ * comparison.  Needs neither the workflow server nor the terminology DB.
+ *
+ * The optional argument is the number of tasks, which defaults to {@link #TASKS}.
+ */
+public class LocalTasksLoadTest
+{
+	private static final int TASKS = 5000;
+	private static final int OWNERS = 10;
+	private static final int QUERIES = 2000;
+	private static final String DB_URL = "jdbc:derby:memory:localTasksLoadTest";
+
+	public static void main(String[] args) throws Exception
+	{
+		int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : TASKS;
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver").newInstance();
+
+		try (Connection conn = DriverManager.getConnection(DB_URL + ";create=true", "workflow", "workflow"))
+		{
+			conn.setAutoCommit(false);
+			LocalTasksDAO.createSchema(conn);
+			List<LocalTask> tasks = createTasks(taskCount);
+
+			long start = System.nanoTime();
+			try (Statement s = conn.createStatement())
+			{
+				for (LocalTask task : tasks)
+				{
+					s.executeUpdate("insert into LOCAL_TASKS values (" + task.getId() + ", '" + task.getName() + "', '" + task.getComponentId() + "', '"
+							+ task.getComponentName() + "', '" + task.getStatus().name() + "', '" + task.getOwner() + "', '" + Action.NONE.name() + "', '"
+							+ TaskActionStatus.None.name() + "', '" + serializeMap(task.getInputVariables()).replace("'", "''") + "', '')");
+					conn.commit();
+				}
+			}
+			report("Statement insert, commit per task", taskCount, start);
+			clear(conn);
+
+			start = System.nanoTime();
+			try (LocalTasksDAO dao = new LocalTasksDAO(conn))
+			{
+				for (LocalTask task : tasks)
+				{
+					dao.upsert(Collections.singletonList(task));
+					conn.commit();
+				}
+			}
+			report("Prepared upsert, commit per task", taskCount, start);
+			clear(conn);
+
+			start = System.nanoTime();
+			try (LocalTasksDAO dao = new LocalTasksDAO(conn))
+			{
+				check(dao.upsert(tasks).getInserted().size() == taskCount, "Expected every task to be inserted");
+				conn.commit();
+			}
+			report("Batched upsert of new tasks, one transaction", taskCount, start);
+
+			for (int i = 0; i < tasks.size(); i += 2)
+			{
+				tasks.get(i).setStatus(Status.Completed);
+			}
+			start = System.nanoTime();
+			try (LocalTasksDAO dao = new LocalTasksDAO(conn))
+			{
+				check(dao.upsert(tasks).getUpdatedCount() == (taskCount + 1) / 2, "Expected every other task to be updated");
+				conn.commit();
+			}
+			report("Batched upsert, half changed, one transaction", taskCount, start);
+
+			try (LocalTasksDAO dao = new LocalTasksDAO(conn))
+			{
+				start = System.nanoTime();
+				int found = 0;
+				for (int i = 0; i < QUERIES; i++)
+				{
+					found += dao.getOpenOwnedTasks("owner" + (i % OWNERS)).size();
+				}
+				report("Open owned tasks queries (" + found + " rows)", QUERIES, start);
+
+				start = System.nanoTime();
+				for (int i = 0; i < QUERIES; i++)
+				{
+					check(dao.getTask(tasks.get(i % taskCount).getId()) != null, "Expected task " + tasks.get(i % taskCount).getId());
+				}
+				report("Task by id queries", QUERIES, start);
+			}
+		}
+		finally
+		{
+			try
+			{
+				DriverManager.getConnection(DB_URL + ";drop=true");
+			}
+			catch (SQLException e)
+			{
+				//This is how derby signals that the DB was dropped
+			}
+		}
+	}
+
+	private static List<LocalTask> createTasks(int count)
+	{
+		Status[] statuses = {Status.Reserved, Status.InProgress, Status.Ready};
+		List<LocalTask> tasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			LocalTask task = new LocalTask();
+			task.setId((long) i + 1);
+			task.setName("Edit content");
+			task.setComponentId(UUID.randomUUID().toString());
+			task.setComponentName("Load test concept " + i);
+			task.setStatus(statuses[i % statuses.length]);
+			task.setOwner("owner" + (i % OWNERS));
+			Map<String, String> variables = new HashMap<>();
+			variables.put("in_component_id", task.getComponentId());
+			variables.put("in_component_name", task.getComponentName());
+			variables.put("in_instructions", "Review the descriptions of concept " + i);
+			task.setInputVariables(variables);
+			tasks.add(task);
+		}
+		return tasks;
+	}
+
+	private static void clear(Connection conn) throws SQLException
+	{
+		try (Statement s = conn.createStatement())
+		{
+			s.execute("delete from LOCAL_TASKS");
+		}
+		conn.commit();
+	}
+
+	private static void report(String label, int count, long startNanos)
+	{
+		double ms = Math.max(1, (System.nanoTime() - startNanos) / 1000000.0);
+		System.out.println(String.format("%-55s %7d in %8.0f ms %10.0f / s", label, count, ms, count * 1000.0 / ms));
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+		{
+			throw new IllegalStateException(message);
+		}
+	}
+
+	private static String serializeMap(Map<String, String> map)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (XMLEncoder xmlEncoder = new XMLEncoder(bos))
+		{
+			xmlEncoder.writeObject(map);
+		}
+		return bos.toString();
+	}
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.demo;
+
+import gov.va.isaac.workflow.engine.CoalescingRunner;
+import gov.va.isaac.workflow.engine.RemoteCallExecutor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.kie.api.task.TaskService;
+import org.kie.api.task.model.Status;
+
+/**
+ * {@link RemoteSyncPipelineTest}
+ *
+ * Runs the pieces of {@link gov.va.isaac.workflow.engine.RemoteSynchronizer} against a {@link StandInTaskService}
+ * with a delay on each call, standing in for the workflow server - checks that a burst of synchronization requests
+ * is coalesced by {@link CoalescingRunner}, and that {@link RemoteCallExecutor} overlaps the calls of the upload
+ * stage without ever having more than its bound in flight.  Prints the time of each stage, one call at a time and
+ * concurrent.  Needs neither the workflow server nor the terminology DB.
+ *
+ * The optional arguments are the number of tasks, which defaults to {@link #TASKS}, and the delay of each call in
+ * ms, which defaults to {@link #LATENCY}.
+ */
+public class RemoteSyncPipelineTest
+{
+	private static final int TASKS = 200;
+	private static final long LATENCY = 10;
+	private static final int MAX_CONCURRENT = 4;
+	private static final String OWNER = "alejandro";
+
+	public static void main(String[] args) throws Exception
+	{
+		int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : TASKS;
+		long latency = args.length > 1 ? Long.parseLong(args[1]) : LATENCY;
+
+		coalescing();
+
+		HashMap<String, Long> sequential = pipeline("One call at a time", taskCount, latency, null);
+		RemoteCallExecutor remoteCalls = new RemoteCallExecutor(MAX_CONCURRENT, "Test remote call");
+		try
+		{
+			HashMap<String, Long> concurrent = pipeline(MAX_CONCURRENT + " calls at a time", taskCount, latency, remoteCalls);
+			check(concurrent.get("upload") < sequential.get("upload"), "Expected the concurrent upload to be faster");
+		}
+		finally
+		{
+			remoteCalls.shutdown();
+		}
+	}
+
+	/**
+	 * Requests a slow run, then makes a burst of requests from several threads while it runs - the burst should be
+	 * served by a single further run, and every request should get a result.
+	 */
+	private static void coalescing() throws Exception
+	{
+		AtomicInteger runs = new AtomicInteger();
+		CoalescingRunner<Integer> runner = new CoalescingRunner<>("Test sync runner", () ->
+		{
+			try
+			{
+				Thread.sleep(200);
+			}
+			catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return runs.incrementAndGet();
+		}, e -> -1);
+		runner.start();
+		try
+		{
+			int burst = 20;
+			CountDownLatch served = new CountDownLatch(burst + 1);
+			AtomicInteger failed = new AtomicInteger();
+			runner.request(result -> served.countDown());
+			Thread.sleep(50);
+
+			List<Thread> threads = new ArrayList<>();
+			for (int i = 0; i < 4; i++)
+			{
+				Thread thread = new Thread(() ->
+				{
+					for (int j = 0; j < burst / 4; j++)
+					{
+						runner.request(result ->
+						{
+							if (result < 0)
+							{
+								failed.incrementAndGet();
+							}
+							served.countDown();
+						});
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads)
+			{
+				thread.join();
+			}
+
+			check(served.await(10, TimeUnit.SECONDS), "Expected every request to be served");
+			check(failed.get() == 0, "Expected no failed runs");
+			check(runner.getRunCount() == 2, "Expected the burst to be coalesced into one run, not " + (runner.getRunCount() - 1));
+			System.out.println(String.format("%-30s %3d requests, %d runs", "Coalesced requests", runner.getRequestCount(), runner.getRunCount()));
+		}
+		finally
+		{
+			runner.stop();
+		}
+	}
+
+	/**
+	 * The stages of a synchronization against a fresh stand in - the upload of the local actions (a start and
+	 * complete of half the tasks, a release of the rest) together with a claim of unowned tasks, in place of the
+	 * process instance creation, then the fetch of the owned tasks.
+	 *
+	 * @param remoteCalls the calls to use, null to make the calls one at a time
+	 * @return the time of each stage, in ms
+	 */
+	private static HashMap<String, Long> pipeline(String label, int taskCount, long latency, RemoteCallExecutor remoteCalls) throws Exception
+	{
+		StandInTaskService standIn = new StandInTaskService();
+		TaskService remote = standIn.getTaskService();
+		List<Long> owned = new ArrayList<>();
+		List<Long> unowned = new ArrayList<>();
+		for (int i = 0; i < taskCount; i++)
+		{
+			owned.add(standIn.addTask(OWNER, Status.Reserved));
+		}
+		for (int i = 0; i < taskCount / 10; i++)
+		{
+			unowned.add(standIn.addTask(null, Status.Ready));
+		}
+		standIn.setLatency(latency);
+
+		HashMap<String, Long> stageTimes = new HashMap<>();
+		long start = System.nanoTime();
+		RemoteCallExecutor.RemoteCall<Long> action = id ->
+		{
+			if (id % 2 == 0)
+			{
+				remote.start(id, OWNER);
+				remote.complete(id, OWNER, new HashMap<>());
+			}
+			else
+			{
+				remote.release(id, OWNER);
+			}
+		};
+		RemoteCallExecutor.RemoteCall<Long> claim = id -> remote.claim(id, OWNER);
+		if (remoteCalls == null)
+		{
+			for (Long id : owned)
+			{
+				action.call(id);
+			}
+			for (Long id : unowned)
+			{
+				claim.call(id);
+			}
+		}
+		else
+		{
+			RemoteCallExecutor.Batch<Long> actions = remoteCalls.submit(owned, action);
+			RemoteCallExecutor.Batch<Long> claims = remoteCalls.submit(unowned, claim);
+			List<Entry<Long, Exception>> failures = new ArrayList<>(actions.await());
+			failures.addAll(claims.await());
+			check(failures.isEmpty(), "Expected no failed calls, found " + failures);
+		}
+		stageTimes.put("upload", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		start = System.nanoTime();
+		List<Long> open = standIn.getTaskIds(OWNER, Arrays.asList(Status.Reserved, Status.InProgress));
+		int fetched = remote.getTasksOwnedByStatus(OWNER, Arrays.asList(Status.Reserved, Status.InProgress), "en-UK").size();
+		stageTimes.put("fetch", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		for (Long id : owned)
+		{
+			Status expected = id % 2 == 0 ? Status.Completed : Status.Ready;
+			check(standIn.getStatus(id) == expected, "Expected task " + id + " to be " + expected + ", not " + standIn.getStatus(id));
+		}
+		check(open.size() == unowned.size() && fetched == open.size(), "Expected the " + unowned.size() + " claimed tasks to be the open tasks");
+		int bound = remoteCalls == null ? 1 : remoteCalls.getMaxConcurrent();
+		check(standIn.getMaxInFlight() <= bound, "Expected at most " + bound + " calls in flight, saw " + standIn.getMaxInFlight());
+
+		System.out.println(String.format("%-30s %5d calls, at most %d in flight: upload %6d ms, fetch %4d ms", label, standIn.getCallCount(),
+				standIn.getMaxInFlight(), stageTimes.get("upload"), stageTimes.get("fetch")));
+		return stageTimes;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+		{
+			throw new IllegalStateException(message);
+		}
+	}
+}
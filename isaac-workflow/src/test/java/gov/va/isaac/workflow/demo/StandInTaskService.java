@@ -0,0 +1,300 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.demo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.kie.api.task.TaskService;
+import org.kie.api.task.model.Status;
+import org.kie.api.task.model.TaskSummary;
+import org.kie.api.task.model.User;
+
+/**
+ * {@link StandInTaskService}
+ *
+ * An in memory stand in for the remote {@link TaskService} of the workflow server, for running the task
+ * synchronization offline.  Answers the task queries, claims, starts, completes and releases of the
+ * synchronization - any other method throws UnsupportedOperationException.  The tasks are changed directly, with {@link #addTask(String, Status)},
+ * {@link #setStatus(long, Status)} and {@link #setOwner(long, String)}.
+ *
+ * Task ids are handed out in increasing order, as by the server.  {@link #setLatency(long)} adds a delay to each
+ * call, to stand in for the network - calls overlap during the delay, and {@link #getMaxInFlight()} reports the
+ * most which did.
+ */
+public class StandInTaskService implements InvocationHandler
+{
+	private final LinkedHashMap<Long, RemoteTask> tasks_ = new LinkedHashMap<>();
+	private long nextId_ = 1;
+	private volatile long latency_ = 0;
+	private int calls_ = 0;
+	private int inFlight_ = 0;
+	private int maxInFlight_ = 0;
+
+	private static class RemoteTask
+	{
+		private final long id_;
+		private final Map<String, String> variables_ = new HashMap<>();
+		private String owner_;
+		private Status status_;
+
+		RemoteTask(long id, String owner, Status status)
+		{
+			id_ = id;
+			owner_ = owner;
+			status_ = status;
+			variables_.put("in_component_id", UUID.randomUUID().toString());
+			variables_.put("in_component_name", "Stand in concept " + id);
+			variables_.put("NodeName", "Edit content");
+		}
+	}
+
+	/**
+	 * @return the {@link TaskService} backed by this stand in
+	 */
+	public TaskService getTaskService()
+	{
+		return (TaskService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {TaskService.class}, this);
+	}
+
+	/**
+	 * @param owner the owner, or null for a task which isn't claimed
+	 * @return the id of the new task
+	 */
+	public synchronized long addTask(String owner, Status status)
+	{
+		RemoteTask task = new RemoteTask(nextId_++, owner, status);
+		tasks_.put(task.id_, task);
+		return task.id_;
+	}
+
+	public synchronized void setStatus(long id, Status status)
+	{
+		tasks_.get(id).status_ = status;
+	}
+
+	public synchronized void setOwner(long id, String owner)
+	{
+		tasks_.get(id).owner_ = owner;
+	}
+
+	/**
+	 * @return the variables of the task - what the workflow engine would return for it
+	 */
+	public synchronized Map<String, String> getVariables(long id)
+	{
+		return new HashMap<>(tasks_.get(id).variables_);
+	}
+
+	/**
+	 * @return the ids of the tasks of the owner with one of the statuses
+	 */
+	public synchronized List<Long> getTaskIds(String owner, Collection<Status> statuses)
+	{
+		List<Long> ids = new ArrayList<>();
+		for (RemoteTask task : tasks_.values())
+		{
+			if (owner.equals(task.owner_) && statuses.contains(task.status_))
+			{
+				ids.add(task.id_);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @param latency the delay added to each call to the {@link TaskService}, in ms
+	 */
+	public void setLatency(long latency)
+	{
+		latency_ = latency;
+	}
+
+	/**
+	 * @return the number of calls made to the {@link TaskService}
+	 */
+	public synchronized int getCallCount()
+	{
+		return calls_;
+	}
+
+	/**
+	 * @return the most calls to the {@link TaskService} which were in flight at once
+	 */
+	public synchronized int getMaxInFlight()
+	{
+		return maxInFlight_;
+	}
+
+	/**
+	 * @return the status of the task
+	 */
+	public synchronized Status getStatus(long id)
+	{
+		return tasks_.get(id).status_;
+	}
+
+	/**
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+		switch (method.getName())
+		{
+			case "toString":
+				return "StandInTaskService";
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				break;
+		}
+
+		synchronized (this)
+		{
+			calls_++;
+			maxInFlight_ = Math.max(maxInFlight_, ++inFlight_);
+		}
+		try
+		{
+			if (latency_ > 0)
+			{
+				Thread.sleep(latency_);
+			}
+			return answer(method, args);
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				inFlight_--;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object answer(Method method, Object[] args)
+	{
+		synchronized (this)
+		{
+			switch (method.getName())
+			{
+				case "getTasksOwnedByStatus":
+				{
+					List<TaskSummary> summaries = new ArrayList<>();
+					for (long id : getTaskIds((String) args[0], (List<Status>) args[1]))
+					{
+						summaries.add(summarize(tasks_.get(id)));
+					}
+					return summaries;
+				}
+				case "getTasksAssignedAsPotentialOwnerByStatus":
+				{
+					List<TaskSummary> summaries = new ArrayList<>();
+					for (RemoteTask task : tasks_.values())
+					{
+						if (task.owner_ == null && ((List<Status>) args[1]).contains(task.status_))
+						{
+							summaries.add(summarize(task));
+						}
+					}
+					return summaries;
+				}
+				case "claim":
+				{
+					RemoteTask task = tasks_.get(args[0]);
+					task.owner_ = (String) args[1];
+					task.status_ = Status.Reserved;
+					return null;
+				}
+				case "start":
+					tasks_.get(args[0]).status_ = Status.InProgress;
+					return null;
+				case "complete":
+					tasks_.get(args[0]).status_ = Status.Completed;
+					return null;
+				case "release":
+				{
+					RemoteTask task = tasks_.get(args[0]);
+					task.owner_ = null;
+					task.status_ = Status.Ready;
+					return null;
+				}
+				default:
+					throw new UnsupportedOperationException("The stand in task service doesn't implement " + method.getName());
+			}
+		}
+	}
+
+	/**
+	 * A snapshot of the task, as a {@link TaskSummary}
+	 */
+	private static TaskSummary summarize(RemoteTask task)
+	{
+		HashMap<String, Object> values = new HashMap<>();
+		values.put("getId", task.id_);
+		values.put("getName", task.variables_.get("NodeName"));
+		values.put("getStatus", task.status_);
+		values.put("getActualOwner", task.owner_ == null ? null : user(task.owner_));
+		return (TaskSummary) Proxy.newProxyInstance(StandInTaskService.class.getClassLoader(), new Class<?>[] {TaskSummary.class},
+				(proxy, method, args) -> method.getName().equals("toString") ? "TaskSummary" + values : values(values, method));
+	}
+
+	private static User user(String id)
+	{
+		return (User) Proxy.newProxyInstance(StandInTaskService.class.getClassLoader(), new Class<?>[] {User.class},
+				(proxy, method, args) -> method.getName().equals("getId") || method.getName().equals("toString") ? id : values(null, method));
+	}
+
+	private static Object values(Map<String, Object> values, Method method)
+	{
+		Object value = values == null ? null : values.get(method.getName());
+		if (value == null && method.getReturnType().isPrimitive())
+		{
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class)
+			{
+				return false;
+			}
+			if (type == void.class)
+			{
+				return null;
+			}
+			if (type == long.class)
+			{
+				return 0L;
+			}
+			if (type == int.class)
+			{
+				return 0;
+			}
+			throw new UnsupportedOperationException("The stand in task summary doesn't implement " + method.getName());
+		}
+		return value;
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.demo;
+
+import gov.va.isaac.workflow.LocalTask;
+import gov.va.isaac.workflow.TaskActionStatus;
+import gov.va.isaac.workflow.exceptions.DatastoreException;
+import gov.va.isaac.workflow.persistence.LocalTasksDAO;
+import gov.va.isaac.workflow.sync.TaskReconciler;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.kie.api.task.TaskService;
+import org.kie.api.task.model.Status;
+import org.kie.api.task.model.TaskSummary;
+
+/**
+ * {@link TaskSyncBenchmark}
+ *
+ * Runs the task synchronization of {@link gov.va.isaac.workflow.sync.TasksFetcher} - {@link TaskReconciler} and
+ * {@link LocalTasksDAO} - against a {@link StandInTaskService} and an in memory Derby DB, checks the local tasks
+ * against the server after each round, and prints the time of each.  Then times the old reconciliation - a full
+ * read of each task, and nested loops over the ids - on the same data, for comparison.  Needs neither the workflow
+ * server nor the terminology DB.
+ *
+ * The optional argument is the number of tasks, which defaults to {@link #TASKS}.
+ */
+public class TaskSyncBenchmark
+{
+	private static final int TASKS = 10000;
+	private static final String OWNER = "alejandro";
+	private static final List<Status> OPEN = Arrays.asList(Status.Reserved, Status.InProgress);
+	private static final String DB_URL = "jdbc:derby:memory:taskSyncBenchmark";
+
+	public static void main(String[] args) throws Exception
+	{
+		int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : TASKS;
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver").newInstance();
+
+		StandInTaskService standIn = new StandInTaskService();
+		TaskService remote = standIn.getTaskService();
+		for (int i = 0; i < taskCount; i++)
+		{
+			standIn.addTask(OWNER, OPEN.get(i % OPEN.size()));
+		}
+
+		try (Connection conn = DriverManager.getConnection(DB_URL + ";create=true", "workflow", "workflow"); LocalTasksDAO dao = new LocalTasksDAO(conn))
+		{
+			conn.setAutoCommit(false);
+			LocalTasksDAO.createSchema(conn);
+
+			TaskReconciler.Result result = sync("Initial sync", conn, dao, remote, standIn);
+			check(result.getNew().size() == taskCount && result.getLookedUpCount() == 0, "Expected every task to be new, and none looked up");
+			verify(dao, standIn);
+
+			result = sync("No changes", conn, dao, remote, standIn);
+			check(result.size() == 0, "Expected no changes");
+
+			//change 1% of the tasks each way - the ids changed are odd, so start Reserved
+			int step = 100;
+			int changes = 0;
+			for (long id = 1; id <= taskCount; id += step)
+			{
+				standIn.setStatus(id, Status.Completed);
+				standIn.setOwner(id + 1, "someoneElse");
+				standIn.setStatus(id + 2, Status.InProgress);
+				standIn.addTask(OWNER, Status.Reserved);
+				changes++;
+			}
+			result = sync("1% completed, reassigned, changed and new", conn, dao, remote, standIn);
+			check(result.getNew().size() == changes, "Expected " + changes + " new tasks, not " + result.getNew().size());
+			check(result.getChanged().size() == changes, "Expected " + changes + " changed tasks, not " + result.getChanged().size());
+			check(result.getRemoved().size() == changes * 2, "Expected " + (changes * 2) + " removed tasks, not " + result.getRemoved().size());
+			verify(dao, standIn);
+
+			standIn.setStatus(1 + step, Status.Reserved);
+			result = sync("A completed task reopened", conn, dao, remote, standIn);
+			check(result.getChanged().size() == 1 && result.size() == 1, "Expected the reopened task to be changed");
+			verify(dao, standIn);
+
+			legacyReconcile(dao, remote);
+		}
+		finally
+		{
+			try
+			{
+				DriverManager.getConnection(DB_URL + ";drop=true");
+			}
+			catch (SQLException e)
+			{
+				//This is how derby signals that the DB was dropped
+			}
+		}
+	}
+
+	/**
+	 * The steps of {@link gov.va.isaac.workflow.sync.TasksFetcher#fetchTasks(String)}
+	 */
+	private static TaskReconciler.Result sync(String label, Connection conn, LocalTasksDAO dao, TaskService remote, StandInTaskService standIn)
+			throws Exception
+	{
+		long start = System.nanoTime();
+		List<TaskSummary> summaries = remote.getTasksOwnedByStatus(OWNER, OPEN, "en-UK");
+		TaskReconciler.Result result = new TaskReconciler(OWNER, dao.getSyncHighWaterMark(OWNER)).reconcile(summaries, (owner, ids) ->
+		{
+			try
+			{
+				return dao.getTaskStates(owner, ids);
+			}
+			catch (SQLException e)
+			{
+				throw new DatastoreException(e);
+			}
+		});
+		long reconciled = System.nanoTime();
+
+		List<LocalTask> changed = new ArrayList<>(result.size());
+		for (TaskSummary summary : result.getNew())
+		{
+			//as LocalTask(summary, true) reads it from the workflow engine
+			LocalTask task = new LocalTask(summary, false);
+			Map<String, String> variables = standIn.getVariables(summary.getId());
+			task.setName(variables.get("NodeName"));
+			task.setComponentId(variables.get("in_component_id"));
+			task.setComponentName(variables.get("in_component_name"));
+			task.setInputVariables(variables);
+			changed.add(task);
+		}
+		for (TaskSummary summary : result.getChanged())
+		{
+			changed.add(new LocalTask(summary, false));
+		}
+		for (LocalTask task : result.getRemoved())
+		{
+			task.setStatus(Status.Obsolete);
+			task.setActionStatus(TaskActionStatus.Canceled);
+			changed.add(task);
+		}
+		dao.upsert(changed);
+		dao.setSyncHighWaterMark(OWNER, result.getHighWaterMark());
+		conn.commit();
+
+		System.out.println(String.format("%-45s %6d remote, %6d looked up, %5d new, %5d changed, %5d removed: reconciled in %6.1f ms, saved in %7.1f ms",
+				label, summaries.size(), result.getLookedUpCount(), result.getNew().size(), result.getChanged().size(), result.getRemoved().size(),
+				(reconciled - start) / 1000000.0, (System.nanoTime() - reconciled) / 1000000.0));
+		return result;
+	}
+
+	/**
+	 * The reconciliation before {@link TaskReconciler} - one full read of the local task per remote task, then nested
+	 * loops to find the missing ones.  Reads only, nothing is saved.
+	 */
+	private static void legacyReconcile(LocalTasksDAO dao, TaskService remote) throws SQLException
+	{
+		long start = System.nanoTime();
+		List<TaskSummary> summaries = remote.getTasksOwnedByStatus(OWNER, OPEN, "en-UK");
+		int changed = 0;
+		for (TaskSummary summary : summaries)
+		{
+			LocalTask task = dao.getTask(summary.getId());
+			if (task == null || !task.getOwner().equals(summary.getActualOwner().getId()) || task.getStatus() != summary.getStatus())
+			{
+				changed++;
+			}
+		}
+		int removed = 0;
+		for (LocalTask task : dao.getOpenOwnedTasks(OWNER))
+		{
+			boolean found = false;
+			for (TaskSummary summary : summaries)
+			{
+				if (summary.getId().equals(task.getId()))
+				{
+					found = true;
+				}
+			}
+			if (!found)
+			{
+				removed++;
+			}
+		}
+		check(changed == 0 && removed == 0, "Expected the legacy reconciliation to find no changes");
+		System.out.println(String.format("%-45s %6d remote: reconciled in %6.1f ms", "Legacy reconciliation, no changes", summaries.size(),
+				(System.nanoTime() - start) / 1000000.0));
+	}
+
+	/**
+	 * Checks that the open local tasks of the owner are the open tasks of the owner on the server
+	 */
+	private static void verify(LocalTasksDAO dao, StandInTaskService standIn) throws SQLException
+	{
+		HashSet<Long> local = new HashSet<>();
+		for (LocalTask task : dao.getOpenOwnedTasks(OWNER))
+		{
+			local.add(task.getId());
+		}
+		HashSet<Long> remote = new HashSet<>(standIn.getTaskIds(OWNER, OPEN));
+		check(local.equals(remote), "Expected the " + remote.size() + " open tasks of the server locally, found " + local.size());
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+		{
+			throw new IllegalStateException(message);
+		}
+	}
+}
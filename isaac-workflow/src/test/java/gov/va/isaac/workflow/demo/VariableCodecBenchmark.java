@@ -0,0 +1,171 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.workflow.demo;
+
+import gov.va.isaac.workflow.persistence.VariableCodec;
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * {@link VariableCodecBenchmark}
+ *
+ * Compares the encode and decode time, and the bytes stored per task, of {@link VariableCodec} against the
+ * XMLEncoder format it replaced - for the input variables of a task, including a few entries of workflow history.
+ * Also checks that both round trip, and that the codec reads the XML.  Needs neither the workflow server nor a DB.
+ *
+ * The optional argument is the number of tasks, which defaults to {@link #TASKS}.
+ */
+public class VariableCodecBenchmark
+{
+	private static final int TASKS = 5000;
+	private static final int HISTORY_ENTRIES = 4;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args)
+	{
+		int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : TASKS;
+		List<Map<String, String>> tasks = createVariables(taskCount);
+
+		List<String> xml = encodeAll(tasks, VariableCodecBenchmark::toXML);
+		List<String> encoded = encodeAll(tasks, VariableCodec::encode);
+		for (int i = 0; i < taskCount; i++)
+		{
+			check(tasks.get(i).equals(fromXML(xml.get(i))), "XML round trip of task " + i);
+			check(tasks.get(i).equals(VariableCodec.decode(encoded.get(i))), "Codec round trip of task " + i);
+			check(tasks.get(i).equals(VariableCodec.decode(xml.get(i))), "Codec read of the XML of task " + i);
+			check(VariableCodec.decodeList(tasks.get(i).get("in_history")).size() == HISTORY_ENTRIES, "History of task " + i);
+		}
+
+		// the first rounds warm up the JIT, the last is reported
+		for (int round = 1; round <= ROUNDS; round++)
+		{
+			boolean last = round == ROUNDS;
+			time(last, "XMLEncoder encode", taskCount, () -> encodeAll(tasks, VariableCodecBenchmark::toXML));
+			time(last, "XMLDecoder decode", taskCount, () -> decodeAll(xml, VariableCodecBenchmark::fromXML));
+			time(last, "VariableCodec encode", taskCount, () -> encodeAll(tasks, VariableCodec::encode));
+			time(last, "VariableCodec decode", taskCount, () -> decodeAll(encoded, VariableCodec::decode));
+		}
+
+		System.out.println(String.format("%-30s %10.0f bytes / task", "XMLEncoder", bytes(xml) / (double) taskCount));
+		System.out.println(String.format("%-30s %10.0f bytes / task", "VariableCodec", bytes(encoded) / (double) taskCount));
+	}
+
+	private static List<Map<String, String>> createVariables(int count)
+	{
+		List<Map<String, String>> tasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			List<Map<String, String>> history = new ArrayList<>();
+			for (int j = 0; j < HISTORY_ENTRIES; j++)
+			{
+				Map<String, String> entry = new HashMap<>();
+				entry.put("wf_hist_action_owner", "owner" + j);
+				entry.put("wf_hist_action_time", Long.toString(System.currentTimeMillis()));
+				entry.put("wf_hist_action", "COMPLETE");
+				entry.put("wf_hist_comment", j % 2 == 0 ? "Reviewed <descriptions> & \"synonyms\"" : null);
+				entry.put("wf_hist_task_name", "Edit content");
+				history.add(entry);
+			}
+			Map<String, String> variables = new HashMap<>();
+			variables.put("in_component_id", UUID.randomUUID().toString());
+			variables.put("in_component_name", "Benchmark concept " + i + " (disorder)");
+			variables.put("in_instructions", "Review the descriptions of concept " + i);
+			variables.put("in_history", VariableCodec.encodeListXML(history));
+			tasks.add(variables);
+		}
+		return tasks;
+	}
+
+	private static List<String> encodeAll(List<Map<String, String>> tasks, Function<Map<String, String>, String> encoder)
+	{
+		List<String> encoded = new ArrayList<>(tasks.size());
+		for (Map<String, String> variables : tasks)
+		{
+			encoded.add(encoder.apply(variables));
+		}
+		return encoded;
+	}
+
+	private static int decodeAll(List<String> encoded, Function<String, Map<String, String>> decoder)
+	{
+		int entries = 0;
+		for (String value : encoded)
+		{
+			entries += decoder.apply(value).size();
+		}
+		return entries;
+	}
+
+	private static void time(boolean report, String label, int count, Runnable work)
+	{
+		long start = System.nanoTime();
+		work.run();
+		if (report)
+		{
+			double ms = Math.max(0.001, (System.nanoTime() - start) / 1000000.0);
+			System.out.println(String.format("%-30s %7d in %8.1f ms %8.2f us / task", label, count, ms, ms * 1000.0 / count));
+		}
+	}
+
+	private static long bytes(List<String> encoded)
+	{
+		long bytes = 0;
+		for (String value : encoded)
+		{
+			bytes += value.getBytes(StandardCharsets.UTF_8).length;
+		}
+		return bytes;
+	}
+
+	private static String toXML(Map<String, String> map)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (XMLEncoder xmlEncoder = new XMLEncoder(bos))
+		{
+			xmlEncoder.writeObject(map);
+		}
+		return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, String> fromXML(String xml)
+	{
+		try (XMLDecoder xmlDecoder = new XMLDecoder(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))))
+		{
+			return (Map<String, String>) xmlDecoder.readObject();
+		}
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+		{
+			throw new IllegalStateException("Failed: " + message);
+		}
+	}
+}
@@ -20,6 +20,7 @@ package gov.va.legoEdit.gui;
 
 import gov.va.isaac.gui.util.Images;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import gov.va.legoEdit.formats.LegoXMLUtils;
 import gov.va.legoEdit.model.schemaModel.LegoList;
 import gov.va.legoEdit.storage.BDBDataStoreImpl;
@@ -244,7 +245,7 @@ public class ExportDialogController implements Initializable
 					}
 
 					ExportRunnable r = new ExportRunnable(new File(exportTo.getText()), ss, fileExtension.getText());
-					Utility.execute(r);
+					Utility.execute(WorkPool.BACKGROUND, r);
 				}
 			}
 		});
@@ -27,6 +27,7 @@ import gov.va.isaac.interfaces.gui.constants.SharedServiceNames;
 import gov.va.isaac.interfaces.gui.views.commonFunctionality.ExportTaskHandlerI;
 import gov.va.isaac.util.Utility;
 import gov.va.isaac.util.ValidBooleanBinding;
+import gov.va.isaac.util.WorkPool;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
@@ -277,7 +278,7 @@ public class UscrsExportOperation extends Operation
 				int count = 0;
 				if(uscrsExporter != null) {
 					Task<Integer> task = uscrsExporter.createTask(nidStream, file.toPath());
-					Utility.execute(task);
+					Utility.execute(WorkPool.BACKGROUND, task);
 					count = task.get();
 					//TODO: Fix all the customTask stuff here...
 					return new OperationResult("The USCRS Content request was succesfully generated in: " + file.getPath(), new HashSet<SimpleDisplayConcept>(), "The concepts were succesfully exported");
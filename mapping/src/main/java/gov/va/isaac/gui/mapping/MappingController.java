@@ -3,6 +3,7 @@ package gov.va.isaac.gui.mapping;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.gui.SimpleDisplayConcept;
 import gov.va.isaac.gui.mapping.data.MappingItem;
+import gov.va.isaac.gui.mapping.data.MappingItemBatch;
 import gov.va.isaac.gui.mapping.data.MappingItemDAO;
 import gov.va.isaac.gui.mapping.data.MappingObject;
 import gov.va.isaac.gui.mapping.data.MappingSet;
@@ -14,12 +15,18 @@ import gov.va.isaac.gui.util.Images;
 import gov.va.isaac.interfaces.utility.DialogResponse;
 import gov.va.isaac.util.CommonMenus;
 import gov.va.isaac.util.CommonMenusNIdProvider;
+import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.PoolExecutor.Priority;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
 //import java.util.UUID;
 
 
@@ -48,6 +55,7 @@ import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
 import javafx.scene.control.Tooltip;
 import javafx.scene.control.TableColumn.CellDataFeatures;
 import javafx.scene.control.TableView;
@@ -73,6 +81,14 @@ import org.slf4j.LoggerFactory;
 
 public class MappingController {
 	private static final Logger LOG = LoggerFactory.getLogger(MappingController.class);
+	
+	// Mapping items are read a page at a time, and only the rows near the ones on screen have their display values looked up
+	private static final int MAPPING_ITEM_PAGE_SIZE = 500;
+	private static final int MAPPING_ITEM_PREFETCH_ROWS = 50;
+	
+	private volatile ObservableList<MappingItem> currentMappingItems = null;
+	// the mapping items whose sort keys are being read, or have been, for a sort - only touched on the FX thread
+	private ObservableList<MappingItem> sortKeysRequested = null;
 
 	@FXML private AnchorPane	mainPane;
 	@FXML private AnchorPane	mappingPane;
@@ -206,24 +222,124 @@ public class MappingController {
 		clearMappingItems();
 		if (mappingSet != null) {
 			mappingItemTableView.setPlaceholder(new ProgressBar(-1.0));
+			boolean activeOnly = activeOnlyToggle.isSelected();
+			ObservableList<MappingItem> mappingItems = FXCollections.observableArrayList();
+			currentMappingItems = mappingItems;
+			mappingItemTableView.setItems(mappingItems);
+			
 			Utility.execute(() ->
 			{
-				ObservableList<MappingItem> mappingItems = FXCollections.observableList(mappingSet.getMappingItems(activeOnlyToggle.isSelected()));
+				List<MappingItem> allMappingItems = new ArrayList<>();
+				try
+				{
+					MappingItemDAO.readMappingItems(mappingSet.getPrimordialUUID(), activeOnly, MAPPING_ITEM_PAGE_SIZE, (page) ->
+					{
+						if (currentMappingItems != mappingItems) {
+							return false;
+						}
+						if (allMappingItems.isEmpty()) {
+							// the first rows shown
+							preloadDisplayText(page);
+						}
+						allMappingItems.addAll(page);
+						Platform.runLater(() ->
+						{
+							if (currentMappingItems == mappingItems) {
+								mappingItems.addAll(page);
+							}
+						});
+						return true;
+					});
+				}
+				catch (IOException e)
+				{
+					LOG.error("Error retrieving Mapping Items for " + mappingSet.getName(), e);
+				}
 				
 				Platform.runLater(() ->
 				{
-					mappingItemTableView.setItems(mappingItems);
+					if (currentMappingItems != mappingItems) {
+						return;
+					}
 					mappingItemTableView.setPlaceholder(new Label("The selected Mapping Set contains no Mapping Items."));
+					// a sort requested while the pages were read only had the sort keys of the items read by then
+					if (sortKeysRequested == mappingItems || mappingItemTableView.getSortOrder().size() > 0) {
+						resolveSortKeys(mappingItems);
+					}
 					
 					mappingItemListTitleLabel.setText(mappingSet.getName());
 					plusMappingItemButton.setDisable(false);
 					minusMappingSetButton.setDisable(false);
 					editMappingSetButton.setDisable(false);
-					mappingSetSummaryLabel.setText(mappingSet.getSummary(activeOnlyToggle.isSelected()));
+					mappingSetSummaryLabel.setText(Integer.toString(allMappingItems.size()) + " Mapping Items");
 				});
 			});
 		}
 	}
+	
+	/**
+	 * Read the comments and sort keys of all of the mapping items in the background, and sort the table again once they are read.
+	 * Until then, the table sorts on the keys read so far - those of the rows near the ones shown - and places the rest after them.
+	 */
+	private void resolveSortKeys(ObservableList<MappingItem> mappingItems)
+	{
+		sortKeysRequested = mappingItems;
+		List<MappingItem> allMappingItems = new ArrayList<>(mappingItems);
+		if (allMappingItems.isEmpty()) {
+			return;
+		}
+		Utility.execute(WorkPool.BACKGROUND, Priority.LOW, mappingItems, () ->
+		{
+			try
+			{
+				MappingItemDAO.readComments(allMappingItems.get(0).getMappingSetIDConcept(), allMappingItems);
+			}
+			catch (IOException e)
+			{
+				LOG.error("Error reading comments!", e);
+			}
+			preloadDisplayText(allMappingItems);
+			for (MappingItem mappingItem : allMappingItems)
+			{
+				if (currentMappingItems != mappingItems)
+				{
+					return;
+				}
+				mappingItem.resolveSortKeys();
+			}
+			Platform.runLater(() ->
+			{
+				if (currentMappingItems == mappingItems && mappingItemTableView.getSortOrder().size() > 0) {
+					mappingItemTableView.sort();
+				}
+			});
+		});
+	}
+	
+	/**
+	 * Read the names of the concepts of the mapping items into the display text cache, in parallel, rather than one
+	 * lookup per cell or sort key.  Goes to the DB - call from a background thread.
+	 */
+	private static void preloadDisplayText(List<MappingItem> mappingItems)
+	{
+		OTFUtility.getDisplayTextCache().preload(mappingItems.stream()
+				.flatMapToInt(mappingItem -> IntStream.of(mappingItem.getSourceConceptNid(), mappingItem.getTargetConceptNid(),
+						mappingItem.getQualifierConceptNid(), mappingItem.getEditorStatusConceptNid()))
+				.filter(nid -> nid != 0).distinct().toArray());
+	}
+	
+	/**
+	 * Look up the display values of the mapping items near a row that is being shown
+	 */
+	private void prefetchMappingItems(int rowIndex)
+	{
+		ObservableList<MappingItem> mappingItems = mappingItemTableView.getItems();
+		int end = Math.min(mappingItems.size(), rowIndex + MAPPING_ITEM_PREFETCH_ROWS + 1);
+		for (int i = Math.max(0, rowIndex - MAPPING_ITEM_PREFETCH_ROWS); i < end; i++)
+		{
+			mappingItems.get(i).resolveDisplayValues();
+		}
+	}
 
 	private MappingSet getSelectedMappingSet() {
 		return (MappingSet)mappingSetTableView.getSelectionModel().getSelectedItem();
@@ -256,19 +372,43 @@ public class MappingController {
 			mappingSets = FXCollections.observableArrayList();
 		}
 		mappingSetTableView.setItems(mappingSets);
+		resolveMappingSetSortKeys(mappingSets);
 		// TODO maybe come up with a way to preserve the selection, if possible.
 		mappingSetTableView.getSelectionModel().clearSelection();
 		
 		refreshMappingItems();
 	}
 
+	/**
+	 * Read the sort keys of the mapping sets in the background - the comparators don't go to the DB - and sort the table again
+	 * once they are read.
+	 */
+	private void resolveMappingSetSortKeys(ObservableList<MappingSet> mappingSets) {
+		Utility.execute(WorkPool.BACKGROUND, () ->
+		{
+			for (MappingSet mappingSet : mappingSets) {
+				mappingSet.resolveSortKeys();
+			}
+			Platform.runLater(() ->
+			{
+				if (mappingSetTableView.getItems() == mappingSets && mappingSetTableView.getSortOrder().size() > 0) {
+					mappingSetTableView.sort();
+				}
+			});
+		});
+	}
+
 	protected void refreshMappingItems() {
 		MappingSet selectedMappingSet = getSelectedMappingSet();
 		updateMappingItemsList(selectedMappingSet);
 	}
 	
 	protected void clearMappingItems() {
-		mappingItemTableView.getItems().clear();
+		if (currentMappingItems != null) {
+			Utility.cancel(currentMappingItems);
+			currentMappingItems = null;
+		}
+		mappingItemTableView.setItems(FXCollections.observableArrayList());
 		mappingItemTableView.setPlaceholder(new Label("No Mapping Set is selected."));
 	}
 	
@@ -316,6 +456,14 @@ public class MappingController {
 	    mappingItemModuleTableColumn.setComparator(StampedItem.moduleComparator);
 	    mappingItemPathTableColumn.setComparator(StampedItem.pathComparator);
 
+		// The comparators only read the sort keys already read, so the first sort of a list also starts reading the rest
+		mappingItemTableView.setOnSort((event) -> {
+			if (mappingItemTableView.getSortOrder().size() > 0 && mappingItemTableView.getItems() != sortKeysRequested
+					&& mappingItemTableView.getItems() == currentMappingItems) {
+				resolveSortKeys(currentMappingItems);
+			}
+		});
+
 		mappingItemTableView.getSelectionModel().getSelectedItems().addListener(new ListChangeListener<MappingItem>() {
 			@Override
 			public void onChanged(javafx.collections.ListChangeListener.Change<? extends MappingItem> c) {
@@ -345,6 +493,16 @@ public class MappingController {
 		});
 		
 		mappingItemTableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+		
+		mappingItemTableView.setRowFactory((tableView) -> new TableRow<MappingItem>() {
+			@Override
+			protected void updateItem(MappingItem mappingItem, boolean empty) {
+				super.updateItem(mappingItem, empty);
+				if (!empty && mappingItem != null) {
+					prefetchMappingItems(getIndex());
+				}
+			}
+		});
 
 		mappingItemSTAMPTableColumn.setVisible(false);
 
@@ -577,17 +735,16 @@ public class MappingController {
 						String clause = (selectedMappingItems.size() == 1) ? "this Mapping Item" : "these " + Integer.toString(selectedMappingItems.size()) + " Mapping Items";
 						DialogResponse response = AppContext.getCommonDialogs().showYesNoDialog("Please Confirm", "Are you sure you want to retire " + clause + "?");
 						if (response == DialogResponse.YES) {
-							for (MappingItem mappingItem : selectedMappingItems) {
-								if (mappingItem.isActive()) {
-									// Don't bother trying to retire inactive items
-									try {
-										MappingItemDAO.retireMappingItem(mappingItem.getPrimordialUUID());
-									
-									} catch (IOException e1) {
-										// TODO Auto-generated catch block
-										e1.printStackTrace();
-									}
-								}
+							// Retired in groups, rather than a commit per item - inactive items are left alone
+							MappingItemBatch batch = new MappingItemBatch(getSelectedMappingSet().getPrimordialUUID(), MappingItemBatch.DEFAULT_GROUP_SIZE);
+							try {
+								batch.retire(new ArrayList<>(selectedMappingItems));
+							} catch (IOException e1) {
+								LOG.error("Error retiring mapping items", e1);
+								AppContext.getCommonDialogs().showErrorDialog("Unexpected error retiring the Mapping Items.  Items retired before the error remain retired.  See logs.", e1);
+							}
+							for (String skipped : batch.getSkipped()) {
+								LOG.warn("Mapping item not retired: {}", skipped);
 							}
 							updateMappingItemsList(getSelectedMappingSet());
 						}
@@ -740,6 +897,9 @@ public class MappingController {
 				@Override
 				public void updateItem(final MappingItem mappingItem, boolean empty) {
 					super.updateItem(mappingItem, empty);
+					if (!empty && mappingItem != null) {
+						mappingItem.resolveDisplayValues();
+					}
 					updateCell(this, mappingItem);
 				}
 			};
@@ -93,17 +93,13 @@ public abstract class MappingDAO
 	{
 		try
 		{
-			RefexDynamicVersionBI<?> rdv = readCurrentRefex(refexUUID);
-			if (rdv.getStatus() == status)
+			RefexDynamicChronicleBI<?> rdc = constructStatusChange(refexUUID, status);
+			if (rdc == null)
 			{
 				LOG.warn("Tried set the status to the value it already has.  Doing nothing");
 			}
 			else
 			{
-				RefexDynamicCAB mappingCab = rdv.makeBlueprint(OTFUtility.getViewCoordinateAllowInactive(), IdDirective.PRESERVE, RefexDirective.EXCLUDE);
-				mappingCab.setStatus(status);
-				RefexDynamicChronicleBI<?> rdc = OTFUtility.getBuilder().construct(mappingCab);
-
 				ConceptChronicleBI cc = ExtendedAppContext.getDataStore().getConcept(rdc.getConceptNid());
 				ExtendedAppContext.getDataStore().addUncommitted(cc);
 				ExtendedAppContext.getDataStore().commit(cc);
@@ -116,6 +112,22 @@ public abstract class MappingDAO
 		}
 	}
 	
+	/**
+	 * Construct (but do not commit) a new revision of a refex with the specified status.  See {@link #setRefexStatus(UUID, Status)}
+	 * @return the refex, or null if it already has the status
+	 */
+	protected static RefexDynamicChronicleBI<?> constructStatusChange(UUID refexUUID, Status status) throws IOException, InvalidCAB, ContradictionException
+	{
+		RefexDynamicVersionBI<?> rdv = readCurrentRefex(refexUUID);
+		if (rdv.getStatus() == status)
+		{
+			return null;
+		}
+		RefexDynamicCAB mappingCab = rdv.makeBlueprint(OTFUtility.getViewCoordinateAllowInactive(), IdDirective.PRESERVE, RefexDirective.EXCLUDE);
+		mappingCab.setStatus(status);
+		return OTFUtility.getBuilder().construct(mappingCab);
+	}
+	
 	protected static List<SearchResult> search(UUID assemblageUUID) throws IOException
 	{
 		try
@@ -20,8 +20,10 @@ package gov.va.isaac.gui.mapping.data;
 
 import gov.va.isaac.util.OTFUtility;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
@@ -53,9 +55,25 @@ public class MappingItem extends MappingObject
 	protected final SimpleStringProperty qualifierConceptProperty = new SimpleStringProperty();
 	protected final SimpleStringProperty commentsProperty		  = new SimpleStringProperty();
 	
+	private volatile boolean displayValuesResolved = false;
+	private volatile String sourceSortKey, targetSortKey, qualifierSortKey, commentsSortKey;
+	
 	protected MappingItem(RefexDynamicVersionBI<?> refex) throws IOException
+	{
+		this(refex, true);
+	}
+	
+	/**
+	 * @param resolveDisplayValues - false to only read the identifiers and stamp of the mapping, leaving the display values
+	 * until the item is shown - see {@link #resolveDisplayValues()}
+	 */
+	protected MappingItem(RefexDynamicVersionBI<?> refex, boolean resolveDisplayValues) throws IOException
 	{
 		read(refex);
+		if (resolveDisplayValues)
+		{
+			resolveDisplayValues();
+		}
 	}
 	
 	private void read(RefexDynamicVersionBI<?> refex) throws IOException
@@ -63,19 +81,70 @@ public class MappingItem extends MappingObject
 		sourceConceptNid = refex.getReferencedComponentNid();
 		
 		primordialUUID = refex.getPrimordialUuid();
-		setSourceConcept(dataStore.getUuidPrimordialForNid(sourceConceptNid));
+		sourceConcept = dataStore.getUuidPrimordialForNid(sourceConceptNid);
 		mappingSetIDConcept = dataStore.getUuidPrimordialForNid(refex.getAssemblageNid());
-		readStampDetails(refex);
+		readStampNids(refex);
 		
 		RefexDynamicDataBI[] data = refex.getData();
-		setTargetConcept      (((data != null && data.length > 0 && data[0] != null) ? ((RefexDynamicUUID) data[0]).getDataUUID() : null));
-		setQualifierConcept   (((data != null && data.length > 1 && data[1] != null) ? ((RefexDynamicUUID) data[1]).getDataUUID() : null)); 
-		setEditorStatusConcept(((data != null && data.length > 2 && data[2] != null) ? ((RefexDynamicUUID) data[2]).getDataUUID() : null));
+		targetConcept       = ((data != null && data.length > 0 && data[0] != null) ? ((RefexDynamicUUID) data[0]).getDataUUID() : null);
+		qualifierConcept    = ((data != null && data.length > 1 && data[1] != null) ? ((RefexDynamicUUID) data[1]).getDataUUID() : null); 
+		editorStatusConcept = ((data != null && data.length > 2 && data[2] != null) ? ((RefexDynamicUUID) data[2]).getDataUUID() : null);
 		
-		targetConceptNid    = getNidForUuidSafe(targetConcept);
-		qualifierConceptNid = getNidForUuidSafe(qualifierConcept);
+		targetConceptNid       = getNidForUuidSafe(targetConcept);
+		qualifierConceptNid    = getNidForUuidSafe(qualifierConcept);
+		editorStatusConceptNid = getNidForUuidSafe(editorStatusConcept);
+	}
+	
+	/**
+	 * Start the (background) lookups of the concept names, stamp names and comments shown for this item, and of its sort keys.
+	 * Only the first call does anything.  Call on the FX thread.
+	 */
+	public void resolveDisplayValues()
+	{
+		if (displayValuesResolved)
+		{
+			return;
+		}
+		displayValuesResolved = true;
 		
-		refreshCommentsProperty();
+		propertyLookup(sourceConcept, sourceConceptProperty);
+		if (targetConcept == null) {
+			targetConceptProperty.set(NO_MAP_NAME);
+		} else {
+			propertyLookup(targetConcept, targetConceptProperty);
+		}
+		propertyLookup(qualifierConcept, qualifierConceptProperty);
+		propertyLookup(editorStatusConcept, editorStatusConceptProperty);
+		resolveStampNames();
+		Utility.execute(WorkPool.BACKGROUND, this::resolveSortKeys);
+		String comments = commentsSortKey;
+		if (comments == null)
+		{
+			refreshCommentsProperty();
+		}
+		else
+		{
+			commentsProperty.set(comments);
+		}
+	}
+	
+	/**
+	 * Read the values the columns sort on, which aren't read yet.  Comments are not included - see {@link #setComments(List)}.
+	 * Goes to the DB - call from a background thread.
+	 */
+	@Override
+	public void resolveSortKeys()
+	{
+		super.resolveSortKeys();
+		if (sourceSortKey == null) {
+			sourceSortKey = OTFUtility.getDescription(sourceConceptNid);
+		}
+		if (targetSortKey == null) {
+			targetSortKey = (targetConcept == null ? NO_MAP_NAME : OTFUtility.getDescription(targetConceptNid));
+		}
+		if (qualifierSortKey == null) {
+			qualifierSortKey = (qualifierConcept == null ? "" : OTFUtility.getDescription(qualifierConceptNid));
+		}
 	}
 
 	public int getSourceConceptNid() 	{ return sourceConceptNid; }
@@ -129,75 +198,83 @@ public class MappingItem extends MappingObject
 	public SimpleStringProperty getQualifierConceptProperty() { return qualifierConceptProperty; }
 	public SimpleStringProperty getCommentsProperty()			{ return commentsProperty; }
 	
-	private void setSourceConcept(UUID sourceConcept) {
-		this.sourceConcept = sourceConcept;
-		propertyLookup(sourceConcept, sourceConceptProperty);
-	}
-	
-	private void setTargetConcept(UUID targetConcept) {
-		this.targetConcept = targetConcept;
-		if (targetConcept == null) {
-			targetConceptProperty.set(NO_MAP_NAME);
-		} else {
-			propertyLookup(targetConcept, targetConceptProperty);
-		}
-	}
-	
-	private void setQualifierConcept(UUID qualifierConcept) {
-		this.qualifierConcept = qualifierConcept;
-		propertyLookup(qualifierConcept, qualifierConceptProperty);
-	}
+	/*
+	 * The sort keys are null until read, see resolveSortKeys() and setComments(List) - the comparators never go to the DB.
+	 */
+	public String getSourceSortKey()	{ return sourceSortKey; }
+	public String getTargetSortKey()	{ return targetSortKey; }
+	public String getQualifierSortKey()	{ return qualifierSortKey; }
+	public String getCommentsSortKey()	{ return commentsSortKey; }
 	
 	public void refreshCommentsProperty() {
-		Utility.execute(() ->
+		Utility.execute(WorkPool.BACKGROUND, () ->
 		{
-			StringBuilder commentValue = new StringBuilder();
 			try
 			{
-				List<MappingItemComment> comments = getComments();
-				if (comments.size() > 0) {
-					commentValue.append(comments.get(0).getCommentText());
-				}
-				if (comments.size() > 1) {
-					commentValue.append(" (+" + Integer.toString(comments.size() - 1) + " more)");
-				}
+				setComments(getComments());
 			}
 			catch (IOException e)
 			{
 				LOG.error("Error reading comments!", e);
+				setComments(Collections.<MappingItemComment>emptyList());
 			}
+		});
+	}
+	
+	/**
+	 * Set the comments property from comments that were already read, such as by 
+	 * {@link MappingItemCommentDAO#getCommentsForMappingSet(UUID, boolean)}.  May be called from any thread.
+	 * @param comments - the active comments of this item
+	 */
+	protected void setComments(List<MappingItemComment> comments) {
+		String commentValue = summarizeComments(comments);
+		commentsSortKey = commentValue;
+		// Items that haven't been shown yet pick the value up in resolveDisplayValues
+		if (displayValuesResolved)
+		{
 			Platform.runLater(() ->
 			{
-				commentsProperty.set(commentValue.toString());
+				commentsProperty.set(commentValue);
 			});
-		});
+		}
+	}
+	
+	private static String summarizeComments(List<MappingItemComment> comments) {
+		StringBuilder commentValue = new StringBuilder();
+		if (comments.size() > 0) {
+			commentValue.append(comments.get(0).getCommentText());
+		}
+		if (comments.size() > 1) {
+			commentValue.append(" (+" + Integer.toString(comments.size() - 1) + " more)");
+		}
+		return commentValue.toString();
 	}
 
 	public static final Comparator<MappingItem> sourceComparator = new Comparator<MappingItem>() {
 		@Override
 		public int compare(MappingItem o1, MappingItem o2) {
-			return Utility.compareStringsIgnoreCase(o1.getSourceConceptProperty().get(), o2.getSourceConceptProperty().get());
+			return compareSortKeys(o1.getSourceSortKey(), o2.getSourceSortKey());
 		}
 	};
 	
 	public static final Comparator<MappingItem> targetComparator = new Comparator<MappingItem>() {
 		@Override
 		public int compare(MappingItem o1, MappingItem o2) {
-			return Utility.compareStringsIgnoreCase(o1.getTargetConceptProperty().get(), o2.getTargetConceptProperty().get());
+			return compareSortKeys(o1.getTargetSortKey(), o2.getTargetSortKey());
 		}
 	};
 	
 	public static final Comparator<MappingItem> qualifierComparator = new Comparator<MappingItem>() {
 		@Override
 		public int compare(MappingItem o1, MappingItem o2) {
-			return Utility.compareStringsIgnoreCase(o1.getQualifierConceptProperty().get(), o2.getQualifierConceptProperty().get());
+			return compareSortKeys(o1.getQualifierSortKey(), o2.getQualifierSortKey());
 		}
 	};
 	
 	public static final Comparator<MappingItem> commentsComparator = new Comparator<MappingItem>() {
 		@Override
 		public int compare(MappingItem o1, MappingItem o2) {
-			return Utility.compareStringsIgnoreCase(o1.getCommentsProperty().get(), o2.getCommentsProperty().get());
+			return compareSortKeys(o1.getCommentsSortKey(), o2.getCommentsSortKey());
 		}
 	};
 	
@@ -0,0 +1,386 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.gui.mapping.data;
+
+import gov.va.isaac.AppContext;
+import gov.va.isaac.ExtendedAppContext;
+import gov.va.isaac.interfaces.RuntimeGlobalsI;
+import gov.va.isaac.util.AbstractProgressReporter;
+import java.beans.PropertyVetoException;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.StringUtils;
+import org.ihtsdo.otf.tcc.api.blueprint.InvalidCAB;
+import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
+import org.ihtsdo.otf.tcc.api.contradiction.ContradictionException;
+import org.ihtsdo.otf.tcc.api.coordinate.Status;
+import org.ihtsdo.otf.tcc.api.refexDynamic.RefexDynamicChronicleBI;
+import org.ihtsdo.otf.tcc.api.store.TerminologyStoreDI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link MappingItemBatch}
+ *
+ * Creates, updates or retires many mapping items at once.  {@link MappingItemDAO#createMappingItem(org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI,
+ * UUID, org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI, UUID, UUID)} commits each mapping on its own - this constructs the mappings (and
+ * their comments) for a group of rows, stages each touched concept once, and then commits the whole group with a single commit, with
+ * the commit listeners disabled once for the whole batch.  Only the concepts the batch touched are committed - if the DB holds other
+ * uncommitted changes, the concepts of the group are committed one at a time instead, so those changes are left alone.
+ *
+ * Duplicates are found from the generated mapping item ID, against the DB and against the earlier rows of the batch.  Rows that are
+ * duplicates, or that reference unknown concepts, are skipped and reported by {@link #getSkipped()}.  Rows whose mapping was created
+ * but whose comment could not be are reported by {@link #getPartial()}.
+ */
+public class MappingItemBatch extends AbstractProgressReporter
+{
+	private static final Logger LOG = LoggerFactory.getLogger(MappingItemBatch.class);
+
+	public static final int DEFAULT_GROUP_SIZE = 500;
+
+	private final UUID mappingSetID_;
+	private final int groupSize_;
+	private final TerminologyStoreDI dataStore_;
+	private final RuntimeGlobalsI runtimeGlobals_;
+	private final LinkedHashMap<Integer, ConceptChronicleBI> staged_ = new LinkedHashMap<>();
+	private final Set<UUID> created_ = new HashSet<>();
+	private final List<String> skipped_ = new ArrayList<>();
+	private final List<String> partial_ = new ArrayList<>();
+	private int stagedRows_ = 0;
+	private int committed_ = 0;
+	private volatile boolean cancelRequested_ = false;
+
+	/**
+	 * One mapping to create
+	 */
+	public static class Row
+	{
+		private final UUID sourceConcept, targetConcept, qualifierID, editorStatusID;
+		private final String comment;
+
+		/**
+		 * @param sourceConcept - the primary ID of the source concept
+		 * @param targetConcept - (optional) the primary ID of the target concept
+		 * @param qualifierID - (optional) the primary ID of the qualifier concept
+		 * @param editorStatusID - (optional) the primary ID of the status concept
+		 * @param comment - (optional) a comment to add to the new mapping item
+		 */
+		public Row(UUID sourceConcept, UUID targetConcept, UUID qualifierID, UUID editorStatusID, String comment)
+		{
+			this.sourceConcept = sourceConcept;
+			this.targetConcept = targetConcept;
+			this.qualifierID = qualifierID;
+			this.editorStatusID = editorStatusID;
+			this.comment = comment;
+		}
+
+		@Override
+		public String toString()
+		{
+			return sourceConcept + "|" + targetConcept + "|" + qualifierID;
+		}
+	}
+
+	/**
+	 * @param mappingSetID - the mapping set to add the mapping items to (not used by {@link #update(Collection)} or {@link #retire(Collection)})
+	 * @param groupSize - the number of rows to commit together
+	 */
+	public MappingItemBatch(UUID mappingSetID, int groupSize)
+	{
+		this(mappingSetID, groupSize, ExtendedAppContext.getDataStore(), AppContext.getRuntimeGlobals());
+	}
+
+	MappingItemBatch(UUID mappingSetID, int groupSize, TerminologyStoreDI dataStore, RuntimeGlobalsI runtimeGlobals)
+	{
+		if (groupSize < 1)
+		{
+			throw new IllegalArgumentException("The group size must be at least 1");
+		}
+		mappingSetID_ = mappingSetID;
+		groupSize_ = groupSize;
+		dataStore_ = dataStore;
+		runtimeGlobals_ = runtimeGlobals;
+	}
+
+	/**
+	 * Construct and commit a new mapping item for each row.
+	 * @param rows - the mappings to create
+	 * @param rowCount - the number of rows, for progress reporting - or 0, if not known
+	 * @return the number of mapping items created
+	 * @throws IOException if a commit fails - the groups before it remain committed
+	 */
+	public int create(Stream<Row> rows, long rowCount) throws IOException
+	{
+		long processed = 0;
+		int committedBefore = committed_;
+		try
+		{
+			runtimeGlobals_.disableAllCommitListeners();
+			Iterator<Row> it = rows.iterator();
+			while (it.hasNext() && !cancelRequested_)
+			{
+				Row row = it.next();
+				processed++;
+				try
+				{
+					stageRow(row);
+				}
+				catch (InvalidCAB | ContradictionException | PropertyVetoException | NoSuchAlgorithmException | IOException e)
+				{
+					LOG.warn("Skipping mapping " + row + " which could not be constructed", e);
+					skipped_.add(row + " - " + e.getMessage());
+				}
+				if (stagedRows_ >= groupSize_)
+				{
+					commitGroup();
+					reportProgress(processed, rowCount);
+				}
+			}
+			commitGroup();
+			reportProgress(processed, rowCount);
+			LOG.info("Created {} mapping items in mapping set {}, skipped {}", committed_ - committedBefore, mappingSetID_, skipped_.size());
+			return committed_ - committedBefore;
+		}
+		finally
+		{
+			runtimeGlobals_.enableAllCommitListeners();
+		}
+	}
+
+	/**
+	 * Store the values of each mapping item as a new revision - see {@link MappingItemDAO#updateMappingItem(MappingItem)}
+	 * @param mappingItems - The MappingItems with revisions (contains fields where the setters have been called)
+	 * @return the number of mapping items updated
+	 * @throws IOException if a commit fails - the groups before it remain committed
+	 */
+	public int update(Collection<MappingItem> mappingItems) throws IOException
+	{
+		return stageEach(mappingItems, mappingItem -> constructUpdate(mappingItem), "updated");
+	}
+
+	/**
+	 * Retire each active mapping item - see {@link MappingItemDAO#retireMappingItem(UUID)}.  Inactive items are left as they are.
+	 * @param mappingItems - The MappingItems to retire
+	 * @return the number of mapping items retired
+	 * @throws IOException if a commit fails - the groups before it remain committed
+	 */
+	public int retire(Collection<MappingItem> mappingItems) throws IOException
+	{
+		return stageEach(mappingItems, mappingItem -> mappingItem.isActive() ? constructStatusChange(mappingItem.getPrimordialUUID(), Status.INACTIVE) : null,
+				"retired");
+	}
+
+	private int stageEach(Collection<MappingItem> mappingItems, Revision revision, String action) throws IOException
+	{
+		long processed = 0;
+		int committedBefore = committed_;
+		try
+		{
+			runtimeGlobals_.disableAllCommitListeners();
+			for (MappingItem mappingItem : mappingItems)
+			{
+				if (cancelRequested_)
+				{
+					break;
+				}
+				processed++;
+				try
+				{
+					RefexDynamicChronicleBI<?> refex = revision.construct(mappingItem);
+					if (refex != null)
+					{
+						stageRefex(refex);
+					}
+				}
+				catch (InvalidCAB | ContradictionException | PropertyVetoException | IOException e)
+				{
+					LOG.warn("Skipping mapping " + mappingItem.getPrimordialUUID() + " which could not be " + action, e);
+					skipped_.add(mappingItem.getPrimordialUUID() + " - " + e.getMessage());
+				}
+				if (stagedRows_ >= groupSize_)
+				{
+					commitGroup();
+					reportProgress(processed, mappingItems.size());
+				}
+			}
+			commitGroup();
+			reportProgress(processed, mappingItems.size());
+			return committed_ - committedBefore;
+		}
+		finally
+		{
+			runtimeGlobals_.enableAllCommitListeners();
+		}
+	}
+
+	/**
+	 * Stop after the current group.  The groups already committed are not undone.
+	 */
+	public void cancel()
+	{
+		cancelRequested_ = true;
+	}
+
+	/**
+	 * @return a description of each row that was skipped, and why
+	 */
+	public List<String> getSkipped()
+	{
+		return skipped_;
+	}
+
+	/**
+	 * @return a description of each row whose mapping item was created, but whose comment was not, and why
+	 */
+	public List<String> getPartial()
+	{
+		return partial_;
+	}
+
+	private void stageRow(Row row) throws IOException, InvalidCAB, ContradictionException, PropertyVetoException, NoSuchAlgorithmException
+	{
+		if (row.sourceConcept == null || !dataStore_.hasUuid(row.sourceConcept))
+		{
+			skipped_.add(row + " - the source concept is not in the database");
+			return;
+		}
+		if (row.targetConcept != null && !dataStore_.hasUuid(row.targetConcept))
+		{
+			skipped_.add(row + " - the target concept is not in the database");
+			return;
+		}
+
+		UUID mappingItemUUID = MappingItemDAO.computeMappingItemUUID(row.sourceConcept, mappingSetID_, row.targetConcept, row.qualifierID);
+		if (created_.contains(mappingItemUUID) || dataStore_.hasUuid(mappingItemUUID))
+		{
+			skipped_.add(row + " - a mapping with the specified source, target and qualifier already exists in this set");
+			return;
+		}
+
+		stageRefex(constructMappingItem(mappingItemUUID, row));
+		created_.add(mappingItemUUID);
+		if (StringUtils.isNotBlank(row.comment))
+		{
+			// The comment is an annotation on the new mapping item, so it lands on the same concept - staged above.  The mapping
+			// item is already staged, and will be committed with the group, so a failure here doesn't skip the row.
+			try
+			{
+				constructComment(mappingItemUUID, row.comment);
+			}
+			catch (InvalidCAB | ContradictionException | PropertyVetoException | IOException e)
+			{
+				LOG.warn("Created mapping " + row + " without its comment, which could not be constructed", e);
+				partial_.add(row + " - the mapping was created, but not its comment: " + e.getMessage());
+			}
+		}
+	}
+
+	RefexDynamicChronicleBI<?> constructMappingItem(UUID mappingItemUUID, Row row) throws IOException, InvalidCAB, ContradictionException, PropertyVetoException
+	{
+		return MappingItemDAO.constructMappingItem(mappingItemUUID, row.sourceConcept, mappingSetID_, row.targetConcept, row.qualifierID,
+				row.editorStatusID);
+	}
+
+	RefexDynamicChronicleBI<?> constructComment(UUID mappingItemUUID, String comment) throws IOException, InvalidCAB, ContradictionException,
+			PropertyVetoException
+	{
+		return MappingItemCommentDAO.constructComment(mappingItemUUID, comment, null);
+	}
+
+	RefexDynamicChronicleBI<?> constructUpdate(MappingItem mappingItem) throws IOException, InvalidCAB, ContradictionException, PropertyVetoException
+	{
+		return MappingItemDAO.constructUpdate(mappingItem);
+	}
+
+	RefexDynamicChronicleBI<?> constructStatusChange(UUID mappingItemUUID, Status status) throws IOException, InvalidCAB, ContradictionException
+	{
+		return MappingItemDAO.constructStatusChange(mappingItemUUID, status);
+	}
+
+	private void stageRefex(RefexDynamicChronicleBI<?> refex) throws IOException
+	{
+		if (!staged_.containsKey(refex.getConceptNid()))
+		{
+			staged_.put(refex.getConceptNid(), dataStore_.getConcept(refex.getConceptNid()));
+		}
+		stagedRows_++;
+	}
+
+	private void commitGroup() throws IOException
+	{
+		if (staged_.size() == 0)
+		{
+			return;
+		}
+		for (ConceptChronicleBI cc : staged_.values())
+		{
+			dataStore_.addUncommitted(cc);
+		}
+		if (onlyStagedUncommitted())
+		{
+			dataStore_.commit();
+		}
+		else
+		{
+			// someone else has uncommitted changes, which a global commit would take along - commit ours one by one
+			for (ConceptChronicleBI cc : staged_.values())
+			{
+				dataStore_.commit(cc);
+			}
+		}
+		committed_ += stagedRows_;
+		staged_.clear();
+		stagedRows_ = 0;
+	}
+
+	private boolean onlyStagedUncommitted() throws IOException
+	{
+		for (ConceptChronicleBI cc : dataStore_.getUncommittedConcepts())
+		{
+			if (!staged_.containsKey(cc.getNid()))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void reportProgress(long processed, long rowCount)
+	{
+		int pct = (rowCount > 0 ? (int) Math.min(100, (processed * 100) / rowCount) : 0);
+		fireProgressEvent(pct, processed + " processed, " + committed_ + " committed, " + skipped_.size() + " skipped");
+	}
+
+	private interface Revision
+	{
+		/**
+		 * @return the new revision, or null if the mapping item needs none
+		 */
+		RefexDynamicChronicleBI<?> construct(MappingItem mappingItem) throws IOException, InvalidCAB, ContradictionException, PropertyVetoException;
+	}
+}
@@ -4,16 +4,20 @@ import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.constants.ISAAC;
 import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.ViewCoordinateProvider;
 import java.beans.PropertyVetoException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.apache.commons.lang3.StringUtils;
 import org.ihtsdo.otf.tcc.api.blueprint.IdDirective;
 import org.ihtsdo.otf.tcc.api.blueprint.InvalidCAB;
 import org.ihtsdo.otf.tcc.api.blueprint.RefexDirective;
 import org.ihtsdo.otf.tcc.api.blueprint.RefexDynamicCAB;
+import org.ihtsdo.otf.tcc.api.chronicle.ComponentChronicleBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
 import org.ihtsdo.otf.tcc.api.contradiction.ContradictionException;
 import org.ihtsdo.otf.tcc.api.coordinate.Status;
@@ -46,24 +50,7 @@ public class MappingItemCommentDAO extends MappingDAO
 
 		try
 		{
-			RefexDynamicCAB commentAnnotation = new RefexDynamicCAB(pMappingItemUUID, ISAAC.COMMENT_ATTRIBUTE.getPrimodialUuid());
-			commentAnnotation.setData(new RefexDynamicDataBI[] { 
-					new RefexDynamicString(pCommentText),
-					(StringUtils.isBlank(commentContext) ? null : new RefexDynamicString(commentContext))}, null);
-
-			commentAnnotation.computeMemberUuid();
-
-			/*
-			 * Not so sure duplicate comments are a problem, especially since this does not distinguish retired comments
-			 * Commenting out - DT
-			 *
-			if (ExtendedAppContext.getDataStore().hasUuid(commentAnnotation.getComponentUuid()))
-			{
-				throw new IOException("A comment of that value already exists on that item.");
-			}
-			*/
-
-			RefexDynamicChronicleBI<?> rdc = OTFUtility.getBuilder().construct(commentAnnotation);
+			RefexDynamicChronicleBI<?> rdc = constructComment(pMappingItemUUID, pCommentText, commentContext);
 
 			ConceptChronicleBI cc = ExtendedAppContext.getDataStore().getConcept(rdc.getConceptNid());
 			AppContext.getRuntimeGlobals().disableAllCommitListeners();
@@ -82,6 +69,32 @@ public class MappingItemCommentDAO extends MappingDAO
 		}
 	}
 
+	/**
+	 * Construct (but do not commit) a new comment.  See {@link #createMappingItemComment(UUID, String, String)}
+	 */
+	protected static RefexDynamicChronicleBI<?> constructComment(UUID pMappingItemUUID, String pCommentText, String commentContext) 
+			throws IOException, InvalidCAB, ContradictionException, PropertyVetoException
+	{
+		RefexDynamicCAB commentAnnotation = new RefexDynamicCAB(pMappingItemUUID, ISAAC.COMMENT_ATTRIBUTE.getPrimodialUuid());
+		commentAnnotation.setData(new RefexDynamicDataBI[] { 
+				new RefexDynamicString(pCommentText),
+				(StringUtils.isBlank(commentContext) ? null : new RefexDynamicString(commentContext))}, null);
+
+		commentAnnotation.computeMemberUuid();
+
+		/*
+		 * Not so sure duplicate comments are a problem, especially since this does not distinguish retired comments
+		 * Commenting out - DT
+		 *
+		if (ExtendedAppContext.getDataStore().hasUuid(commentAnnotation.getComponentUuid()))
+		{
+			throw new IOException("A comment of that value already exists on that item.");
+		}
+		*/
+
+		return OTFUtility.getBuilder().construct(commentAnnotation);
+	}
+
 	/**
 	 * Read all comments for a particular mapping item (which could be a mapping set, or a mapping item)
 	 * @param mappingUUID - The UUID of a MappingSet or a MappingItem
@@ -90,24 +103,44 @@ public class MappingItemCommentDAO extends MappingDAO
 	 * @throws IOException
 	 */
 	public static List<MappingItemComment> getComments(UUID mappingUUID, boolean activeOnly) throws IOException {
-		List<MappingItemComment> comments = new ArrayList<MappingItemComment>();
-		
 		try
 		{
-			int mappingNid = ExtendedAppContext.getDataStore().getNidForUuids(mappingUUID);
-			for (SearchResult sr : search(ISAAC.COMMENT_ATTRIBUTE.getPrimodialUuid()))
+			ComponentChronicleBI<?> mappingComponent = ExtendedAppContext.getDataStore().getComponent(mappingUUID);
+			if (mappingComponent == null)
 			{
-				RefexDynamicVersionBI<?> rc = (RefexDynamicVersionBI<?>) ExtendedAppContext.getDataStore().
-						getComponentVersion(OTFUtility.getViewCoordinateAllowInactive(), sr.getNid());
-				if (rc != null)
+				return new ArrayList<MappingItemComment>();
+			}
+			return readComments(mappingComponent, activeOnly);
+		}
+		catch (ContradictionException e)
+		{
+			LOG.error("Unexpected error reading comments", e);
+			throw new IOException("internal error reading comments");
+		}
+	}
+
+	/**
+	 * Read the comments of every mapping item in a mapping set, in one pass over the items of the set.
+	 * @param mappingSetUUID - The UUID of a MappingSet
+	 * @param activeOnly - when true, only return active comments
+	 * @return the comments, keyed by the primordial UUID of the mapping item.  Items without comments are not included.
+	 * @throws IOException
+	 */
+	public static Map<UUID, List<MappingItemComment>> getCommentsForMappingSet(UUID mappingSetUUID, boolean activeOnly) throws IOException {
+		Map<UUID, List<MappingItemComment>> comments = new HashMap<>();
+		
+		//pinned, so readComments doesn't build a coordinate per comment
+		try (ViewCoordinateProvider.Pin pin = OTFUtility.getViewCoordinateProvider().pin(true))
+		{
+			for (SearchResult sr : search(mappingSetUUID))
+			{
+				ComponentChronicleBI<?> mappingItem = ExtendedAppContext.getDataStore().getComponent(sr.getNid());
+				if (mappingItem != null)
 				{
-					if (activeOnly && !rc.isActive())
+					List<MappingItemComment> itemComments = readComments(mappingItem, activeOnly);
+					if (itemComments.size() > 0)
 					{
-						continue;
-					}
-					if (rc.getReferencedComponentNid() == mappingNid)
-					{
-						comments.add(new MappingItemComment(rc));
+						comments.put(mappingItem.getPrimordialUuid(), itemComments);
 					}
 				}
 			}
@@ -120,6 +153,34 @@ public class MappingItemCommentDAO extends MappingDAO
 		return comments;
 	}
 	
+	/**
+	 * Comments are annotation style, so they are stored on the component they reference - read them from there, rather than 
+	 * searching all of the comments in the DB for the ones that reference this component.
+	 */
+	private static List<MappingItemComment> readComments(ComponentChronicleBI<?> mappingComponent, boolean activeOnly) throws IOException, ContradictionException
+	{
+		List<MappingItemComment> comments = new ArrayList<MappingItemComment>();
+		int commentAssemblageNid = ISAAC.COMMENT_ATTRIBUTE.getNid();
+		
+		for (RefexDynamicChronicleBI<?> annotation : mappingComponent.getRefexDynamicAnnotations())
+		{
+			if (annotation.getAssemblageNid() != commentAssemblageNid)
+			{
+				continue;
+			}
+			RefexDynamicVersionBI<?> rc = (RefexDynamicVersionBI<?>) annotation.getVersion(OTFUtility.getViewCoordinateAllowInactive());
+			if (rc != null)
+			{
+				if (activeOnly && !rc.isActive())
+				{
+					continue;
+				}
+				comments.add(new MappingItemComment(rc));
+			}
+		}
+		return comments;
+	}
+	
 	/**
 	 * @param commentPrimordialUUID - The ID of the comment to be re-activated
 	 * @throws IOException
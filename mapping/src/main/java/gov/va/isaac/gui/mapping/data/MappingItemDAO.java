@@ -4,12 +4,16 @@ import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.constants.MappingConstants;
 import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.ViewCoordinateProvider;
 import java.beans.PropertyVetoException;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Predicate;
 import org.ihtsdo.otf.tcc.api.blueprint.IdDirective;
 import org.ihtsdo.otf.tcc.api.blueprint.InvalidCAB;
 import org.ihtsdo.otf.tcc.api.blueprint.RefexDirective;
@@ -40,26 +44,16 @@ public class MappingItemDAO extends MappingDAO
 	{
 		try
 		{
-			RefexDynamicCAB mappingAnnotation = new RefexDynamicCAB(sourceConcept.getPrimordialUuid(), mappingSetID);
-			mappingAnnotation.setData(new RefexDynamicDataBI[] {
-					(targetConcept == null ? null : new RefexDynamicUUID(targetConcept.getPrimordialUuid())),
-					(qualifierID == null ? null : new RefexDynamicUUID(qualifierID)),
-					(editorStatusID == null ? null : new RefexDynamicUUID(editorStatusID))}, OTFUtility.getViewCoordinateAllowInactive());
-			
-			
-			UUID mappingItemUUID = UuidT5Generator.get(MappingConstants.MAPPING_NAMESPACE.getPrimodialUuid(), 
-					sourceConcept.getPrimordialUuid().toString() + "|" 
-					+ mappingSetID.toString() + "|"
-					+ ((targetConcept == null)? "" : targetConcept.getPrimordialUuid().toString()) + "|" 
-					+ ((qualifierID == null)?   "" : qualifierID.toString()));
+			UUID mappingItemUUID = computeMappingItemUUID(sourceConcept.getPrimordialUuid(), mappingSetID, 
+					(targetConcept == null ? null : targetConcept.getPrimordialUuid()), qualifierID);
 			
 			if (ExtendedAppContext.getDataStore().hasUuid(mappingItemUUID))
 			{
 				throw new IOException("A mapping with the specified source, target and qualifier already exists in this set.  Please edit that mapping.");
 			}
 			
-			mappingAnnotation.setComponentUuidNoRecompute(mappingItemUUID);
-			OTFUtility.getBuilder().construct(mappingAnnotation);
+			constructMappingItem(mappingItemUUID, sourceConcept.getPrimordialUuid(), mappingSetID, 
+					(targetConcept == null ? null : targetConcept.getPrimordialUuid()), qualifierID, editorStatusID);
 
 			AppContext.getRuntimeGlobals().disableAllCommitListeners();
 			ExtendedAppContext.getDataStore().addUncommitted(sourceConcept);
@@ -78,30 +72,82 @@ public class MappingItemDAO extends MappingDAO
 		}
 	}
 	
+	/**
+	 * Construct (but do not commit) a new MappingItem.  See {@link #createMappingItem(ConceptVersionBI, UUID, ConceptVersionBI, UUID, UUID)}
+	 * @param mappingItemUUID - the ID from {@link #computeMappingItemUUID(UUID, UUID, UUID, UUID)}
+	 */
+	protected static RefexDynamicChronicleBI<?> constructMappingItem(UUID mappingItemUUID, UUID sourceConcept, UUID mappingSetID, UUID targetConcept, 
+			UUID qualifierID, UUID editorStatusID) throws IOException, InvalidCAB, ContradictionException, PropertyVetoException
+	{
+		RefexDynamicCAB mappingAnnotation = new RefexDynamicCAB(sourceConcept, mappingSetID);
+		mappingAnnotation.setData(new RefexDynamicDataBI[] {
+				(targetConcept == null ? null : new RefexDynamicUUID(targetConcept)),
+				(qualifierID == null ? null : new RefexDynamicUUID(qualifierID)),
+				(editorStatusID == null ? null : new RefexDynamicUUID(editorStatusID))}, OTFUtility.getViewCoordinateAllowInactive());
+		mappingAnnotation.setComponentUuidNoRecompute(mappingItemUUID);
+		return OTFUtility.getBuilder().construct(mappingAnnotation);
+	}
+
+	/**
+	 * The ID of a mapping item is generated from the source, mapping set, target and qualifier - so a second mapping
+	 * of the same values has the same ID.
+	 * @param targetConcept - (optional)
+	 * @param qualifierID - (optional)
+	 */
+	protected static UUID computeMappingItemUUID(UUID sourceConcept, UUID mappingSetID, UUID targetConcept, UUID qualifierID) 
+			throws NoSuchAlgorithmException, IOException
+	{
+		return UuidT5Generator.get(MappingConstants.MAPPING_NAMESPACE.getPrimodialUuid(), 
+				sourceConcept.toString() + "|" 
+				+ mappingSetID.toString() + "|"
+				+ ((targetConcept == null)? "" : targetConcept.toString()) + "|" 
+				+ ((qualifierID == null)?   "" : qualifierID.toString()));
+	}
+	
 	/**
 	 * Read all of the mappings items which are defined as part of the specified mapping set.
 	 * 
+	 * The items only carry their identifiers and stamp - see {@link MappingItem#resolveDisplayValues()}
+	 * 
 	 * @param mappingSetID - the mapping set that contains the mapping items
 	 * @return
 	 * @throws IOException
 	 */
 	public static List<MappingItem> getMappingItems(UUID mappingSetID, boolean activeOnly) throws IOException
 	{
-		try
+		ArrayList<MappingItem> result = new ArrayList<>();
+		readMappingItems(mappingSetID, activeOnly, Integer.MAX_VALUE, (page) -> result.addAll(page));
+		return result;
+	}
+	
+	/**
+	 * Read the mappings items of the specified mapping set, handing them over a page at a time, so that the first items can be shown 
+	 * while the rest are read.  The items only carry their identifiers and stamp - see {@link MappingItem#resolveDisplayValues()}
+	 * The view coordinate is pinned for the read, so it is built once rather than once per item.
+	 * 
+	 * @param mappingSetID - the mapping set that contains the mapping items
+	 * @param pageSize - the number of items to read before passing them to the pageHandler
+	 * @param pageHandler - called with each page of items - returns false to stop reading
+	 * @throws IOException
+	 */
+	public static void readMappingItems(UUID mappingSetID, boolean activeOnly, int pageSize, Predicate<List<MappingItem>> pageHandler) 
+			throws IOException
+	{
+		try (ViewCoordinateProvider.Pin pin = OTFUtility.getViewCoordinateProvider().pin(true))
 		{
-			ArrayList<MappingItem> result = new ArrayList<>();
+			ArrayList<MappingItem> page = new ArrayList<>();
 			boolean hadError = false;
 			for (SearchResult sr : search(mappingSetID))
 			{
 				RefexDynamicVersionBI<?> rc = (RefexDynamicVersionBI<?>) ExtendedAppContext.getDataStore()
-						.getComponentVersion(OTFUtility.getViewCoordinateAllowInactive(), sr.getNid());
+						.getComponentVersion(pin.getViewCoordinate(), sr.getNid());
 				try
 				{
 					if (rc != null)
 					{
 						if (rc.isActive() || !activeOnly)
 						{
-							result.add(new MappingItem(rc));
+							page.add(new MappingItem(rc, false));
 						}
 					}
 				}
@@ -110,13 +156,23 @@ public class MappingItemDAO extends MappingDAO
 					LOG.error("Unexpected error reading mapping " + rc, e);
 					hadError = true;
 				}
+				if (page.size() >= pageSize)
+				{
+					if (!pageHandler.test(page))
+					{
+						return;
+					}
+					page = new ArrayList<>();
+				}
+			}
+			if (page.size() > 0)
+			{
+				pageHandler.test(page);
 			}
 			if (hadError)
 			{
 				AppContext.getCommonDialogs().showErrorDialog("Internal Error", "Internal Error", "There was an internal error reading all of the mappings.  See logs.");
 			}
-			
-			return result;
 		}
 		catch (ContradictionException e)
 		{
@@ -125,6 +181,21 @@ public class MappingItemDAO extends MappingDAO
 		}
 	}
 
+	/**
+	 * Read the comments of all of the items in one pass over the mapping set, rather than one lookup per item.
+	 * @param mappingItems - items of the mapping set, which are given their comments
+	 * @throws IOException
+	 */
+	public static void readComments(UUID mappingSetID, List<MappingItem> mappingItems) throws IOException
+	{
+		Map<UUID, List<MappingItemComment>> comments = MappingItemCommentDAO.getCommentsForMappingSet(mappingSetID, true);
+		for (MappingItem mappingItem : mappingItems)
+		{
+			List<MappingItemComment> itemComments = comments.get(mappingItem.getPrimordialUUID());
+			mappingItem.setComments(itemComments == null ? Collections.<MappingItemComment>emptyList() : itemComments);
+		}
+	}
+
 	/**
 	 * Just test / demo code
 	 * @param mappingSetUUID
@@ -172,11 +243,7 @@ public class MappingItemDAO extends MappingDAO
 	{
 		try
 		{
-			RefexDynamicVersionBI<?> rdv = readCurrentRefex(mappingItem.getPrimordialUUID());
-			RefexDynamicCAB mappingItemCab = rdv.makeBlueprint(OTFUtility.getViewCoordinateAllowInactive(), IdDirective.PRESERVE, RefexDirective.EXCLUDE);
-			mappingItemCab.getData()[2] = (mappingItem.getEditorStatusConcept() != null ? new RefexDynamicUUID(mappingItem.getEditorStatusConcept()) : null);
-			mappingItemCab.validate(OTFUtility.getViewCoordinateAllowInactive());
-			RefexDynamicChronicleBI<?> rdc = OTFUtility.getBuilder().construct(mappingItemCab);
+			RefexDynamicChronicleBI<?> rdc = constructUpdate(mappingItem);
 
 			ConceptChronicleBI cc = ExtendedAppContext.getDataStore().getConcept(rdc.getConceptNid());
 			AppContext.getRuntimeGlobals().disableAllCommitListeners();
@@ -194,6 +261,19 @@ public class MappingItemDAO extends MappingDAO
 		}
 	}
 
+	/**
+	 * Construct (but do not commit) a new revision of a mappingItem.  See {@link #updateMappingItem(MappingItem)}
+	 */
+	protected static RefexDynamicChronicleBI<?> constructUpdate(MappingItem mappingItem) 
+			throws IOException, InvalidCAB, ContradictionException, PropertyVetoException
+	{
+		RefexDynamicVersionBI<?> rdv = readCurrentRefex(mappingItem.getPrimordialUUID());
+		RefexDynamicCAB mappingItemCab = rdv.makeBlueprint(OTFUtility.getViewCoordinateAllowInactive(), IdDirective.PRESERVE, RefexDirective.EXCLUDE);
+		mappingItemCab.getData()[2] = (mappingItem.getEditorStatusConcept() != null ? new RefexDynamicUUID(mappingItem.getEditorStatusConcept()) : null);
+		mappingItemCab.validate(OTFUtility.getViewCoordinateAllowInactive());
+		return OTFUtility.getBuilder().construct(mappingItemCab);
+	}
+
 	/**
 	 * @param mappingItemPrimordial - The identifier of the mapping item to be retired
 	 * @throws IOException
@@ -19,6 +19,7 @@ public class MappingObject extends StampedItem {
 	protected int editorStatusConceptNid = 0;
 	protected final SimpleStringProperty editorStatusConceptProperty = new SimpleStringProperty();
 	protected HashMap<UUID, String> cachedValues = new HashMap<>();
+	private volatile String editorStatusSortKey;
 	
 	protected static BdbTerminologyStore dataStore = ExtendedAppContext.getDataStore();
 	
@@ -37,6 +38,7 @@ public class MappingObject extends StampedItem {
 	{
 		this.editorStatusConcept = editorStatusConcept;
 		this.editorStatusConceptNid = getNidForUuidSafe(editorStatusConcept);
+		this.editorStatusSortKey = null;
 		propertyLookup(editorStatusConcept, editorStatusConceptProperty);
 	}
 
@@ -53,6 +55,21 @@ public class MappingObject extends StampedItem {
 		return editorStatusConceptProperty.get();
 	}
 	
+	/**
+	 * @return the name of the editor status, or null if not read yet - see {@link #resolveSortKeys()}
+	 */
+	public String getEditorStatusSortKey() {
+		return editorStatusSortKey;
+	}
+	
+	@Override
+	public void resolveSortKeys() {
+		super.resolveSortKeys();
+		if (editorStatusSortKey == null) {
+			editorStatusSortKey = (editorStatusConceptNid == 0 ? "" : OTFUtility.getDescription(editorStatusConceptNid));
+		}
+	}
+	
 	protected void propertyLookup(UUID uuid, SimpleStringProperty property)	{
 		if (uuid == null) {
 			property.set(null);
@@ -80,7 +97,7 @@ public class MappingObject extends StampedItem {
 	public static final Comparator<MappingObject> editorStatusComparator = new Comparator<MappingObject>() {
 		@Override
 		public int compare(MappingObject o1, MappingObject o2) {
-			return Utility.compareStringsIgnoreCase(o1.getEditorStatusName(), o2.getEditorStatusName());
+			return compareSortKeys(o1.getEditorStatusSortKey(), o2.getEditorStatusSortKey());
 		}
 	};
 	
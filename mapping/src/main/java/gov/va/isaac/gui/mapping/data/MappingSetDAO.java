@@ -5,7 +5,9 @@ import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.constants.ISAAC;
 import gov.va.isaac.constants.MappingConstants;
 import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.ViewCoordinateProvider;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.beans.PropertyVetoException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -78,7 +80,7 @@ public class MappingSetDAO extends MappingDAO
 								RefexDynamicValidatorType.IS_KIND_OF, new RefexDynamicUUID(MappingConstants.MAPPING_STATUS.getPrimodialUuid()))}, 
 					null, true, ComponentType.CONCEPT);
 			
-			Utility.execute(() ->
+			Utility.execute(WorkPool.BACKGROUND, () ->
 			{
 				try
 				{
@@ -222,13 +224,13 @@ public class MappingSetDAO extends MappingDAO
 	
 	public static List<MappingSet> getMappingSets(boolean activeOnly) throws IOException
 	{
-		try
+		try (ViewCoordinateProvider.Pin pin = OTFUtility.getViewCoordinateProvider().pin(true))
 		{
 			ArrayList<MappingSet> result = new ArrayList<>();
 			for (SearchResult sr : search(MappingConstants.MAPPING_SEMEME_TYPE.getPrimodialUuid()))
 			{
 				RefexDynamicVersionBI<?> rc = (RefexDynamicVersionBI<?>) ExtendedAppContext.getDataStore().
-						getComponentVersion(OTFUtility.getViewCoordinateAllowInactive(), sr.getNid());
+						getComponentVersion(pin.getViewCoordinate(), sr.getNid());
 				if (rc != null)
 				{
 					MappingSet mappingSet = new MappingSet(rc);
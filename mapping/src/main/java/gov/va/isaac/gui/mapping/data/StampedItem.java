@@ -56,7 +56,19 @@ public abstract class StampedItem
 	private int moduleNid;
 	private int pathNid;
 	
+	private volatile String authorSortKey, moduleSortKey, pathSortKey;
+	
 	protected void readStampDetails(ComponentVersionBI componentVersion) throws IOException
+	{
+		readStampNids(componentVersion);
+		resolveStampNames();
+	}
+	
+	/**
+	 * Read the author, module, path, time and status - but not the names of the author, module and path.  
+	 * See {@link #resolveStampNames()}
+	 */
+	protected void readStampNids(ComponentVersionBI componentVersion) throws IOException
 	{
 		
 		try
@@ -86,12 +98,21 @@ public abstract class StampedItem
 		authorUUID = ExtendedAppContext.getDataStore().getUuidPrimordialForNid(authorNid);
 		moduleUUID = ExtendedAppContext.getDataStore().getUuidPrimordialForNid(moduleNid);
 		pathUUID = ExtendedAppContext.getDataStore().getUuidPrimordialForNid(pathNid);
-		
+	}
+	
+	/**
+	 * Look up the names of the author, module and path in the background, and set the properties when they are found.
+	 */
+	protected void resolveStampNames()
+	{
 		Utility.execute(() ->
 		{
 			String authorName = OTFUtility.getDescription(authorUUID);
 			String moduleName = OTFUtility.getDescription(moduleUUID);
 			String pathName =   OTFUtility.getDescription(pathUUID);
+			authorSortKey = authorName;
+			moduleSortKey = moduleName;
+			pathSortKey = pathName;
 			Platform.runLater(() -> {
 				authorSSP.set(authorName);
 				moduleSSP.set(moduleName);
@@ -158,6 +179,41 @@ public abstract class StampedItem
 	public int getModuleNid() { return moduleNid; }
 	public int getPathNid()   { return pathNid; }
 	
+	/*
+	 * The sort keys are the same names as the properties, but kept apart from them, as the properties are only set on the FX 
+	 * thread.  The comparators only read the keys - null until read, so a sort never goes to the DB.
+	 */
+	public String getAuthorSortKey() { return authorSortKey; }
+	public String getModuleSortKey() { return moduleSortKey; }
+	public String getPathSortKey()   { return pathSortKey; }
+	
+	/**
+	 * Read the values the columns sort on, which aren't read yet.  Goes to the DB - call from a background thread.
+	 */
+	public void resolveSortKeys()
+	{
+		if (authorSortKey == null) {
+			authorSortKey = OTFUtility.getDescription(authorNid);
+		}
+		if (moduleSortKey == null) {
+			moduleSortKey = OTFUtility.getDescription(moduleNid);
+		}
+		if (pathSortKey == null) {
+			pathSortKey = OTFUtility.getDescription(pathNid);
+		}
+	}
+	
+	/**
+	 * Compare sort keys, placing those not read yet (null) after the rest, in their current order.
+	 */
+	protected static int compareSortKeys(String key1, String key2)
+	{
+		if (key1 == null || key2 == null) {
+			return (key1 == null ? (key2 == null ? 0 : 1) : -1);
+		}
+		return Utility.compareStringsIgnoreCase(key1, key2);
+	}
+	
 	public static final Comparator<StampedItem> statusComparator = new Comparator<StampedItem>() {
 		@Override
 		public int compare(StampedItem o1, StampedItem o2) {
@@ -176,21 +232,21 @@ public abstract class StampedItem
 	public static final Comparator<StampedItem> authorComparator = new Comparator<StampedItem>() {
 		@Override
 		public int compare(StampedItem o1, StampedItem o2) {
-			return Utility.compareStringsIgnoreCase(o1.getAuthorProperty().get(), o2.getAuthorProperty().get());
+			return compareSortKeys(o1.getAuthorSortKey(), o2.getAuthorSortKey());
 		}
 	};
 	
 	public static final Comparator<StampedItem> moduleComparator = new Comparator<StampedItem>() {
 		@Override
 		public int compare(StampedItem o1, StampedItem o2) {
-			return Utility.compareStringsIgnoreCase(o1.getModuleProperty().get(), o2.getModuleProperty().get());
+			return compareSortKeys(o1.getModuleSortKey(), o2.getModuleSortKey());
 		}
 	};
 	
 	public static final Comparator<StampedItem> pathComparator = new Comparator<StampedItem>() {
 		@Override
 		public int compare(StampedItem o1, StampedItem o2) {
-			return Utility.compareStringsIgnoreCase(o1.getPathProperty().get(), o2.getPathProperty().get());
+			return compareSortKeys(o1.getPathSortKey(), o2.getPathSortKey());
 		}
 	};
 	
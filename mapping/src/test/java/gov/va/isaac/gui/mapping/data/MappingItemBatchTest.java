@@ -0,0 +1,238 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.gui.mapping.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.va.isaac.interfaces.RuntimeGlobalsI;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
+import org.ihtsdo.otf.tcc.api.refexDynamic.RefexDynamicChronicleBI;
+import org.ihtsdo.otf.tcc.api.store.TerminologyStoreDI;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link MappingItemBatchTest}
+ *
+ * Runs {@link MappingItemBatch} against a stand in for the terminology store, which records what is staged and committed -
+ * the construction of the refexes themselves is stubbed out, so neither the DB nor the builder is needed.
+ */
+public class MappingItemBatchTest
+{
+	private static final UUID SET = UUID.randomUUID();
+	private static final UUID A = UUID.randomUUID();
+	private static final UUID B = UUID.randomUUID();
+	private static final UUID T1 = UUID.randomUUID();
+	private static final UUID T2 = UUID.randomUUID();
+	private static final UUID UNKNOWN = UUID.randomUUID();
+
+	private final HashMap<UUID, Integer> conceptNids_ = new HashMap<>();
+	private final List<Integer> uncommitted_ = new ArrayList<>();
+	private final List<Integer> committed_ = new ArrayList<>();
+	private final List<Integer> foreignUncommitted_ = new ArrayList<>();
+	private final List<Integer> globalCommits_ = new ArrayList<>();
+	private int committedUpTo_;
+	private int listenersDisabled_;
+	private int listenersEnabled_;
+
+	@Before
+	public void setUp()
+	{
+		int nid = -1000;
+		for (UUID concept : Arrays.asList(A, B, T1, T2))
+		{
+			conceptNids_.put(concept, nid++);
+		}
+	}
+
+	@Test
+	public void testCommitsOnlyTouchedConcepts() throws IOException
+	{
+		MappingItemBatch batch = new StubbedBatch(2);
+		int created = batch.create(Arrays.asList(
+				new MappingItemBatch.Row(A, T1, null, null, null),
+				new MappingItemBatch.Row(B, T1, null, null, null),
+				new MappingItemBatch.Row(A, T2, null, null, null),
+				new MappingItemBatch.Row(A, T1, null, null, null),
+				new MappingItemBatch.Row(UNKNOWN, T1, null, null, null)).stream(), 5);
+
+		assertEquals(3, created);
+		assertEquals(2, batch.getSkipped().size());
+		// the first group touches A and B, the second only A - one commit each
+		assertEquals(Arrays.asList(nid(A), nid(B), nid(A)), uncommitted_);
+		assertEquals(Arrays.asList(2, 1), globalCommits_);
+		assertTrue(committed_.isEmpty());
+		assertEquals(1, listenersDisabled_);
+		assertEquals(1, listenersEnabled_);
+	}
+
+	@Test
+	public void testCommentFailureIsPartial() throws IOException
+	{
+		MappingItemBatch batch = new StubbedBatch(MappingItemBatch.DEFAULT_GROUP_SIZE);
+		int created = batch.create(Arrays.asList(
+				new MappingItemBatch.Row(A, T1, null, null, "fine"),
+				new MappingItemBatch.Row(B, T2, null, null, "fail")).stream(), 2);
+
+		// the mapping items are committed either way, so the row isn't reported as skipped
+		assertEquals(2, created);
+		assertTrue(batch.getSkipped().isEmpty());
+		assertEquals(1, batch.getPartial().size());
+		assertTrue(batch.getPartial().get(0).startsWith(B.toString()));
+		assertEquals(Arrays.asList(2), globalCommits_);
+	}
+
+	@Test
+	public void testLeavesOtherUncommittedChangesAlone() throws IOException
+	{
+		foreignUncommitted_.add(nid(T1));
+		MappingItemBatch batch = new StubbedBatch(MappingItemBatch.DEFAULT_GROUP_SIZE);
+		int created = batch.create(Arrays.asList(
+				new MappingItemBatch.Row(A, T1, null, null, null),
+				new MappingItemBatch.Row(B, T2, null, null, null)).stream(), 2);
+
+		assertEquals(2, created);
+		assertTrue(globalCommits_.isEmpty());
+		assertEquals(Arrays.asList(nid(A), nid(B)), committed_);
+	}
+
+	private int nid(UUID concept)
+	{
+		return conceptNids_.get(concept);
+	}
+
+	private class StubbedBatch extends MappingItemBatch
+	{
+		StubbedBatch(int groupSize)
+		{
+			super(SET, groupSize, standIn(TerminologyStoreDI.class, (method, args) ->
+			{
+				switch (method.getName())
+				{
+					case "hasUuid":
+						return conceptNids_.containsKey(args[0]);
+					case "getConcept":
+						return concept((Integer) args[0]);
+					case "addUncommitted":
+						uncommitted_.add(((ConceptChronicleBI) args[0]).getNid());
+						return null;
+					case "getUncommittedConcepts":
+						List<ConceptChronicleBI> pending = new ArrayList<>();
+						for (Integer pendingNid : foreignUncommitted_)
+						{
+							pending.add(concept(pendingNid));
+						}
+						for (Integer pendingNid : uncommitted_.subList(committedUpTo_, uncommitted_.size()))
+						{
+							pending.add(concept(pendingNid));
+						}
+						return method.getReturnType().isAssignableFrom(ArrayList.class) ? pending : new LinkedHashSet<>(pending);
+					case "commit":
+						if (args == null || args.length == 0)
+						{
+							globalCommits_.add(uncommitted_.size() - committedUpTo_);
+							committedUpTo_ = uncommitted_.size();
+						}
+						else
+						{
+							committed_.add(((ConceptChronicleBI) args[0]).getNid());
+						}
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			}), standIn(RuntimeGlobalsI.class, (method, args) ->
+			{
+				if (method.getName().equals("disableAllCommitListeners"))
+				{
+					listenersDisabled_++;
+				}
+				else if (method.getName().equals("enableAllCommitListeners"))
+				{
+					listenersEnabled_++;
+				}
+				return null;
+			}));
+		}
+
+		@Override
+		RefexDynamicChronicleBI<?> constructMappingItem(UUID mappingItemUUID, Row row)
+		{
+			int conceptNid = nid(row.toString().startsWith(A.toString()) ? A : B);
+			return standIn(RefexDynamicChronicleBI.class, (method, args) ->
+			{
+				if (method.getName().equals("getConceptNid"))
+				{
+					return conceptNid;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			});
+		}
+
+		@Override
+		RefexDynamicChronicleBI<?> constructComment(UUID mappingItemUUID, String comment) throws IOException
+		{
+			if (comment.equals("fail"))
+			{
+				throw new IOException("Unable to construct the comment");
+			}
+			return null;
+		}
+	}
+
+	private ConceptChronicleBI concept(int nid)
+	{
+		return standIn(ConceptChronicleBI.class, (method, args) ->
+		{
+			if (method.getName().equals("getNid"))
+			{
+				return nid;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	private interface Handler
+	{
+		Object invoke(Method method, Object[] args) throws Exception;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T standIn(Class<T> type, Handler handler)
+	{
+		return (T) Proxy.newProxyInstance(MappingItemBatchTest.class.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) ->
+		{
+			Object result = handler.invoke(method, args);
+			if (result == null && method.getReturnType() == boolean.class)
+			{
+				return Boolean.TRUE;
+			}
+			return result;
+		});
+	}
+}
@@ -23,6 +23,7 @@ import gov.va.isaac.constants.ISAAC;
 import gov.va.isaac.constants.InformationModels;
 import gov.va.isaac.constants.MappingConstants;
 import gov.va.isaac.constants.Search;
+import gov.va.isaac.refexDynamic.AnnotationAssemblageIndex;
 import gov.va.isaac.util.DBLocator;
 import java.io.File;
 import java.lang.reflect.Field;
@@ -185,6 +186,11 @@ public class DBBuilder extends AbstractMojo
 			}
 			getLog().info("Batch Indexing");
 			store.index();
+			
+			getLog().info("Building the annotation assemblage index");
+			AnnotationAssemblageIndex annotationIndex = AppContext.getService(AnnotationAssemblageIndex.class);
+			annotationIndex.build(null);
+			annotationIndex.save();
 
 			if (setupAndShutdown)
 			{
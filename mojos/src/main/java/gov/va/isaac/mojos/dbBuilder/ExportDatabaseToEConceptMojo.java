@@ -20,16 +20,11 @@ package gov.va.isaac.mojos.dbBuilder;
 
 import gov.va.isaac.AppContext;
 import gov.va.isaac.config.users.GenerateUsers;
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
+import gov.va.isaac.ie.exporter.EConceptFileWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.ihtsdo.otf.tcc.api.concept.ConceptFetcherBI;
-import org.ihtsdo.otf.tcc.api.concept.ProcessUnfetchedConceptDataBI;
-import org.ihtsdo.otf.tcc.api.nid.NativeIdSetBI;
 import org.ihtsdo.otf.tcc.api.store.TerminologyStoreDI;
 import org.ihtsdo.otf.tcc.dto.TtkConceptChronicle;
 
@@ -41,7 +36,7 @@ import org.ihtsdo.otf.tcc.dto.TtkConceptChronicle;
  * 
  * @phase process-sources
  */
-public class ExportDatabaseToEConceptMojo extends AbstractMojo implements ProcessUnfetchedConceptDataBI
+public class ExportDatabaseToEConceptMojo extends AbstractMojo
 {
 
 	/**
@@ -52,9 +47,34 @@ public class ExportDatabaseToEConceptMojo extends AbstractMojo implements Proces
 	 * @required
 	 */
 	File outputFile = null;
+
+	/**
+	 * true to convert and serialize concepts on all cores, with a single thread writing the 
+	 * output.  Concepts are written in the same order either way, so the output is the same, 
+	 * byte for byte, as with false.
+	 * 
+	 * @parameter default-value=true
+	 */
+	boolean parallel = true;
+
+	/**
+	 * true to gzip the output.  A .gz suffix is added to each file name.
+	 * 
+	 * @parameter default-value=false
+	 */
+	boolean compress = false;
+
+	/**
+	 * If greater than 0, the output is split into parts of about this many (uncompressed) megabytes, 
+	 * which may be loaded in parallel.  Parts are named after the outputFile with a part number before 
+	 * the extension - eConcepts-1.jbin, eConcepts-2.jbin...
+	 * 
+	 * @parameter default-value=0
+	 */
+	int maxPartSizeMB = 0;
 	
-	private int conCount = 0;
-	private DataOutputStream dos_;
+	private AtomicInteger conCount = new AtomicInteger();
+	private EConceptFileWriter writer_;
 
 	/**
 	 * To execute this mojo, you need to first have run the "Setup" mojo against
@@ -70,62 +90,28 @@ public class ExportDatabaseToEConceptMojo extends AbstractMojo implements Proces
 		{
 			getLog().info("Exporting the database to " + outputFile.getAbsolutePath());
 			TerminologyStoreDI dataStore = AppContext.getService(TerminologyStoreDI.class);
-			dos_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+			writer_ = new EConceptFileWriter(outputFile, compress, maxPartSizeMB * 1024L * 1024L);
 			
-			dataStore.iterateConceptDataInSequence(this);
-			dos_.close();
+			long startTime = System.currentTimeMillis();
+			try
+			{
+				writer_.writeAll(dataStore.getAllConceptNids().getSetValues(), nid ->
+				{
+					conCount.incrementAndGet();
+					return new TtkConceptChronicle(dataStore.getConcept(nid));
+				}, parallel);
+			}
+			finally
+			{
+				writer_.close();
+			}
 			
-			getLog().info("Done exporting the DB - exported " + conCount + " concepts");
+			getLog().info("Done exporting the DB - exported " + conCount.get() + " concepts to " + writer_.getFiles().size() + " file(s) in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
 		}
 		catch (Exception e)
 		{
 			throw new MojoExecutionException("Unexpected error exporting the DB", e);
 		}
 	}
-
-	/**
-	 * @see org.ihtsdo.otf.tcc.api.ContinuationTrackerBI#continueWork()
-	 */
-	@Override
-	public boolean continueWork()
-	{
-		return true;
-	}
-
-	/**
-	 * @see org.ihtsdo.otf.tcc.api.concept.ProcessUnfetchedConceptDataBI#allowCancel()
-	 */
-	@Override
-	public boolean allowCancel()
-	{
-		return false;
-	}
-
-	/**
-	 * @see org.ihtsdo.otf.tcc.api.concept.ProcessUnfetchedConceptDataBI#processUnfetchedConceptData(int, org.ihtsdo.otf.tcc.api.concept.ConceptFetcherBI)
-	 */
-	@Override
-	public void processUnfetchedConceptData(int cNid, ConceptFetcherBI fetcher) throws Exception
-	{
-		new TtkConceptChronicle(fetcher.fetch()).writeExternal(dos_);
-		conCount++;
-	}
-
-	/**
-	 * @see org.ihtsdo.otf.tcc.api.concept.ProcessUnfetchedConceptDataBI#getNidSet()
-	 */
-	@Override
-	public NativeIdSetBI getNidSet() throws IOException
-	{
-		return null;
-	}
-
-	/**
-	 * @see org.ihtsdo.otf.tcc.api.concept.ProcessUnfetchedConceptDataBI#getTitle()
-	 */
-	@Override
-	public String getTitle()
-	{
-		return "Exporter";
-	}	
 }
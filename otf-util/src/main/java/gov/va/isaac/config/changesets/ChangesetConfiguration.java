@@ -23,6 +23,7 @@ import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.config.profiles.UserProfileManager;
 import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.File;
 import java.util.UUID;
 import javax.inject.Singleton;
@@ -74,7 +75,7 @@ public class ChangesetConfiguration implements ServicesToPreloadI
 	 */
 	public void configureChangeSetWriter()
 	{
-		Utility.execute(() ->
+		Utility.execute(WorkPool.IO, () ->
 		{
 			String userName = ExtendedAppContext.getCurrentlyLoggedInUser();
 			logger.info("Configuring changset writer for {}", userName);
@@ -21,7 +21,9 @@ package gov.va.isaac.config.changesets;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.config.profiles.UserProfileManager;
 import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
+import gov.va.isaac.refexDynamic.AnnotationAssemblageIndex;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
@@ -31,6 +33,7 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.inject.Singleton;
 import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
 import org.ihtsdo.otf.tcc.datastore.BdbTerminologyStore;
@@ -63,7 +66,7 @@ public class ChangesetProcessor implements ServicesToPreloadI
 	@Override
 	public void loadRequested()
 	{
-		Utility.execute(() -> processChangeSets(AppContext.getService(UserProfileManager.class).getProfilesFolder()));
+		Utility.execute(WorkPool.IO, () -> processChangeSets(AppContext.getService(UserProfileManager.class).getProfilesFolder()));
 	}
 
 	/**
@@ -82,6 +85,9 @@ public class ChangesetProcessor implements ServicesToPreloadI
 	 */
 	public static void processChangeSets(File rootFolder)
 	{
+		//change sets are loaded without commit notifications, so the annotation index doesn't see them
+		long annotationIndexTime = AppContext.getService(AnnotationAssemblageIndex.class).getSavedTime();
+		AtomicBoolean rebuildAnnotationIndex = new AtomicBoolean(false);
 		try
 		{
 			AppContext.getService(BdbTerminologyStore.class).suspendChangeNotifications();
@@ -98,6 +104,10 @@ public class ChangesetProcessor implements ServicesToPreloadI
 						try
 						{
 							logger.info("Processing {}", file);
+							if (file.toFile().lastModified() >= annotationIndexTime)
+							{
+								rebuildAnnotationIndex.set(true);
+							}
 							ChangeSetReader csr = new ChangeSetReader();
 							csr.setChangeSetFile(file.toFile());
 							Set<ConceptChronicleBI> indexedAnnotationConcepts = new HashSet<>();
@@ -125,5 +135,21 @@ public class ChangesetProcessor implements ServicesToPreloadI
 		{
 			AppContext.getService(BdbTerminologyStore.class).resumeChangeNotifications();
 		}
+		
+		if (rebuildAnnotationIndex.get())
+		{
+			try
+			{
+				AnnotationAssemblageIndex aai = AppContext.getService(AnnotationAssemblageIndex.class);
+				if (aai.build(null))
+				{
+					aai.save();
+				}
+			}
+			catch (Exception e)
+			{
+				logger.error("Error rebuilding the annotation assemblage index after loading changesets", e);
+			}
+		}
 	}
 }
@@ -18,7 +18,9 @@
  */
 package gov.va.isaac.config.profiles;
 
+import gov.va.isaac.AppContext;
 import gov.va.isaac.config.generated.StatedInferredOptions;
+import gov.va.isaac.util.ViewCoordinateProvider;
 import java.util.Objects;
 import java.util.UUID;
 import javafx.beans.property.Property;
@@ -49,10 +51,12 @@ public class UserProfileBindings
 	ReadOnlyStringWrapper workflowUsername = new ReadOnlyStringWrapper();
 	ReadOnlyObjectWrapper<UUID> viewCoordinatePath = new ReadOnlyObjectWrapper<>();
 	ReadOnlyObjectWrapper<UUID> editCoordinatePath = new ReadOnlyObjectWrapper<>();
+	ReadOnlyObjectWrapper<Long> viewCoordinateTime = new ReadOnlyObjectWrapper<>();
 	
 	public Property<?>[] getAll()
 	{
-		return new Property<?>[] {statedInferredPolicy, displayFSN, displayRelDirection, workflowUsername, viewCoordinatePath, editCoordinatePath};
+		return new Property<?>[] {statedInferredPolicy, displayFSN, displayRelDirection, workflowUsername, viewCoordinatePath, editCoordinatePath,
+				viewCoordinateTime};
 	}
 	
 	/**
@@ -98,6 +102,13 @@ public class UserProfileBindings
 	{
 		return editCoordinatePath.getReadOnlyProperty();
 	}
+	/**
+	 * @return the viewCoordinateTime
+	 */
+	public ReadOnlyObjectProperty<Long> getViewCoordinateTime()
+	{
+		return viewCoordinateTime.getReadOnlyProperty();
+	}
 	
 	protected void update(UserProfile up)
 	{
@@ -125,5 +136,11 @@ public class UserProfileBindings
 		{
 			workflowUsername.set(up.getWorkflowUsername());
 		}
+		if (!Objects.equals(viewCoordinateTime.get(), up.getViewCoordinateTime()))
+		{
+			viewCoordinateTime.set(up.getViewCoordinateTime());
+		}
+		//Let the provider compare the whole profile, rather than listen to each property
+		AppContext.getService(ViewCoordinateProvider.class).userProfileChanged(up);
 	}
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import gov.va.isaac.config.users.GenerateUsers;
 import gov.va.isaac.config.users.InvalidUserException;
 import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -338,7 +339,7 @@ public class UserProfileManager implements ServicesToPreloadI
 		{
 			cdl.countDown();  //2 to 1 tells us that loadRequested was called.
 	
-			Utility.execute(() -> {
+			Utility.execute(WorkPool.IO, () -> {
 				logger.debug("Configuring UserProfileManager, using the path " + profilesFolder_.getAbsolutePath());
 				profilesFolder_.mkdirs();
 	
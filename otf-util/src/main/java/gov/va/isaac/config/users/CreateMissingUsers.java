@@ -20,6 +20,7 @@ package gov.va.isaac.config.users;
 
 import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import org.jvnet.hk2.annotations.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,7 +44,7 @@ public class CreateMissingUsers implements ServicesToPreloadI
 	@Override
 	public void loadRequested()
 	{
-		Utility.execute(() -> 
+		Utility.execute(WorkPool.IO, () -> 
 		{
 			logger.debug("Processing user.xml file from classpath");
 			try
@@ -21,6 +21,7 @@ package gov.va.isaac.gui;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.interfaces.gui.views.PopupViewI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import gov.va.isaac.util.OTFUtility;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -226,7 +227,7 @@ public class ConfigureDynamicRefexIndexingView implements PopupViewI
 						
 					};
 					
-					Utility.submit(t);
+					Utility.execute(WorkPool.BACKGROUND, t);
 					AppContext.getCommonDialogs().showInformationDialog("Reindex running", "An index operation has begun in the background.\nIt may take some time to complete.", 
 							root_.getScene().getWindow());
 				}
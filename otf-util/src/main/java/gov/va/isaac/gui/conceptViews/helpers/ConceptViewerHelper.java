@@ -1,5 +1,7 @@
 package gov.va.isaac.gui.conceptViews.helpers;
 
+import gov.va.isaac.AppContext;
+import gov.va.isaac.util.IdentifierResolver;
 import gov.va.isaac.util.OTFUtility;
 
 import java.io.IOException;
@@ -9,17 +11,15 @@ import java.util.Set;
 import org.ihtsdo.otf.tcc.api.chronicle.ComponentVersionBI;
 import org.ihtsdo.otf.tcc.api.conattr.ConceptAttributeVersionBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI;
-import org.ihtsdo.otf.tcc.api.id.IdBI;
 import org.ihtsdo.otf.tcc.api.metadata.binding.SnomedMetadataRf2;
 import org.ihtsdo.otf.tcc.api.metadata.binding.TermAux;
-import org.ihtsdo.otf.tcc.api.refex.RefexChronicleBI;
 import org.ihtsdo.otf.tcc.api.refex.RefexVersionBI;
-import org.ihtsdo.otf.tcc.api.refex.type_long.RefexLongVersionBI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ConceptViewerHelper {
 	private static Integer snomedAssemblageNid;
+	private static IdentifierResolver identifierResolver;
 	private static final Logger LOG = LoggerFactory.getLogger(ConceptViewerHelper.class);
 
 	private ConceptViewerHelper()
@@ -36,35 +36,11 @@ public class ConceptViewerHelper {
 	}
 
 	public static String getSctId(ComponentVersionBI attr)  {
-		String sctidString = "Unreleased";
-		// Official approach found int AlternativeIdResource.class
-		
-		boolean found = false;
-		try {
-			for (RefexChronicleBI<?> annotation : attr.getAnnotations()) {
-				if (annotation.getAssemblageNid() == getSnomedAssemblageNid()) {
-					RefexLongVersionBI<?> sctid = (RefexLongVersionBI<?>) annotation.getPrimordialVersion();
-					sctidString = Long.toString(sctid.getLong1());
-					found = true;
-				}
-			}
-
-			if (!found) {
-				// legacy representation of SCTID for use with older econcepts files
-				for (IdBI id : attr.getAllIds()) {
-					// Identify "SCT" identifiers
-					if (id.getAuthorityNid() == TermAux.SNOMED_IDENTIFIER.getLenient().getNid()) {
-						// Found SCTID, return it
-						sctidString = id.getDenotation().toString();
-					}
-				}
-			}
-
-		} catch (Exception e) {
-			LOG.error("Could not access annotations for: " + attr.getPrimordialUuid());
+		if (identifierResolver == null) {
+			identifierResolver = AppContext.getService(IdentifierResolver.class);
 		}
-		
-		return sctidString;
+		long sctid = identifierResolver.getSctId(attr, OTFUtility.getViewCoordinate());
+		return sctid == IdentifierResolver.NO_SCTID ? "Unreleased" : Long.toString(sctid);
 	}
 
 
@@ -0,0 +1,471 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.refexDynamic;
+
+import gov.va.isaac.ExtendedAppContext;
+import gov.va.isaac.interfaces.utility.ServicesToPreloadI;
+import gov.va.isaac.util.PackedIntSet;
+import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javafx.application.Platform;
+import javafx.scene.control.ProgressIndicator;
+import javax.inject.Singleton;
+import org.ihtsdo.otf.tcc.api.chronicle.ComponentChronicleBI;
+import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
+import org.ihtsdo.otf.tcc.api.concept.ConceptFetcherBI;
+import org.ihtsdo.otf.tcc.api.concept.ProcessUnfetchedConceptDataBI;
+import org.ihtsdo.otf.tcc.api.description.DescriptionChronicleBI;
+import org.ihtsdo.otf.tcc.api.nid.NativeIdSetBI;
+import org.ihtsdo.otf.tcc.api.refexDynamic.RefexDynamicChronicleBI;
+import org.ihtsdo.otf.tcc.api.relationship.RelationshipChronicleBI;
+import org.ihtsdo.otf.tcc.api.store.TerminologyDI.CONCEPT_EVENT;
+import org.ihtsdo.otf.tcc.datastore.Bdb;
+import org.ihtsdo.otf.tcc.datastore.BdbTerminologyStore;
+import org.jvnet.hk2.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AnnotationAssemblageIndex}
+ *
+ * An index from assemblage nid to the nids of the annotation style dynamic refexes of that assemblage, so the
+ * members of an annotation style sememe which isn't Lucene indexed can be read without scanning every concept
+ * in the database with a {@link RefexAnnotationSearcher}.
+ *
+ * The index is built by one full scan - by the DB builder, when change sets have been loaded since it was
+ * saved, or on request - and then kept up to date from commits.  Refexes are never removed from the store,
+ * so commits only ever add members.  The members of each assemblage are held as a {@link PackedIntSet}.
+ *
+ * The index is saved in the database folder at shutdown.  The saved file is deleted by the first commit after
+ * it was loaded, so an index which missed commits (because the application didn't shut down cleanly) is never
+ * read back - it is rebuilt instead.
+ */
+@Service
+@Singleton
+public class AnnotationAssemblageIndex implements PropertyChangeListener, ServicesToPreloadI
+{
+	private static final Logger LOG = LoggerFactory.getLogger(AnnotationAssemblageIndex.class);
+
+	public static final String INDEX_FILE_NAME = "annotationAssemblage.index";
+	private static final int FORMAT_VERSION = 1;
+
+	//null until loaded or built
+	private volatile ConcurrentHashMap<Integer, PackedIntSet> members_;
+	//concepts committed while a build is running, which it may have scanned before the commit
+	private final Set<Integer> committedDuringBuild_ = ConcurrentHashMap.newKeySet();
+	private volatile boolean building_ = false;
+	private volatile boolean stopRequested_ = false;
+	private volatile boolean saved_ = false;
+	//guards the saved file - not the monitor of this, which a build holds for the whole scan, as the deletion runs on the commit thread
+	private final Object savedFileLock_ = new Object();
+	private boolean listening_ = false;
+
+	private AnnotationAssemblageIndex()
+	{
+		//for HK2
+	}
+
+	/**
+	 * @see gov.va.isaac.interfaces.utility.ServicesToPreloadI#loadRequested()
+	 */
+	@Override
+	public void loadRequested()
+	{
+		Utility.execute(WorkPool.IO, () -> load());
+	}
+
+	/**
+	 * @see gov.va.isaac.interfaces.utility.ServicesToPreloadI#shutdown()
+	 */
+	@Override
+	public void shutdown()
+	{
+		if (members_ != null && !saved_)
+		{
+			try
+			{
+				save();
+			}
+			catch (IOException e)
+			{
+				LOG.error("Unable to save the annotation assemblage index", e);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the index has been loaded or built, and may be read
+	 */
+	public boolean isReady()
+	{
+		return members_ != null;
+	}
+
+	/**
+	 * @param assemblageNid the assemblage
+	 * @return the nids of the annotation style refexes of the assemblage, ascending, or null if the index isn't ready
+	 */
+	public int[] getMembers(int assemblageNid)
+	{
+		Map<Integer, PackedIntSet> members = members_;
+		if (members == null)
+		{
+			return null;
+		}
+		PackedIntSet set = members.get(assemblageNid);
+		return set == null ? new int[0] : set.toArray();
+	}
+
+	/**
+	 * Reads the saved index, if there is one.
+	 * @return true if the index is ready
+	 */
+	public synchronized boolean load()
+	{
+		if (members_ != null)
+		{
+			return true;
+		}
+		File file = getIndexFile();
+		if (file == null || !file.isFile())
+		{
+			LOG.info("No saved annotation assemblage index");
+			return false;
+		}
+		long start = System.currentTimeMillis();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != FORMAT_VERSION)
+			{
+				LOG.info("Ignoring the saved annotation assemblage index, as it is in an old format");
+				return false;
+			}
+			int assemblages = in.readInt();
+			ConcurrentHashMap<Integer, PackedIntSet> members = new ConcurrentHashMap<>(assemblages * 2);
+			for (int i = 0; i < assemblages; i++)
+			{
+				int assemblageNid = in.readInt();
+				members.put(assemblageNid, PackedIntSet.read(in));
+			}
+			saved_ = true;
+			startListening();
+			members_ = members;
+			LOG.info("Loaded the annotation assemblage index ({} assemblages) in {}ms", assemblages, System.currentTimeMillis() - start);
+			return true;
+		}
+		catch (IOException e)
+		{
+			LOG.error("Unable to read the annotation assemblage index, it will need to be rebuilt", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the index by scanning every concept in the database.  Blocks until done.
+	 *
+	 * @param progress optional - updated with the fraction of concepts scanned
+	 * @return true if the index was built, false if the build was stopped with {@link #requestStop()}
+	 */
+	public synchronized boolean build(ProgressIndicator progress) throws Exception
+	{
+		LOG.info("Building the annotation assemblage index");
+		long start = System.currentTimeMillis();
+		stopRequested_ = false;
+		building_ = true;
+		committedDuringBuild_.clear();
+		startListening();
+		try
+		{
+			Scanner scanner = new Scanner(progress);
+			ExtendedAppContext.getDataStore().iterateConceptDataInParallel(scanner);
+			if (stopRequested_)
+			{
+				LOG.info("Annotation assemblage index build stopped");
+				return false;
+			}
+			ConcurrentHashMap<Integer, PackedIntSet> members = new ConcurrentHashMap<>(scanner.collected_.size() * 2);
+			scanner.collected_.forEach((assemblageNid, collector) -> members.put(assemblageNid, collector.toPackedIntSet()));
+			members_ = members;
+			saved_ = false;
+		}
+		finally
+		{
+			building_ = false;
+		}
+		for (int conceptNid : committedDuringBuild_)
+		{
+			index(ExtendedAppContext.getDataStore().getConcept(conceptNid));
+		}
+		committedDuringBuild_.clear();
+		LOG.info("Built the annotation assemblage index ({} assemblages) in {}ms", members_.size(), System.currentTimeMillis() - start);
+		return true;
+	}
+
+	/**
+	 * Stops a running {@link #build(ProgressIndicator)}.
+	 */
+	public void requestStop()
+	{
+		stopRequested_ = true;
+	}
+
+	/**
+	 * Writes the index to the database folder.
+	 */
+	public synchronized void save() throws IOException
+	{
+		Map<Integer, PackedIntSet> members = members_;
+		File file = getIndexFile();
+		if (members == null || file == null)
+		{
+			return;
+		}
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		synchronized (savedFileLock_)
+		{
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+			{
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(members.size());
+				for (Map.Entry<Integer, PackedIntSet> entry : members.entrySet())
+				{
+					out.writeInt(entry.getKey());
+					entry.getValue().write(out);
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			saved_ = true;
+		}
+		LOG.info("Saved the annotation assemblage index to {}", file);
+	}
+
+	/**
+	 * @return the last modified time of the saved index, or 0 if there isn't one
+	 */
+	public long getSavedTime()
+	{
+		File file = getIndexFile();
+		return file == null ? 0 : file.lastModified();
+	}
+
+	/**
+	 * Adds the annotation members of each committed concept.
+	 *
+	 * @see java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent)
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent evt)
+	{
+		if (!CONCEPT_EVENT.POST_COMMIT.name().equals(evt.getPropertyName()) || !(evt.getNewValue() instanceof NativeIdSetBI))
+		{
+			return;
+		}
+		try
+		{
+			for (int conceptNid : ((NativeIdSetBI) evt.getNewValue()).getSetValues())
+			{
+				if (building_)
+				{
+					committedDuringBuild_.add(conceptNid);
+				}
+				if (members_ != null)
+				{
+					index(ExtendedAppContext.getDataStore().getConcept(conceptNid));
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			LOG.error("Unable to index committed annotations, dropping the annotation assemblage index", e);
+			members_ = null;
+			deleteSavedIndex();
+		}
+	}
+
+	private void index(ConceptChronicleBI concept) throws IOException
+	{
+		Map<Integer, PackedIntSet> members = members_;
+		if (members == null || concept == null)
+		{
+			return;
+		}
+		forEachAnnotation(concept, refex ->
+		{
+			if (members.computeIfAbsent(refex.getAssemblageNid(), nid -> new PackedIntSet()).add(refex.getNid()) && saved_)
+			{
+				//the saved copy is now out of date
+				deleteSavedIndex();
+			}
+		});
+	}
+
+	private void deleteSavedIndex()
+	{
+		synchronized (savedFileLock_)
+		{
+			if (saved_)
+			{
+				File file = getIndexFile();
+				if (file != null && file.exists() && !file.delete())
+				{
+					LOG.warn("Unable to delete the out of date annotation assemblage index {}", file);
+				}
+				saved_ = false;
+			}
+		}
+	}
+
+	private synchronized void startListening()
+	{
+		if (!listening_)
+		{
+			ExtendedAppContext.getDataStore().addPropertyChangeListener(CONCEPT_EVENT.POST_COMMIT, this);
+			listening_ = true;
+		}
+	}
+
+	private static File getIndexFile()
+	{
+		String location = System.getProperty(BdbTerminologyStore.BDB_LOCATION_PROPERTY);
+		return location == null ? null : new File(location, INDEX_FILE_NAME);
+	}
+
+	/**
+	 * Calls the consumer with every annotation style dynamic refex on the concept, its descriptions and its
+	 * outgoing relationships, including nested ones - the components {@link RefexAnnotationSearcher} scans.
+	 */
+	private static void forEachAnnotation(ConceptChronicleBI concept, AnnotationConsumer consumer) throws IOException
+	{
+		forEachAnnotationOf(concept, consumer);
+		for (DescriptionChronicleBI desc : concept.getDescriptions())
+		{
+			forEachAnnotationOf(desc, consumer);
+		}
+		for (RelationshipChronicleBI rel : concept.getRelationshipsOutgoing())
+		{
+			forEachAnnotationOf(rel, consumer);
+		}
+	}
+
+	private static void forEachAnnotationOf(ComponentChronicleBI<?> component, AnnotationConsumer consumer) throws IOException
+	{
+		for (RefexDynamicChronicleBI<?> annotation : component.getRefexDynamicAnnotations())
+		{
+			consumer.accept(annotation);
+			forEachAnnotationOf(annotation, consumer);
+		}
+	}
+
+	private interface AnnotationConsumer
+	{
+		void accept(RefexDynamicChronicleBI<?> refex) throws IOException;
+	}
+
+	/**
+	 * Collects the members of all assemblages during a build.
+	 */
+	private class Scanner implements ProcessUnfetchedConceptDataBI
+	{
+		private final ConcurrentHashMap<Integer, IntCollector> collected_ = new ConcurrentHashMap<>();
+		private final ProgressIndicator progress_;
+		private final int totalToProcess_;
+		private final AtomicInteger totalProcessed_ = new AtomicInteger();
+
+		Scanner(ProgressIndicator progress) throws IOException
+		{
+			progress_ = progress;
+			totalToProcess_ = Bdb.getConceptDb().getCount();
+		}
+
+		@Override
+		public boolean continueWork()
+		{
+			return !stopRequested_;
+		}
+
+		@Override
+		public boolean allowCancel()
+		{
+			return true;
+		}
+
+		@Override
+		public void processUnfetchedConceptData(int cNid, ConceptFetcherBI fetcher) throws Exception
+		{
+			if (progress_ != null)
+			{
+				int count = totalProcessed_.incrementAndGet();
+				if (count % 1000 == 0)
+				{
+					Platform.runLater(() -> {progress_.setProgress((double)count / (double)totalToProcess_);});
+				}
+			}
+			forEachAnnotation(fetcher.fetch(), refex -> collected_.computeIfAbsent(refex.getAssemblageNid(), nid -> new IntCollector()).add(refex.getNid()));
+		}
+
+		@Override
+		public NativeIdSetBI getNidSet() throws IOException
+		{
+			return null;
+		}
+
+		@Override
+		public String getTitle()
+		{
+			return "Index annotation style sememes by assemblage";
+		}
+	}
+
+	private static class IntCollector
+	{
+		private int[] values_ = new int[16];
+		private int size_ = 0;
+
+		synchronized void add(int value)
+		{
+			if (size_ == values_.length)
+			{
+				values_ = Arrays.copyOf(values_, size_ * 2);
+			}
+			values_[size_++] = value;
+		}
+
+		synchronized PackedIntSet toPackedIntSet()
+		{
+			return PackedIntSet.of(Arrays.copyOf(values_, size_));
+		}
+	}
+}
@@ -79,24 +79,26 @@ public class RefexDynamicUtil
 			}
 			else
 			{
-				if (allowUnindexedScan)
+				AnnotationAssemblageIndex aai = AppContext.getService(AnnotationAssemblageIndex.class);
+				if (!aai.isReady() && !aai.load())
 				{
-					logger_.debug("Using full database scan to read annotation style refex members");
-					RefexAnnotationSearcher processor = new RefexAnnotationSearcher((refex) -> 
+					if (allowUnindexedScan)
 					{
-						if (refex.getAssemblageNid() == assemblageConceptFull.getConceptNid())
+						logger_.debug("Using full database scan to build the annotation assemblage index");
+						if (!aai.build(progress))
 						{
-							return true;
+							return refexMembers;
 						}
-						return false;
-					}, progress);
-
-					ExtendedAppContext.getDataStore().iterateConceptDataInParallel(processor);
-					refexMembers.addAll(processor.getResults());
+					}
+					else
+					{
+						throw new RuntimeException("No index available and full scan not allowed!");
+					}
 				}
-				else
+				logger_.debug("Using the annotation assemblage index to read annotation style refex members");
+				for (int nid : aai.getMembers(assemblageConceptFull.getConceptNid()))
 				{
-					throw new RuntimeException("No index available and full scan not allowed!");
+					refexMembers.add((RefexDynamicChronicleBI<?>)ExtendedAppContext.getDataStore().getComponent(nid));
 				}
 			}
 		}
@@ -18,6 +18,7 @@
  */
 package gov.va.isaac.search;
 
+import gov.va.isaac.util.Utility;
 import java.util.Collection;
 import java.util.List;
 
@@ -98,5 +99,6 @@ public class SearchHandle {
 
     public void cancel() {
         this.cancelled = true;
+        Utility.cancel(this);  //in case the search is still queued
     }
 }
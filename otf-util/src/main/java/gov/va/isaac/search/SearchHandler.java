@@ -21,9 +21,13 @@ package gov.va.isaac.search;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.PoolExecutor.Priority;
 import gov.va.isaac.util.TaskCompleteCallback;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Hashtable;
@@ -32,12 +36,16 @@ import java.util.UUID;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import org.ihtsdo.otf.query.lucene.LuceneDescriptionIndexer;
 import org.ihtsdo.otf.query.lucene.LuceneDescriptionType;
 import org.ihtsdo.otf.query.lucene.LuceneDynamicRefexIndexer;
 import org.ihtsdo.otf.tcc.api.blueprint.ComponentProperty;
+import org.ihtsdo.otf.tcc.api.chronicle.ComponentChronicleBI;
 import org.ihtsdo.otf.tcc.api.chronicle.ComponentVersionBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI;
+import org.ihtsdo.otf.tcc.api.contradiction.ContradictionException;
+import org.ihtsdo.otf.tcc.api.coordinate.ViewCoordinate;
 import org.ihtsdo.otf.tcc.api.description.DescriptionAnalogBI;
 import org.ihtsdo.otf.tcc.api.metadata.binding.SnomedMetadataRf2;
 import org.ihtsdo.otf.tcc.datastore.BdbTerminologyStore;
@@ -57,6 +65,9 @@ import org.slf4j.LoggerFactory;
 public class SearchHandler
 {
 	private static final Logger LOG = LoggerFactory.getLogger(SearchHandler.class);
+	
+	//Hits are resolved in batches of this many components, in concept order
+	private static final int RESOLVE_BATCH_SIZE = 128;
 
 	/**
 	 * Execute a Query against the description indexes in a background thread, hand back a handle to the search object which will 
@@ -312,58 +323,7 @@ public class SearchHandler
 
 							if (resultCount > 0)
 							{
-								// Compute the max score of all results.
-								float maxScore = 0.0f;
-								for (SearchResult searchResult : searchResults)
-								{
-									float score = searchResult.getScore();
-									if (score > maxScore)
-									{
-										maxScore = score;
-									}
-								}
-
-								for (SearchResult searchResult : searchResults)
-								{
-									// Abort if search has been cancelled.
-									if (searchHandle.isCancelled())
-									{
-										break;
-									}
-
-									// Get the description object.
-									ComponentVersionBI cc = dataStore.getComponent(searchResult.getNid()).getVersion(OTFUtility.getViewCoordinate());
-
-									// normalize the scores between 0 and 1
-									float normScore = (searchResult.getScore() / maxScore);
-									CompositeSearchResult csr = (cc == null ? new CompositeSearchResult(searchResult.getNid(), normScore) : 
-										new CompositeSearchResult(cc, normScore));
-									initialSearchResults.add(csr);
-									
-
-									// add one to the scores when we are doing a prefix search, and it hits.
-									if (prefixSearch && csr.getBestScore() <= 1.0f && cc instanceof DescriptionAnalogBI)
-									{
-										String matchingString = ((DescriptionAnalogBI<?>) cc).getText();
-										float adjustValue = 0f;
-
-										if (matchingString.toLowerCase().equals(localQuery.trim().toLowerCase()))
-										{
-											// "exact match, bump by 2"
-											adjustValue = 2.0f;
-										}
-										else if (matchingString.toLowerCase().startsWith(localQuery.trim().toLowerCase()))
-										{
-											// "add 1, plus a bit more boost based on the length of the matches (shorter matches get more boost)"
-											adjustValue = 1.0f + (1.0f - ((float) (matchingString.length() - localQuery.trim().length()) / (float) matchingString
-													.length()));
-										}
-										if (adjustValue > 0f)
-										{
-											csr.adjustScore(csr.getBestScore() + adjustValue);
-										}
-									}
-								}
+								initialSearchResults.addAll(resolveHits(dataStore, searchResults, searchHandle, prefixSearch ? localQuery : null));
 							}
 						}
 					} 
@@ -382,7 +342,7 @@ public class SearchHandler
 			}
 		};
 
-		Utility.execute(r);
+		Utility.execute(WorkPool.INTERACTIVE, Priority.HIGH, searchHandle, r);
 		return searchHandle;
 	}
 	
@@ -445,34 +405,7 @@ public class SearchHandler
 
 						if (searchResults.size() > 0)
 						{
-							// Compute the max score of all results.
-							float maxScore = 0.0f;
-							for (SearchResult searchResult : searchResults)
-							{
-								float score = searchResult.getScore();
-								if (score > maxScore)
-								{
-									maxScore = score;
-								}
-							}
-
-							for (SearchResult searchResult : searchResults)
-							{
-								// Abort if search has been cancelled.
-								if (searchHandle.isCancelled())
-								{
-									break;
-								}
-
-								// Get the match object.
-								ComponentVersionBI cc = dataStore.getComponent(searchResult.getNid()).getVersion(OTFUtility.getViewCoordinate());
-
-								// normalize the scores between 0 and 1
-								float normScore = (searchResult.getScore() / maxScore);
-								CompositeSearchResult csr = (cc == null ? new CompositeSearchResult(searchResult.getNid(), normScore) : 
-									new CompositeSearchResult(cc, normScore));
-								initialSearchResults.add(csr);
-							}
+							initialSearchResults.addAll(resolveHits(dataStore, searchResults, searchHandle, null));
 						}
 					}
 
@@ -488,7 +421,7 @@ public class SearchHandler
 			}
 		};
 
-		Utility.execute(r);
+		Utility.execute(WorkPool.INTERACTIVE, Priority.HIGH, searchHandle, r);
 		return searchHandle;
 	}
 	
@@ -535,6 +468,120 @@ public class SearchHandler
 			}, callback, taskId, filter, comparator, mergeOnConcepts);
 	}
 	
+	/**
+	 * Resolves lucene hits to components on the current view coordinate, normalizing the scores between 0 and 1.
+	 * 
+	 * Hits are resolved in parallel batches, in concept nid order, so that components of the same concept are read together.
+	 * The results keep the order of the hits, so that ties in the final sort still fall in lucene order.
+	 * 
+	 * @param dataStore - the store to read from
+	 * @param searchResults - the lucene hits
+	 * @param searchHandle - checked between batches, resolution stops when the search is cancelled
+	 * @param prefixQuery - when not null, the query text of a prefix search - hits that are exact or prefix matches of it get a score boost
+	 * @return the results for the hits resolved (all of them, unless cancelled)
+	 */
+	private static List<CompositeSearchResult> resolveHits(BdbTerminologyStore dataStore, List<SearchResult> searchResults, 
+			SearchHandle searchHandle, String prefixQuery)
+	{
+		final int hitCount = searchResults.size();
+		final ViewCoordinate vc = OTFUtility.getViewCoordinate();
+		final String lowerCaseQuery = (prefixQuery == null ? null : prefixQuery.trim().toLowerCase());
+
+		// Compute the max score of all results.
+		float max = 0.0f;
+		for (SearchResult searchResult : searchResults)
+		{
+			max = Math.max(max, searchResult.getScore());
+		}
+		final float maxScore = max;
+
+		// Order the hits by concept nid, keeping the hit index in the low bits
+		long[] order = new long[hitCount];
+		for (int i = 0; i < hitCount; i++)
+		{
+			int conceptNid = dataStore.getConceptNidForNid(searchResults.get(i).getNid());
+			order[i] = ((long) conceptNid << 32) | i;
+		}
+		Arrays.sort(order);
+
+		final CompositeSearchResult[] resolved = new CompositeSearchResult[hitCount];
+		int batchCount = (hitCount + RESOLVE_BATCH_SIZE - 1) / RESOLVE_BATCH_SIZE;
+		IntStream batches = IntStream.range(0, batchCount);
+		if (batchCount > 1)
+		{
+			batches = batches.parallel();
+		}
+		batches.forEach(batch ->
+		{
+			// Abort if search has been cancelled.
+			if (searchHandle.isCancelled())
+			{
+				return;
+			}
+			int end = Math.min(hitCount, (batch + 1) * RESOLVE_BATCH_SIZE);
+			for (int i = batch * RESOLVE_BATCH_SIZE; i < end; i++)
+			{
+				int hit = (int) order[i];
+				resolved[hit] = resolveHit(dataStore, vc, searchResults.get(hit), maxScore, lowerCaseQuery);
+			}
+		});
+
+		ArrayList<CompositeSearchResult> results = new ArrayList<>(hitCount);
+		for (CompositeSearchResult csr : resolved)
+		{
+			if (csr != null)
+			{
+				results.add(csr);
+			}
+		}
+		return results;
+	}
+
+	private static CompositeSearchResult resolveHit(BdbTerminologyStore dataStore, ViewCoordinate vc, SearchResult searchResult, float maxScore, 
+			String lowerCaseQuery)
+	{
+		// Get the matching component.
+		ComponentVersionBI cc;
+		try
+		{
+			ComponentChronicleBI<?> chronicle = dataStore.getComponent(searchResult.getNid());
+			cc = (chronicle == null ? null : chronicle.getVersion(vc));
+		}
+		catch (IOException | ContradictionException e)
+		{
+			throw new RuntimeException("Unable to read component " + searchResult.getNid(), e);
+		}
+
+		// normalize the scores between 0 and 1
+		float normScore = (searchResult.getScore() / maxScore);
+		CompositeSearchResult csr = (cc == null ? new CompositeSearchResult(searchResult.getNid(), normScore) : 
+			new CompositeSearchResult(cc, normScore));
+
+		// add one to the scores when we are doing a prefix search, and it hits.
+		if (lowerCaseQuery != null && csr.getBestScore() <= 1.0f && cc instanceof DescriptionAnalogBI)
+		{
+			String matchingString = ((DescriptionAnalogBI<?>) cc).getText();
+			String lowerCaseMatch = matchingString.toLowerCase();
+			float adjustValue = 0f;
+
+			if (lowerCaseMatch.equals(lowerCaseQuery))
+			{
+				// "exact match, bump by 2"
+				adjustValue = 2.0f;
+			}
+			else if (lowerCaseMatch.startsWith(lowerCaseQuery))
+			{
+				// "add 1, plus a bit more boost based on the length of the matches (shorter matches get more boost)"
+				adjustValue = 1.0f + (1.0f - ((float) (matchingString.length() - lowerCaseQuery.length()) / (float) matchingString.length()));
+			}
+			if (adjustValue > 0f)
+			{
+				csr.adjustScore(csr.getBestScore() + adjustValue);
+			}
+		}
+		return csr;
+	}
+	
 	private static void processResults(SearchHandle searchHandle, List<CompositeSearchResult> rawResults, 
 			final Function<List<CompositeSearchResult>, List<CompositeSearchResult>>  filter, Comparator<CompositeSearchResult> comparator, boolean mergeOnConcepts)
 					throws SearchResultsFilterException {
@@ -576,6 +623,10 @@ public class SearchHandler
 		
 		Collections.sort(rawResults, (comparator == null ? new CompositeSearchResultComparator() : comparator));
 		
+		// the result views label each result with the display text of its concept - read them here, off the FX thread
+		OTFUtility.getDisplayTextCache().preload(rawResults.stream().filter(csr -> csr.getContainingConcept() != null)
+				.mapToInt(csr -> csr.getContainingConcept().getNid()).toArray());
+		
 		searchHandle.setResults(rawResults);
 	}
 }
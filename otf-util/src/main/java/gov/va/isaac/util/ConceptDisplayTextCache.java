@@ -0,0 +1,221 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.util;
+
+import gov.va.isaac.AppContext;
+import gov.va.isaac.ExtendedAppContext;
+import gov.va.isaac.config.profiles.UserProfileBindings;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import javax.inject.Singleton;
+import org.ihtsdo.otf.tcc.api.nid.NativeIdSetBI;
+import org.ihtsdo.otf.tcc.api.store.TerminologyDI.CONCEPT_EVENT;
+import org.jvnet.hk2.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ConceptDisplayTextCache}
+ *
+ * The display text of committed concepts, as computed by {@link OTFUtility#getDescription(int)}, so that
+ * trees, tables and lists don't read the concept from the store every time they render a label.
+ *
+ * Both the FSN first and the preferred term first texts are kept, so switching the display FSN preference
+ * needs no reload.  A concept is dropped when a commit touches it, and everything is dropped when the view
+ * coordinate path, time or policy changes.  Past {@link #CACHE_SIZE} concepts the cache is simply started over.
+ *
+ * Each drop bumps a generation count - a text read before a drop, and put after it, is not kept, see {@link #put}.
+ */
+@Service
+@Singleton
+public class ConceptDisplayTextCache implements PropertyChangeListener
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ConceptDisplayTextCache.class);
+
+	public static final int CACHE_SIZE = 100000;
+
+	private final ConcurrentHashMap<Integer, DisplayText> cache_ = new ConcurrentHashMap<>();
+	private final AtomicInteger generation_ = new AtomicInteger();
+	private UserProfileBindings bindings_;
+	private volatile boolean listening_ = false;
+
+	private ConceptDisplayTextCache()
+	{
+		// created by HK2
+	}
+
+	/**
+	 * Returns the display text of a concept, for the current display FSN preference.
+	 *
+	 * @param conceptNid the concept nid
+	 * @return the display text, or null if the concept isn't cached
+	 */
+	public String get(int conceptNid)
+	{
+		DisplayText text = cache_.get(conceptNid);
+		if (text == null)
+		{
+			return null;
+		}
+		return isDisplayFSN() ? text.fsnFirst_ : text.preferredFirst_;
+	}
+
+	/**
+	 * @return the current generation - read it before reading the concept whose text is to be {@link #put}
+	 */
+	public int getGeneration()
+	{
+		startListening();
+		return generation_.get();
+	}
+
+	/**
+	 * Caches the display texts of a committed concept, unless anything was dropped since the specified generation -
+	 * the texts may then be those of a concept version which a commit has since replaced.
+	 *
+	 * @param conceptNid the concept nid
+	 * @param fsnFirst the text to show when the FSN is preferred for display
+	 * @param preferredFirst the text to show when the preferred term is preferred for display
+	 * @param generation the {@link #getGeneration()} read before the concept was read
+	 */
+	public void put(int conceptNid, String fsnFirst, String preferredFirst, int generation)
+	{
+		startListening();
+		if (generation != generation_.get())
+		{
+			return;
+		}
+		if (cache_.size() >= CACHE_SIZE)
+		{
+			// only to bound the size, none of the texts are stale
+			cache_.clear();
+		}
+		DisplayText text = new DisplayText(fsnFirst, preferredFirst);
+		cache_.put(conceptNid, text);
+		// a drop between the check above and the put may have missed it
+		if (generation != generation_.get())
+		{
+			cache_.remove(conceptNid, text);
+		}
+	}
+
+	/**
+	 * Reads the display text of the specified concepts which aren't cached yet, in parallel - for use before
+	 * rendering a batch of labels, such as the children of a tree node.
+	 *
+	 * @param conceptNids the concept nids
+	 */
+	public void preload(int[] conceptNids)
+	{
+		IntStream nids = IntStream.of(conceptNids).filter(nid -> !cache_.containsKey(nid));
+		if (conceptNids.length > 16)
+		{
+			nids = nids.parallel();
+		}
+		nids.forEach(nid -> OTFUtility.getDescription(nid));
+	}
+
+	/**
+	 * Drops a concept.
+	 *
+	 * @param conceptNid the concept nid
+	 */
+	public void remove(int conceptNid)
+	{
+		generation_.incrementAndGet();
+		cache_.remove(conceptNid);
+	}
+
+	/**
+	 * Drops all concepts.
+	 */
+	public void clear()
+	{
+		generation_.incrementAndGet();
+		cache_.clear();
+	}
+
+	/**
+	 * Drops the concepts of each commit.
+	 *
+	 * @see java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent)
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent evt)
+	{
+		if (CONCEPT_EVENT.POST_COMMIT.name().equals(evt.getPropertyName()) && evt.getNewValue() instanceof NativeIdSetBI)
+		{
+			generation_.incrementAndGet();
+			try
+			{
+				for (int nid : ((NativeIdSetBI) evt.getNewValue()).getSetValues())
+				{
+					cache_.remove(nid);
+				}
+			}
+			catch (Exception e)
+			{
+				LOG.warn("Unable to read committed concepts, dropping all cached display text", e);
+				clear();
+			}
+		}
+	}
+
+	boolean isDisplayFSN()
+	{
+		startListening();
+		return bindings_.getDisplayFSN().get();
+	}
+
+	private void startListening()
+	{
+		if (listening_)
+		{
+			return;
+		}
+		// not in the constructor, which may run before the store is open
+		synchronized (this)
+		{
+			if (!listening_)
+			{
+				bindings_ = AppContext.getService(UserProfileBindings.class);
+				bindings_.getViewCoordinatePath().addListener((observable, oldValue, newValue) -> clear());
+				bindings_.getStatedInferredPolicy().addListener((observable, oldValue, newValue) -> clear());
+				bindings_.getViewCoordinateTime().addListener((observable, oldValue, newValue) -> clear());
+				ExtendedAppContext.getDataStore().addPropertyChangeListener(CONCEPT_EVENT.POST_COMMIT, this);
+				listening_ = true;
+			}
+		}
+	}
+
+	private static class DisplayText
+	{
+		final String fsnFirst_;
+		final String preferredFirst_;
+
+		DisplayText(String fsnFirst, String preferredFirst)
+		{
+			fsnFirst_ = fsnFirst;
+			preferredFirst_ = preferredFirst;
+		}
+	}
+}
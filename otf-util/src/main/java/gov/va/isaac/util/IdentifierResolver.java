@@ -0,0 +1,525 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.util;
+
+import gov.va.isaac.ExtendedAppContext;
+import gov.va.isaac.gui.conceptViews.helpers.ConceptViewerHelper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+import javax.inject.Singleton;
+import org.ihtsdo.otf.tcc.api.chronicle.ComponentBI;
+import org.ihtsdo.otf.tcc.api.chronicle.ComponentChronicleBI;
+import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
+import org.ihtsdo.otf.tcc.api.coordinate.Status;
+import org.ihtsdo.otf.tcc.api.coordinate.ViewCoordinate;
+import org.ihtsdo.otf.tcc.api.description.DescriptionChronicleBI;
+import org.ihtsdo.otf.tcc.api.id.IdBI;
+import org.ihtsdo.otf.tcc.api.metadata.binding.TermAux;
+import org.ihtsdo.otf.tcc.api.refex.RefexVersionBI;
+import org.ihtsdo.otf.tcc.api.refex.type_long.RefexLongVersionBI;
+import org.ihtsdo.otf.tcc.api.relationship.RelationshipChronicleBI;
+import org.ihtsdo.otf.tcc.api.store.TerminologyDI.CONCEPT_EVENT;
+import org.jvnet.hk2.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IdentifierResolver}
+ *
+ * Resolves nids to SNOMED CT identifiers, falling back to the primordial UUID for
+ * unreleased components. Exporters ask for the same few hundred metadata ids
+ * (modules, types, characteristics) on every row, so resolved ids are cached.
+ *
+ * The SCTID of a component is the one active on the caller's view coordinate, so
+ * everything is kept per coordinate - per path, time and allowed status.
+ * {@link #warm(int[], ViewCoordinate)} reads the SNOMED identifier annotations of
+ * the concepts about to be exported into a primitive nid to SCTID table, skipping
+ * the concepts already read for the coordinate.  Anything not found there is
+ * resolved from the store on demand and kept in a bounded cache.  The on demand
+ * caches are dropped on every commit, which may give a component an SCTID - the
+ * commit events name only the concepts, not the components within them.  For the
+ * same reason, a commit drops the tables read for coordinates on the latest time.
+ */
+@Service
+@Singleton
+public class IdentifierResolver
+{
+	private static final Logger LOG = LoggerFactory.getLogger(IdentifierResolver.class);
+
+	/**
+	 * Returned when a component has no SCTID.  Real SCTIDs are always positive.
+	 */
+	public static final long NO_SCTID = 0;
+
+	//Past this many entries, the on-demand caches are simply started over
+	private static final int CACHE_SIZE = 250000;
+
+	//Past this many view coordinates, everything is simply started over
+	private static final int MAX_COORDINATES = 8;
+
+	private static final SctIdTable EMPTY_TABLE = new SctIdTable(new int[0], new int[0], new long[0]);
+
+	private final ConcurrentHashMap<CoordinateKey, CoordinateIds> coordinates_ = new ConcurrentHashMap<>();
+	//The ids of the coordinate last asked for, so a run of lookups on one coordinate needn't build a key for each - a
+	//coordinate in use is not modified, see OTFUtility.getViewCoordinate()
+	private volatile LastCoordinate last_ = null;
+	private volatile boolean listening_ = false;
+
+	private IdentifierResolver()
+	{
+		// created by HK2
+	}
+
+	/**
+	 * Returns the SCTID of the component with the specified nid.
+	 *
+	 * @param nid the component nid
+	 * @param vc the view coordinate the SCTID must be active on
+	 * @return the SCTID, or {@link #NO_SCTID} if the component has none
+	 */
+	public long getSctId(int nid, ViewCoordinate vc)
+	{
+		CoordinateIds ids = getIds(vc);
+		long sctId = ids.lookup(nid);
+		if (sctId != NO_SCTID)
+		{
+			return sctId;
+		}
+		Long cached = ids.sctIdCache_.get(nid);
+		if (cached != null)
+		{
+			return cached;
+		}
+		try
+		{
+			ComponentChronicleBI<?> component = ExtendedAppContext.getDataStore().getComponent(nid);
+			sctId = component == null ? NO_SCTID : readSctId(component, vc);
+		}
+		catch (IOException e)
+		{
+			LOG.error("Could not read component for nid " + nid, e);
+			return NO_SCTID;
+		}
+		cache(ids.sctIdCache_, nid, sctId);
+		return sctId;
+	}
+
+	/**
+	 * Returns the SCTID of the specified component, reading it from the component
+	 * itself if it isn't already known.
+	 *
+	 * @param component the component (chronicle or version)
+	 * @param vc the view coordinate the SCTID must be active on
+	 * @return the SCTID, or {@link #NO_SCTID} if the component has none
+	 */
+	public long getSctId(ComponentBI component, ViewCoordinate vc)
+	{
+		CoordinateIds ids = getIds(vc);
+		int nid = component.getNid();
+		long sctId = ids.lookup(nid);
+		if (sctId != NO_SCTID)
+		{
+			return sctId;
+		}
+		Long cached = ids.sctIdCache_.get(nid);
+		if (cached != null)
+		{
+			return cached;
+		}
+		sctId = readSctId(component, vc);
+		cache(ids.sctIdCache_, nid, sctId);
+		return sctId;
+	}
+
+	/**
+	 * Returns the SCTID of the component with the specified nid as a string, or the
+	 * primordial UUID if the component has no SCTID - the identifier used in
+	 * release files.
+	 *
+	 * @param nid the component nid
+	 * @param vc the view coordinate the SCTID must be active on
+	 * @return the SCTID or UUID string
+	 * @throws IOException if the UUID can't be read
+	 */
+	public String getSctIdOrUuid(int nid, ViewCoordinate vc) throws IOException
+	{
+		CoordinateIds ids = getIds(vc);
+		String id = ids.idStringCache_.get(nid);
+		if (id == null)
+		{
+			long sctId = getSctId(nid, vc);
+			id = sctId == NO_SCTID ? ExtendedAppContext.getDataStore().getUuidPrimordialForNid(nid).toString() : Long.toString(sctId);
+			cache(ids.idStringCache_, nid, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Reads the SCTIDs of the specified concepts, and of their descriptions and
+	 * relationships, in one parallel pass - skipping the concepts already read for
+	 * the view coordinate.  Call before bulk work such as an export, with the
+	 * concepts it covers - the pass costs about as much as reading the concepts,
+	 * but saves a store lookup for most ids of every row.
+	 *
+	 * @param conceptNids the concepts
+	 * @param vc the view coordinate the SCTIDs must be active on
+	 * @return the number of SCTIDs read
+	 */
+	public int warm(int[] conceptNids, ViewCoordinate vc)
+	{
+		CoordinateIds ids = getIds(vc);
+		synchronized (ids)
+		{
+			long startTime = System.currentTimeMillis();
+			startListening();
+			int commits = ids.commits_;
+			SctIdTable table = ids.warmTable_;
+			int[] toRead = IntStream.of(conceptNids).filter(nid -> Arrays.binarySearch(table.conceptNids, nid) < 0).sorted().distinct()
+					.toArray();
+			if (toRead.length == 0)
+			{
+				return 0;
+			}
+
+			final Queue<NidSctIdPairs> allPairs = new ConcurrentLinkedQueue<>();
+			final ThreadLocal<NidSctIdPairs> threadPairs = ThreadLocal.withInitial(() ->
+			{
+				NidSctIdPairs pairs = new NidSctIdPairs();
+				allPairs.add(pairs);
+				return pairs;
+			});
+
+			IntStream.of(toRead).parallel().forEach(cNid ->
+			{
+				ConceptChronicleBI cc;
+				try
+				{
+					cc = ExtendedAppContext.getDataStore().getConcept(cNid);
+				}
+				catch (IOException e)
+				{
+					// resolved on demand instead
+					LOG.error("Could not read concept for nid " + cNid, e);
+					return;
+				}
+				NidSctIdPairs pairs = threadPairs.get();
+				try
+				{
+					if (cc.getConceptAttributes() != null)
+					{
+						pairs.add(cc.getNid(), readSctId(cc.getConceptAttributes(), vc));
+					}
+					for (DescriptionChronicleBI desc : cc.getDescriptions())
+					{
+						pairs.add(desc.getNid(), readSctId(desc, vc));
+					}
+					for (RelationshipChronicleBI rel : cc.getRelationshipsOutgoing())
+					{
+						pairs.add(rel.getNid(), readSctId(rel, vc));
+					}
+				}
+				catch (IOException e)
+				{
+					LOG.error("Could not read the components of concept nid " + cNid, e);
+				}
+			});
+
+			//Sort (nid, position) keys, then lay the SCTIDs out in nid order, with those read before
+			int size = table.nids.length;
+			for (NidSctIdPairs pairs : allPairs)
+			{
+				size += pairs.size;
+			}
+			long[] keys = new long[size];
+			long[] sctIds = new long[size];
+			int i = 0;
+			for (int j = 0; j < table.nids.length; j++)
+			{
+				keys[i] = ((long) table.nids[j] << 32) | i;
+				sctIds[i++] = table.sctIds[j];
+			}
+			for (NidSctIdPairs pairs : allPairs)
+			{
+				for (int j = 0; j < pairs.size; j++)
+				{
+					keys[i] = ((long) pairs.nids[j] << 32) | i;
+					sctIds[i++] = pairs.sctIds[j];
+				}
+			}
+			Arrays.sort(keys);
+			int[] nids = new int[size];
+			long[] sortedSctIds = new long[size];
+			for (i = 0; i < size; i++)
+			{
+				nids[i] = (int) (keys[i] >> 32);
+				sortedSctIds[i] = sctIds[(int) keys[i]];
+			}
+			int[] warmedConceptNids = IntStream.concat(IntStream.of(table.conceptNids), IntStream.of(toRead)).sorted().toArray();
+
+			if (commits != ids.commits_)
+			{
+				LOG.info("Dropped the SCTIDs read, as a commit happened while they were read");
+				return 0;
+			}
+			ids.warmTable_ = new SctIdTable(warmedConceptNids, nids, sortedSctIds);
+			ids.sctIdCache_.clear();
+			ids.idStringCache_.clear();
+			int read = size - table.nids.length;
+			LOG.info("Read {} SCTIDs of {} concepts in {} ms", read, toRead.length, System.currentTimeMillis() - startTime);
+			return read;
+		}
+	}
+
+	/**
+	 * Drops the ids resolved on demand, e.g. after components have been given
+	 * SCTIDs.
+	 */
+	public void clear()
+	{
+		for (CoordinateIds ids : coordinates_.values())
+		{
+			ids.sctIdCache_.clear();
+			ids.idStringCache_.clear();
+		}
+	}
+
+	private CoordinateIds getIds(ViewCoordinate vc)
+	{
+		LastCoordinate last = last_;
+		if (last != null && last.vc_ == vc)
+		{
+			return last.ids_;
+		}
+		CoordinateKey key = new CoordinateKey(vc);
+		CoordinateIds ids = coordinates_.get(key);
+		if (ids == null)
+		{
+			if (coordinates_.size() >= MAX_COORDINATES)
+			{
+				coordinates_.clear();
+			}
+			ids = coordinates_.computeIfAbsent(key, k -> new CoordinateIds(k.time_ == Long.MAX_VALUE));
+		}
+		last_ = new LastCoordinate(vc, ids);
+		return ids;
+	}
+
+	private <T> void cache(ConcurrentHashMap<Integer, T> cache, int nid, T value)
+	{
+		startListening();
+		if (cache.size() >= CACHE_SIZE)
+		{
+			cache.clear();
+		}
+		cache.put(nid, value);
+	}
+
+	private void startListening()
+	{
+		if (listening_)
+		{
+			return;
+		}
+		// not in the constructor, which may run before the store is open
+		synchronized (this)
+		{
+			if (!listening_)
+			{
+				ExtendedAppContext.getDataStore().addPropertyChangeListener(CONCEPT_EVENT.POST_COMMIT, evt -> commitOccurred());
+				listening_ = true;
+			}
+		}
+	}
+
+	private void commitOccurred()
+	{
+		for (CoordinateIds ids : coordinates_.values())
+		{
+			if (ids.latest_)
+			{
+				// replaced rather than modified, as a warm may be reading it
+				ids.commits_++;
+				ids.warmTable_ = EMPTY_TABLE;
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * Reads the SCTID annotation of a component active on the view coordinate, or
+	 * the legacy SNOMED id for components loaded from older econcept files.
+	 */
+	private static long readSctId(ComponentBI component, ViewCoordinate vc)
+	{
+		try
+		{
+			if (component instanceof ConceptChronicleBI)
+			{
+				component = ((ConceptChronicleBI) component).getConceptAttributes();
+				if (component == null)
+				{
+					return NO_SCTID;
+				}
+			}
+			int snomedAssemblageNid = ConceptViewerHelper.getSnomedAssemblageNid();
+			for (RefexVersionBI<?> annotation : component.getAnnotationsActive(vc))
+			{
+				if (annotation.getAssemblageNid() == snomedAssemblageNid)
+				{
+					return ((RefexLongVersionBI<?>) annotation).getLong1();
+				}
+			}
+
+			// legacy representation of SCTID for use with older econcepts files
+			for (IdBI id : component.getAllIds())
+			{
+				if (id.getAuthorityNid() == TermAux.SNOMED_IDENTIFIER.getLenient().getNid())
+				{
+					return Long.parseLong(id.getDenotation().toString());
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			LOG.error("Could not access annotations for: " + component.getPrimordialUuid());
+		}
+		return NO_SCTID;
+	}
+
+	/**
+	 * Nids in ascending order, with their SCTIDs, and the concepts they were read from.
+	 */
+	private static class SctIdTable
+	{
+		final int[] conceptNids;
+		final int[] nids;
+		final long[] sctIds;
+
+		SctIdTable(int[] conceptNids, int[] nids, long[] sctIds)
+		{
+			this.conceptNids = conceptNids;
+			this.nids = nids;
+			this.sctIds = sctIds;
+		}
+	}
+
+	/**
+	 * The ids resolved for one view coordinate.
+	 */
+	private static class CoordinateIds
+	{
+		//As read by warm().  Replaced, never modified.
+		volatile SctIdTable warmTable_ = EMPTY_TABLE;
+		final ConcurrentHashMap<Integer, Long> sctIdCache_ = new ConcurrentHashMap<>();
+		final ConcurrentHashMap<Integer, String> idStringCache_ = new ConcurrentHashMap<>();
+		//Whether commits change what the coordinate sees
+		final boolean latest_;
+		//Bumped by each commit the coordinate sees, so a table read before the commit isn't kept after it
+		volatile int commits_ = 0;
+
+		CoordinateIds(boolean latest)
+		{
+			latest_ = latest;
+		}
+
+		long lookup(int nid)
+		{
+			SctIdTable table = warmTable_;
+			int index = Arrays.binarySearch(table.nids, nid);
+			return index < 0 ? NO_SCTID : table.sctIds[index];
+		}
+	}
+
+	/**
+	 * What identifies the ids of a view coordinate - the position, and the allowed status of the SCTID annotations.
+	 */
+	private static class CoordinateKey
+	{
+		private final int pathNid_;
+		private final long time_;
+		private final EnumSet<Status> allowedStatus_;
+
+		CoordinateKey(ViewCoordinate vc)
+		{
+			pathNid_ = vc.getViewPosition().getPath().getConceptNid();
+			time_ = vc.getViewPosition().getTime();
+			allowedStatus_ = EnumSet.copyOf(vc.getAllowedStatus());
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof CoordinateKey))
+			{
+				return false;
+			}
+			CoordinateKey other = (CoordinateKey) obj;
+			return pathNid_ == other.pathNid_ && time_ == other.time_ && allowedStatus_.equals(other.allowedStatus_);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(pathNid_, time_, allowedStatus_);
+		}
+	}
+
+	private static class LastCoordinate
+	{
+		final ViewCoordinate vc_;
+		final CoordinateIds ids_;
+
+		LastCoordinate(ViewCoordinate vc, CoordinateIds ids)
+		{
+			vc_ = vc;
+			ids_ = ids;
+		}
+	}
+
+	/**
+	 * Nid to SCTID pairs read by one thread during {@link IdentifierResolver#warm(int[], ViewCoordinate)}.
+	 */
+	private static class NidSctIdPairs
+	{
+		int[] nids = new int[1024];
+		long[] sctIds = new long[1024];
+		int size = 0;
+
+		void add(int nid, long sctId)
+		{
+			if (sctId == NO_SCTID)
+			{
+				return;
+			}
+			if (size == nids.length)
+			{
+				nids = Arrays.copyOf(nids, size * 2);
+				sctIds = Arrays.copyOf(sctIds, size * 2);
+			}
+			nids[size] = nid;
+			sctIds[size++] = sctId;
+		}
+	}
+}
@@ -20,7 +20,6 @@ package gov.va.isaac.util;
 
 import gov.va.isaac.AppContext;
 import gov.va.isaac.ExtendedAppContext;
-import gov.va.isaac.config.generated.StatedInferredOptions;
 import gov.va.isaac.config.profiles.UserProfile;
 import java.io.IOException;
 import java.text.Format;
@@ -49,8 +48,6 @@ import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
 import org.ihtsdo.otf.tcc.api.concept.ConceptVersionBI;
 import org.ihtsdo.otf.tcc.api.contradiction.ContradictionException;
 import org.ihtsdo.otf.tcc.api.coordinate.EditCoordinate;
-import org.ihtsdo.otf.tcc.api.coordinate.Position;
-import org.ihtsdo.otf.tcc.api.coordinate.StandardViewCoordinates;
 import org.ihtsdo.otf.tcc.api.coordinate.Status;
 import org.ihtsdo.otf.tcc.api.coordinate.ViewCoordinate;
 import org.ihtsdo.otf.tcc.api.description.DescriptionChronicleBI;
@@ -117,6 +114,9 @@ public class OTFUtility {
 	private static final Format format = new SimpleDateFormat("yyyy MM dd HH:mm:ss");
 
 	private static Set<UUID> rootNodeList = null;
+	
+	private static ViewCoordinateProvider viewCoordinateProvider = null;
+	private static ConceptDisplayTextCache displayTextCache = null;
 
 	public static TerminologyBuilderBI getBuilder() {
 		return new BdbTermBuilder(getEditCoordinate(), getViewCoordinateAllowInactive());
@@ -125,54 +125,31 @@ public class OTFUtility {
 		return new BdbTermBuilder(ec, vc);
 	}
 	
+	/**
+	 * Returns the view coordinate of the logged in user.  The instance may be shared - the coordinate pinned for a batch
+	 * operation - so it must not be modified; modify a {@link ViewCoordinateProvider#copy(ViewCoordinate)} instead.  See
+	 * {@link ViewCoordinateProvider} for how coordinates are cached, and how to pin one for a batch operation.
+	 */
 	public static ViewCoordinate getViewCoordinate() {
-		ViewCoordinate vc = null;
-		try {
-			UserProfile userProfile = ExtendedAppContext.getCurrentlyLoggedInUserProfile();
-			StatedInferredOptions policy = userProfile.getStatedInferredPolicy();
-			switch(policy) {
-			case STATED:
-				vc = StandardViewCoordinates.getSnomedStatedLatest();
-				break;
-			case INFERRED:
-				vc = StandardViewCoordinates.getSnomedInferredLatest();
-				break;
-			case INFERRED_THEN_STATED:
-				vc = StandardViewCoordinates.getSnomedInferredThenStatedLatest();
-				break;
-			default: // Should never happen unless a new policy has been coded
-				throw new RuntimeException("Unsupported StatedInferredOptions policy " + policy);
-			}
-
-			//LOG.info("Using {} policy for view coordinate", policy);
-
-			final UUID pathUuid = userProfile.getViewCoordinatePath();
-			final Long time = userProfile.getViewCoordinateTime();
-			final ConceptChronicleBI pathChronicle = dataStore.getConcept(pathUuid);
-			final int pathNid = pathChronicle.getNid();
-
-			// Start with standard view coordinate and override the path setting to
-			// use the preferred path
-			Position position = dataStore.newPosition(dataStore.getPath(pathNid), time);
-
-			vc.setViewPosition(position);
-
-			//LOG.info("Using ViewCoordinate policy={}, path nid={}, uuid={}, desc={}", policy, pathNid, pathUuid, OTFUtility.getDescription(pathChronicle));
-		} catch (NullPointerException e) {
-			LOG.error("View path UUID does not exist", e);
-		} catch (IOException e) {
-			LOG.error("Unexpected error fetching view coordinates!", e);
-		}
-
-		return vc;
+		return getViewCoordinateProvider().getViewCoordinate(false);
 	}
 	
+	/**
+	 * As {@link #getViewCoordinate()}, but allowing inactive as well as active components.
+	 */
 	public static ViewCoordinate getViewCoordinateAllowInactive() 
 	{
-		ViewCoordinate vc = getViewCoordinate();
-		vc.getAllowedStatus().add(Status.INACTIVE);
-		vc.getAllowedStatus().add(Status.ACTIVE);
-		return vc;
+		return getViewCoordinateProvider().getViewCoordinate(true);
+	}
+
+	/**
+	 * @return the provider of the logged in user's view coordinates
+	 */
+	public static ViewCoordinateProvider getViewCoordinateProvider() {
+		if (viewCoordinateProvider == null) {
+			viewCoordinateProvider = AppContext.getService(ViewCoordinateProvider.class);
+		}
+		return viewCoordinateProvider;
 	}
 
 	public static EditCoordinate getEditCoordinate() {
@@ -217,8 +194,13 @@ public class OTFUtility {
 
 	public static String getDescription(UUID uuid) {
 		try {
+			String cached = getDisplayTextCache().get(dataStore.getNidForUuids(uuid));
+			if (cached != null) {
+				return cached;
+			}
+			int generation = getDisplayTextCache().getGeneration();
 			ConceptVersionBI conceptVersion = dataStore.getConceptVersion(getViewCoordinate(), uuid);
-			return getDescription(conceptVersion);
+			return getDescription(conceptVersion, generation);
 		} catch (Exception ex) {
 			LOG.warn("Unexpected error looking up description", ex);
 			return null;
@@ -236,12 +218,17 @@ public class OTFUtility {
 	
 	public static String getDescription(int nid) {
 		try {
+			String cached = getDisplayTextCache().get(nid);
+			if (cached != null) {
+				return cached;
+			}
+			int generation = getDisplayTextCache().getGeneration();
 			if (!dataStore.hasConcept(nid))
 			{
 				return null;
 			}
 			ConceptVersionBI conceptVersion = dataStore.getConceptVersion(getViewCoordinate(), nid);
-			return getDescription(conceptVersion);
+			return getDescription(conceptVersion, generation);
 		} catch (Exception ex) {
 			LOG.warn("Unexpected error looking up description", ex);
 			return null;
@@ -251,10 +238,31 @@ public class OTFUtility {
 	/**
 	 * Note, this method isn't smart enough to work with multiple versions properly....
 	 * assumes you only pass in a concept with current values.
+	 * 
+	 * The text of committed concepts is kept in the {@link ConceptDisplayTextCache}.
 	 */
 	public static String getDescription(ConceptChronicleBI concept) {
-		String fsn = null;
-		String preferred = null;
+		return getDescription(concept, getDisplayTextCache().getGeneration());
+	}
+	
+	/**
+	 * @param generation the {@link ConceptDisplayTextCache#getGeneration()} read before the concept was read
+	 */
+	private static String getDescription(ConceptChronicleBI concept, int generation) {
+		ConceptDisplayTextCache cache = getDisplayTextCache();
+		boolean cacheable = !concept.isUncommitted();
+		if (cacheable) {
+			String cached = cache.get(concept.getNid());
+			if (cached != null) {
+				return cached;
+			}
+		}
+		
+		// Work out the text for both display FSN settings in one pass
+		String firstFsn = null;
+		String lastFsn = null;
+		String firstPreferred = null;
+		String lastPreferred = null;
 		String bestFound = null;
 		try {
 			if (concept.getDescriptions() != null) {
@@ -265,23 +273,20 @@ public class OTFUtility {
 
 					if (descVer.getTypeNid() == getFSNNid() || descVer.getTypeNid() == getFsnRf1Nid()) {
 						if (descVer.getStatus() == Status.ACTIVE) {
-							if (ExtendedAppContext.getCurrentlyLoggedInUserProfile().getDisplayFSN()) {
-								return descVer.getText();
-							} else {
-								fsn = descVer.getText();
+							if (firstFsn == null) {
+								firstFsn = descVer.getText();
 							}
-
+							lastFsn = descVer.getText();
 						} else {
 							bestFound = descVer.getText();
 						}
 					} else if ((descVer.getTypeNid() == getSynonymTypeNid() || descVer.getTypeNid() == getSynonymRf1TypeNid()) && 
 							isPreferred(descVer.getAnnotations())) {
 						if (descVer.getStatus() == Status.ACTIVE) {
-							if (!ExtendedAppContext.getCurrentlyLoggedInUserProfile().getDisplayFSN()) {
-								return descVer.getText();
-							} else {
-								preferred = descVer.getText();
+							if (firstPreferred == null) {
+								firstPreferred = descVer.getText();
 							}
+							lastPreferred = descVer.getText();
 						} else {
 							bestFound = descVer.getText();
 						}
@@ -290,12 +295,28 @@ public class OTFUtility {
 			}
 		} catch (IOException e) {
 			// noop
+			cacheable = false;
 		}
-		// If we get here, we didn't find what they were looking for. Pick
-		// something....
-		return (fsn != null ? fsn : (preferred != null ? preferred
-				: (bestFound != null ? bestFound : concept.toUserString())));
+		// If we didn't find what they were looking for, pick something....
+		String fallback = (bestFound != null ? bestFound : concept.toUserString());
+		String fsnFirst = (firstFsn != null ? firstFsn : (lastPreferred != null ? lastPreferred : fallback));
+		String preferredFirst = (firstPreferred != null ? firstPreferred : (lastFsn != null ? lastFsn : fallback));
+		if (cacheable) {
+			cache.put(concept.getNid(), fsnFirst, preferredFirst, generation);
+		}
+		return (cache.isDisplayFSN() ? fsnFirst : preferredFirst);
 	}
+	
+	/**
+	 * @return the cache of concept display text used by the getDescription methods
+	 */
+	public static ConceptDisplayTextCache getDisplayTextCache() {
+		if (displayTextCache == null) {
+			displayTextCache = AppContext.getService(ConceptDisplayTextCache.class);
+		}
+		return displayTextCache;
+	}
+	
 	public static String getFullySpecifiedName(ConceptChronicleBI concept) {
 		try {
 			if (concept.getDescriptions() != null) {
@@ -740,9 +761,7 @@ public class OTFUtility {
 			RefexChronicleBI<?> refexChron = (RefexChronicleBI<?>) dataStore.getComponent(nid);
 
 			if (refexChron != null) {
-				ViewCoordinate tempVc = getViewCoordinate();
-				tempVc.getAllowedStatus().add(Status.INACTIVE);
-				RefexVersionBI<?> refexChronVersion = refexChron.getVersion(tempVc);
+				RefexVersionBI<?> refexChronVersion = refexChron.getVersion(getViewCoordinateAllowInactive());
 				
 				return refexChronVersion;
 			}
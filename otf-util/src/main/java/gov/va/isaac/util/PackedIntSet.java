@@ -0,0 +1,183 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * {@link PackedIntSet}
+ *
+ * A set of ints kept sorted, as the variable length encoded gaps between them - a set of nids, which are
+ * mostly close together, takes one or two bytes per member rather than the four of an int[], or the twenty
+ * plus of a Set&lt;Integer&gt;.
+ *
+ * Adding a value larger than any in the set (the usual case, for newly created components) is an append.
+ * Anything else re-encodes the set.  Reads decode the whole set, so this suits sets which are read whole.
+ * Thread safe.
+ */
+public class PackedIntSet
+{
+	private byte[] bytes_;
+	private int length_ = 0;
+	private int size_ = 0;
+	private int last_ = Integer.MIN_VALUE;
+
+	public PackedIntSet()
+	{
+		bytes_ = new byte[16];
+	}
+
+	/**
+	 * @param values the values, which may be unsorted and contain duplicates
+	 */
+	public static PackedIntSet of(int[] values)
+	{
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		PackedIntSet set = new PackedIntSet();
+		set.bytes_ = new byte[Math.max(16, sorted.length * 2)];
+		for (int i = 0; i < sorted.length; i++)
+		{
+			if (i == 0 || sorted[i] != sorted[i - 1])
+			{
+				set.append(sorted[i]);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * @return true if the value was added, false if it was already present
+	 */
+	public synchronized boolean add(int value)
+	{
+		if (size_ == 0 || value > last_)
+		{
+			append(value);
+			return true;
+		}
+		int[] values = toArray();
+		int position = Arrays.binarySearch(values, value);
+		if (position >= 0)
+		{
+			return false;
+		}
+		position = -position - 1;
+		length_ = 0;
+		size_ = 0;
+		for (int i = 0; i < position; i++)
+		{
+			append(values[i]);
+		}
+		append(value);
+		for (int i = position; i < values.length; i++)
+		{
+			append(values[i]);
+		}
+		return true;
+	}
+
+	public synchronized boolean contains(int value)
+	{
+		if (size_ == 0 || value > last_)
+		{
+			return false;
+		}
+		return Arrays.binarySearch(toArray(), value) >= 0;
+	}
+
+	public synchronized int size()
+	{
+		return size_;
+	}
+
+	/**
+	 * @return the encoded size, in bytes
+	 */
+	public synchronized int getPackedSize()
+	{
+		return length_;
+	}
+
+	/**
+	 * @return the values, in ascending order
+	 */
+	public synchronized int[] toArray()
+	{
+		int[] values = new int[size_];
+		long previous = Integer.MIN_VALUE;
+		int position = 0;
+		for (int i = 0; i < size_; i++)
+		{
+			long gap = 0;
+			int shift = 0;
+			byte b;
+			do
+			{
+				b = bytes_[position++];
+				gap |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+			previous += gap;
+			values[i] = (int) previous;
+		}
+		return values;
+	}
+
+	public synchronized void write(DataOutput out) throws IOException
+	{
+		out.writeInt(size_);
+		out.writeInt(last_);
+		out.writeInt(length_);
+		out.write(bytes_, 0, length_);
+	}
+
+	public static PackedIntSet read(DataInput in) throws IOException
+	{
+		PackedIntSet set = new PackedIntSet();
+		set.size_ = in.readInt();
+		set.last_ = in.readInt();
+		set.length_ = in.readInt();
+		set.bytes_ = new byte[Math.max(16, set.length_)];
+		in.readFully(set.bytes_, 0, set.length_);
+		return set;
+	}
+
+	private void append(int value)
+	{
+		// The first gap is from Integer.MIN_VALUE, so the gaps are never negative
+		long gap = (long) value - (size_ == 0 ? Integer.MIN_VALUE : last_);
+		if (length_ + 5 > bytes_.length)
+		{
+			bytes_ = Arrays.copyOf(bytes_, Math.max(bytes_.length * 2, length_ + 5));
+		}
+		while (gap > 0x7F)
+		{
+			bytes_[length_++] = (byte) ((gap & 0x7F) | 0x80);
+			gap >>>= 7;
+		}
+		bytes_[length_++] = (byte) gap;
+		last_ = value;
+		size_++;
+	}
+}
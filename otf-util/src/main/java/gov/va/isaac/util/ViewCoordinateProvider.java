@@ -0,0 +1,373 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.isaac.util;
+
+import gov.va.isaac.ExtendedAppContext;
+import gov.va.isaac.config.generated.StatedInferredOptions;
+import gov.va.isaac.config.profiles.UserProfile;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Singleton;
+import org.ihtsdo.otf.tcc.api.concept.ConceptChronicleBI;
+import org.ihtsdo.otf.tcc.api.coordinate.Position;
+import org.ihtsdo.otf.tcc.api.coordinate.StandardViewCoordinates;
+import org.ihtsdo.otf.tcc.api.coordinate.Status;
+import org.ihtsdo.otf.tcc.api.coordinate.ViewCoordinate;
+import org.ihtsdo.otf.tcc.api.metadata.binding.TermAux;
+import org.ihtsdo.otf.tcc.api.nid.NativeIdSetBI;
+import org.ihtsdo.otf.tcc.api.store.TerminologyDI.CONCEPT_EVENT;
+import org.ihtsdo.otf.tcc.datastore.BdbTerminologyStore;
+import org.jvnet.hk2.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ViewCoordinateProvider}
+ *
+ * Builds the view coordinates of the logged in user, as returned by {@link OTFUtility#getViewCoordinate()}.
+ *
+ * Building a coordinate reads the path and its origins from the store, so each one is built once per
+ * (policy, path, time, allow inactive) and kept.  Callers get a copy of the kept coordinate - but on a
+ * thread with a pinned coordinate (see below) they get the pinned instance itself, so a caller must not
+ * modify the coordinate it is handed.  To change one, modify a {@link #copy(ViewCoordinate)} of it.
+ * The current coordinates are dropped when the user profile changes, and all of them when a path is
+ * committed.
+ *
+ * A batch operation may {@link #pin(boolean)} the current coordinate for its thread - until the pin
+ * is closed, the thread gets that one instance back rather than a copy, so it must not be modified.
+ */
+@Service
+@Singleton
+public class ViewCoordinateProvider implements PropertyChangeListener
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ViewCoordinateProvider.class);
+
+	private final ConcurrentHashMap<Key, ViewCoordinate> coordinates_ = new ConcurrentHashMap<>();
+	private final Set<Integer> pathNids_ = ConcurrentHashMap.newKeySet();
+
+	//The coordinates for the current profile, [active only, allow inactive].  Replaced, never modified.
+	private volatile Entry[] current_ = new Entry[2];
+	//Bumped by invalidate(), so a coordinate built before an invalidation isn't made current after it
+	private volatile int generation_ = 0;
+
+	private final ThreadLocal<ViewCoordinate[]> pinned_ = ThreadLocal.withInitial(() -> new ViewCoordinate[2]);
+
+	private boolean listening_ = false;
+
+	private ViewCoordinateProvider()
+	{
+		// created by HK2
+	}
+
+	/**
+	 * Returns a copy of the current coordinate, or the pinned coordinate if the calling thread has one.  As the
+	 * latter is shared, the result must not be modified - see {@link #copy(ViewCoordinate)}.
+	 *
+	 * @param allowInactive true to allow inactive as well as active components
+	 * @return the view coordinate
+	 */
+	public ViewCoordinate getViewCoordinate(boolean allowInactive)
+	{
+		int index = allowInactive ? 1 : 0;
+		ViewCoordinate pinned = pinned_.get()[index];
+		if (pinned != null)
+		{
+			return pinned;
+		}
+		return copy(getCurrent(index));
+	}
+
+	/**
+	 * Pins the current coordinate for the calling thread, for use as:
+	 * <pre>
+	 * try (ViewCoordinateProvider.Pin pin = provider.pin(false))
+	 * {
+	 *     ... OTFUtility.getViewCoordinate() returns pin.getViewCoordinate()
+	 * }
+	 * </pre>
+	 * Pins nest, closing one restores the coordinate pinned before it.  Work handed to other threads
+	 * should be passed {@link Pin#getViewCoordinate()} explicitly.
+	 *
+	 * @param allowInactive true to pin the coordinate that allows inactive components
+	 * @return the pin, to close when the batch is done
+	 */
+	public Pin pin(boolean allowInactive)
+	{
+		int index = allowInactive ? 1 : 0;
+		ViewCoordinate[] pinned = pinned_.get();
+		Pin pin = new Pin(index, pinned[index], pinned[index] == null ? copy(getCurrent(index)) : pinned[index]);
+		pinned[index] = pin.vc_;
+		return pin;
+	}
+
+	/**
+	 * Drops all coordinates, so they are rebuilt on next use.
+	 */
+	public synchronized void invalidate()
+	{
+		generation_++;
+		coordinates_.clear();
+		pathNids_.clear();
+		current_ = new Entry[2];
+	}
+
+	/**
+	 * Called by {@link gov.va.isaac.config.profiles.UserProfileBindings} when the logged in user profile
+	 * is updated.  Drops the current coordinates if the profile now asks for others.
+	 *
+	 * @param userProfile the updated profile
+	 */
+	public synchronized void userProfileChanged(UserProfile userProfile)
+	{
+		Entry[] current = current_;
+		for (int i = 0; i < current.length; i++)
+		{
+			if (current[i] != null && !current[i].key_.equals(new Key(userProfile, i == 1)))
+			{
+				current_ = new Entry[2];
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Drops all coordinates when a commit touches the paths.
+	 *
+	 * @see java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent)
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent evt)
+	{
+		if (!CONCEPT_EVENT.POST_COMMIT.name().equals(evt.getPropertyName()) || !(evt.getNewValue() instanceof NativeIdSetBI))
+		{
+			return;
+		}
+		try
+		{
+			int pathRefsetNid = TermAux.PATH_REFSET.getLenient().getNid();
+			for (int nid : ((NativeIdSetBI) evt.getNewValue()).getSetValues())
+			{
+				if (nid == pathRefsetNid || pathNids_.contains(nid))
+				{
+					LOG.debug("Path commit, dropping cached view coordinates");
+					invalidate();
+					return;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			LOG.warn("Unable to check commit for path changes, dropping cached view coordinates", e);
+			invalidate();
+		}
+	}
+
+	private ViewCoordinate getCurrent(int index)
+	{
+		Entry entry = current_[index];
+		if (entry != null)
+		{
+			return entry.vc_;
+		}
+		UserProfile userProfile = ExtendedAppContext.getCurrentlyLoggedInUserProfile();
+		if (userProfile == null)
+		{
+			LOG.error("No user logged in, cannot build a view coordinate");
+			return null;
+		}
+		int generation = generation_;
+		Key key = new Key(userProfile, index == 1);
+		ViewCoordinate vc = coordinates_.get(key);
+		if (vc == null)
+		{
+			vc = build(key);
+			if (vc == null)
+			{
+				return null;
+			}
+		}
+		synchronized (this)
+		{
+			if (generation == generation_)
+			{
+				Entry[] replacement = current_.clone();
+				replacement[index] = new Entry(key, vc);
+				current_ = replacement;
+				coordinates_.put(key, vc);
+			}
+		}
+		return vc;
+	}
+
+	private ViewCoordinate build(Key key)
+	{
+		ViewCoordinate vc;
+		try
+		{
+			switch(key.policy_)
+			{
+				case STATED:
+					vc = StandardViewCoordinates.getSnomedStatedLatest();
+					break;
+				case INFERRED:
+					vc = StandardViewCoordinates.getSnomedInferredLatest();
+					break;
+				case INFERRED_THEN_STATED:
+					vc = StandardViewCoordinates.getSnomedInferredThenStatedLatest();
+					break;
+				default: // Should never happen unless a new policy has been coded
+					throw new RuntimeException("Unsupported StatedInferredOptions policy " + key.policy_);
+			}
+
+			BdbTerminologyStore dataStore = ExtendedAppContext.getDataStore();
+			synchronized (this)
+			{
+				// not in the constructor, which may run before the store is open
+				if (!listening_)
+				{
+					dataStore.addPropertyChangeListener(CONCEPT_EVENT.POST_COMMIT, this);
+					listening_ = true;
+				}
+			}
+			final ConceptChronicleBI pathChronicle = dataStore.getConcept(key.pathUuid_);
+			final int pathNid = pathChronicle.getNid();
+
+			// Start with standard view coordinate and override the path setting to
+			// use the preferred path
+			Position position = dataStore.newPosition(dataStore.getPath(pathNid), key.time_);
+
+			vc.setViewPosition(position);
+			if (key.allowInactive_)
+			{
+				vc.getAllowedStatus().add(Status.INACTIVE);
+				vc.getAllowedStatus().add(Status.ACTIVE);
+			}
+			pathNids_.add(pathNid);
+			return vc;
+		}
+		catch (NullPointerException e)
+		{
+			LOG.error("View path UUID does not exist", e);
+		}
+		catch (IOException e)
+		{
+			LOG.error("Unexpected error fetching view coordinates!", e);
+		}
+		return null;
+	}
+
+	/**
+	 * @param vc the coordinate to copy, may be null
+	 * @return a copy of the coordinate, which the caller is free to modify
+	 */
+	public static ViewCoordinate copy(ViewCoordinate vc)
+	{
+		if (vc == null)
+		{
+			return null;
+		}
+		ViewCoordinate copy = new ViewCoordinate(vc.getVcUuid(), vc.getName(), vc);
+		//don't share the status set with the cached coordinate
+		copy.setAllowedStatus(EnumSet.copyOf(vc.getAllowedStatus()));
+		return copy;
+	}
+
+	/**
+	 * A coordinate pinned for the thread that created it.  Close from the same thread.
+	 */
+	public class Pin implements AutoCloseable
+	{
+		private final int index_;
+		private final ViewCoordinate previous_;
+		private final ViewCoordinate vc_;
+
+		private Pin(int index, ViewCoordinate previous, ViewCoordinate vc)
+		{
+			index_ = index;
+			previous_ = previous;
+			vc_ = vc;
+		}
+
+		/**
+		 * @return the pinned coordinate - must not be modified
+		 */
+		public ViewCoordinate getViewCoordinate()
+		{
+			return vc_;
+		}
+
+		@Override
+		public void close()
+		{
+			pinned_.get()[index_] = previous_;
+		}
+	}
+
+	private static class Entry
+	{
+		final Key key_;
+		final ViewCoordinate vc_;
+
+		Entry(Key key, ViewCoordinate vc)
+		{
+			key_ = key;
+			vc_ = vc;
+		}
+	}
+
+	private static class Key
+	{
+		final StatedInferredOptions policy_;
+		final UUID pathUuid_;
+		final long time_;
+		final boolean allowInactive_;
+
+		Key(UserProfile userProfile, boolean allowInactive)
+		{
+			policy_ = userProfile.getStatedInferredPolicy();
+			pathUuid_ = userProfile.getViewCoordinatePath();
+			time_ = userProfile.getViewCoordinateTime();
+			allowInactive_ = allowInactive;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return policy_ == other.policy_ && Objects.equals(pathUuid_, other.pathUuid_) && time_ == other.time_
+					&& allowInactive_ == other.allowInactive_;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(policy_, pathUuid_, time_, allowInactive_);
+		}
+	}
+}
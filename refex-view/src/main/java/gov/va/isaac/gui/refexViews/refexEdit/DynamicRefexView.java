@@ -31,7 +31,7 @@ import gov.va.isaac.gui.util.Images;
 import gov.va.isaac.gui.util.TableHeaderRowTooltipInstaller;
 import gov.va.isaac.interfaces.gui.views.commonFunctionality.RefexViewI;
 import gov.va.isaac.interfaces.utility.DialogResponse;
-import gov.va.isaac.refexDynamic.RefexAnnotationSearcher;
+import gov.va.isaac.refexDynamic.AnnotationAssemblageIndex;
 import gov.va.isaac.util.OTFUtility;
 import gov.va.isaac.util.UpdateableBooleanBinding;
 import gov.va.isaac.util.Utility;
@@ -137,7 +137,7 @@ public class DynamicRefexView implements RefexViewI
 	private Text placeholderText = new Text("No Dynamic Sememes were found associated with the component");
 	private Button backgroundSearchCancelButton_;
 	private ProgressBar progressBar_;
-	private RefexAnnotationSearcher processor_;
+	private AnnotationAssemblageIndex annotationIndex_ = AppContext.getService(AnnotationAssemblageIndex.class);
 	
 	private Button clearColumnHeaderNodesButton_ = new Button("Clear Filters");
 	
@@ -595,11 +595,7 @@ public class DynamicRefexView implements RefexViewI
 			backgroundSearchCancelButton_ = new Button("Cancel Scan");
 			backgroundSearchCancelButton_.setOnAction((action) ->
 			{
-				RefexAnnotationSearcher processor = processor_;
-				if (processor != null)
-				{
-					processor.requestStop();
-				}
+				annotationIndex_.requestStop();
 			});
 			
 			rootNode_.getChildren().add(t);
@@ -1630,6 +1626,13 @@ public class DynamicRefexView implements RefexViewI
 					refexMembers.add((RefexDynamicChronicleBI<?>)ExtendedAppContext.getDataStore().getComponent(sr.getNid()));
 				}
 			}
+			else if (annotationIndex_.isReady() || annotationIndex_.load())
+			{
+				for (int nid : annotationIndex_.getMembers(assemblageConceptFull.getConceptNid()))
+				{
+					refexMembers.add((RefexDynamicChronicleBI<?>)ExtendedAppContext.getDataStore().getComponent(nid));
+				}
+			}
 			else
 			{
 				Platform.runLater(() ->
@@ -1638,7 +1641,7 @@ public class DynamicRefexView implements RefexViewI
 					{
 						YesNoDialog dialog = new YesNoDialog(rootNode_.getScene().getWindow());
 						dr_ = dialog.showYesNoDialog("Scan for Annotation Sememe entries?", "This is an annotation style Sememe with no index."
-								+ "  Without a supporting index, displaying the sememe entries will take a long time.  Scan for entries?");
+								+ "  Building the annotation index requires a scan of the entire database, which will take a long time.  Scan for entries?");
 						if (dr_ == DialogResponse.NO)
 						{
 							placeholderText.setText("No index is available to fetch the entries");
@@ -1656,40 +1659,27 @@ public class DynamicRefexView implements RefexViewI
 					}
 				});
 
-				while (dr_ == null)
+				synchronized (dialogThreadBlock_)
 				{
 					//wait until they click yes, no, or close the dialog
-					//sync block will block us until they answer
-					synchronized (dialogThreadBlock_)
-					{
-						if (dr_ != null)
-						{
-							break;
-						}
-					}
-					if (dr_ == null)
+					while (dr_ == null)
 					{
-						//Means that our thread got here before the other thread started and acquired the
-						//sync lock.  sleep, try to acquire the lock again - at which point, we will block 
-						//until the dialog is closed.
-						Thread.sleep(50);
+						dialogThreadBlock_.wait();
 					}
 				}
 				
 				if (dr_ == DialogResponse.YES)
 				{
-					processor_ = new RefexAnnotationSearcher((refex) -> 
+					try
 					{
-						if (refex.getAssemblageNid() == assemblageConceptFull.getConceptNid())
+						//One scan builds the index for every annotation style sememe, so this is only ever asked once
+						if (annotationIndex_.build(progressBar_))
 						{
-							return true;
+							for (int nid : annotationIndex_.getMembers(assemblageConceptFull.getConceptNid()))
+							{
+								refexMembers.add((RefexDynamicChronicleBI<?>)ExtendedAppContext.getDataStore().getComponent(nid));
+							}
 						}
-						return false;
-					}, progressBar_);
-
-					try
-					{
-						ExtendedAppContext.getDataStore().iterateConceptDataInParallel(processor_);
 					}
 					catch (Exception e)
 					{
@@ -1697,8 +1687,6 @@ public class DynamicRefexView implements RefexViewI
 						AppContext.getCommonDialogs().showErrorDialog("Error", "There was an unexpected error scanning the database", e.getMessage(), 
 								(rootNode_.getScene() == null ? null : rootNode_.getScene().getWindow()));
 					}
-					
-					refexMembers.addAll(processor_.getResults());
 				}
 				else
 				{
@@ -33,6 +33,7 @@ import gov.va.isaac.interfaces.sync.MergeFailOption;
 import gov.va.isaac.interfaces.sync.MergeFailure;
 import gov.va.isaac.interfaces.sync.ProfileSyncI;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -190,7 +191,7 @@ public class SyncView implements PopupViewI, IsaacViewWithMenusI
 			summary_.setText("");
 			pb_.setProgress(-1.0);
 			running_.set(true);
-			Utility.execute(() -> sync());
+			Utility.execute(WorkPool.IO, () -> sync());
 		});
 		buttons.getChildren().add(action);
 		
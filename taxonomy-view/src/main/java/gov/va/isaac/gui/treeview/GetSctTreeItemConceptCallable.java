@@ -21,7 +21,6 @@ package gov.va.isaac.gui.treeview;
 import gov.va.isaac.ExtendedAppContext;
 import gov.va.isaac.util.OTFUtility;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import javafx.application.Platform;
@@ -139,13 +138,24 @@ public class GetSctTreeItemConceptCallable extends Task<Boolean> {
                         }
                     }
                 }
-                Collections.sort(childrenToAdd);
+                if (!SctTreeItem.sortChildren(treeItem, childrenToAdd)) {
+                    return false;
+                }
+            }
+            
+            if (SctTreeView.wasGlobalShutdownRequested() || treeItem.isCancelRequested()) {
+                return false;
             }
             
             CountDownLatch temp = new CountDownLatch(1);
     
             Platform.runLater(() -> 
             {
+                if (SctTreeView.wasGlobalShutdownRequested() || treeItem.isCancelRequested()) {
+                    //cancelled while waiting for the FX thread - leave the children as they are
+                    temp.countDown();
+                    return;
+                }
                 TaxonomyReferenceWithConcept itemValue = treeItem.getValue();
 
                 treeItem.setValue(null);
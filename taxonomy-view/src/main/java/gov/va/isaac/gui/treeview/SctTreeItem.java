@@ -22,13 +22,16 @@ import gov.va.isaac.constants.ISAAC;
 import gov.va.isaac.interfaces.gui.views.commonFunctionality.taxonomyView.SctTreeItemDisplayPolicies;
 import gov.va.isaac.interfaces.gui.views.commonFunctionality.taxonomyView.SctTreeItemI;
 import gov.va.isaac.util.OTFUtility;
+import gov.va.isaac.util.PoolExecutor.Priority;
 import gov.va.isaac.util.Utility;
+import gov.va.isaac.util.WorkPool;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
 import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -53,6 +56,11 @@ class SctTreeItem extends TreeItem<TaxonomyReferenceWithConcept> implements SctT
 
     private static final Logger LOG = LoggerFactory.getLogger(SctTreeItem.class);
 
+    // Sort keys are resolved in parallel, this many items per task
+    private static final int SORT_KEY_BATCH_SIZE = 64;
+    // In progressive expansion, children are shown this many at a time
+    static final int PROGRESSIVE_PAGE_SIZE = 256;
+
     private final List<SctTreeItem> extraParents = new ArrayList<>();
     private CountDownLatch childrenLoadedLatch = new CountDownLatch(1);
     private DoubleProperty childLoadPercentComplete = new SimpleDoubleProperty(-1.0);
@@ -62,6 +70,7 @@ class SctTreeItem extends TreeItem<TaxonomyReferenceWithConcept> implements SctT
     private int multiParentDepth = 0;
     private boolean secondaryParentOpened = false;
     private SctTreeItemDisplayPolicies displayPolicies;
+    private volatile String sortKey;
 
     private static TreeItem<TaxonomyReferenceWithConcept> getTreeRoot(TreeItem<TaxonomyReferenceWithConcept> item) {
         TreeItem<TaxonomyReferenceWithConcept> parent = item.getParent();
@@ -118,22 +127,22 @@ class SctTreeItem extends TreeItem<TaxonomyReferenceWithConcept> implements SctT
                 }
             }
 
-            Collections.sort(childrenToProcess);
-            if (cancelLookup) {
+            if (!sortChildren(this, childrenToProcess) || cancelLookup) {
                 return;
             }
             
             Platform.runLater(() ->
             {
-                getChildren().addAll(childrenToProcess);
+                //replaces any pages shown during the sort
+                getChildren().setAll(childrenToProcess);
                 childLoadComplete();
             });
             
 
-            //This loads the childrens children
+            //This loads the childrens children, behind anything the user is waiting on
+            TreeItem<TaxonomyReferenceWithConcept> root = getTreeRoot(this);
             for (SctTreeItem child : childrenToProcess) {
-                //TODO switch this to the blocking queue
-                Utility.execute(new GetSctTreeItemConceptCallable(child));
+                Utility.execute(WorkPool.INTERACTIVE, Priority.LOW, root, new GetSctTreeItemConceptCallable(child));
             }
         }
     }
@@ -182,14 +191,17 @@ class SctTreeItem extends TreeItem<TaxonomyReferenceWithConcept> implements SctT
                                 }
                             }
 
-                            Collections.sort(grandChildrenToAdd);
+                            boolean sorted = sortChildren((SctTreeItem) child, grandChildrenToAdd);
                             if (cancelLookup) {
                                 return;
                             }
+                            if (!sorted) {
+                                continue;
+                            }
                             
                             Platform.runLater(() ->
                             {
-                                child.getChildren().addAll(grandChildrenToAdd);
+                                child.getChildren().setAll(grandChildrenToAdd);
                                 ((SctTreeItem)child).childLoadComplete();
                             });
                         }
@@ -205,17 +217,80 @@ class SctTreeItem extends TreeItem<TaxonomyReferenceWithConcept> implements SctT
                 return;
             }
 
-            //This loads the childrens children
+            //This loads the childrens children, behind anything the user is waiting on
+            TreeItem<TaxonomyReferenceWithConcept> root = getTreeRoot(this);
             for (SctTreeItem childsChild : grandChildrenToProcess) {
-                //TODO switch this to the blocking queue
-                Utility.execute(new GetSctTreeItemConceptCallable(childsChild));
+                Utility.execute(WorkPool.INTERACTIVE, Priority.LOW, root, new GetSctTreeItemConceptCallable(childsChild));
             }
         }
     }
 
     @Override
     public int compareTo(SctTreeItem o) {
-        return this.toString().compareTo(o.toString());
+        return this.getSortKey().compareTo(o.getSortKey());
+    }
+
+    /**
+     * The text this item sorts by - its {@link #toString()}, looked up once and kept.
+     */
+    String getSortKey() {
+        String key = sortKey;
+        if (key == null) {
+            key = toString();
+            sortKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Sorts the children of a parent, resolving their sort keys in parallel first, so the sort itself
+     * never goes to the store.  Call from a background thread.
+     * 
+     * In progressive expansion mode, the children of an expanded parent with more than a page of them
+     * are resolved a page at a time, and the children sorted so far are shown after each page - so the
+     * node opens straight away and fills in.  The caller must still set the complete list afterwards.
+     * 
+     * @return false if the lookup of the parent was cancelled - the children are then only partly sorted,
+     * and must not be shown
+     */
+    static boolean sortChildren(SctTreeItem parent, List<SctTreeItem> children) {
+        if (!SctTreeView.isProgressiveExpansion() || children.size() <= PROGRESSIVE_PAGE_SIZE || !parent.isExpanded()) {
+            resolveSortKeys(children);
+            Collections.sort(children);
+            return !parent.isCancelRequested() && !SctTreeView.wasGlobalShutdownRequested();
+        }
+        for (int end = PROGRESSIVE_PAGE_SIZE; end - PROGRESSIVE_PAGE_SIZE < children.size(); end += PROGRESSIVE_PAGE_SIZE) {
+            if (parent.isCancelRequested() || SctTreeView.wasGlobalShutdownRequested()) {
+                return false;
+            }
+            int pageEnd = Math.min(end, children.size());
+            resolveSortKeys(children.subList(end - PROGRESSIVE_PAGE_SIZE, pageEnd));
+            List<SctTreeItem> sorted = children.subList(0, pageEnd);
+            Collections.sort(sorted);
+            if (pageEnd < children.size()) {
+                ArrayList<SctTreeItem> page = new ArrayList<>(sorted);
+                Platform.runLater(() ->
+                {
+                    if (!parent.isCancelRequested()) {
+                        parent.getChildren().setAll(page);
+                    }
+                });
+            }
+        }
+        return !parent.isCancelRequested() && !SctTreeView.wasGlobalShutdownRequested();
+    }
+
+    private static void resolveSortKeys(List<SctTreeItem> items) {
+        // read the display text of the concepts not in the display text cache in one go, rather than one per sort key
+        OTFUtility.getDisplayTextCache().preload(items.stream().mapToInt(item -> getDescribedNid(item)).filter(nid -> nid != 0).toArray());
+        int batches = (items.size() + SORT_KEY_BATCH_SIZE - 1) / SORT_KEY_BATCH_SIZE;
+        IntStream.range(0, batches).parallel().forEach(batch ->
+        {
+            int end = Math.min(items.size(), (batch + 1) * SORT_KEY_BATCH_SIZE);
+            for (int i = batch * SORT_KEY_BATCH_SIZE; i < end; i++) {
+                items.get(i).getSortKey();
+            }
+        });
     }
 
     public UUID getConceptUuid() {
@@ -276,13 +351,30 @@ class SctTreeItem extends TreeItem<TaxonomyReferenceWithConcept> implements SctT
 
     /**
      * @see javafx.scene.control.TreeItem#toString()
-     * WARNING: toString is currently used in compareTo()
+     * WARNING: toString is currently used in compareTo(), through getSortKey()
      */
     @Override
     public String toString() {
         return toString(this);
     }
     
+    /**
+     * The nid of the concept {@link #toString(SctTreeItem)} describes, or 0 if it isn't known.
+     */
+    private static int getDescribedNid(SctTreeItem item) {
+        if (item.getValue() == null) {
+            return 0;
+        }
+        ComponentReference ref;
+        if (item.getValue().getRelationshipVersion() != null) {
+            ref = (item.getMultiParentDepth() > 0 ? item.getValue().getRelationshipVersion().getDestinationReference()
+                    : item.getValue().getRelationshipVersion().getOriginReference());
+        } else {
+            ref = item.getValue().getConceptFromRelationshipOrConceptProperties();
+        }
+        return (ref == null ? 0 : ref.getNid());
+    }
+
     public static String toString(SctTreeItem item) {
         try {
             if (item.getValue().getRelationshipVersion() != null) {
@@ -377,6 +469,7 @@ class SctTreeItem extends TreeItem<TaxonomyReferenceWithConcept> implements SctT
 
     public void setMultiParentDepth(int multiParentDepth) {
         this.multiParentDepth = multiParentDepth;
+        this.sortKey = null;  //the depth changes which concept is described
     }
 
     public void setSecondaryParentOpened(boolean secondaryParentOpened) {
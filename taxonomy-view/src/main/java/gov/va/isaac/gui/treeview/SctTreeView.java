@@ -89,6 +89,7 @@ class SctTreeView {
     private final static SctTreeItemDisplayPolicies defaultDisplayPolicies = new DefaultSctTreeItemDisplayPolicies();
 
     private static volatile boolean shutdownRequested = false;
+    private static volatile boolean progressiveExpansion = true;
 
     // initializationCountDownLatch_ begins with count of 2, indicating init() not yet run
     // initializationCountDownLatch_ count is decremented to 1 during init, indicating that init() started
@@ -657,6 +658,7 @@ class SctTreeView {
         if (rootTreeItem != null)
         {
             rootTreeItem.clearChildren();  //This recursively cancels any active lookups
+            Utility.cancel(rootTreeItem);  //and this drops the queued ones
         }
     }
     
@@ -665,6 +667,20 @@ class SctTreeView {
         return shutdownRequested;
     }
     
+    /**
+     * When on (the default), expanding a node with thousands of children shows them a page at a time
+     * as they are sorted, rather than all at once when the sort is done.
+     */
+    public static void setProgressiveExpansion(boolean progressive)
+    {
+        progressiveExpansion = progressive;
+    }
+    
+    protected static boolean isProgressiveExpansion()
+    {
+        return progressiveExpansion;
+    }
+    
     private void saveExpanded() {
         TreeItem<TaxonomyReferenceWithConcept> selected = treeView_.getSelectionModel().getSelectedItem();
         selectedItem_ = Optional.ofNullable(selected == null ? null : selected.getValue().getConceptFromRelationshipOrConceptProperties().getUuid());